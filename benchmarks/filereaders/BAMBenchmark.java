@@ -0,0 +1,81 @@
+package filereaders;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import filereaders.bam.BAMValueList;
+
+/*
+ * Coverage summaries of the fixture BAM: BAMValueList.update alone, and
+ * BAMReader.readMiddleRegion/readBigRegion through readBAMTest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BAMBenchmark {
+	static final int WINDOW_WIDTH = 1000;
+	static final int STEP = 2;
+
+	@Param({ "100000", "1000000" })
+	int span;
+
+	String path;
+	int start;
+	int[] read_starts;
+	int[] read_ends;
+
+	@Setup
+	public void setup() throws IOException {
+		path = Fixtures.get().bam.getPath();
+		Random rnd = new Random(Fixtures.SEED);
+		start = 1 + rnd.nextInt(Fixtures.CHR_LENGTH - span);
+		int reads = span / Fixtures.READ_LENGTH * Fixtures.READ_DEPTH;
+		read_starts = new int[reads];
+		read_ends = new int[reads];
+		for (int i = 0; i < reads; i++) {
+			read_starts[i] = rnd.nextInt(span) - Fixtures.READ_LENGTH / 2;
+			read_ends[i] = read_starts[i] + Fixtures.READ_LENGTH - 1;
+		}
+	}
+
+	@Benchmark
+	public double[] valueListUpdate() {
+		BAMValueList list = new BAMValueList(start, start + span - 1, WINDOW_WIDTH, STEP);
+		for (int i = 0; i < read_starts.length; i++)
+			list.update(read_starts[i], read_ends[i]);
+		return list.getResults();
+	}
+
+	@Benchmark
+	public Element readMiddleRegion() throws IOException, URISyntaxException {
+		Document doc = XmlWriter.init(Consts.DATA_ROOT);
+		return new BAMReader(path).readBAMTest(doc, Fixtures.CHR, start, start + span - 1, WINDOW_WIDTH, STEP,
+				Consts.MODE_DENSE, "reads", true);
+	}
+
+	@Benchmark
+	public Element readBigRegion() throws IOException, URISyntaxException {
+		Document doc = XmlWriter.init(Consts.DATA_ROOT);
+		return new BAMReader(path).readBAMTest(doc, Fixtures.CHR, start, start + span - 1, WINDOW_WIDTH, STEP,
+				Consts.MODE_DENSE, "reads", false);
+	}
+}
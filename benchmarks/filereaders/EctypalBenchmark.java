@@ -0,0 +1,61 @@
+package filereaders;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import filereaders.individual.EctypalElements;
+import filereaders.individual.vcf.Variant;
+
+/*
+ * EctypalElements.deal: transcripts of a fixture region rebuilt against a
+ * list of personal variants, as append_Ptrack does for the refGene track.
+ * The transcript DOM is read once; every invocation works on a fresh copy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EctypalBenchmark {
+	static final int START = 1000000;
+	static final int END = 1500000;
+
+	@Param({ "100", "1000" })
+	int variant_count;
+
+	FastaReader fr;
+	Document template;
+	List<Variant> variants;
+
+	@Setup
+	public void setup() throws IOException {
+		Fixtures f = Fixtures.get();
+		fr = new FastaReader(f.fasta.getPath());
+		template = XmlWriter.init(Consts.DATA_ROOT);
+		new BasicAnnosReader(f.anno.getPath()).write_ba2elements(template, "_refGene", Fixtures.CHR, START, END, 1);
+		variants = Fixtures.variants(START, END, variant_count);
+	}
+
+	@Benchmark
+	public Element deal() throws IOException {
+		Document doc = (Document) template.cloneNode(true);
+		Element elements = (Element) doc.getElementsByTagName(Consts.XML_TAG_ELEMENTS).item(0);
+		return new EctypalElements(doc, fr, elements, null, Fixtures.CHR, false).deal(variants);
+	}
+}
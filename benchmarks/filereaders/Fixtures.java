@@ -0,0 +1,127 @@
+package filereaders;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import filereaders.individual.vcf.Variant;
+import filereaders.tools.SyntheticGenome;
+
+/*
+ * Deterministic synthetic data for the benchmarks, written once per JVM into
+ * java.io.tmpdir/gbhit-bench-<seed> by filereaders.tools.SyntheticGenome.
+ * The same seed always gives the same files, so numbers of different runs and
+ * branches are comparable.
+ *
+ * One assembly "hg19" with a single chromosome chr1 of CHR_LENGTH bases; the
+ * fields below are the files the benchmarks read, config.xml lists all of them.
+ */
+final class Fixtures {
+	static final long SEED=SyntheticGenome.DEFAULT_SEED;
+	static final String ASSEMBLY="hg19";
+	static final String CHR="chr1";
+	static final int CHR_LENGTH=4000000;
+	static final int READ_LENGTH=100;
+	static final int READ_DEPTH=4;
+	static final double VARIANT_DENSITY=1;
+	static final int SAMPLES=4;
+
+	private static Fixtures instance;
+
+	final File dir;
+	final File fasta;
+	final File cyto;
+	final File hgnc;
+	final File bed;
+	final File anno;
+	final File bam;
+	final File config;
+
+	private Fixtures(SyntheticGenome sg,File dir){
+		this.dir=dir;
+		fasta=sg.fasta;
+		cyto=sg.cyto;
+		hgnc=sg.hgnc;
+		bed=sg.bedgz;
+		anno=sg.anno;
+		bam=sg.bam;
+		config=sg.config;
+	}
+
+	static synchronized Fixtures get() throws IOException{
+		if(instance!=null)
+			return instance;
+		File dir=new File(System.getProperty("java.io.tmpdir"),"gbhit-bench-"+SEED);
+		SyntheticGenome sg=new SyntheticGenome(dir,SEED).assembly(ASSEMBLY).chromosomes(1).length(CHR_LENGTH)
+				.read_length(READ_LENGTH).depth(READ_DEPTH).density(VARIANT_DENSITY).samples(SAMPLES);
+		Fixtures f=new Fixtures(sg,dir);
+		File done=new File(dir,"done");
+		if(!done.exists()){
+			sg.write();
+			new FileOutputStream(done).close();
+		}
+		System.setProperty("gbhit.config", f.config.getPath());
+		System.setProperty("gbhit.snapshot", new File(dir,"none.snapshot").getPath());
+		instance=f;
+		return f;
+	}
+
+	static String symbol(int n){
+		return SyntheticGenome.symbol(n);
+	}
+
+	/*
+	 * VCF data lines of a multi-sample file, SNVs and short indels on chr1.
+	 */
+	static char[][] vcf_lines(int count,int samples){
+		Random rnd=new Random(SEED+1);
+		char[][] lines=new char[count][];
+		int pos=1000;
+		for(int i=0;i<count;i++){
+			pos+=1+rnd.nextInt(500);
+			StringBuilder sb=new StringBuilder(64+samples*8);
+			String ref=String.valueOf("ACGT".charAt(rnd.nextInt(4)));
+			int kind=rnd.nextInt(10);
+			String alt=kind<8?String.valueOf("ACGT".charAt((("ACGT".indexOf(ref))+1+rnd.nextInt(3))%4))
+					:kind==8?ref+"AT":ref;
+			if(kind==9)
+				ref=ref+"GC";
+			sb.append(CHR).append('\t').append(pos).append("\trs").append(100000+i).append('\t')
+				.append(ref).append('\t').append(alt).append('\t').append(20+rnd.nextInt(80))
+				.append("\tPASS\tAC=").append(1+rnd.nextInt(samples*2)).append(";AN=").append(samples*2)
+				.append(";DP=").append(10+rnd.nextInt(90)).append("\tGT:DP");
+			for(int s=0;s<samples;s++)
+				sb.append('\t').append(rnd.nextInt(2)).append('|').append(rnd.nextInt(2)).append(':').append(rnd.nextInt(60));
+			lines[i]=sb.toString().toCharArray();
+		}
+		return lines;
+	}
+
+	/*
+	 * Variants as VariantAnalysis gets them after the dbSNP merge, inside [start,end].
+	 */
+	static List<Variant> variants(int start,int end,int count){
+		Random rnd=new Random(SEED+2);
+		List<Variant> variants=new ArrayList<Variant>(count);
+		int[] positions=new int[count];
+		for(int i=0;i<count;i++)
+			positions[i]=start+rnd.nextInt(end-start);
+		Arrays.sort(positions);
+		for(int i=0;i<count;i++){
+			Variant v;
+			if(rnd.nextInt(10)<8){
+				v=new Variant("v"+i,Consts.VARIANT_TYPE_SNV,positions[i],positions[i]);
+				v.setLetter(String.valueOf("ACGT".charAt(rnd.nextInt(4))));
+			}
+			else
+				v=new Variant("v"+i,Consts.VARIANT_TYPE_DELETION,positions[i],positions[i]+rnd.nextInt(6));
+			v.setHomo("1|1");
+			variants.add(v);
+		}
+		return variants;
+	}
+}
@@ -0,0 +1,58 @@
+package filereaders;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+
+/*
+ * Genes.find_Gene and Genes.overlap_Genes on the fixture HGNC table.
+ * Fixtures.get() points -Dgbhit.config at the fixture config.xml before Genes loads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenesBenchmark {
+	String[] prefixes;
+	int[] starts;
+	int next;
+
+	@Setup
+	public void setup() throws IOException {
+		Fixtures.get();
+		Random rnd = new Random(Fixtures.SEED);
+		prefixes = new String[256];
+		starts = new int[256];
+		for (int i = 0; i < prefixes.length; i++) {
+			String symbol = Fixtures.symbol(rnd.nextInt(Genes.geneNum()));
+			prefixes[i] = symbol.substring(0, 5 + rnd.nextInt(symbol.length() - 4));
+			starts[i] = 1 + rnd.nextInt(Fixtures.CHR_LENGTH - 1000000);
+		}
+	}
+
+	@Benchmark
+	public Element find_Gene() {
+		next = (next + 1) & 255;
+		return Genes.find_Gene(XmlWriter.init(Consts.DATA_ROOT), prefixes[next]);
+	}
+
+	@Benchmark
+	public Element overlap_Genes() {
+		next = (next + 1) & 255;
+		return Genes.overlap_Genes(XmlWriter.init(Consts.DATA_ROOT), Fixtures.CHR, starts[next], starts[next] + 1000000);
+	}
+}
@@ -0,0 +1,83 @@
+package filereaders;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import filereaders.individual.vcf.Vcf;
+import filereaders.tools.StringSplit;
+import filereaders.wiggle.DataValue;
+import filereaders.wiggle.DataValueList;
+
+/*
+ * Per-record work of the readers: StringSplit.split on VCF lines,
+ * Vcf record construction and DataValueList.update of wiggle values.
+ * Each invocation handles LINES records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsingBenchmark {
+	static final int LINES = 1000;
+
+	@Param({ "1", "100" })
+	int samples;
+
+	char[][] vcf_chars;
+	String[] vcf_strings;
+	int[] samples_filter;
+	DataValue[] values;
+
+	@Setup
+	public void setup() {
+		vcf_chars = Fixtures.vcf_lines(LINES, samples);
+		vcf_strings = new String[LINES];
+		for (int i = 0; i < LINES; i++)
+			vcf_strings[i] = new String(vcf_chars[i]);
+		samples_filter = new int[] { 0 };
+		Random rnd = new Random(Fixtures.SEED);
+		values = new DataValue[LINES];
+		int pos = 0;
+		for (int i = 0; i < LINES; i++) {
+			int len = 1 + rnd.nextInt(50);
+			values[i] = new DataValue(Fixtures.CHR, pos, pos + len, rnd.nextFloat() * 100);
+			pos += len;
+		}
+	}
+
+	@Benchmark
+	public void split(Blackhole bh) {
+		StringSplit split = new StringSplit('\t');
+		for (int i = 0; i < LINES; i++)
+			bh.consume(split.split(vcf_strings[i]).getResultNum());
+	}
+
+	@Benchmark
+	public void vcf(Blackhole bh) {
+		for (int i = 0; i < LINES; i++)
+			bh.consume(new Vcf(vcf_chars[i], vcf_chars[i].length, samples, samples_filter));
+	}
+
+	@Benchmark
+	public Object dataValueList() {
+		DataValueList list = new DataValueList(1, values[LINES - 1].getEnd(), 1000, 2);
+		for (int i = 0; i < LINES; i++)
+			list.update(values[i]);
+		return list;
+	}
+}
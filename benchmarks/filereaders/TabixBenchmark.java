@@ -0,0 +1,97 @@
+package filereaders;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * TabixReader.query and TabixReader.readLine over the fixture BED track.
+ * open_query includes reading the .tbi, as every append_track does today;
+ * query reuses one open reader.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TabixBenchmark {
+	@Param({ "10000", "200000", "2000000" })
+	int span;
+
+	String path;
+	String[] regions;
+	int next;
+	TabixReader reader;
+
+	@Setup
+	public void setup() throws IOException {
+		path = Fixtures.get().bed.getPath();
+		Random rnd = new Random(Fixtures.SEED);
+		regions = new String[256];
+		for (int i = 0; i < regions.length; i++) {
+			int start = 1 + rnd.nextInt(Fixtures.CHR_LENGTH - span);
+			regions[i] = Fixtures.CHR + ":" + start + "-" + (start + span - 1);
+		}
+		reader = new TabixReader(path);
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		reader.TabixReaderClose();
+	}
+
+	private String region() {
+		next = (next + 1) & (regions.length - 1);
+		return regions[next];
+	}
+
+	private static int drain(TabixReader.Iterator it) throws IOException {
+		int n = 0;
+		if (it != null)
+			while (it.next() != null)
+				n++;
+		return n;
+	}
+
+	@Benchmark
+	public int query() throws IOException {
+		return drain(reader.query(region()));
+	}
+
+	@Benchmark
+	public int open_query() throws IOException {
+		TabixReader tr = new TabixReader(path);
+		try {
+			return drain(tr.query(region()));
+		} finally {
+			tr.TabixReaderClose();
+		}
+	}
+
+	@Benchmark
+	public int readLine() throws IOException {
+		TabixReader tr = new TabixReader(path);
+		try {
+			int n = 0;
+			for (int i = 0; i < span / 100 && tr.readLine() != null; i++)
+				n++;
+			return n;
+		} finally {
+			tr.TabixReaderClose();
+		}
+	}
+}
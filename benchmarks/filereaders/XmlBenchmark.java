@@ -0,0 +1,46 @@
+package filereaders;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/*
+ * XmlWriter.xml2string of a response holding the BED and refGene tracks of a region.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlBenchmark {
+	@Param({ "100000", "1000000" })
+	int span;
+
+	Document doc;
+
+	@Setup
+	public void setup() throws IOException {
+		Fixtures f = Fixtures.get();
+		doc = XmlWriter.init(Consts.DATA_ROOT);
+		new BedReaderTabix(f.bed.getPath()).write_bed2elements(doc, "features", Fixtures.CHR, 1000000, 1000000 + span, 1, null, null);
+		new BasicAnnosReader(f.anno.getPath()).write_ba2elements(doc, "refGene", Fixtures.CHR, 1000000, 1000000 + span, 1);
+	}
+
+	@Benchmark
+	public String xml2string() {
+		return XmlWriter.xml2string(doc);
+	}
+}
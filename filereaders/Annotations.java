@@ -2,6 +2,9 @@ package filereaders;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.SerializationUtils;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -123,6 +126,34 @@ class Annotations implements Serializable{
 		}
 		return Parameters;
 	}
+	/*
+	 * The value of param as set_Parameters takes it, or null if it is not set by users.
+	 */
+	String get_ParameterValue(String param){
+		String type=ParameterType.get(param);
+		Object value=Parameter.get(param);
+		if(type==null||value==null)
+			return null;
+		if(type.equals(Consts.PARAMETER_TYPE_CHECKBOX)){
+			StringBuilder sb=new StringBuilder();
+			for(Map.Entry<String,Boolean> e : ((HashMap<String,Boolean>)value).entrySet())
+				if(e.getValue())
+					sb.append(sb.length()>0?":":"").append(e.getKey());
+			return sb.toString();
+		}
+		if(type.equals(Consts.PARAMETER_TYPE_STRING))
+			return (String)value;
+		if(type.equals(Consts.PARAMETER_TYPE_SELECTION))
+			return ((String[])value)[0];
+		if(type.equals(Consts.PARAMETER_TYPE_VCFSAMPLE)){
+			String[] names=((VcfSample)value).getSelectedNames();
+			StringBuilder sb=new StringBuilder();
+			for(int i=0;names!=null&&i<names.length;i++)
+				sb.append(i>0?":":"").append(names[i]);
+			return sb.toString();
+		}
+		return null;
+	}
 	String[] get_Parameters(){
 		String[] ParametersList=new String[Parameter.size()];
 		Parameter.keySet().toArray(ParametersList);
@@ -161,6 +192,44 @@ class Annotations implements Serializable{
 		else 
 			return Paths.values().iterator().next();
 	}
+	/*
+	 * The files of the track as add_Externals takes them: a path, or chr:path pairs
+	 * separated by ";".
+	 */
+	String get_Link(){
+		if(Path!=null||Paths==null)
+			return Path;
+		StringBuilder sb=new StringBuilder();
+		for(Map.Entry<String,String> e : Paths.entrySet())
+			sb.append(sb.length()>0?";":"").append(e.getKey()).append(':').append(e.getValue());
+		// One pair is told from a path by its ";"
+		if(Paths.size()==1)
+			sb.append(';');
+		return sb.toString();
+	}
+	/*
+	 * All the files of the track, one per chromosome if they are split.
+	 */
+	String[] get_Paths(){
+		if(Path!=null||Paths==null)
+			return new String[]{Path};
+		return Paths.values().toArray(new String[Paths.size()]);
+	}
+	/*
+	 * A copy of the track, of type Type, reading paths.get(p) instead of each file p
+	 * in paths.
+	 */
+	Annotations copy_Paths(String Type, Map<String,String> paths){
+		Annotations copy=SerializationUtils.clone(this);
+		copy.Type=Type;
+		if(copy.Path!=null&&paths.containsKey(copy.Path))
+			copy.Path=paths.get(copy.Path);
+		if(copy.Paths!=null)
+			for(Map.Entry<String,String> e : copy.Paths.entrySet())
+				if(paths.containsKey(e.getValue()))
+					e.setValue(paths.get(e.getValue()));
+		return copy;
+	}
 	String get_Type(){
 		return Type;
 	}
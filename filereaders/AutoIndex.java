@@ -0,0 +1,211 @@
+package filereaders;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+import filereaders.tools.ExternalSort;
+import filereaders.tools.TabixIndexWriter;
+
+/*
+ * Indexing of the plain-text tracks users add (Instance.add_Externals). BED files are
+ * read whole by BedReader, GFF, GTF, GVF, GRF, GDF and VCF files need a bgzipped file
+ * with its .tbi. Such a file without its index is sorted in SORT_MEMORY, bgzipped and
+ * indexed under DIR, in the background; the external track is then swapped for a copy
+ * reading the indexed file, a BED track becoming a BEDGZ one.
+ *
+ * Indexed files are named after a SHA-1 of the source, its length and its modification
+ * time (Content-Length and Last-Modified of a remote one), so one added by several
+ * sessions is indexed once, and again if it changes. A remote file without either is
+ * indexed again by each run of the server. Servers sharing their sessions (SessionStore)
+ * should share DIR too, set by -Dgbhit.index.dir.
+ * WIG and bedGraph have no indexed reader and are left as they are.
+ */
+class AutoIndex {
+	static final long SORT_MEMORY=32L*1024*1024;
+	static final int TIMEOUT=30*1000;
+	static final File DIR=System.getProperty("gbhit.index.dir")!=null?new File(System.getProperty("gbhit.index.dir"))
+			:new File(System.getProperty("java.io.tmpdir"),"gbhit-index");
+
+	/*
+	 * Stands for the modification time of a remote file that tells neither.
+	 */
+	private static final long STARTED=System.currentTimeMillis();
+	private static final ExecutorService executor=Executors.newSingleThreadExecutor(new ThreadFactory(){
+		public Thread newThread(Runnable r){
+			Thread t=new Thread(r,"gbhit-index");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		}
+	});
+
+	/*
+	 * Whether track has a file to index.
+	 */
+	static boolean needs_Index(Annotations track){
+		if(preset(track.get_Type())==null)
+			return false;
+		for(String path : track.get_Paths())
+			if(path!=null&&!indexed(track.get_Type(), path))
+				return true;
+		return false;
+	}
+	private static boolean indexed(String type,String path){
+		if(type.equals(Consts.FORMAT_BED))
+			return false;
+		if(remote(path))
+			return path.endsWith(".gz");
+		return new File(path+".tbi").isFile();
+	}
+	private static boolean remote(String path){
+		return path.startsWith("http://")||path.startsWith("https://")||path.startsWith("ftp://");
+	}
+	/*
+	 * The tabix columns of type, or null if it is not indexed.
+	 */
+	private static TabixIndexWriter preset(String type){
+		if(type.equals(Consts.FORMAT_BED))
+			return TabixIndexWriter.bed();
+		if(type.equals(Consts.FORMAT_VCF))
+			return TabixIndexWriter.vcf();
+		if(type.equals(Consts.FORMAT_GFF)||type.equals(Consts.FORMAT_GTF)||type.equals(Consts.FORMAT_GVF)
+				||type.equals(Consts.FORMAT_GRF)||type.equals(Consts.FORMAT_GDF))
+			return TabixIndexWriter.gff();
+		return null;
+	}
+	static String indexed_Type(String type){
+		return type.equals(Consts.FORMAT_BED)?Consts.FORMAT_BEDGZ:type;
+	}
+	/*
+	 * Index the files of the external track of ins in the background, then swap it.
+	 */
+	static void submit(final Instance ins,final Annotations track){
+		executor.execute(new Runnable(){
+			public void run(){
+				try{
+					Map<String,String> paths=new HashMap<String,String>();
+					for(String path : track.get_Paths())
+						if(path!=null&&!indexed(track.get_Type(), path)&&!paths.containsKey(path))
+							paths.put(path, index(track.get_Type(), path));
+					ins.swap_External(track, indexed_Type(track.get_Type()), paths);
+				} catch(Exception e){
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+	/*
+	 * The bgzipped and indexed copy of path, made unless it was already.
+	 */
+	static String index(String type,String path) throws IOException{
+		long length=0,modified=0;
+		if(!remote(path)){
+			File f=new File(path);
+			length=f.length();
+			modified=f.lastModified();
+		}
+		else{
+			URLConnection con=new URL(path).openConnection();
+			con.setConnectTimeout(TIMEOUT);
+			con.setReadTimeout(TIMEOUT);
+			if(con instanceof HttpURLConnection)
+				((HttpURLConnection) con).setRequestMethod("HEAD");
+			try{
+				String header=con.getHeaderField("Content-Length");
+				length=header!=null?Long.parseLong(header.trim()):-1;
+				modified=con.getLastModified();
+			} catch(NumberFormatException e){
+				length=-1;
+			} finally{
+				if(con instanceof HttpURLConnection)
+					((HttpURLConnection) con).disconnect();
+			}
+			if(length<0&&modified==0)
+				modified=STARTED;
+		}
+		String name=sha1(path+"\t"+length+"\t"+modified)+"_"
+				+new File(path).getName().replaceAll("\\.gz$", "").replaceAll("[^A-Za-z0-9._-]", "_");
+		File bgz=new File(DIR,name+".gz");
+		if(bgz.isFile()&&new File(bgz.getPath()+".tbi").isFile())
+			return bgz.getPath();
+		DIR.mkdirs();
+		TabixIndexWriter writer=preset(type);
+		// 0-based columns of the start: BED and VCF second, GFF-like fourth
+		int start=type.equals(Consts.FORMAT_BED)||type.equals(Consts.FORMAT_VCF)?1:3;
+		ExternalSort sort=new ExternalSort(0, start, SORT_MEMORY, DIR);
+		File sorted=File.createTempFile("gbhit-index", ".sorted", DIR);
+		File tmp=new File(DIR,name+".tmp.gz");
+		File tmp_tbi=new File(tmp.getPath()+".tbi");
+		try{
+			BufferedReader in=new BufferedReader(new InputStreamReader(open(path),"ISO-8859-1"),1<<16);
+			try{
+				sort.sort(in, sorted);
+			} finally{
+				in.close();
+			}
+			// Lines without a start (e.g. BED track lines) are skipped by the index
+			writer=writer.skip(sort.headers());
+			in=new BufferedReader(new InputStreamReader(new FileInputStream(sorted),"ISO-8859-1"),1<<16);
+			try{
+				writer.compress(in, tmp);
+			} finally{
+				in.close();
+			}
+			// The data first, the index makes the copy complete
+			if(!tmp.renameTo(bgz)||!tmp_tbi.renameTo(new File(bgz.getPath()+".tbi")))
+				throw new IOException("Can not move "+tmp+" to "+bgz);
+		} finally{
+			sorted.delete();
+			tmp.delete();
+			tmp_tbi.delete();
+		}
+		return bgz.getPath();
+	}
+	private static String sha1(String s){
+		try{
+			return sha1(s.getBytes("UTF-8"));
+		} catch(UnsupportedEncodingException e){
+			// UTF-8 is in every JVM
+			throw new IllegalStateException(e);
+		}
+	}
+	/*
+	 * The SHA-1 of bytes, in hex.
+	 */
+	static String sha1(byte[] bytes){
+		try{
+			byte[] digest=MessageDigest.getInstance("SHA-1").digest(bytes);
+			StringBuilder sb=new StringBuilder(digest.length*2);
+			for(byte b : digest){
+				sb.append(Character.forDigit((b>>4)&0xf, 16));
+				sb.append(Character.forDigit(b&0xf, 16));
+			}
+			return sb.toString();
+		} catch(NoSuchAlgorithmException e){
+			// SHA-1 is in every JVM
+			throw new IllegalStateException(e);
+		}
+	}
+	private static InputStream open(String path) throws IOException{
+		InputStream in=remote(path)?new URL(path).openStream():new FileInputStream(path);
+		if(path.endsWith(".gz"))
+			in=new GZIPInputStream(in,1<<16);
+		return in;
+	}
+}
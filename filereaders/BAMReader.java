@@ -229,7 +229,7 @@ public class BAMReader {
 			if (list == null) {
 				bpp = 1024;
 			} else {
-				ele = writeNotDetail(doc, list, track, mode, bpp <= 0.5);
+				ele = writeNotDetail(doc, list, track, mode, bpp <= 0.5, Packing.of(mode, start, end, bpp));
 				already = true;
 			}
 		}
@@ -310,7 +310,10 @@ public class BAMReader {
 	 * @param lt0point5
 	 *            True if bpp less than 0.5, false else
 	 */
-	private Element writeNotDetail(Document doc, List<SAMRecord> list, String track, String mode, boolean lt0point5) {
+	/*
+	 * Reads of list, in the rows of packing (null to leave them to the client).
+	 */
+	private Element writeNotDetail(Document doc, List<SAMRecord> list, String track, String mode, boolean lt0point5, Packing packing) {
 		Element reads = doc.createElement(XML_TAG_READS);
 		SAMRecord rec = null;
 		Element read = null;
@@ -321,9 +324,11 @@ public class BAMReader {
 			rec = itor.next();
 			read = doc.createElement(XML_TAG_READ);
 
+			int[][] startEnds = getStartEndByCigar(rec);
+			if (packing != null && !packing.place(read, startEnds[0][0], startEnds[1][startEnds[1].length - 1]))
+				continue;
 			if (!mode.equalsIgnoreCase(MODE_DENSE))
 				read.setAttribute(XML_TAG_ID, rec.getReadName());
-			int[][] startEnds = getStartEndByCigar(rec);
 			append_text_element(doc, read, XML_TAG_FROM, BAMValueList.intArray2IntString(startEnds[0], ','));
 			append_text_element(doc, read, XML_TAG_TO, BAMValueList.intArray2IntString(startEnds[1], ','));
 			append_text_element(doc, read, XML_TAG_DIRECTION, ((rec.getFlags() & 0x10) == 0x10) ? "+" : "-");
@@ -337,6 +342,8 @@ public class BAMReader {
 			}
 			reads.appendChild(read);
 		}
+		if (packing != null)
+			packing.write(doc, reads);
 		doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(reads);
 		return reads;
 	}
@@ -420,9 +427,12 @@ public class BAMReader {
 		}
 		List<SAMRecord> list = new LinkedList<SAMRecord>();
 		int num = 0;
-		list = iterateSmallRegionRecursion(list, itor, num);
-
-		close();
+		try {
+			list = iterateSmallRegionRecursion(list, itor, num);
+		} finally {
+			// Also when the view is cancelled
+			close();
+		}
 
 		return list;
 	}
@@ -436,6 +446,7 @@ public class BAMReader {
 		SAMRecord rec = null;
 		try {
 			while (itor.hasNext()) {
+				Cancellation.check();
 				rec = itor.next();
 				if ("*".equals(rec.getCigarString()))
 					continue;
@@ -477,9 +488,11 @@ public class BAMReader {
 		}
 
 		BAMValueList valueList = new BAMValueList(start, end, windowSize, step);
-		iterateMiddleRegionRecursion(valueList, itor, start);
-
-		close();
+		try {
+			iterateMiddleRegionRecursion(valueList, itor, start);
+		} finally {
+			close();
+		}
 
 		return BAMValueList.doubleArray2IntString(valueList.getResults());
 	}
@@ -493,6 +506,7 @@ public class BAMReader {
 		SAMRecord rec = null;
 		try {
 			while (itor.hasNext()) {
+				Cancellation.check();
 				rec = itor.next();
 				if ("*".equals(rec.getCigarString()))
 					continue;
@@ -28,10 +28,11 @@ class BasicAnnosReader{
 		doc.getElementsByTagName(Consts.DATA_ROOT).item(0).appendChild(Elements); // Elements
 
 		// node
+		TabixReader ba_tb = null;
 		try {
 			Element Ele = null;
 			String line;
-			TabixReader ba_tb = new TabixReader(baPath);
+			ba_tb = new TabixReader(baPath);
 			TabixReader.Iterator Query = ba_tb.query(chr + ":" + regionstart
 					+ "-" + regionend);
 			StringSplit split = new StringSplit('\t');
@@ -58,39 +59,70 @@ class BasicAnnosReader{
 				}
 
 			}
-			ba_tb.TabixReaderClose();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally{
+			if(ba_tb != null){
+				try {
+					ba_tb.TabixReaderClose();
+				} catch (IOException e) {
+				}
+			}
 		}
 
 		return Elements;
 	}
 	Element write_ba2elements(Document doc, String track, String chr,
 			long regionstart, long regionend, double bpp) {
+		return write_ba2elements(doc, track, chr, regionstart, regionend, bpp, null, null);
+	}
+	/*
+	 * Elements of the window, or its Values once density is dense (null for every
+	 * feature, as the analyses want them), in the rows of packing (null to leave them to
+	 * the client).
+	 */
+	Element write_ba2elements(Document doc, String track, String chr,
+			long regionstart, long regionend, double bpp, Density density, Packing packing) {
 		Element Elements = doc.createElement(Consts.XML_TAG_ELEMENTS);
 		Elements.setAttribute(Consts.XML_TAG_ID, track);
 		doc.getElementsByTagName(Consts.DATA_ROOT).item(0).appendChild(Elements); // Elements
 
 		// node
+		TabixReader ba_tb = null;
 		try {
 			Element Ele = null;
 			String line;
-			TabixReader ba_tb = new TabixReader(baPath);
+			ba_tb = new TabixReader(baPath);
 			TabixReader.Iterator Query = ba_tb.query(chr + ":" + regionstart
 					+ "-" + regionend);
 			StringSplit split = new StringSplit('\t');
 			while (Query!=null&&(line = Query.next()) != null) {
-				Ele = doc.createElement(Consts.XML_TAG_ELEMENT);
 				split.split(line);
+				long from = Long.parseLong(split.getResultByIndex(1)) + 1, to = Long.parseLong(split.getResultByIndex(2));
+				if (density != null && density.add(from, to))
+					continue;
+				Ele = doc.createElement(Consts.XML_TAG_ELEMENT);
+				if (packing != null && !packing.place(Ele, from, to))
+					continue;
 				append2Element(doc, regionstart, regionend, bpp, Ele, new BasicAnnos(
 						split.getResult(), split.getResultNum()));
 				Elements.appendChild(Ele);
 			}
-			ba_tb.TabixReaderClose();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally{
+			if(ba_tb != null){
+				try {
+					ba_tb.TabixReaderClose();
+				} catch (IOException e) {
+				}
+			}
 		}
 
+		if (density != null && density.dense())
+			return density.write(doc, track, Elements);
+		if (packing != null)
+			packing.write(doc, Elements);
 		return Elements;
 	}
 	static void append2Element(Document doc, long regionstart, long regionend, double bpp, Element Ele, BasicAnnos ba) {
@@ -0,0 +1,481 @@
+package filereaders;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import filereaders.gff.GRFReader;
+import filereaders.gff.Region;
+import filereaders.individual.VariantAnalysis;
+import filereaders.individual.vcf.Variant;
+import filereaders.tools.IntervalJoin;
+
+/*
+ * Headless annotation of all the variants of a personal track (VCF SAMPLE or GVF)
+ * with the same VariantAnalysis the servlet runs window by window.
+ *
+ * The genome is cut into chunks of every chromosome of the reference, and the chunks
+ * are dealt by a pool of threads, each with its own FastaReader. Their annotations
+ * are written in genome order as they complete, as TSV or as a sites VCF with a GBHIT
+ * INFO field. The cytoband and gene scores IndividualStat fills are computed by the
+ * same pool and written to the .stat.txt file Instance loads when the track is
+ * chosen, so the scores are not computed at the first cytoband click.
+ *
+ * Usage: java -Dgbhit.config=<configure> filereaders.BatchAnnotator [-assembly ID]
+ * 	[-sample NAME] [-anno TRACK[,TRACK]] [-fanno TRACK] [-chr CHR[,CHR]] [-threads N]
+ * 	[-chunk BASES] [-format tsv|vcf] [-out FILE] [-stat FILE | -no-stat] TRACK
+ */
+
+class BatchAnnotator {
+	static final int DEFAULT_CHUNK=1000000;
+	static final String FORMAT_TSV="tsv";
+	static final String FORMAT_VCF="vcf";
+	static final String INFO_TAG="GBHIT";
+	static final String NONE=".";
+
+	private String assembly=Consts.CURRENT_ASSEMBLY;
+	private Annotations pvar;
+	private String pvarID;
+	private Annotations[] annos;
+	private Annotations fanno;
+	private String[] chrs;
+	private int threads=Runtime.getRuntime().availableProcessors();
+	private int chunk=DEFAULT_CHUNK;
+	private String format=FORMAT_TSV;
+	private Annotations ref;
+	private final ThreadLocal<FastaReader> readers=new ThreadLocal<FastaReader>();
+	private final List<FastaReader> opened=new ArrayList<FastaReader>();
+
+	BatchAnnotator(String assembly,String track,String sample){
+		this.assembly=assembly;
+		this.ref=CfgReader.getBasicRef(assembly);
+		if(ref==null)
+			throw new IllegalArgumentException("No reference of assembly "+assembly);
+		Annotations anno=CfgReader.getAnnotation(assembly, track);
+		if(anno==null||!(anno.get_Type().equals(Consts.FORMAT_VCF)||anno.get_Type().equals(Consts.FORMAT_GVF)))
+			throw new IllegalArgumentException("No VCF or GVF track "+track);
+		pvar=SerializationUtils.clone(anno);
+		pvar.set_Mode(Consts.MODE_PACK);
+		pvarID=sample==null?track:sample;
+		if(pvar.get_Type().equals(Consts.FORMAT_VCF)){
+			// Reading the header fills the SAMPLEs, as Instance.init_track does
+			VcfReader vr=new VcfReader(pvar,"chr1");
+			try{
+				vr.vcf_tb.TabixReaderClose();
+			} catch(Exception e){
+				e.printStackTrace();
+			}
+		}
+		if(sample!=null){
+			if(!pvar.has_Parameter(Consts.VCF_HEADER_SAMPLE)||!((VcfSample)pvar.get_Parameter(Consts.VCF_HEADER_SAMPLE)).ifExists(sample))
+				throw new IllegalArgumentException("No SAMPLE "+sample+" in "+track);
+			pvar.set_Parameters(Consts.VCF_HEADER_SAMPLE, sample);
+		}
+		annos(null);
+	}
+	/*
+	 * The gene tracks to annotate with; by default refGene, or else every basic
+	 * annotation track, as Instance chooses them.
+	 */
+	BatchAnnotator annos(String[] tracks){
+		ArrayList<Annotations> list=new ArrayList<Annotations>();
+		Annotations[] all=CfgReader.getAnnotations(assembly);
+		if(tracks==null){
+			Annotations refgene=CfgReader.getAnnotation(assembly, "refGene");
+			if(refgene!=null&&refgene.get_Type().equals(Consts.FORMAT_ANNO))
+				list.add(refgene);
+			else
+				for(int i=0;i<all.length;i++)
+					if(all[i].get_Type().equals(Consts.FORMAT_ANNO))
+						list.add(all[i]);
+		}
+		else
+			for(int i=0;i<tracks.length;i++){
+				Annotations anno=CfgReader.getAnnotation(assembly, tracks[i]);
+				if(anno==null||!anno.get_Type().equals(Consts.FORMAT_ANNO))
+					throw new IllegalArgumentException("No gene track "+tracks[i]);
+				list.add(anno);
+			}
+		annos=list.toArray(new Annotations[list.size()]);
+		for(int i=0;i<annos.length;i++)
+			annos[i].set_Mode(Consts.MODE_PACK);
+		return this;
+	}
+	/*
+	 * Regulatory regions (a GRF track) given to VariantAnalysis as control areas.
+	 */
+	BatchAnnotator fanno(String track){
+		fanno=CfgReader.getAnnotation(assembly, track);
+		if(fanno==null||!fanno.get_Type().equals(Consts.FORMAT_GRF))
+			throw new IllegalArgumentException("No GRF track "+track);
+		return this;
+	}
+	BatchAnnotator chromosomes(String[] chrs){
+		this.chrs=chrs;
+		return this;
+	}
+	BatchAnnotator threads(int threads){
+		this.threads=Math.max(threads, 1);
+		return this;
+	}
+	BatchAnnotator chunk(int chunk){
+		this.chunk=Math.max(chunk, 1);
+		return this;
+	}
+	BatchAnnotator format(String format){
+		if(!format.equals(FORMAT_TSV)&&!format.equals(FORMAT_VCF))
+			throw new IllegalArgumentException("Unknown format "+format);
+		this.format=format;
+		return this;
+	}
+	/*
+	 * The .stat.txt file Instance looks for, or null if the track is not a local file.
+	 */
+	String stat_Path(){
+		String path=IndividualStat.stat_Path(pvar, pvarID);
+		if(path.startsWith("file:"))
+			return StartupSnapshot.local_file(path).getPath();
+		if(path.indexOf("://")>0)
+			return null;
+		return path;
+	}
+	/*
+	 * The reference reader of the calling worker thread.
+	 */
+	private FastaReader reader() throws IOException{
+		FastaReader fr=readers.get();
+		if(fr==null){
+			fr=new FastaReader(ref.get_Path());
+			readers.set(fr);
+			synchronized(opened){
+				opened.add(fr);
+			}
+		}
+		return fr;
+	}
+	/*
+	 * Annotate the whole genome into out, and write the scores into stat if not null.
+	 * Returns the number of variants written.
+	 */
+	long run(Writer out,File stat) throws IOException{
+		FastaReader fr=new FastaReader(ref.get_Path());
+		String[] names=chrs!=null?chrs:FastaReader.index(ref.get_Path()).names();
+		ExecutorService pool=Executors.newFixedThreadPool(threads);
+		long written=0;
+		try{
+			IndividualStat is=null;
+			List<Future<?>> scores=new ArrayList<Future<?>>();
+			if(stat!=null){
+				is=new IndividualStat(new CytobandReader(CfgReader.getBasicCyto(assembly).get_Path()).getCytobands(), annos);
+				for(int i=0;i<is.Cytobands.length;i++)
+					if(contains(names, is.Cytobands[i][0]))
+						scores.add(pool.submit(new Score(is, is.Cytobands[i][0], is.Cytobands[i][3])));
+			}
+			if(format.equals(FORMAT_VCF))
+				write_vcf_header(out, names, fr);
+			// Chunks are written in order, with a bounded number of them in flight
+			LinkedList<Future<String[]>> pending=new LinkedList<Future<String[]>>();
+			int window=threads*4;
+			for(int i=0;i<names.length;i++){
+				long length=fr.getChromosomeLength(names[i]);
+				for(long start=1;start<=length;start+=chunk){
+					pending.add(pool.submit(new Chunk(names[i], (int) start, (int) Math.min(start+chunk-1, length))));
+					if(pending.size()>=window)
+						written+=write(out, pending.removeFirst());
+				}
+			}
+			while(!pending.isEmpty())
+				written+=write(out, pending.removeFirst());
+			out.flush();
+			if(is!=null){
+				for(Future<?> f : scores)
+					get(f);
+				is.save_Stat(stat);
+			}
+		}finally{
+			pool.shutdownNow();
+			fr.close();
+			synchronized(opened){
+				for(FastaReader r : opened)
+					r.close();
+				opened.clear();
+			}
+		}
+		return written;
+	}
+	private static long write(Writer out,Future<String[]> f) throws IOException{
+		String[] lines=get(f);
+		for(int i=0;i<lines.length;i++)
+			out.write(lines[i]);
+		return lines.length;
+	}
+	private static <T> T get(Future<T> f) throws IOException{
+		try{
+			return f.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}catch(ExecutionException e){
+			if(e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+	private static boolean contains(String[] names,String name){
+		for(int i=0;i<names.length;i++)
+			if(names[i].equals(name))
+				return true;
+		return false;
+	}
+	/*
+	 * Score one cytoband and its genes, as a click on it in the servlet does.
+	 */
+	private class Score implements Callable<Void>{
+		private final IndividualStat is;
+		private final String chr;
+		private final String id;
+		Score(IndividualStat is,String chr,String id){
+			this.is=is;
+			this.chr=chr;
+			this.id=id;
+		}
+		public Void call() throws IOException{
+			is.fill_Cyto(chr, id, reader(), pvar);
+			return null;
+		}
+	}
+	/*
+	 * Annotate the variants starting in [start, end] of chr, one output line per variant.
+	 */
+	private class Chunk implements Callable<String[]>{
+		private final String chr;
+		private final int start;
+		private final int end;
+		Chunk(String chr,int start,int end){
+			this.chr=chr;
+			this.start=start;
+			this.end=end;
+		}
+		public String[] call() throws IOException{
+			List<Variant> read=IndividualStat.read_Variants(pvar, chr, start, end);
+			// Variants overlapping the start belong to the previous chunk
+			List<Variant> variants=new ArrayList<Variant>(read.size());
+			for(Variant v : read)
+				if(v.getFrom()>=start&&v.getFrom()<=end)
+					variants.add(v);
+			if(variants.isEmpty())
+				return new String[0];
+			int[] vfrom=new int[variants.size()];
+			int[] vto=new int[variants.size()];
+			for(int i=0;i<vfrom.length;i++){
+				vfrom[i]=variants.get(i).getFrom();
+				vto[i]=variants.get(i).getTo();
+			}
+			IntervalJoin join=new IntervalJoin(vfrom, vto);
+			List<List<String>> effects=new ArrayList<List<String>>(variants.size());
+			for(int i=0;i<variants.size();i++)
+				effects.add(new ArrayList<String>(2));
+			FastaReader fr=reader();
+			Document doc=XmlWriter.init(Consts.DATA_ROOT);
+			List<Region> ctrl=null;
+			if(fanno!=null)
+				ctrl=new GRFReader(fanno.get_Path(chr)).read_grf2regions(chr, start, end);
+			for(int k=0;k<annos.length;k++){
+				Element elements=new BasicAnnosReader(annos[k].get_Path(chr)).write_ba2elements(doc, annos[k].get_ID(), chr, start, end, 0.5);
+				if(elements==null||elements.getChildNodes().getLength()==0)
+					continue;
+				Element dealt=new VariantAnalysis(doc, fr, annos[k].get_Path(chr), elements, ctrl, variants, chr).easydeal();
+				collect(dealt, annos[k].get_ID(), variants, join, effects);
+			}
+			String[] lines=new String[variants.size()];
+			for(int i=0;i<lines.length;i++)
+				lines[i]=format.equals(FORMAT_VCF)?vcf_line(fr, chr, variants.get(i), effects.get(i)):tsv_line(chr, variants.get(i), effects.get(i));
+			return lines;
+		}
+	}
+	/*
+	 * Give each variant the effects written under the SubElements of the dealt
+	 * Elements. A written variant covers the codons it changes, so it is matched
+	 * to the variants of the same id and type overlapping them.
+	 */
+	static void collect(Element dealt,String track,List<Variant> variants,IntervalJoin join,List<List<String>> effects){
+		NodeList eles=dealt.getChildNodes();
+		for(int i=0;i<eles.getLength();i++){
+			Element ele=(Element) eles.item(i);
+			String symbol=ele.getAttribute(Consts.XML_TAG_SYMBOL);
+			String id=ele.getAttribute(Consts.XML_TAG_ID);
+			NodeList subs=ele.getElementsByTagName(Consts.XML_TAG_SUBELEMENT);
+			for(int j=0;j<subs.getLength();j++){
+				Element sub=(Element) subs.item(j);
+				String region=sub.getAttribute(Consts.XML_TAG_TYPE);
+				for(Node n=sub.getFirstChild();n!=null;n=n.getNextSibling()){
+					if(!n.getNodeName().equals(Consts.XML_TAG_VARIANT))
+						continue;
+					Element v=(Element) n;
+					String vid=v.getAttribute(Consts.XML_TAG_ID);
+					String vtype=v.getAttribute(Consts.XML_TAG_TYPE);
+					String[] froms=text(v, Consts.XML_TAG_FROM).split(";");
+					String[] tos=text(v, Consts.XML_TAG_TO).split(";");
+					String letter=text(v, Consts.XML_TAG_LETTER);
+					String effect=track+"|"+value(symbol)+"|"+value(id)+"|"+region+"|"+value(letter);
+					for(int k=0;k<froms.length;k++){
+						int[] hits=join.overlapping(Integer.parseInt(froms[k]), Integer.parseInt(tos[k]));
+						for(int hit : hits){
+							Variant var=variants.get(hit);
+							List<String> list=effects.get(hit);
+							if(vid.equals(var.getId())&&vtype.equals(var.getType())&&!list.contains(effect))
+								list.add(effect);
+						}
+					}
+				}
+			}
+		}
+	}
+	private static String text(Element ele,String tag){
+		NodeList nodes=ele.getElementsByTagName(tag);
+		return nodes.getLength()>0?nodes.item(0).getTextContent():null;
+	}
+	private static String value(String s){
+		return s==null||s.isEmpty()?NONE:s;
+	}
+	private static String join(List<String> effects,String separator){
+		if(effects.isEmpty())
+			return NONE;
+		StringBuilder sb=new StringBuilder();
+		for(int i=0;i<effects.size();i++){
+			if(i>0)
+				sb.append(separator);
+			sb.append(effects.get(i));
+		}
+		return sb.toString();
+	}
+	static String tsv_header(){
+		return "#CHROM\tFROM\tTO\tID\tTYPE\tLETTER\tEFFECTS(track|symbol|transcript|subelement|letter)\n";
+	}
+	static String tsv_line(String chr,Variant v,List<String> effects){
+		return chr+"\t"+v.getFrom()+"\t"+v.getTo()+"\t"+value(v.getId())+"\t"+v.getType()+"\t"+value(v.getLetter())+"\t"+join(effects, ",")+"\n";
+	}
+	static void write_vcf_header(Writer out,String[] names,FastaReader fr) throws IOException{
+		out.write("##fileformat=VCFv4.1\n");
+		out.write("##source=gbhit BatchAnnotator\n");
+		for(int i=0;i<names.length;i++)
+			out.write("##contig=<ID="+names[i]+",length="+fr.getChromosomeLength(names[i])+">\n");
+		out.write("##INFO=<ID=END,Number=1,Type=Integer,Description=\"End position of the variant\">\n");
+		out.write("##INFO=<ID=SVTYPE,Number=1,Type=String,Description=\"Type of the variant\">\n");
+		out.write("##INFO=<ID="+INFO_TAG+",Number=.,Type=String,Description=\"Effects of the variant: track|symbol|transcript|subelement|letter\">\n");
+		out.write("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n");
+	}
+	/*
+	 * A sites line of v. Deletions are written with the base before them, as VCF
+	 * wants; variants without a sequence as symbolic alleles.
+	 */
+	static String vcf_line(FastaReader fr,String chr,Variant v,List<String> effects) throws IOException{
+		int pos=v.getFrom();
+		String ref,alt;
+		String info="";
+		String letter=v.getLetter()==null?"":v.getLetter();
+		String type=v.getType();
+		if(type.equals(Consts.VARIANT_TYPE_SNV)&&letter.length()>0){
+			ref=fr.extract_seq(chr, pos, v.getTo());
+			alt=letter;
+		}
+		else if(type.equals(Consts.VARIANT_TYPE_INSERTION)&&letter.length()>0){
+			ref=String.valueOf(fr.extract_char(chr, pos));
+			alt=ref+letter;
+		}
+		else if(type.equals(Consts.VARIANT_TYPE_DELETION)&&pos>1){
+			pos--;
+			ref=fr.extract_seq(chr, pos, v.getTo());
+			alt=ref.substring(0, 1);
+		}
+		else{
+			ref=String.valueOf(fr.extract_char(chr, pos));
+			alt="<"+type+">";
+			info="END="+v.getTo()+";SVTYPE="+type+";";
+		}
+		return chr+"\t"+pos+"\t"+value(v.getId())+"\t"+ref+"\t"+alt+"\t.\t.\t"+info+INFO_TAG+"="+join(effects, ",")+"\n";
+	}
+	public static void main(String[] args){
+		String assembly=Consts.CURRENT_ASSEMBLY;
+		String track=null,sample=null,out=null,stat=null;
+		boolean nostat=false;
+		List<String[]> knobs=new ArrayList<String[]>();
+		BatchAnnotator ba=null;
+		try{
+			for(int i=0;i<args.length;i++){
+				if(args[i].equals("-assembly"))
+					assembly=args[++i];
+				else if(args[i].equals("-sample"))
+					sample=args[++i];
+				else if(args[i].equals("-out"))
+					out=args[++i];
+				else if(args[i].equals("-stat"))
+					stat=args[++i];
+				else if(args[i].equals("-no-stat"))
+					nostat=true;
+				else if(args[i].startsWith("-"))
+					knobs.add(new String[]{args[i],args[++i]});
+				else
+					track=args[i];
+			}
+			if(track==null)
+				throw new IllegalArgumentException("No variant track");
+			ba=new BatchAnnotator(assembly, track, sample);
+			for(String[] knob : knobs){
+				if(knob[0].equals("-anno"))
+					ba.annos(knob[1].split(","));
+				else if(knob[0].equals("-fanno"))
+					ba.fanno(knob[1]);
+				else if(knob[0].equals("-chr"))
+					ba.chromosomes(knob[1].split(","));
+				else if(knob[0].equals("-threads"))
+					ba.threads(Integer.parseInt(knob[1]));
+				else if(knob[0].equals("-chunk"))
+					ba.chunk(Integer.parseInt(knob[1]));
+				else if(knob[0].equals("-format"))
+					ba.format(knob[1]);
+				else
+					throw new IllegalArgumentException("Unknown option "+knob[0]);
+			}
+			if(!nostat&&stat==null){
+				stat=ba.stat_Path();
+				if(stat==null)
+					throw new IllegalArgumentException("The track is not a local file, give -stat FILE or -no-stat");
+			}
+		}catch(RuntimeException e){
+			System.err.println(e.getMessage());
+			System.err.println("usage: java -Dgbhit.config=<configure> filereaders.BatchAnnotator [-assembly ID] [-sample NAME]"
+					+" [-anno TRACK[,TRACK]] [-fanno TRACK] [-chr CHR[,CHR]] [-threads N] [-chunk BASES]"
+					+" [-format tsv|vcf] [-out FILE] [-stat FILE | -no-stat] TRACK");
+			System.exit(1);
+		}
+		try{
+			Writer w=new BufferedWriter(new OutputStreamWriter(out==null?System.out:new FileOutputStream(out), Consts.DEFAULT_ENCODE), 1<<16);
+			if(ba.format.equals(FORMAT_TSV))
+				w.write(tsv_header());
+			long n=ba.run(w, nostat?null:new File(stat));
+			w.close();
+			System.err.println(n+" variants annotated"+(nostat?"":", scores written to "+stat));
+		}catch(IOException e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -80,8 +80,12 @@ class BedReaderTabix{
 
 		return Elements;
 	}
+	/*
+	 * Elements of the window, or its Values once density is dense (null for every
+	 * feature), in the rows of packing (null to leave them to the client).
+	 */
 	Element write_bed2elements(Document doc, String track, String chr,
-			long regionstart, long regionend, double bpp) {
+			long regionstart, long regionend, double bpp, Density density, Packing packing) {
 		Element Elements = doc.createElement(Consts.XML_TAG_ELEMENTS);
 		Elements.setAttribute(Consts.XML_TAG_ID, track);
 		// node
@@ -94,8 +98,13 @@ class BedReaderTabix{
 					+ "-" + regionend);
 			StringSplit split = new StringSplit('\t');
 			while (Query!=null&&(line = Query.next()) != null) {
-				Ele = doc.createElement(Consts.XML_TAG_ELEMENT);
 				split.split(line);
+				long from = Long.parseLong(split.getResultByIndex(1)) + 1, to = Long.parseLong(split.getResultByIndex(2));
+				if (density != null && density.add(from, to))
+					continue;
+				Ele = doc.createElement(Consts.XML_TAG_ELEMENT);
+				if (packing != null && !packing.place(Ele, from, to))
+					continue;
 				append2Element(doc, regionstart, regionend, bpp, Ele, new Bed(
 						split.getResult(), split.getResultNum()));
 				Elements.appendChild(Ele);
@@ -111,6 +120,10 @@ class BedReaderTabix{
 			}
 		}
 
+		if (density != null && density.dense())
+			return density.write(doc, track, Elements);
+		if (packing != null)
+			packing.write(doc, Elements);
 		doc.getElementsByTagName(Consts.DATA_ROOT).item(0).appendChild(Elements);
 		return Elements;
 	}
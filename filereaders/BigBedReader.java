@@ -9,11 +9,15 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.util.HashSet;
+import java.util.List;
 
 import org.broad.igv.bbfile.BBFileHeader;
 import org.broad.igv.bbfile.BBFileReader;
+import org.broad.igv.bbfile.BBZoomLevelHeader;
 import org.broad.igv.bbfile.BedFeature;
 import org.broad.igv.bbfile.BigBedIterator;
+import org.broad.igv.bbfile.ZoomDataRecord;
+import org.broad.igv.bbfile.ZoomLevelIterator;
 import org.broad.tribble.util.SeekableStream;
 import org.broad.tribble.util.SeekableStreamFactory;
 
@@ -119,8 +123,14 @@ public class BigBedReader implements Consts {
 			
 		return Elements;
 	}
+	/**
+	 * Elements of the window, or its Values once density is dense (null for every
+	 * feature). A dense window is counted from the widest zoom level of bins at most as
+	 * wide as those of density, if the file has one. Features are in the rows of packing
+	 * (null to leave them to the client).
+	 */
 	Element write_bed2elements(Document doc, String track, String chr,
-			long regionstart, long regionend, double bpp) {
+			long regionstart, long regionend, double bpp, Density density, Packing packing) {
 		Element Elements = doc.createElement(XML_TAG_ELEMENTS);
 		Elements.setAttribute(XML_TAG_ID, track);
 		doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(Elements); // Elements
@@ -149,6 +159,21 @@ public class BigBedReader implements Consts {
 		// loop over iterator
 		while (iter.hasNext()) {
 			f = iter.next();
+			if (density != null && density.add(f.getStartBase() + 1, f.getEndBase())) {
+				int zoomLevel = getZoomLevel(density.bin_Bases());
+				if (zoomLevel == 0)
+					continue;
+				density.clear();
+				ZoomLevelIterator zoom = reader.getZoomLevelIterator(zoomLevel, chr, (int) regionstart - 1, chr, (int) regionend, false);
+				while (zoom.hasNext()) {
+					ZoomDataRecord z = zoom.next();
+					density.cover(z.getChromStart() + 1, z.getChromEnd(), z.getSumData());
+				}
+				break;
+			}
+			Ele = doc.createElement(XML_TAG_ELEMENT);
+			if (packing != null && !packing.place(Ele, f.getStartBase() + 1, f.getEndBase()))
+				continue;
 			fields = 0;
 			temp[fields++] = f.getChromosome();
 			temp[fields++] = f.getStartBase() + "";
@@ -156,7 +181,6 @@ public class BigBedReader implements Consts {
 			for (String str : f.getRestOfFields()) {
 				temp[fields++] = str;
 			}
-			Ele = doc.createElement(XML_TAG_ELEMENT);
 			append2Element(doc, regionstart, regionend, bpp, Ele, new Bed(temp,
 					fields));
 			Elements.appendChild(Ele);
@@ -164,8 +188,23 @@ public class BigBedReader implements Consts {
 
 		close();
 		
+		if (density != null && density.dense())
+			return density.write(doc, track, Elements);
+		if (packing != null)
+			packing.write(doc, Elements);
 		return Elements;
 	}
+
+	/**
+	 * The 1-based zoom level of the widest reduction up to bases, 0 if there is none.
+	 */
+	private int getZoomLevel(double bases) {
+		List<BBZoomLevelHeader> zoomLevelHeaders = reader.getZoomLevels().getZoomLevelHeaders();
+		int level = 0;
+		while (level < zoomLevelHeaders.size() && zoomLevelHeaders.get(level).getReductionLevel() <= bases)
+			level++;
+		return level;
+	}
 	
 	private void open() throws IOException {
 		// open big file
@@ -0,0 +1,58 @@
+package filereaders;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Generations of the views of a session. Each update or refresh of an Instance starts a
+ * new generation (supersede) and waits for the view being written to give up; the
+ * thread writing a view checks at its checkpoints (check: tabix and BAM iterators,
+ * variant analysis, between tracks) that no newer view was asked for, and stops with
+ * Cancelled if one was. So dragging the view costs the reads of the last position only.
+ *
+ * A thread is bound to the generation it writes by enter and leave. Threads bound to
+ * none (Precompute, BatchAnnotator) are never cancelled.
+ */
+public class Cancellation {
+	public static class Cancelled extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		Cancelled(){
+			super("Superseded by a newer view");
+		}
+	}
+	private static final class Token{
+		final Cancellation views;
+		final int generation;
+		Token(Cancellation views,int generation){
+			this.views=views;
+			this.generation=generation;
+		}
+	}
+	private static final ThreadLocal<Token> current=new ThreadLocal<Token>();
+
+	private final AtomicInteger generation=new AtomicInteger();
+
+	/*
+	 * Start a new generation, cancelling the older ones.
+	 */
+	int supersede(){
+		return generation.incrementAndGet();
+	}
+	/*
+	 * Bind this thread to generation g, throwing Cancelled if it is already superseded.
+	 */
+	void enter(int g){
+		current.set(new Token(this,g));
+		check();
+	}
+	void leave(){
+		current.remove();
+	}
+	/*
+	 * Throw Cancelled if the generation of this thread is superseded.
+	 */
+	public static void check(){
+		Token t=current.get();
+		if(t!=null&&t.generation!=t.views.generation.get())
+			throw new Cancelled();
+	}
+}
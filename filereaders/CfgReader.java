@@ -1,7 +1,12 @@
 package filereaders;
 
 import java.io.File;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.w3c.dom.*;
 
@@ -9,219 +14,229 @@ import org.w3c.dom.*;
  * Reading Configure file.
  * This class is extracted from XmlReader class for individual structure of configure file.
  * But many functions are deeply coupling with XmlReader.
+ *
+ * The configure file is parsed once and compiled into an immutable Registry,
+ * indexed by assembly id and annotation id. Servlet threads only read the volatile
+ * registry reference, so lookups neither walk the DOM nor take a lock.
+ * When config.xml is modified, the next lookup after RELOAD_CHECK_INTERVAL compiles
+ * a new Registry and swaps it in as a whole; a broken file keeps the old one.
+ * At startup the registry is taken from the StartupSnapshot when it was written
+ * against the same config.xml.
  */
 
 class CfgReader{
-	static Document doc;
-	static String[] Assemblies;
+	static final long RELOAD_CHECK_INTERVAL=5000;
+	/*
+	 * The webapp's config.xml, unless -Dgbhit.config names another one (tools, benchmarks).
+	 */
+	static final String CONFIG=StartupSnapshot.location("gbhit.config",Consts.CONFIGURE);
+	private static volatile Registry registry;
+	private static final AtomicLong lastCheck=new AtomicLong(0);
 	static{
-		doc=new XmlReader(Consts.CONFIGURE).getDoc();
-		assem_list();
+		long modified=config_modified();
+		Registry snapshot=StartupSnapshot.registry(modified);
+		registry=snapshot!=null?snapshot:compile(new XmlReader(CONFIG).getDoc(),modified);
+		lastCheck.set(System.currentTimeMillis());
 	}
 	CfgReader(File cfg){
-		
+
 	}
-	static void assem_list(){
-		NodeList assemlist = doc.getElementsByTagName(Consts.XML_TAG_ASSEMBLY);
-		Assemblies=new String[assemlist.getLength()];
-		for(int i=0;i<assemlist.getLength();i++){
-			Assemblies[i]=assemlist.item(i).getAttributes().item(0).getTextContent();
+
+	/*
+	 * One <Anno> entry of the configure file. Annotations is mutable (mode, parameters),
+	 * so every caller gets its own copy from toAnnotations().
+	 */
+	static final class AnnoCfg{
+		final String id;
+		final String group;
+		final String format;
+		final String mode;
+		final String path;
+		final String[][] paths;
+		AnnoCfg(String id,String group,String format,String mode,String path,String[][] paths){
+			this.id=id;
+			this.group=group;
+			this.format=format;
+			this.mode=mode;
+			this.path=path;
+			this.paths=paths;
+		}
+		Annotations toAnnotations(){
+			if(paths==null)
+				return new Annotations(id,path,format,mode,group);
+			String[][] paths_copy=new String[paths.length][];
+			for(int i=0;i<paths.length;i++)
+				paths_copy[i]=new String[]{paths[i][0],paths[i][1]};
+			return new Annotations(id,paths_copy,format,mode,group);
 		}
 	}
-	static String[] getAssemblies(){
-		return Assemblies;
+
+	static final class AssemblyCfg{
+		final String id;
+		final AnnoCfg ref;
+		final AnnoCfg genes;
+		final AnnoCfg cyto;
+		final AnnoCfg snp;
+		/*
+		 * All non-Basic annotations, in configure file order.
+		 */
+		final AnnoCfg[] annos;
+		final Map<String,AnnoCfg> annos_byid;
+		AssemblyCfg(String id,AnnoCfg ref,AnnoCfg genes,AnnoCfg cyto,AnnoCfg snp,AnnoCfg[] annos){
+			this.id=id;
+			this.ref=ref;
+			this.genes=genes;
+			this.cyto=cyto;
+			this.snp=snp;
+			this.annos=annos;
+			HashMap<String,AnnoCfg> byid=new HashMap<String,AnnoCfg>(annos.length*2);
+			for(int i=0;i<annos.length;i++)
+				byid.put(annos[i].id, annos[i]);
+			this.annos_byid=Collections.unmodifiableMap(byid);
+		}
 	}
-	public static Annotations getBasicRef(String assemblyid){
+
+	static final class Registry{
+		final String[] assemblies;
+		final Map<String,AssemblyCfg> assemblies_byid;
+		final long modified;
+		Registry(String[] assemblies,Map<String,AssemblyCfg> assemblies_byid,long modified){
+			this.assemblies=assemblies;
+			this.assemblies_byid=Collections.unmodifiableMap(assemblies_byid);
+			this.modified=modified;
+		}
+	}
+
+	static Registry compile(Document doc,long modified){
 		NodeList assemlist = doc.getElementsByTagName(Consts.XML_TAG_ASSEMBLY);
-		int id=0;
-		while(id<assemlist.getLength()){
-			if (assemlist.item(id).getAttributes().getNamedItem(Consts.XML_TAG_ID).getTextContent().equals(assemblyid))
-				break;
-			id++;
+		String[] assemblies=new String[assemlist.getLength()];
+		HashMap<String,AssemblyCfg> byid=new HashMap<String,AssemblyCfg>(assemlist.getLength()*2);
+		for(int i=0;i<assemlist.getLength();i++){
+			Element assembly=(Element)assemlist.item(i);
+			assemblies[i]=assembly.getAttribute(Consts.XML_TAG_ID);
+			AnnoCfg ref=null,genes=null,cyto=null,snp=null;
+			ArrayList<AnnoCfg> annoarray=new ArrayList<AnnoCfg>();
+			NodeList annolist=assembly.getElementsByTagName(Consts.XML_TAG_ANNOTATION);
+			for(int j=0;j<annolist.getLength();j++){
+				AnnoCfg anno=compile_anno((Element)annolist.item(j));
+				if(anno==null)
+					continue;
+				if(!anno.group.equals(Consts.GROUP_CLASS_BASIC))
+					annoarray.add(anno);
+				else if(anno.format.equals(Consts.FORMAT_REF)&&ref==null)
+					ref=anno;
+				else if(anno.format.equals(Consts.FORMAT_HGNC)&&genes==null)
+					genes=anno;
+				else if(anno.format.equals(Consts.FORMAT_CYTO)&&cyto==null)
+					cyto=anno;
+				else if(anno.format.equals(Consts.FORMAT_SNP)&&snp==null)
+					snp=anno;
+			}
+			AnnoCfg[] annos=new AnnoCfg[annoarray.size()];
+			annoarray.toArray(annos);
+			byid.put(assemblies[i], new AssemblyCfg(assemblies[i],ref,genes,cyto,snp,annos));
 		}
-		if(assemlist == null)
-			return null;
-		Element assembly=(Element)assemlist.item(id);
-		NodeList annolist=assembly.getElementsByTagName(Consts.XML_TAG_ANNOTATION);
-		for(int i=0;i<annolist.getLength();i++){
-			Element anno=(Element)annolist.item(i);
-			String group=anno.getAttributes().getNamedItem(Consts.XML_TAG_GROUP).getTextContent();
-			String format=anno.getElementsByTagName(Consts.XML_TAG_FORMAT).item(0).getTextContent();
-			if(format.equals(Consts.FORMAT_REF)&&group.equals(Consts.GROUP_CLASS_BASIC)){
-				String name=anno.getAttributes().getNamedItem(Consts.XML_TAG_ID).getTextContent();
-				String mode=anno.getElementsByTagName(Consts.XML_TAG_DEFAULT).item(0).getTextContent();
-				NodeList pathlist=anno.getElementsByTagName(Consts.XML_TAG_PATH);
-				if(pathlist.getLength() == 1){
-					String path=pathlist.item(0).getTextContent();
-					return new Annotations(name,path,format,mode,group);
-				}
-				else if(pathlist.getLength() > 1){
-					String[][] paths=new String[pathlist.getLength()][2];
-					for(int j=0;j<pathlist.getLength();j++){
-						paths[j][0]=pathlist.item(j).getAttributes().getNamedItem(Consts.XML_TAG_KEY).getTextContent();
-						paths[j][1]=pathlist.item(j).getTextContent();
-					}
-					return new Annotations(name,paths,format,mode,group);
-				}
+		return new Registry(assemblies,byid,modified);
+	}
+
+	/*
+	 * Return null for an entry without any Path, the DOM scans skipped such entries too.
+	 */
+	static AnnoCfg compile_anno(Element anno){
+		String name=anno.getAttribute(Consts.XML_TAG_ID);
+		String group=anno.getAttribute(Consts.XML_TAG_GROUP);
+		String format=anno.getElementsByTagName(Consts.XML_TAG_FORMAT).item(0).getTextContent();
+		String mode=anno.getElementsByTagName(Consts.XML_TAG_DEFAULT).item(0).getTextContent();
+		NodeList pathlist=anno.getElementsByTagName(Consts.XML_TAG_PATH);
+		if(pathlist.getLength() == 1)
+			return new AnnoCfg(name,group,format,mode,pathlist.item(0).getTextContent(),null);
+		else if(pathlist.getLength() > 1){
+			String[][] paths=new String[pathlist.getLength()][2];
+			for(int j=0;j<pathlist.getLength();j++){
+				paths[j][0]=((Element)pathlist.item(j)).getAttribute(Consts.XML_TAG_KEY);
+				paths[j][1]=pathlist.item(j).getTextContent();
 			}
-			else
-				continue;
+			return new AnnoCfg(name,group,format,mode,null,paths);
 		}
 		return null;
 	}
-	public static Annotations getBasicGenes(String assemblyid){
-		NodeList assemlist = doc.getElementsByTagName(Consts.XML_TAG_ASSEMBLY);
-		int id=0;
-		while(id<assemlist.getLength()){
-			if (assemlist.item(id).getAttributes().getNamedItem(Consts.XML_TAG_ID).getTextContent().equals(assemblyid))
-				break;
-			id++;
+
+	static long config_modified(){
+		try{
+			return new File(new URI(CONFIG)).lastModified();
+		} catch(Exception e){
+			return new File(CONFIG).lastModified();
 		}
-		if(assemlist == null)
-			return null;
-		Element assembly=(Element)assemlist.item(id);
-		NodeList annolist=assembly.getElementsByTagName(Consts.XML_TAG_ANNOTATION);
-		for(int i=0;i<annolist.getLength();i++){
-			Element anno=(Element)annolist.item(i);
-			String group=anno.getAttributes().getNamedItem(Consts.XML_TAG_GROUP).getTextContent();
-			String format=anno.getElementsByTagName(Consts.XML_TAG_FORMAT).item(0).getTextContent();
-			if(format.equals(Consts.FORMAT_HGNC)&&group.equals(Consts.GROUP_CLASS_BASIC)){
-				String name=anno.getAttributes().getNamedItem(Consts.XML_TAG_ID).getTextContent();
-				String mode=anno.getElementsByTagName(Consts.XML_TAG_DEFAULT).item(0).getTextContent();
-				NodeList pathlist=anno.getElementsByTagName(Consts.XML_TAG_PATH);
-				if(pathlist.getLength() == 1){
-					String path=pathlist.item(0).getTextContent();
-					return new Annotations(name,path,format,mode,group);
-				}
-				else if(pathlist.getLength() > 1){
-					String[][] paths=new String[pathlist.getLength()][2];
-					for(int j=0;j<pathlist.getLength();j++){
-						paths[j][0]=pathlist.item(j).getAttributes().getNamedItem(Consts.XML_TAG_KEY).getTextContent();
-						paths[j][1]=pathlist.item(j).getTextContent();
-					}
-					return new Annotations(name,paths,format,mode,group);
-				}
-			}
-			else
-				continue;
+	}
+
+	/*
+	 * Current registry. At most one caller per RELOAD_CHECK_INTERVAL stats the configure file,
+	 * the others return the published registry right away.
+	 */
+	static Registry registry(){
+		long now=System.currentTimeMillis();
+		long last=lastCheck.get();
+		if(now-last>RELOAD_CHECK_INTERVAL && lastCheck.compareAndSet(last, now)){
+			long modified=config_modified();
+			if(modified!=registry.modified)
+				reload(modified);
 		}
-		return null;
-		
+		return registry;
 	}
-	public static Annotations getBasicCyto(String assemblyid){
-		NodeList assemlist = doc.getElementsByTagName(Consts.XML_TAG_ASSEMBLY);
-		int id=0;
-		while(id<assemlist.getLength()){
-			if (assemlist.item(id).getAttributes().getNamedItem(Consts.XML_TAG_ID).getTextContent().equals(assemblyid))
-				break;
-			id++;
+	static synchronized void reload(long modified){
+		if(modified==registry.modified)
+			return;
+		try{
+			Document doc=new XmlReader(CONFIG).getDoc();
+			if(doc!=null)
+				registry=compile(doc,modified);
+		} catch(Exception e){
+			e.printStackTrace();
 		}
-		if(assemlist == null)
+	}
+	static AssemblyCfg getAssembly(String assemblyid){
+		return registry().assemblies_byid.get(assemblyid);
+	}
+	static String[] getAssemblies(){
+		return registry().assemblies.clone();
+	}
+	public static Annotations getBasicRef(String assemblyid){
+		AssemblyCfg assembly=getAssembly(assemblyid);
+		if(assembly==null||assembly.ref==null)
 			return null;
-		Element assembly=(Element)assemlist.item(id);
-		NodeList annolist=assembly.getElementsByTagName(Consts.XML_TAG_ANNOTATION);
-		for(int i=0;i<annolist.getLength();i++){
-			Element anno=(Element)annolist.item(i);
-			String group=anno.getAttributes().getNamedItem(Consts.XML_TAG_GROUP).getTextContent();
-			String format=anno.getElementsByTagName(Consts.XML_TAG_FORMAT).item(0).getTextContent();
-			if(format.equals(Consts.FORMAT_CYTO)&&group.equals(Consts.GROUP_CLASS_BASIC)){
-				String name=anno.getAttributes().getNamedItem(Consts.XML_TAG_ID).getTextContent();
-				String mode=anno.getElementsByTagName(Consts.XML_TAG_DEFAULT).item(0).getTextContent();
-				NodeList pathlist=anno.getElementsByTagName(Consts.XML_TAG_PATH);
-				if(pathlist.getLength() == 1){
-					String path=pathlist.item(0).getTextContent();
-					return new Annotations(name,path,format,mode,group);
-				}
-				else if(pathlist.getLength() > 1){
-					String[][] paths=new String[pathlist.getLength()][2];
-					for(int j=0;j<pathlist.getLength();j++){
-						paths[j][0]=pathlist.item(j).getAttributes().getNamedItem(Consts.XML_TAG_KEY).getTextContent();
-						paths[j][1]=pathlist.item(j).getTextContent();
-					}
-					return new Annotations(name,paths,format,mode,group);
-				}
-			}
-			else
-				continue;
-		}
-		return null;
+		return assembly.ref.toAnnotations();
+	}
+	public static Annotations getBasicGenes(String assemblyid){
+		AssemblyCfg assembly=getAssembly(assemblyid);
+		if(assembly==null||assembly.genes==null)
+			return null;
+		return assembly.genes.toAnnotations();
+	}
+	public static Annotations getBasicCyto(String assemblyid){
+		AssemblyCfg assembly=getAssembly(assemblyid);
+		if(assembly==null||assembly.cyto==null)
+			return null;
+		return assembly.cyto.toAnnotations();
 	}
 	public static Annotations getBasicSnp(String assemblyid){
-		NodeList assemlist = doc.getElementsByTagName(Consts.XML_TAG_ASSEMBLY);
-		int id=0;
-		while(id<assemlist.getLength()){
-			if (assemlist.item(id).getAttributes().getNamedItem(Consts.XML_TAG_ID).getTextContent().equals(assemblyid))
-				break;
-			id++;
-		}
-		if(assemlist == null)
+		AssemblyCfg assembly=getAssembly(assemblyid);
+		if(assembly==null||assembly.snp==null)
 			return null;
-		Element assembly=(Element)assemlist.item(id);
-		NodeList annolist=assembly.getElementsByTagName(Consts.XML_TAG_ANNOTATION);
-		for(int i=0;i<annolist.getLength();i++){
-			Element anno=(Element)annolist.item(i);
-			String group=anno.getAttributes().getNamedItem(Consts.XML_TAG_GROUP).getTextContent();
-			String format=anno.getElementsByTagName(Consts.XML_TAG_FORMAT).item(0).getTextContent();
-			if(format.equals(Consts.FORMAT_SNP)&&group.equals(Consts.GROUP_CLASS_BASIC)){
-				String name=anno.getAttributes().getNamedItem(Consts.XML_TAG_ID).getTextContent();
-				String mode=anno.getElementsByTagName(Consts.XML_TAG_DEFAULT).item(0).getTextContent();
-				NodeList pathlist=anno.getElementsByTagName(Consts.XML_TAG_PATH);
-				if(pathlist.getLength() == 1){
-					String path=pathlist.item(0).getTextContent();
-					return new Annotations(name,path,format,mode,group);
-				}
-				else if(pathlist.getLength() > 1){
-					String[][] paths=new String[pathlist.getLength()][2];
-					for(int j=0;j<pathlist.getLength();j++){
-						paths[j][0]=pathlist.item(j).getAttributes().getNamedItem(Consts.XML_TAG_KEY).getTextContent();
-						paths[j][1]=pathlist.item(j).getTextContent();
-					}
-					return new Annotations(name,paths,format,mode,group);
-				}
-			}
-			else
-				continue;
-		}
-		return null;
+		return assembly.snp.toAnnotations();
+	}
+	static Annotations getAnnotation(String assemblyid,String annoid){
+		AssemblyCfg assembly=getAssembly(assemblyid);
+		if(assembly==null||!assembly.annos_byid.containsKey(annoid))
+			return null;
+		return assembly.annos_byid.get(annoid).toAnnotations();
 	}
 	static Annotations[] getAnnotations(String assemblyid){
-		NodeList assemlist = doc.getElementsByTagName(Consts.XML_TAG_ASSEMBLY);
-		int id=0;
-		while(id<assemlist.getLength()){
-			if (assemlist.item(id).getAttributes().getNamedItem(Consts.XML_TAG_ID).getTextContent().equals(assemblyid))
-				break;
-			id++;
-		}
-		if(assemlist == null)
+		AssemblyCfg assembly=getAssembly(assemblyid);
+		if(assembly==null)
 			return null;
-		Element assembly=(Element)assemlist.item(id);
-		NodeList annolist=assembly.getElementsByTagName(Consts.XML_TAG_ANNOTATION);
-		ArrayList<Annotations> annoarray=new ArrayList<Annotations>();
-		
-		for(int i=0;i<annolist.getLength();i++){
-			Element anno=(Element)annolist.item(i);
-			String group=anno.getAttributes().getNamedItem(Consts.XML_TAG_GROUP).getTextContent();
-			if(group.equals(Consts.GROUP_CLASS_BASIC))
-				continue;
-			String name=anno.getAttributes().getNamedItem(Consts.XML_TAG_ID).getTextContent();
-			String format=anno.getElementsByTagName(Consts.XML_TAG_FORMAT).item(0).getTextContent();
-			String mode=anno.getElementsByTagName(Consts.XML_TAG_DEFAULT).item(0).getTextContent();
-			NodeList pathlist=anno.getElementsByTagName(Consts.XML_TAG_PATH);
-			if(pathlist.getLength() == 1){
-				String path=pathlist.item(0).getTextContent();
-				annoarray.add(new Annotations(name,path,format,mode,group));
-			}
-			else if(pathlist.getLength() > 1){
-				String[][] paths=new String[pathlist.getLength()][2];
-				for(int j=0;j<pathlist.getLength();j++){
-					paths[j][0]=pathlist.item(j).getAttributes().getNamedItem(Consts.XML_TAG_KEY).getTextContent();
-					paths[j][1]=pathlist.item(j).getTextContent();
-				}
-				annoarray.add(new Annotations(name,paths,format,mode,group));
-			}
-		}
-		Annotations[] Annos=new Annotations[annoarray.size()];
-		annoarray.toArray(Annos);
+		Annotations[] Annos=new Annotations[assembly.annos.length];
+		for(int i=0;i<Annos.length;i++)
+			Annos[i]=assembly.annos[i].toAnnotations();
 		return Annos;
 	}
 	static Element write_metalist(Document doc,String[] metalist,String metatype){
@@ -235,4 +250,4 @@ class CfgReader{
 		}
 		return XmlWriter.append_text_element(doc,doc.getElementsByTagName(Consts.META_ROOT).item(0),metatype,temp.toString());
 	}
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package filereaders;
 
 public interface Consts{
 	public static final String CONFIGURE=Consts.class.getResource("/")+"../../"+"config.xml";
+	public static final String SNAPSHOT=Consts.class.getResource("/")+"../../"+"startup.snapshot";
 //	public static final String GENE_DATA="/home/ljuan/gbdata/hg19/hgnc.hg19.sorted.txt";
 //	public static final String DBSNP_DATA="/home/ljuan/gbdata/hg19/dbsnp135.hg19.vcf.bgz";
 //	public static final String REFERNCE_DATA="/home/ljuan/gbdata/hg19/hg19.fa";
@@ -78,6 +79,8 @@ public interface Consts{
 	public static final String XML_TAG_START="Start";
 	public static final String XML_TAG_END="End";
 	public static final String XML_TAG_LENGTH="Length";
+	public static final String XML_TAG_VIEW="View";
+	public static final String XML_TAG_DELTA="Delta";
 	public static final String XML_TAG_SEQUENCE="Sequence";
 	public static final String XML_TAG_ERROR="Error";
 	
@@ -125,6 +128,8 @@ public interface Consts{
 	
 	public static final String XML_TAG_READS="Rs";
 	public static final String XML_TAG_READ="R";
+	public static final String XML_TAG_ROW="r";
+	public static final String XML_TAG_OVERFLOW="Overflow";
 	
 	public static final String XML_TAG_GENES="Genes";
 	public static final String XML_TAG_GENE="Gene";
@@ -1,7 +1,10 @@
 package filereaders;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -9,13 +12,131 @@ import org.w3c.dom.Element;
 
 public class CytobandReader {
 	String[] cytobands;
+	Index index;
 	String cytoPath;
 
+	private static final ConcurrentHashMap<String, Lines> cache = new ConcurrentHashMap<String, Lines>();
+
+	/*
+	 * Split lines of one cytoband file, shared by all readers of that file
+	 * until it changes on disk. Callers must not modify the array.
+	 */
+	static final class Lines {
+		final String[] cytobands;
+		final Index index;
+		final long length;
+		final long modified;
+		Lines(String[] cytobands, long length, long modified) {
+			this.cytobands = cytobands;
+			this.index = new Index(cytobands);
+			this.length = length;
+			this.modified = modified;
+		}
+	}
+
+	/*
+	 * The bands of each chromosome of the lines, already split and parsed, with
+	 * From and To as written to XML. Names and stains are interned, there are few
+	 * of them. Immutable once built.
+	 */
+	static final class Index {
+		private final HashMap<String, Bands> chromosomes = new HashMap<String, Bands>();
+
+		static final class Bands {
+			final int[] line;// index in the lines, as IndividualStat numbers the cytobands
+			final int[] from;// 1-based
+			final int[] to;
+			final String[] names;
+			final String[] stains;
+			final String[] from_text;
+			final String[] to_text;
+			Bands(List<String[]> bands, List<Integer> lines) {
+				int n = bands.size();
+				line = new int[n];
+				from = new int[n];
+				to = new int[n];
+				names = new String[n];
+				stains = new String[n];
+				from_text = new String[n];
+				to_text = new String[n];
+				for (int i = 0; i < n; i++) {
+					String[] band = bands.get(i);
+					line[i] = lines.get(i);
+					from[i] = Integer.parseInt(band[1]) + 1;
+					to[i] = Integer.parseInt(band[2]);
+					names[i] = band[3].intern();
+					stains[i] = band[4].intern();
+					from_text[i] = String.valueOf(from[i]);
+					to_text[i] = String.valueOf(to[i]);
+				}
+			}
+			int size() {
+				return line.length;
+			}
+		}
+
+		Index(String[] cytobands) {
+			HashMap<String, List<String[]>> bands = new HashMap<String, List<String[]>>();
+			HashMap<String, List<Integer>> lines = new HashMap<String, List<Integer>>();
+			for (int i = 0; i < cytobands.length; i++) {
+				String[] band = cytobands[i].split("\t");
+				if (band.length < 5 || !number(band[1]) || !number(band[2]))
+					continue;
+				if (!bands.containsKey(band[0])) {
+					bands.put(band[0], new ArrayList<String[]>());
+					lines.put(band[0], new ArrayList<Integer>());
+				}
+				bands.get(band[0]).add(band);
+				lines.get(band[0]).add(i);
+			}
+			for (String chr : bands.keySet())
+				chromosomes.put(chr, new Bands(bands.get(chr), lines.get(chr)));
+		}
+
+		private static boolean number(String s) {
+			try {
+				Integer.parseInt(s);
+				return true;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		/*
+		 * The bands of chr in file order, or null if it has none.
+		 */
+		Bands get(String chr) {
+			return chromosomes.get(chr);
+		}
+	}
+
 	public CytobandReader(String cyto) {
+		Lines lines = lines(cyto);
+		cytobands = lines.cytobands;
+		index = lines.index;
+	}
+
+	static Lines lines(String cyto) {
+		File cyto_file = new File(cyto);
+		long length = cyto_file.length();
+		long modified = cyto_file.lastModified();
+		Lines lines = cache.get(cyto);
+		if (lines != null && lines.length == length && lines.modified == modified)
+			return lines;
+		lines = StartupSnapshot.cytobands(cyto);
+		if (lines == null)
+			lines = derive(cyto);
+		cache.put(cyto, lines);
+		return lines;
+	}
+
+	static Lines derive(String cyto) {
 		File cyto_file = new File(cyto);
-		ByteBufferChannel bbc = new ByteBufferChannel(cyto_file, 0,	cyto_file.length());
+		long length = cyto_file.length();
+		long modified = cyto_file.lastModified();
+		ByteBufferChannel bbc = new ByteBufferChannel(cyto_file, 0, length);
 		String temp = bbc.ToString(Consts.DEFAULT_ENCODE);
-		cytobands = temp.split("\n");
+		return new Lines(temp.split("\n"), length, modified);
 	}
 
 	public Element write_cytobands(Document doc, String chr){
@@ -23,31 +144,24 @@ public class CytobandReader {
 	}
 	public Element write_cytobands(Document doc, String chr, IndividualStat is){
 		Element Cytobands = doc.createElement(Consts.XML_TAG_CYTOBANDS);
-		for (int i = 0; i < cytobands.length; i++) 
-			if(cytobands[i].startsWith(chr+"\t")){
-				String[] cytoband_temp=cytobands[i].split("\t");
-				Element Cytoband = doc.createElement(Consts.XML_TAG_CYTOBAND);
-				Cytoband.setAttribute(Consts.XML_TAG_ID, cytoband_temp[3]);
-				Cytoband.setAttribute(Consts.XML_TAG_GIESTAIN, cytoband_temp[4]);
-				XmlWriter.append_text_element(doc, Cytoband, Consts.XML_TAG_FROM, String.valueOf(Long.parseLong(cytoband_temp[1])+1));
-				XmlWriter.append_text_element(doc, Cytoband, Consts.XML_TAG_TO, String.valueOf(Long.parseLong(cytoband_temp[2])));
-				if(is!=null && is.get_CytoScores(i, i)[0]>=0)
-					XmlWriter.append_text_element(doc, Cytoband, Consts.XML_TAG_SCORE, String.valueOf(Math.round(is.get_CytoScores(i, i)[0]*10)/10));
-				Cytobands.appendChild(Cytoband);
-			}
+		Index.Bands bands=index.get(chr);
+		for (int b = 0; bands!=null && b < bands.size(); b++){
+			int i=bands.line[b];
+			Element Cytoband = write_band(doc, bands, b);
+			if(is!=null && is.get_CytoScores(i, i)[0]>=0)
+				XmlWriter.append_text_element(doc, Cytoband, Consts.XML_TAG_SCORE, String.valueOf(Math.round(is.get_CytoScores(i, i)[0]*10)/10));
+			Cytobands.appendChild(Cytoband);
+		}
 		doc.getElementsByTagName(Consts.DATA_ROOT).item(0).appendChild(Cytobands);
 		return Cytobands;
 	}
 	public Element write_cytoband(Document doc, String chr, String id, IndividualStat is, FastaReader ref, Annotations pvar){
 		Element Cytobands = doc.createElement(Consts.XML_TAG_CYTOBANDS);
-		for (int i = 0; i < cytobands.length; i++) 
-			if(cytobands[i].startsWith(chr+"\t")&&cytobands[i].indexOf("\t"+id+"\t")>=0){
-				String[] cytoband_temp=cytobands[i].split("\t");
-				Element Cytoband = doc.createElement(Consts.XML_TAG_CYTOBAND);
-				Cytoband.setAttribute(Consts.XML_TAG_ID, cytoband_temp[3]);
-				Cytoband.setAttribute(Consts.XML_TAG_GIESTAIN, cytoband_temp[4]);
-				XmlWriter.append_text_element(doc, Cytoband, Consts.XML_TAG_FROM, String.valueOf(Long.parseLong(cytoband_temp[1])+1));
-				XmlWriter.append_text_element(doc, Cytoband, Consts.XML_TAG_TO, String.valueOf(Long.parseLong(cytoband_temp[2])));
+		Index.Bands bands=index.get(chr);
+		for (int b = 0; bands!=null && b < bands.size(); b++)
+			if(bands.names[b].equals(id)){
+				int i=bands.line[b];
+				Element Cytoband = write_band(doc, bands, b);
 				if(is!=null&&pvar!=null){	
 					if(is.get_CytoScores(i, i)[0]<0)
 						is.fill_Cyto(chr, id, ref, pvar);
@@ -58,6 +172,14 @@ public class CytobandReader {
 		doc.getElementsByTagName(Consts.DATA_ROOT).item(0).appendChild(Cytobands);
 		return Cytobands;
 	}
+	private static Element write_band(Document doc, Index.Bands bands, int b){
+		Element Cytoband = doc.createElement(Consts.XML_TAG_CYTOBAND);
+		Cytoband.setAttribute(Consts.XML_TAG_ID, bands.names[b]);
+		Cytoband.setAttribute(Consts.XML_TAG_GIESTAIN, bands.stains[b]);
+		XmlWriter.append_text_element(doc, Cytoband, Consts.XML_TAG_FROM, bands.from_text[b]);
+		XmlWriter.append_text_element(doc, Cytoband, Consts.XML_TAG_TO, bands.to_text[b]);
+		return Cytoband;
+	}
 	public String[] getCytobands(){
 		return cytobands;
 	}
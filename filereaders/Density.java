@@ -0,0 +1,92 @@
+package filereaders;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import filereaders.bam.BAMValueList;
+
+/*
+ * Level of detail of the feature tracks (BEDGZ, ANNO, BigBed, GFF). Beyond THRESHOLD
+ * features per pixel one Element per feature is more than anyone can read, so the window
+ * is answered the way a BAM track is at middle zoom: a Values element of Type DEN, the
+ * number of features in every STEP pixels. Readers add each feature as they read it and
+ * stop building elements once the window is dense; BigBedReader then takes the rest from
+ * the zoom data of the file. Set by -Dgbhit.density.threshold, 0 leaving every feature.
+ */
+public final class Density {
+	public static final double THRESHOLD=Double.parseDouble(System.getProperty("gbhit.density.threshold","2"));
+	static final int STEP=2;
+	static final String TYPE="DEN";
+
+	private final int start,end,width;
+	private final long limit;
+	private BAMValueList values;
+	private long features=0;
+	private long bases=0;
+
+	private Density(int start,int end,int width){
+		this.start=start;
+		this.end=end;
+		this.width=width;
+		limit=(long) (THRESHOLD*width);
+		values=new BAMValueList(start, end, width, STEP);
+	}
+	/*
+	 * The density of the window start to end (1-based) at bpp, or null if it is not
+	 * summarized.
+	 */
+	static Density of(long start,long end,double bpp){
+		int width=(int) Math.round((end-start+1)/bpp);
+		if(THRESHOLD<=0||bpp<=0||width<STEP)
+			return null;
+		return new Density((int) start,(int) end,width);
+	}
+	/*
+	 * Count the feature from to to (1-based), whether the window is dense now.
+	 */
+	public boolean add(long from,long to){
+		if(to<start||from>end)
+			return dense();
+		features++;
+		bases+=to-from+1;
+		values.update((int) (Math.max(from,start)-start), (int) (Math.min(to,end)-start));
+		return dense();
+	}
+	public boolean dense(){
+		return features>limit;
+	}
+	/*
+	 * Bases of a bin of the window.
+	 */
+	double bin_Bases(){
+		return (end-start+1)/(double) (width/STEP);
+	}
+	/*
+	 * Drop the counts, for cover to start them again from summaries.
+	 */
+	void clear(){
+		values=new BAMValueList(start, end, width, STEP);
+	}
+	/*
+	 * Add the features whose bases add up to sum over from to to, at the mean length of
+	 * those added so far.
+	 */
+	void cover(long from,long to,double sum){
+		if(to<start||from>end||features==0)
+			return;
+		values.update((int) (Math.max(from,start)-start), (int) (Math.min(to,end)-start), sum*features/bases);
+	}
+	/*
+	 * Replace elements, the features read before the window turned dense, by its
+	 * Values.
+	 */
+	public Element write(Document doc,String track,Element elements){
+		if(elements!=null&&elements.getParentNode()!=null)
+			elements.getParentNode().removeChild(elements);
+		Element ele=WiggleReader.writeDataValues2XML(doc, track, start, end, STEP,
+				BAMValueList.doubleArray2IntString(values.getResults()));
+		ele.setAttribute(Consts.XML_TAG_TYPE, TYPE);
+		Metrics.count(Metrics.DENSITY_TRACKS, 1);
+		return ele;
+	}
+}
@@ -3,8 +3,10 @@ package filereaders;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -26,23 +28,73 @@ public class FastaReader {
 	Map<String, Integer> seq_name;
 	long[][] fasta_index;
 	RandomAccessFile raf = null;
+	private String path;
+	private static final ConcurrentHashMap<String, Index> indexes = new ConcurrentHashMap<String, Index>();
 
-	public FastaReader(String fasta) throws IOException{
-		String temp = "";
+	/*
+	 * Parsed .fai of one fasta file. It is shared by every session reading the same
+	 * reference, and rebuilt only when the .fai file changes on disk.
+	 */
+	static final class Index {
+		final Map<String, Integer> seq_name;
+		final long[][] fasta_index;
+		final long length;
+		final long modified;
+		Index(String[] names, long[][] fasta_index, long length, long modified) {
+			HashMap<String, Integer> map = new HashMap<String, Integer>(names.length, 1);
+			for (int i = 0; i < names.length; i++)
+				map.put(names[i], i);
+			this.seq_name = Collections.unmodifiableMap(map);
+			this.fasta_index = fasta_index;
+			this.length = length;
+			this.modified = modified;
+		}
+		String[] names() {
+			String[] names = new String[fasta_index.length];
+			for (Map.Entry<String, Integer> e : seq_name.entrySet())
+				names[e.getValue()] = e.getKey();
+			return names;
+		}
+	}
+
+	static Index index(String fasta) {
 		File idx_file = new File(fasta + ".fai");
-		ByteBufferChannel bbc = new ByteBufferChannel(idx_file, 0,
-				idx_file.length());
-		temp = bbc.ToString(Consts.DEFAULT_ENCODE);
+		long length = idx_file.length();
+		long modified = idx_file.lastModified();
+		Index index = indexes.get(fasta);
+		if (index != null && index.length == length && index.modified == modified)
+			return index;
+		index = StartupSnapshot.fai(fasta);
+		if (index == null)
+			index = derive_index(fasta);
+		indexes.put(fasta, index);
+		return index;
+	}
+
+	static Index derive_index(String fasta) {
+		File idx_file = new File(fasta + ".fai");
+		long length = idx_file.length();
+		long modified = idx_file.lastModified();
+		ByteBufferChannel bbc = new ByteBufferChannel(idx_file, 0, length);
+		String temp = bbc.ToString(Consts.DEFAULT_ENCODE);
 
 		String[] index_temp = temp.split("\n");
-		fasta_index = new long[index_temp.length][4];
-		seq_name = new HashMap<String, Integer>(index_temp.length, 1);
+		long[][] fasta_index = new long[index_temp.length][4];
+		String[] names = new String[index_temp.length];
 		for (int i = 0; i < index_temp.length; i++) {
 			String[] line_temp = index_temp[i].split("\t");
-			seq_name.put(line_temp[0], i);
+			names[i] = line_temp[0];
 			for (int j = 0; j < 4; j++)
 				fasta_index[i][j] = Long.parseLong(line_temp[j + 1]);
 		}
+		return new Index(names, fasta_index, length, modified);
+	}
+
+	public FastaReader(String fasta) throws IOException{
+		Index index = index(fasta);
+		seq_name = index.seq_name;
+		fasta_index = index.fasta_index;
+		path = fasta;
 		try{
 			raf = new RandomAccessFile(new File(fasta), "r");
 		}catch(IOException e){
@@ -50,6 +102,10 @@ public class FastaReader {
 		}
 	}
 
+	public String get_Path() {
+		return path;
+	}
+
 	/**
 	 * Extract bases fom <code>start</code> to <code>end</code>. All bases will
 	 * be expressed in capital letter.
@@ -2,6 +2,7 @@ package filereaders;
 
 public interface FullConsts{
 	public static final String CONFIGURE="/home/ljuan/gbdata/config.xml";
+	public static final String SNAPSHOT="/home/ljuan/gbdata/startup.snapshot";
 //	public static final String GENE_DATA="/home/ljuan/gbdata/hg19/hgnc.hg19.sorted.txt";
 //	public static final String DBSNP_DATA="/home/ljuan/gbdata/hg19/dbsnp135.hg19.vcf.bgz";
 //	public static final String REFERNCE_DATA="/home/ljuan/gbdata/hg19/hg19.fa";
@@ -29,59 +29,106 @@ public class Genes{
 	private static HashMap<String,Integer> ChrMap;
 	private static HashMap<String,Integer> SymbolMap;
 	private static String[] ChrList;
-	private static Integer[] ChrStarts;
-	private static Integer[] ChrEnds;
+	private static int[] ChrStarts;
+	private static int[] ChrEnds;
 	static {
-		int current_chr=-1;
-		File hgnc=new File(CfgReader.getBasicGenes(Consts.CURRENT_ASSEMBLY).get_Path());
-		ByteBufferChannel bbc=new ByteBufferChannel(hgnc,0,hgnc.length());
-		String[] temp=bbc.ToString(Consts.DEFAULT_ENCODE).split("\n");
-		ArrayList<String> ChrList_temp=new ArrayList<String>();
-		ArrayList<Integer> ChrStart_temp=new ArrayList<Integer>();
-		ArrayList<Integer> ChrEnd_temp=new ArrayList<Integer>();
-		ChrMap=new HashMap<String,Integer>();
-		SymbolMap=new HashMap<String,Integer>();
-		Symbols=new String[temp.length];
-		Symbols_sorted=new String[temp.length];
-		HGNCs=new String[temp.length];
-		Entrezs=new String[temp.length];
-		RefSeqs=new String[temp.length];
-		UCSCs=new String[temp.length];
-		Ensembls=new String[temp.length];
-		Names=new String[temp.length];
-		Chrs=new int[temp.length];
-		Starts=new int[temp.length];
-		Ends=new int[temp.length];
-		for(int i=0;i<temp.length;i++){
-			String[] line_temp=temp[i].split("\t");
-			if(!ChrMap.containsKey(line_temp[0])){
-				if(i>0)
-					ChrEnd_temp.add(i-1);
-				ChrMap.put(line_temp[0], ++current_chr);
-				ChrList_temp.add(line_temp[0]);
-				ChrStart_temp.add(i);
+		String hgnc=CfgReader.getBasicGenes(Consts.CURRENT_ASSEMBLY).get_Path();
+		Table table=StartupSnapshot.genes(hgnc);
+		if(table==null)
+			table=Table.derive(hgnc);
+		Symbols=table.Symbols;
+		Symbols_sorted=table.Symbols_sorted;
+		HGNCs=table.HGNCs;
+		Entrezs=table.Entrezs;
+		RefSeqs=table.RefSeqs;
+		UCSCs=table.UCSCs;
+		Ensembls=table.Ensembls;
+		Names=table.Names;
+		Chrs=table.Chrs;
+		Starts=table.Starts;
+		Ends=table.Ends;
+		ChrList=table.ChrList;
+		ChrStarts=table.ChrStarts;
+		ChrEnds=table.ChrEnds;
+		ChrMap=new HashMap<String,Integer>(ChrList.length*2);
+		for(int i=0;i<ChrList.length;i++)
+			ChrMap.put(ChrList[i], i);
+		SymbolMap=new HashMap<String,Integer>(Symbols.length*2);
+		for(int i=0;i<Symbols.length;i++)
+			SymbolMap.put(Symbols[i], i);
+	}
+	/*
+	 * The derived arrays of one HGNC file, as built from the text file
+	 * or restored from the startup snapshot.
+	 */
+	static final class Table{
+		String[] Symbols;
+		String[] Symbols_sorted;
+		String[] HGNCs;
+		String[] Entrezs;
+		String[] RefSeqs;
+		String[] UCSCs;
+		String[] Ensembls;
+		String[] Names;
+		int[] Chrs;
+		int[] Starts;
+		int[] Ends;
+		String[] ChrList;
+		int[] ChrStarts;
+		int[] ChrEnds;
+		static Table derive(String path){
+			int current_chr=-1;
+			File hgnc=new File(path);
+			ByteBufferChannel bbc=new ByteBufferChannel(hgnc,0,hgnc.length());
+			String[] temp=bbc.ToString(Consts.DEFAULT_ENCODE).split("\n");
+			HashMap<String,Integer> ChrMap=new HashMap<String,Integer>();
+			ArrayList<String> ChrList_temp=new ArrayList<String>();
+			ArrayList<Integer> ChrStart_temp=new ArrayList<Integer>();
+			ArrayList<Integer> ChrEnd_temp=new ArrayList<Integer>();
+			Table t=new Table();
+			t.Symbols=new String[temp.length];
+			t.HGNCs=new String[temp.length];
+			t.Entrezs=new String[temp.length];
+			t.RefSeqs=new String[temp.length];
+			t.UCSCs=new String[temp.length];
+			t.Ensembls=new String[temp.length];
+			t.Names=new String[temp.length];
+			t.Chrs=new int[temp.length];
+			t.Starts=new int[temp.length];
+			t.Ends=new int[temp.length];
+			for(int i=0;i<temp.length;i++){
+				String[] line_temp=temp[i].split("\t");
+				if(!ChrMap.containsKey(line_temp[0])){
+					if(i>0)
+						ChrEnd_temp.add(i-1);
+					ChrMap.put(line_temp[0], ++current_chr);
+					ChrList_temp.add(line_temp[0]);
+					ChrStart_temp.add(i);
+				}
+				t.Chrs[i]=current_chr;
+				t.Starts[i]=Integer.parseInt(line_temp[1]);
+				t.Ends[i]=Integer.parseInt(line_temp[2]);
+				t.Symbols[i]=line_temp[3];
+				t.RefSeqs[i]=line_temp[4];
+				t.UCSCs[i]=line_temp[5];
+				t.Ensembls[i]=line_temp[6];
+				t.Entrezs[i]=line_temp[7];
+				t.HGNCs[i]=line_temp[8];
+				t.Names[i]=line_temp[9];
+			}
+			ChrEnd_temp.add(temp.length-1);
+			t.Symbols_sorted=t.Symbols.clone();
+			Arrays.sort(t.Symbols_sorted);
+			t.ChrList=new String[ChrList_temp.size()];
+			ChrList_temp.toArray(t.ChrList);
+			t.ChrStarts=new int[t.ChrList.length];
+			t.ChrEnds=new int[t.ChrList.length];
+			for(int i=0;i<t.ChrList.length;i++){
+				t.ChrStarts[i]=ChrStart_temp.get(i);
+				t.ChrEnds[i]=ChrEnd_temp.get(i);
 			}
-			Chrs[i]=current_chr;
-			Starts[i]=Integer.parseInt(line_temp[1]);
-			Ends[i]=Integer.parseInt(line_temp[2]);
-			Symbols[i]=line_temp[3];
-			Symbols_sorted[i]=line_temp[3];
-			SymbolMap.put(line_temp[3], i);
-			RefSeqs[i]=line_temp[4];
-			UCSCs[i]=line_temp[5];
-			Ensembls[i]=line_temp[6];
-			Entrezs[i]=line_temp[7];
-			HGNCs[i]=line_temp[8];
-			Names[i]=line_temp[9];
+			return t;
 		}
-		ChrEnd_temp.add(temp.length-1);
-		Arrays.sort(Symbols_sorted);
-		ChrList=new String[ChrList_temp.size()];
-		ChrStarts=new Integer[ChrList.length];
-		ChrEnds=new Integer[ChrList.length];
-		ChrList_temp.toArray(ChrList);
-		ChrStart_temp.toArray(ChrStarts);
-		ChrEnd_temp.toArray(ChrEnds);
 	}
 	Genes(){
 	}
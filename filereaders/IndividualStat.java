@@ -9,14 +9,17 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import filereaders.gff.GVFReader;
+import filereaders.gff.Region;
 import filereaders.individual.VariantAnalysis;
 import filereaders.individual.vcf.Variant;
+import filereaders.tools.IntervalJoin;
 
 public class IndividualStat {
 	float[] CytoScores;
@@ -72,15 +75,9 @@ public class IndividualStat {
 	}
 	public File save_Stat(String session){
 		File ftemp=null;
-		BufferedWriter out;
 		try{
 			ftemp=new File(System.getProperty("java.io.tmpdir")+"/"+session+".stat");
-			out=new BufferedWriter(new FileWriter(ftemp));
-			for(int i=0;i<Cytobands.length;i++)
-				out.write(Cytobands[i][0]+"\t"+Cytobands[i][1]+"\t"+Cytobands[i][2]+"\t"+Cytobands[i][3]+"\t"+CytoScores[i]+"\n");
-			for(int i=0;i<GeneScores.length;i++)
-				out.write(Genes.get_Gene(i)+"\t"+GeneScores[i]+"\n");
-			out.close();
+			save_Stat(ftemp);
 		}catch(IOException e){
 			e.printStackTrace();
 		}finally{
@@ -88,6 +85,46 @@ public class IndividualStat {
 		}
 		return ftemp;
 	}
+	/*
+	 * Write the scores in the format load_Stat reads.
+	 */
+	void save_Stat(File f) throws IOException{
+		BufferedWriter out=new BufferedWriter(new FileWriter(f));
+		try{
+			for(int i=0;i<Cytobands.length;i++)
+				out.write(Cytobands[i][0]+"\t"+Cytobands[i][1]+"\t"+Cytobands[i][2]+"\t"+Cytobands[i][3]+"\t"+CytoScores[i]+"\n");
+			for(int i=0;i<GeneScores.length;i++)
+				out.write(Genes.get_Gene(i)+"\t"+GeneScores[i]+"\n");
+		}finally{
+			out.close();
+		}
+	}
+	/*
+	 * The precomputed scores of the personal variants pvar (of the SAMPLE
+	 * pvarID of a VCF), next to the variant file, which Instance loads
+	 * instead of filling the cytobands one by one.
+	 */
+	static String stat_Path(Annotations pvar, String pvarID){
+		String isfp;
+		if (!pvarID.equals(pvar.get_ID()))
+			isfp=pvar.get_ID()+"_"+pvarID+".stat.txt";
+		else
+			isfp=pvar.get_ID()+".stat.txt";
+		return pvar.get_Path("chr1").substring(0,pvar.get_Path("chr1").lastIndexOf("/")+1)+isfp;
+	}
+	/*
+	 * Variants of pvar overlapping [from, to], never null.
+	 */
+	static List<Variant> read_Variants(Annotations pvar, String chr, int from, int to){
+		List<Variant> variants=null;
+		if(pvar.get_Type().equals(Consts.FORMAT_GVF))
+			variants=new GVFReader(pvar.get_Path(chr)).read_gvf2variants(chr, from, to);
+		else if(pvar.get_Type().equals(Consts.FORMAT_VCF))
+			variants=new VcfReader(pvar,chr).read_vcf2variants(pvar.get_ID(), Consts.MODE_PACK, 0.5, chr, from, to).getVariants();
+		if(variants==null)
+			variants=new ArrayList<Variant>();
+		return variants;
+	}
 	public float[] get_GeneScores(int up, int low){
 		float[] scores=new float[up-low+1];
 		for(int i=low;i<=up;i++){
@@ -95,6 +132,12 @@ public class IndividualStat {
 		}
 		return scores;
 	}
+	/*
+	 * Whether the cytoband of index i has its score, loaded or filled.
+	 */
+	boolean has_CytoScore(int i){
+		return CytoScores[i]>=0;
+	}
 	public float[] get_CytoScores(int up, int low){
 		float[] scores=new float[up-low+1];
 		for(int i=low;i<=up;i++){
@@ -117,29 +160,53 @@ public class IndividualStat {
 			}
 		}
 		int[] range=Genes.binarySearchOverlap(chr, start, end);
-		CytoScores[i]=0;
-		if(range!=null)
-			for(int j=range[0];j<=range[1];j++){
-				int[] subrange=Genes.get_GeneRange(j);
-				Element ele_var=null;
-				if(pvar.get_Type().equals(Consts.FORMAT_GVF))
-					ele_var=new GVFReader(pvar.get_Path(chr)).write_gvf2variants(doc, pvar.get_ID(), chr, subrange[0]+1, subrange[1]);
-				else if(pvar.get_Type().equals(Consts.FORMAT_VCF))
-					ele_var=new VcfReader(pvar,chr).write_vcf2variants(doc, pvar.get_ID(), Consts.MODE_PACK, 0.5, chr, subrange[0]+1, subrange[1]);
-				Element[] ele_annos=new Element[annos.length];
-				for(int k=0;k<annos.length;k++)
-					ele_annos[k]=bar[k].write_ba2elements(doc, annos[k].get_ID(), chr, subrange[0]+1, subrange[1], 0.5);
-				GeneScores[j]=Math.round(calc_Score(doc, ref, ele_annos, ele_var, chr, Genes.get_GeneSymbol(j))*10)/10;
-				CytoScores[i]=CytoScores[i]>GeneScores[j]?CytoScores[i]:GeneScores[j];
+		if(range==null){
+			CytoScores[i]=0;
+			return;
+		}
+		// Read the variants of all the genes at once, and give each gene those overlapping it
+		int from=Integer.MAX_VALUE,to=0;
+		for(int j=range[0];j<=range[1];j++){
+			int[] subrange=Genes.get_GeneRange(j);
+			from=Math.min(from, subrange[0]+1);
+			to=Math.max(to, subrange[1]);
+		}
+		List<Variant> variants=read_Variants(pvar, chr, from, to);
+		int[] vfrom=new int[variants.size()];
+		int[] vto=new int[variants.size()];
+		for(int k=0;k<vfrom.length;k++){
+			vfrom[k]=variants.get(k).getFrom();
+			vto[k]=variants.get(k).getTo();
+		}
+		IntervalJoin join=new IntervalJoin(vfrom, vto);
+		// Published once complete, the cytoband may be filled in the background
+		float cyto=0;
+		for(int j=range[0];j<=range[1];j++){
+			int[] subrange=Genes.get_GeneRange(j);
+			int[] hits=join.overlapping(subrange[0]+1, subrange[1]);
+			if(hits.length==0){
+				// Nothing to score without variants
+				GeneScores[j]=0;
+				continue;
 			}
+			List<Variant> gene_vars=new ArrayList<Variant>(hits.length);
+			for(int hit : hits)
+				gene_vars.add(variants.get(hit));
+			Element[] ele_annos=new Element[annos.length];
+			for(int k=0;k<annos.length;k++)
+				ele_annos[k]=bar[k].write_ba2elements(doc, annos[k].get_ID(), chr, subrange[0]+1, subrange[1], 0.5);
+			GeneScores[j]=Math.round(calc_Score(doc, ref, ele_annos, gene_vars, chr, Genes.get_GeneSymbol(j))*10)/10;
+			cyto=cyto>GeneScores[j]?cyto:GeneScores[j];
+		}
+		CytoScores[i]=cyto;
 	}
-	float calc_Score(Document doc, FastaReader rr, Element[] annos, Element pvar, String chr, String symbol){
+	float calc_Score(Document doc, FastaReader rr, Element[] annos, List<Variant> pvar, String chr, String symbol){
 		int score=0;
 		int available=0;
 		try{
 			Element[] pannos=new Element[annos.length];
 			for(int i=0;i<annos.length;i++){
-				VariantAnalysis ee = new VariantAnalysis(doc, rr, annos[i], null, pvar, chr);
+				VariantAnalysis ee = new VariantAnalysis(doc, rr, annos[i], (List<Region>) null, pvar, chr);
 				pannos[i]=ee.easydeal();
 				ArrayList<Integer> temp_score=new ArrayList<Integer>();
 				for(int j=0;j<pannos[i].getChildNodes().getLength();j++){
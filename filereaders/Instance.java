@@ -7,9 +7,11 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.Future;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.apache.commons.lang3.SerializationUtils;
 
@@ -18,6 +20,8 @@ import filereaders.individual.GRFElementRegionComparison;
 import filereaders.individual.GdfElementSelector;
 import filereaders.individual.Individual;
 import filereaders.individual.VariantAnalysis;
+import filereaders.individual.VariantMapToDBSNP;
+import filereaders.individual.vcf.Variant;
 
 
 public class Instance {
@@ -34,13 +38,52 @@ public class Instance {
 	
 	String PvarID=null;
 	Annotations Pvar=null;
-	Element Ele_var=null;
+	/*
+	 * Personal genome state shared by the tracks of the current view, as
+	 * objects: variants after the dbSNP merge, symbols of the annotations they
+	 * affect, and the regulatory regions. Only the Document gets XML.
+	 */
+	List<Variant> Var_list=null;
 	Annotations Panno=null;
-	Element[] Ele_anno=null;
+	Set<String> Anno_symbols=null;
 	Annotations Pfanno=null;
-	Element Ele_fanno=null;
+	List<Region> Fanno_list=null;
 	Hashtable<String,Annotations> Pclns=new Hashtable<String,Annotations>();
+	/*
+	 * The reads behind Var_list, Fanno_list and the clinical tracks, by tile.
+	 */
+	PersonalTiles Ptiles=new PersonalTiles();
 	IndividualStat is=null;
+	/*
+	 * Background work on the selected personal genome, see Precompute.
+	 */
+	Precompute precompute=null;
+	/*
+	 * IDs of the tracks the last view sent as densities, which a delta sends whole; null
+	 * before the first view, for which there is no delta.
+	 */
+	private Set<String> dense_Tracks=null;
+	/*
+	 * Generations of the views, update and refresh write one at a time.
+	 */
+	final Cancellation views=new Cancellation();
+	/*
+	 * Tracks of features of one line each, which a delta of update reads over the exposed
+	 * region only. GFF and GTF features are joined from the lines of the region read.
+	 */
+	private static final Set<String> DELTA_FORMATS=new HashSet<String>(Arrays.asList(Consts.FORMAT_BEDGZ,Consts.FORMAT_ANNO,
+			Consts.FORMAT_BED,Consts.FORMAT_BIGBED,Consts.FORMAT_GRF,Consts.FORMAT_GDF,Consts.FORMAT_GVF,Consts.FORMAT_VCF));
+	/*
+	 * Those of them whose rows are assigned here (Packing), over the whole view.
+	 */
+	private static final Set<String> PACKED_FORMATS=new HashSet<String>(Arrays.asList(Consts.FORMAT_BEDGZ,Consts.FORMAT_ANNO,
+			Consts.FORMAT_BIGBED));
+	/*
+	 * PersonalGenome tracks as left by init_track, e.g. a VCF track with its header parameters.
+	 * Every new session clones them instead of reopening the files.
+	 * Keys carry the configure registry time, so a reloaded config.xml is initialized again.
+	 */
+	private static final Map<String,Annotations> PG_templates=new java.util.concurrent.ConcurrentHashMap<String,Annotations>();
 	
 	public Instance (){
 		initialize("hg19");
@@ -48,7 +91,40 @@ public class Instance {
 	public Instance (String Assembly){
 		initialize(Assembly);
 	}
+	/*
+	 * An Instance of Assembly without the default personal genome, which restore sets
+	 * from the state instead.
+	 */
+	private Instance (String Assembly,boolean defaults){
+		initialize(Assembly,defaults);
+	}
+	/*
+	 * A view of no track, for TrackNode to write one in.
+	 */
+	private Instance (String Assembly,String Chr,long[] Coordinate,int window_width){
+		this.Assembly=Assembly;
+		this.Chr=Chr;
+		this.Coordinate=Coordinate;
+		this.window_width=window_width;
+		this.bpp=(double)(Coordinate[1]-Coordinate[0])/(double)window_width;
+		Annos=new Hashtable<String, Annotations>();
+		Externals=new Hashtable<String, Annotations>();
+	}
+	static Instance view(String Assembly,String Chr,long[] Coordinate,int window_width){
+		return new Instance(Assembly,Chr,Coordinate,window_width);
+	}
+	/*
+	 * The elements of track over the view, under the data root, as update appends them.
+	 */
+	String fragment(Annotations track){
+		Document doc=XmlWriter.init(Consts.DATA_ROOT);
+		append_track(track,doc,track.get_Mode());
+		return XmlWriter.xml2string(doc);
+	}
 	void initialize(String Assembly){
+		initialize(Assembly,true);
+	}
+	private void initialize(String Assembly,boolean defaults){
 		this.Assembly=Assembly;
 		this.Ref=CfgReader.getBasicRef(Assembly);
 		this.Cyto=CfgReader.getBasicCyto(Assembly);
@@ -62,13 +138,26 @@ public class Instance {
 		for(int i=0;i<Annos.length;i++){
 			this.Annos.put(Annos[i].get_ID(), Annos[i]);
 			if(Annos[i].get_Group().equals(Consts.GROUP_CLASS_PG))
-				init_track(this.Annos.get(Annos[i].get_ID()));
+				this.Annos.put(Annos[i].get_ID(), init_PGtrack(Annos[i]));
 		}
 		Externals=new Hashtable<String, Annotations>();
-		init_Pvar("1000genome_CEU","NA12716");
+		// The default personal genome, not worth a background job per new session
+		if(defaults)
+			select_Pvar("1000genome_CEU","NA12716");
 		bpp=1;
 	}
 	public String refresh(String chr,long start,long end,int window_width){
+		int generation=views.supersede();
+		synchronized(views){
+			views.enter(generation);
+			try{
+				return write_refresh(chr,start,end,window_width);
+			} finally{
+				views.leave();
+			}
+		}
+	}
+	private String write_refresh(String chr,long start,long end,int window_width){
 		Document doc=XmlWriter.init(Consts.DATA_ROOT);
 		int chrid=check_chromosome(chr);
 		if(chrid>=0){
@@ -88,7 +177,44 @@ public class Instance {
 			XmlWriter.append_text_element(doc, doc.getElementsByTagName(Consts.DATA_ROOT).item(0), Consts.XML_TAG_ERROR,"Invalid Chromosome name");
 		return XmlWriter.xml2string(doc);
 	}
+	/*
+	 * The view of chr from start to end, unless a newer one is asked for meanwhile
+	 * (Cancellation.Cancelled).
+	 */
 	public String update(String chr,long start,long end,int window_width){
+		return update_View(chr,start,end,window_width,false,null,0,0);
+	}
+	/*
+	 * update for a client taking deltas: the view carries its token (View), and a pan at
+	 * the same scale from the view of token view, prev_start to prev_end, is answered with
+	 * the features of the region it exposes only (Delta), the client keeping those it has
+	 * between the new Start and End: features overlapping the previous view are not sent
+	 * again. Tracks sent as densities in the previous view or dense over the exposed region
+	 * are sent whole, and so are tracks in a mode with rows assigned here (Packing): rows
+	 * of the exposed region alone would collide with those the client keeps.
+	 */
+	public String update(String chr,long start,long end,int window_width,String view,long prev_start,long prev_end){
+		return update_View(chr,start,end,window_width,true,view,prev_start,prev_end);
+	}
+	private String update_View(String chr,long start,long end,int window_width,boolean token,String view,long prev_start,long prev_end){
+		int generation=views.supersede();
+		synchronized(views){
+			views.enter(generation);
+			try{
+				long[] previous=null;
+				if(view!=null&&Coordinate!=null&&dense_Tracks!=null&&chr.equals(Chr)&&prev_start==Coordinate[0]
+						&&prev_end==Coordinate[1]&&view.equals(view_Token()))
+					previous=new long[]{Coordinate[0],Coordinate[1],this.window_width};
+				String xml=write_update(chr,start,end,window_width,token,previous);
+				if(Prefetch.ENABLED&&Coordinate!=null&&Chr.equals(chr))
+					Prefetch.submit(this,generation);
+				return xml;
+			} finally{
+				views.leave();
+			}
+		}
+	}
+	private String write_update(String chr,long start,long end,int window_width,boolean token,long[] previous){
 		Document doc=XmlWriter.init(Consts.DATA_ROOT);
 		int chrid=check_chromosome(chr);
 		if(chrid>=0){
@@ -97,23 +223,45 @@ public class Instance {
 			this.window_width=(int) Math.round(window_width*((double)(Coordinate[1]-Coordinate[0])/(double)Math.abs(end-start)));
 			
 			bpp=(double)(Coordinate[1]-Coordinate[0])/(double)this.window_width;
+			long[] exposed=previous!=null?exposed(previous):null;
 			
 			XmlWriter.append_text_element(doc, doc.getElementsByTagName(Consts.DATA_ROOT).item(0), Consts.XML_TAG_CHROMOSOME, Chr);
 			XmlWriter.append_text_element(doc, doc.getElementsByTagName(Consts.DATA_ROOT).item(0), Consts.XML_TAG_START, String.valueOf(Coordinate[0]));
 			XmlWriter.append_text_element(doc, doc.getElementsByTagName(Consts.DATA_ROOT).item(0), Consts.XML_TAG_END, String.valueOf(Coordinate[1]));
 			XmlWriter.append_text_element(doc, doc.getElementsByTagName(Consts.DATA_ROOT).item(0), Consts.XML_TAG_LENGTH, String.valueOf(rr.fasta_index[chrid][0]));
+			if(exposed!=null){
+				Element delta=doc.createElement(Consts.XML_TAG_DELTA);
+				doc.getElementsByTagName(Consts.DATA_ROOT).item(0).appendChild(delta);
+				XmlWriter.append_text_element(doc, delta, Consts.XML_TAG_FROM, String.valueOf(exposed[0]));
+				XmlWriter.append_text_element(doc, delta, Consts.XML_TAG_TO, String.valueOf(exposed[1]));
+			}
 			append_track(Ref,doc,Ref.get_Mode());
 			append_track(Cyto,doc,Cyto.get_Mode());
+			List<Annotations> tracks=new ArrayList<Annotations>(Annos.size()+Externals.size());
 			Enumeration<Annotations> annos_enum=Annos.elements();
-			for(int i=0;i<Annos.size();i++){
-				Annotations anno_temp=annos_enum.nextElement();
-				append_track(anno_temp,doc,anno_temp.get_Mode());
-			}
+			for(int i=0;i<Annos.size();i++)
+				tracks.add(annos_enum.nextElement());
 			Enumeration<Annotations> externals_enum=Externals.elements();
-			for(int i=0;i<Externals.size();i++){
-				Annotations external_temp=externals_enum.nextElement();
-				append_track(external_temp,doc,external_temp.get_Mode());
-			}	
+			for(int i=0;i<Externals.size();i++)
+				tracks.add(externals_enum.nextElement());
+			if(exposed==null)
+				append_tracks(tracks,doc);
+			else{
+				// Features of the exposed region, at the scale of the view; values, reads,
+				// densities and the personal tracks, computed over the view, whole
+				List<Annotations> partial=new ArrayList<Annotations>();
+				List<Annotations> whole=new ArrayList<Annotations>();
+				for(Annotations track : tracks)
+					(delta_Track(track)?partial:whole).add(track);
+				Instance exposed_view=view(Assembly,Chr,exposed,this.window_width);
+				exposed_view.bpp=bpp;
+				Element root=(Element) doc.getElementsByTagName(Consts.DATA_ROOT).item(0);
+				Node last=root.getLastChild();
+				exposed_view.append_tracks(partial,doc);
+				whole.addAll(trim_Delta(root,last,partial,previous));
+				append_tracks(whole,doc);
+				Metrics.count(Metrics.DELTA_VIEWS, 1);
+			}
 			if(Pvar!=null){
 				append_Ptrack(Pvar,doc,Pvar.get_Mode(),Consts.PTRACK_CLASS_VAR);
 				if(Pfanno!=null)
@@ -130,8 +278,103 @@ public class Instance {
 		}
 		else
 			XmlWriter.append_text_element(doc, doc.getElementsByTagName(Consts.DATA_ROOT).item(0), Consts.XML_TAG_ERROR,"Invalid Chromosome name");
+		if(chrid>=0)
+			dense_Tracks=dense_Tracks(doc);
+		if(token&&chrid>=0)
+			XmlWriter.append_text_element(doc, doc.getElementsByTagName(Consts.DATA_ROOT).item(0), Consts.XML_TAG_VIEW, view_Token());
+		Cancellation.check();
 		return XmlWriter.xml2string(doc);
 	}
+	/*
+	 * The region a pan from previous {start, end, window_width} exposes, or null if the
+	 * view is not such a pan: another scale, no overlap, or too wide for variants.
+	 */
+	private long[] exposed(long[] previous){
+		if(previous[1]-previous[0]!=Coordinate[1]-Coordinate[0]||previous[2]!=window_width
+				||Coordinate[1]-Coordinate[0]>=3000000)
+			return null;
+		if(Coordinate[0]>previous[0]&&Coordinate[0]<=previous[1])
+			return new long[]{previous[1]+1,Coordinate[1]};
+		if(Coordinate[0]<previous[0]&&Coordinate[1]>=previous[0])
+			return new long[]{Coordinate[0],previous[0]-1};
+		return null;
+	}
+	/*
+	 * Whether a delta sends the features of track over the exposed region only.
+	 */
+	private boolean delta_Track(Annotations track){
+		if(!DELTA_FORMATS.contains(track.get_Type())||dense_Tracks.contains(track.get_ID()))
+			return false;
+		return !PACKED_FORMATS.contains(track.get_Type())||Packing.of(track.get_Mode(),Coordinate[0],Coordinate[1],bpp)==null;
+	}
+	/*
+	 * Leave in the tracks appended to root after last the items the client does not have,
+	 * those not overlapping the previous view {start, end}; tracks dense over the exposed
+	 * region are taken out and returned, for the client to get them whole.
+	 */
+	private static List<Annotations> trim_Delta(Element root,Node last,List<Annotations> tracks,long[] previous){
+		List<Annotations> dense=new ArrayList<Annotations>();
+		Node node=last!=null?last.getNextSibling():root.getFirstChild();
+		while(node!=null){
+			Node next=node.getNextSibling();
+			if(node instanceof Element){
+				Element ele=(Element) node;
+				if(Density.TYPE.equals(ele.getAttribute(Consts.XML_TAG_TYPE))){
+					root.removeChild(ele);
+					for(Annotations track : tracks)
+						if(track.get_ID().equals(ele.getAttribute(Consts.XML_TAG_ID)))
+							dense.add(track);
+				}
+				else{
+					Node item=ele.getFirstChild();
+					while(item!=null){
+						Node next_item=item.getNextSibling();
+						long[] span=item instanceof Element?span((Element) item):null;
+						if(span!=null&&span[1]>=previous[0]&&span[0]<=previous[1])
+							ele.removeChild(item);
+						item=next_item;
+					}
+				}
+			}
+			node=next;
+		}
+		return dense;
+	}
+	/*
+	 * From and to of an item, to being from if it has no T; null if it has no F.
+	 */
+	private static long[] span(Element item){
+		long from=-1,to=-1;
+		try{
+			for(Node node=item.getFirstChild();node!=null;node=node.getNextSibling())
+				if(node instanceof Element&&((Element) node).getTagName().equals(Consts.XML_TAG_FROM))
+					from=Long.parseLong(node.getTextContent().trim());
+				else if(node instanceof Element&&((Element) node).getTagName().equals(Consts.XML_TAG_TO))
+					to=Long.parseLong(node.getTextContent().trim());
+		} catch(NumberFormatException e){
+			return null;
+		}
+		if(from<0)
+			return null;
+		return new long[]{from,to<0?from:to};
+	}
+	/*
+	 * IDs of the tracks of doc sent as densities.
+	 */
+	private static Set<String> dense_Tracks(Document doc){
+		Set<String> dense=new HashSet<String>();
+		for(Node node=doc.getElementsByTagName(Consts.DATA_ROOT).item(0).getFirstChild();node!=null;node=node.getNextSibling())
+			if(node instanceof Element&&Density.TYPE.equals(((Element) node).getAttribute(Consts.XML_TAG_TYPE)))
+				dense.add(((Element) node).getAttribute(Consts.XML_TAG_ID));
+		return dense;
+	}
+	/*
+	 * Names what the client of the current view has: the view and the state of the tracks,
+	 * by their SHA-1.
+	 */
+	String view_Token(){
+		return AutoIndex.sha1(get_State().to_Bytes());
+	}
 	public String add_Tracks(String[] tracks,String[] modes){
 		Document doc=XmlWriter.init(Consts.DATA_ROOT);
 		for(int i=0;i<tracks.length;i++){
@@ -163,19 +406,41 @@ public class Instance {
 				else{
 					Externals.put(tracks[i], new Annotations(tracks[i],links[i],types[i],modes[i],Consts.GROUP_CLASS_USR));
 				}
+				// Read as it is until an indexed copy replaces it
+				if(AutoIndex.needs_Index(Externals.get(tracks[i])))
+					AutoIndex.submit(this, Externals.get(tracks[i]));
 			}
 	}
+	/*
+	 * Replace the external track old, if it is still there, by a copy of it of type
+	 * reading the indexed files of paths. Called by AutoIndex.
+	 */
+	void swap_External(Annotations old,String type,Map<String,String> paths){
+		synchronized(Externals){
+			if(Externals.get(old.get_ID())!=old)
+				return;
+			Externals.put(old.get_ID(), old.copy_Paths(type, paths));
+		}
+		Ptiles.invalidate(old.get_ID());
+	}
 	public void remove_Externals(String[] tracks){
 		for(int i=0;i<tracks.length;i++)
-			if(Externals.containsKey(tracks[i]))
+			if(Externals.containsKey(tracks[i])){
 				Externals.remove(tracks[i]);
+				Ptiles.invalidate(tracks[i]);
+			}
 	}
 	public void init_Pvar(String track,String PvarID){
+		if(select_Pvar(track,PvarID))
+			start_Precompute();
+	}
+	private boolean select_Pvar(String track,String PvarID){
 		if(Annos.containsKey(track)){
 			if(PvarID.equals(track)
 					||(Annos.get(track).has_Parameter(Consts.VCF_HEADER_SAMPLE))){
 				this.PvarID=PvarID;
 				this.Pvar=SerializationUtils.clone(Annos.get(track));
+				Ptiles.invalidate(track);
 				Pvar.set_Mode(Consts.MODE_PACK);
 				if (!PvarID.equals(track))
 					Pvar.set_Parameters(Consts.VCF_HEADER_SAMPLE, PvarID);
@@ -198,8 +463,18 @@ public class Instance {
 					}
 				}
 				init_IndividualStat();
+				return true;
 			}
 		}
+		return false;
+	}
+	/*
+	 * (Re)start the background work on Pvar, after it was selected.
+	 */
+	private void start_Precompute(){
+		if(precompute!=null)
+			precompute.cancel();
+		precompute=Precompute.start(this);
 	}
 	private void init_IndividualStat(){
 		if(Pvar!=null){
@@ -207,12 +482,7 @@ public class Instance {
 				is=new IndividualStat(new CytobandReader(Cyto.get_Path()).getCytobands(),get_BasicAnnos());
 			else
 				is=new IndividualStat(new CytobandReader(Cyto.get_Path()).getCytobands(),new Annotations[]{Panno});
-			String isfp="";
-			if (!PvarID.equals(Pvar.get_ID()))
-				isfp=Pvar.get_ID()+"_"+PvarID+".stat.txt";
-			else
-				isfp=Pvar.get_ID()+".stat.txt";
-			isfp=Pvar.get_Path("chr1").substring(0,Pvar.get_Path("chr1").lastIndexOf("/")+1)+isfp;
+			String isfp=IndividualStat.stat_Path(Pvar, PvarID);
 			File isf=new File(isfp);
 			if(isf.exists()&&isf.isFile())
 				is.load_Stat(isfp);
@@ -226,6 +496,7 @@ public class Instance {
 							&&((VcfSample)(Annos.get(track).get_Parameter(Consts.VCF_HEADER_SAMPLE))).ifExists(PvarID))){
 				this.PvarID=PvarID;
 				this.Pvar=SerializationUtils.clone(Annos.get(track));
+				Ptiles.invalidate(track);
 //				Pvar.set_Mode(mode);
 				Pvar.set_Mode(Consts.MODE_PACK);
 				if (!PvarID.equals(track))
@@ -242,6 +513,7 @@ public class Instance {
 					}
 				}
 				init_IndividualStat();
+				start_Precompute();
 			}
 		}
 		else if(Externals.containsKey(track)){
@@ -250,6 +522,7 @@ public class Instance {
 							&&((VcfSample)(Externals.get(track).get_Parameter(Consts.VCF_HEADER_SAMPLE))).ifSelected(PvarID))){
 				this.PvarID=PvarID;
 				this.Pvar=SerializationUtils.clone(Externals.get(track));
+				Ptiles.invalidate(track);
 //				Pvar.set_Mode(mode);
 				Pvar.set_Mode(Consts.MODE_PACK);
 				if (!PvarID.equals(track))
@@ -268,14 +541,28 @@ public class Instance {
 					}
 				}
 				init_IndividualStat();
+				start_Precompute();
 			}
 		}
 		return XmlWriter.xml2string(doc);
+	}
+	/*
+	 * The session of this Instance is gone (evicted or replaced): stop its background work.
+	 */
+	public void close(){
+		if(precompute!=null)
+			precompute.cancel();
+		precompute=null;
 	}
 	public void remove_Pvar(){
+		if(precompute!=null)
+			precompute.cancel();
+		precompute=null;
+		if(Pvar!=null)
+			Ptiles.invalidate(Pvar.get_ID());
 		Pvar=null;
 		PvarID=null;
-		Ele_var=null;
+		Var_list=null;
 		is=null;
 	}
 	public String add_Panno(String track,String mode){
@@ -304,7 +591,7 @@ public class Instance {
 	}
 	public void remove_Panno(){
 		Panno=null;
-		Ele_anno=null;
+		Anno_symbols=null;
 	}
 	public String add_Pfanno(String track,String mode){
 		Document doc=XmlWriter.init(Consts.DATA_ROOT);
@@ -338,7 +625,7 @@ public class Instance {
 	}
 	public String remove_Pfanno(){
 		Pfanno=null;
-		Ele_fanno=null;
+		Fanno_list=null;
 		Document doc=XmlWriter.init(Consts.DATA_ROOT);
 		if(Panno!=null&&Pvar!=null){
 			append_Ptrack(Panno,doc,Panno.get_Mode(),Consts.PTRACK_CLASS_ANNO);
@@ -394,8 +681,8 @@ public class Instance {
 			else if(type_temp.equals(Consts.FORMAT_ANNO)){
 				BasicAnnosReader bar=new BasicAnnosReader(path_temp);
 				ele_temp=bar.get_detail(doc, track.get_ID(), id, Chr, (long)start, (long)end);
-				if(personal){
-					VariantAnalysis ee = new VariantAnalysis(doc, rr, ele_temp, Ele_fanno, Ele_var, Chr);
+				if(personal&&Var_list!=null){
+					VariantAnalysis ee = new VariantAnalysis(doc, rr, path_temp, ele_temp, Fanno_list, Var_list, Chr);
 					Element[] ele_anno_temp=null;
 					try{
 						ele_anno_temp=ee.deal();
@@ -430,16 +717,16 @@ public class Instance {
 			else if(type_temp.equals(Consts.FORMAT_GRF)){
 				GRFReader gr = new GRFReader(path_temp);
 				ele_temp=gr.get_detail(doc, track.get_ID(),id, Chr,(int)Coordinate[0],(int)Coordinate[1]);
-				if(personal){
-					GRFElementRegionComparison rc = new GRFElementRegionComparison(doc, Ele_var);
+				if(personal&&Var_list!=null){
+					GRFElementRegionComparison rc = new GRFElementRegionComparison(doc, Var_list);
 					rc.compareRegion(ele_temp);
 				}
 			}
 			else if(type_temp.equals(Consts.FORMAT_GDF)){
 				GDFReader gr = new GDFReader(path_temp);
 				ele_temp=gr.get_detail(doc, track.get_ID(),id, Chr,(int)Coordinate[0],(int)Coordinate[1]);
-				if(personal){
-					GdfElementSelector ges=new GdfElementSelector(doc,Ele_anno,Ele_var);
+				if(personal&&Var_list!=null&&Anno_symbols!=null){
+					GdfElementSelector ges=new GdfElementSelector(doc,Anno_symbols,Var_list);
 					doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(ges.select(ele_temp));
 					doc.getElementsByTagName(DATA_ROOT).item(0).removeChild(ele_temp);
 				}
@@ -571,12 +858,128 @@ public class Instance {
 	}
 	public void set_Params(String[] tracks,String[] params,String[] values){
 		for(int i=0;i<tracks.length;i++){
+			// The SAMPLE, QUAL limit and filters decide what the tiles hold
+			Ptiles.invalidate(tracks[i]);
 			if(Annos.containsKey(tracks[i]))
 				Annos.get(tracks[i]).set_Parameters(params[i], values[i]);
 			else if(Externals.containsKey(tracks[i]))
 				Externals.get(tracks[i]).set_Parameters(params[i], values[i]);
 		}
 	}
+	/*
+	 * What the user set in this Instance, see SessionState.
+	 */
+	public SessionState get_State(){
+		SessionState state=new SessionState();
+		state.assembly=Assembly;
+		state.chr=Chr;
+		state.coordinate=Coordinate!=null?Coordinate.clone():null;
+		state.window_width=window_width;
+		state.bpp=bpp;
+		for(String id : new TreeSet<String>(Annos.keySet()))
+			state.tracks.add(track_State(Annos.get(id)));
+		for(String id : new TreeSet<String>(Externals.keySet())){
+			Annotations track=Externals.get(id);
+			String[] t=track_State(track);
+			state.externals.add(new String[]{id,track.get_Link(),track.get_Type(),t[1],t[2],t[3]});
+		}
+		if(Pvar!=null){
+			state.pvar=Pvar.get_ID();
+			state.pvar_id=PvarID;
+		}
+		if(Panno!=null)
+			state.panno=new String[]{Panno.get_ID(),Panno.get_Mode()};
+		if(Pfanno!=null)
+			state.pfanno=new String[]{Pfanno.get_ID(),Pfanno.get_Mode()};
+		for(String id : new TreeSet<String>(Pclns.keySet()))
+			state.pclns.add(new String[]{id,Pclns.get(id).get_Mode()});
+		return state;
+	}
+	private static String[] track_State(Annotations track){
+		StringBuilder params=new StringBuilder();
+		StringBuilder values=new StringBuilder();
+		for(String param : new TreeSet<String>(Arrays.asList(track.get_Parameters()))){
+			String value=track.get_ParameterValue(param);
+			if(value==null)
+				continue;
+			params.append(params.length()>0?";":"").append(param);
+			values.append(values.length()>0?";":"").append(value);
+		}
+		return new String[]{track.get_ID(),track.get_Mode(),params.toString(),values.toString()};
+	}
+	/*
+	 * An Instance as the one state was taken from. Derived data (the personal variants of
+	 * the view, the tiles) is read again by the next update.
+	 */
+	public static Instance restore(SessionState state){
+		Instance ins=new Instance(state.assembly,false);
+		for(String[] t : state.tracks)
+			ins.restore_Track(t[0],t[1],t[2],t[3]);
+		for(String[] e : state.externals){
+			ins.add_Externals(new String[]{e[0]},new String[]{e[1]},new String[]{e[2]},new String[]{e[3]});
+			ins.restore_Track(e[0],e[3],e[4],e[5]);
+		}
+		ins.Pvar=null;
+		ins.PvarID=null;
+		ins.is=null;
+		if(state.pvar!=null&&ins.lookup(state.pvar)!=null){
+			ins.PvarID=state.pvar_id;
+			ins.Pvar=SerializationUtils.clone(ins.lookup(state.pvar));
+			ins.Pvar.set_Mode(Consts.MODE_PACK);
+			if(!state.pvar_id.equals(state.pvar))
+				ins.Pvar.set_Parameters(Consts.VCF_HEADER_SAMPLE, state.pvar_id);
+			else if(ins.Externals.containsKey(state.pvar))
+				ins.Pvar.set_Parameters(Consts.VCF_HEADER_SAMPLE, "");
+		}
+		ins.Panno=state.panno!=null?ins.personal_Track(state.panno[0],state.panno[1]):null;
+		ins.Pfanno=state.pfanno!=null?ins.personal_Track(state.pfanno[0],state.pfanno[1]):null;
+		ins.Pclns.clear();
+		for(String[] c : state.pclns)
+			if(ins.lookup(c[0])!=null)
+				ins.Pclns.put(c[0],ins.personal_Track(c[0],c[1]));
+		ins.init_IndividualStat();
+		ins.Chr=state.chr;
+		ins.Coordinate=state.coordinate;
+		ins.window_width=state.window_width;
+		ins.bpp=state.bpp;
+		return ins;
+	}
+	private void restore_Track(String id,String mode,String params,String values){
+		Annotations track=lookup(id);
+		if(track==null)
+			return;
+		track.set_Mode(mode);
+		if(params.length()>0)
+			set_State(track,params,values);
+	}
+	/*
+	 * Set the parameters of track as track_State took them.
+	 */
+	void set_State(Annotations track,String params,String values){
+		// VCF parameters come from the header
+		if(track.get_Type().equals(Consts.FORMAT_VCF)&&!track.has_Parameter(Consts.VCF_CHROM_PREFIX))
+			init_track(track);
+		if(params.length()==0)
+			return;
+		// One by one: set_Parameters drops trailing empty values
+		String[] p=params.split(";");
+		String[] v=values.split(";",-1);
+		for(int i=0;i<p.length&&i<v.length;i++)
+			track.set_Parameters(p[i], v[i]);
+	}
+	private Annotations lookup(String id){
+		if(Annos.containsKey(id))
+			return Annos.get(id);
+		return Externals.get(id);
+	}
+	private Annotations personal_Track(String id,String mode){
+		Annotations track=lookup(id);
+		if(track==null)
+			return null;
+		track=SerializationUtils.clone(track);
+		track.set_Mode(mode);
+		return track;
+	}
 	void set_mode(String track,String mode){
 		if(Annos.containsKey(track))
 			Annos.get(track).set_Mode(mode);
@@ -584,72 +987,74 @@ public class Instance {
 			Externals.get(track).set_Mode(mode);
 	}
 	void append_Ptrack(Annotations track,Document doc,String mode,int Class) {
+		Cancellation.check();
 		String type_temp=track.get_Type();
 		if (Coordinate[1]-Coordinate[0]>3000000)
 			return;
 		if(Pvar!=null&&track.get_ID().equals(Pvar.get_ID())&&type_temp.equals(Consts.FORMAT_VCF)&&Class==Consts.PTRACK_CLASS_VAR){
-				VcfReader vr=new VcfReader(track,Chr);
-				vr.changeBppLimit(Consts.LIMIT_BPP);
-				Element ele_var=vr.write_vcf2variants(doc,"_"+track.get_ID(),mode,bpp,Chr,Coordinate[0],Coordinate[1]);
-			//	Element ele_var=vr.write_vcf2variants(doc,"_"+track.get_ID(),Consts.MODE_PACK,bpp,Chr,Coordinate[0],Coordinate[1]);
 				//Cancel Dense-mode-bandwidth saving. transfer all variants to client.
-				add_att_ifParam(track,ele_var);
+				List<VariantMapToDBSNP> merged=Ptiles.variants(track,CfgReader.getBasicSnp(Assembly),mode,bpp,Chr,Coordinate[0],Coordinate[1]);
+				String sample=VcfReader.read_Sample(track);
+				String id=sample!=null?sample:"_"+track.get_ID();
 				if(PvarID!=null&&!track.get_ID().equals(PvarID))
-					ele_var.setAttribute(Consts.XML_TAG_ID, "_"+PvarID);
-				Ele_var = new Individual(ele_var).mergeWithDBSNP(CfgReader.getBasicSnp(Assembly).get_Path(Chr), Chr, Coordinate[0], Coordinate[1], doc);
-				doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(Ele_var);
-				doc.getElementsByTagName(DATA_ROOT).item(0).removeChild(ele_var);
+					id="_"+PvarID;
+				if(merged!=null)
+					append_Pvariants(doc,new Individual(id,sample!=null?"_"+track.get_ID():null,get_ifParam(track),new ArrayList<Variant>(),false),merged);
 		}
 		else if(Pvar!=null&&track.get_ID().equals(Pvar.get_ID())&&type_temp.equals(Consts.FORMAT_GVF)&&Class==Consts.PTRACK_CLASS_VAR){
-			GVFReader gr = new GVFReader(Pvar.get_Path(Chr));
-			Element ele_var=gr.write_gvf2variants(doc, "_"+track.get_ID(), Chr,Coordinate[0],Coordinate[1]);
-			add_att_ifParam(track,ele_var);
-			Ele_var = new Individual(ele_var).mergeWithDBSNP(CfgReader.getBasicSnp(Assembly).get_Path(Chr), Chr, Coordinate[0], Coordinate[1], doc);
-			doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(Ele_var);
-			doc.getElementsByTagName(DATA_ROOT).item(0).removeChild(ele_var);
+			List<VariantMapToDBSNP> merged=Ptiles.variants(Pvar,CfgReader.getBasicSnp(Assembly),mode,bpp,Chr,Coordinate[0],Coordinate[1]);
+			if(merged!=null)
+				append_Pvariants(doc,new Individual("_"+track.get_ID(),null,get_ifParam(track),new ArrayList<Variant>(),false),merged);
 		}
 		else if(Panno!=null&&track.get_ID().equals(Panno.get_ID())&&type_temp.equals(Consts.FORMAT_ANNO)&&Class==Consts.PTRACK_CLASS_ANNO){
 			try{
 				BasicAnnosReader bar=new BasicAnnosReader(Panno.get_Path(Chr));
 				Element ele_anno=bar.write_ba2elements(doc, "_"+track.get_ID(), Chr, Coordinate[0], Coordinate[1], bpp);
 				add_att_ifParam(track,ele_anno);
-				VariantAnalysis ee = new VariantAnalysis(doc, rr, ele_anno, Ele_fanno, Ele_var, Chr);
-				Ele_anno=ee.deal();
-				doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(Ele_anno[0]);
-				if(Ele_anno.length > 1){
-					doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(Ele_anno[1]);
+				if(Var_list!=null){
+					VariantAnalysis ee = new VariantAnalysis(doc, rr, Panno.get_Path(Chr), ele_anno, Fanno_list, Var_list, Chr);
+					Element[] ele_anno_temp=ee.deal();
+					doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(ele_anno_temp[0]);
+					if(ele_anno_temp.length > 1){
+						doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(ele_anno_temp[1]);
+					}
+					doc.getElementsByTagName(DATA_ROOT).item(0).removeChild(ele_anno);
+					Anno_symbols=ee.getAffectedSymbols();
 				}
-				doc.getElementsByTagName(DATA_ROOT).item(0).removeChild(ele_anno);
+			}catch(Cancellation.Cancelled e){
+				throw e;
 			}catch(Exception e){
 				e.printStackTrace();
 			}
 		}
 		else if(Pfanno!=null&&track.get_ID().equals(Pfanno.get_ID())&&type_temp.equals(Consts.FORMAT_GRF)&&Class==Consts.PTRACK_CLASS_FANNO){
-			GRFReader gr2 = new GRFReader(Pfanno.get_Path(Chr));;
-			try {
-				Ele_fanno = gr2.write_grf2elements(doc, "_"+track.get_ID(), Chr,(int) Coordinate[0],(int) Coordinate[1]);
-				GRFElementRegionComparison rc = new GRFElementRegionComparison(doc,Ele_var);
-				rc.compareRegion(Ele_fanno);
-			} catch (IOException e) {
-				e.printStackTrace();
+			Fanno_list = Ptiles.regions(Pfanno,Chr,Coordinate[0],Coordinate[1]);
+			if(Var_list!=null){
+				GRFElementRegionComparison rc = new GRFElementRegionComparison(doc,Var_list);
+				rc.compareRegion(Fanno_list);
 			}
+			Region.write2xml(doc, "_"+track.get_ID(), Fanno_list);
 		}
 		else if(Pclns.containsKey(track.get_ID())&&type_temp.equals(Consts.FORMAT_GDF)&&Class==Consts.PTRACK_CLASS_CLN){
-			GDFReader gr3;
-			try {
-				gr3 = new GDFReader(Pclns.get(track.get_ID()).get_Path(Chr));
-				Element ele_cln=gr3.write_gdf2elements(doc, "_"+track.get_ID(), Chr,(int) Coordinate[0],(int) Coordinate[1]);
-				add_att_ifParam(track,ele_cln);
-				GdfElementSelector ges=new GdfElementSelector(doc,Ele_anno,Ele_var);
-				doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(ges.select(ele_cln));
-				doc.getElementsByTagName(DATA_ROOT).item(0).removeChild(ele_cln);
-			} catch (IOException e) {
-				e.printStackTrace();
+			if(Var_list!=null&&Anno_symbols!=null){
+				List<Region> cln=Ptiles.regions(Pclns.get(track.get_ID()),Chr,Coordinate[0],Coordinate[1]);
+				GdfElementSelector ges=new GdfElementSelector(doc,Anno_symbols,Var_list);
+				doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(ges.select("_"+track.get_ID(),cln));
 			}
 		}
 		else 
 			append_track(track,doc,mode);
 	}
+	Annotations init_PGtrack(Annotations track){
+		String key=Assembly+"\t"+track.get_ID()+"\t"+CfgReader.registry().modified;
+		Annotations template=PG_templates.get(key);
+		if(template==null){
+			init_track(track);
+			PG_templates.put(key, SerializationUtils.clone(track));
+			return track;
+		}
+		return SerializationUtils.clone(template);
+	}
 	void init_track(Annotations track) {
 		String path_temp=track.get_Path("chr1");
 		String type_temp=track.get_Type();
@@ -705,18 +1110,66 @@ public class Instance {
 		else if (type_temp.equals(Consts.FORMAT_CYTO))
 			new CytobandReader(path_temp);
 	}
+	/*
+	 * Append tracks in their order, those of a TrackCluster read by its nodes meanwhile.
+	 */
+	void append_tracks(List<Annotations> tracks,Document doc){
+		TrackCluster cluster=TrackCluster.get();
+		if(cluster==null){
+			for(Annotations track : tracks){
+				Cancellation.check();
+				append_track(track,doc,track.get_Mode());
+			}
+			return;
+		}
+		List<Future<byte[]>> fragments=new ArrayList<Future<byte[]>>(tracks.size());
+		for(Annotations track : tracks){
+			Future<byte[]> fragment=null;
+			if(!track.get_Mode().equals(Consts.MODE_HIDE)&&track.get_Path(Chr)!=null){
+				// Parameters of a VCF track come from its header, as reading it here would
+				if(track.get_Type().equals(Consts.FORMAT_VCF)&&!track.has_Parameter(Consts.VCF_CHROM_PREFIX))
+					init_track(track);
+				fragment=cluster.fetch(Assembly,track,Chr,Coordinate,window_width,track_State(track));
+			}
+			fragments.add(fragment);
+		}
+		long deadline=System.currentTimeMillis()+TrackCluster.TIMEOUT;
+		try{
+			for(int i=0;i<tracks.size();i++){
+				Cancellation.check();
+				Annotations track=tracks.get(i);
+				if(fragments.get(i)==null||!cluster.gather(track,Chr,fragments.get(i),doc,deadline))
+					append_track(track,doc,track.get_Mode());
+			}
+		} finally{
+			// Fragments left by a cancelled view
+			for(Future<byte[]> fragment : fragments)
+				if(fragment!=null)
+					fragment.cancel(true);
+		}
+	}
 	void append_track(Annotations track, Document doc,String mode) {
+		if(mode.equals(Consts.MODE_HIDE) || track.get_Path(Chr)==null)
+			return;
+		long start=System.nanoTime();
+		long stage_start=Metrics.thread_stage_nanos();
+		write_track(track,doc,mode);
+		long elapsed=System.nanoTime()-start;
+		Metrics.track(track.get_Type(), elapsed);
+		Metrics.stage(Metrics.STAGE_PARSE, elapsed-(Metrics.thread_stage_nanos()-stage_start));
+	}
+	private void write_track(Annotations track, Document doc,String mode) {
 		String path_temp=track.get_Path(Chr);
 		if(!mode.equals(Consts.MODE_HIDE) && path_temp!=null){
 			Element ele_temp=null;
 			String type_temp=track.get_Type();
 			if(type_temp.equals(Consts.FORMAT_BEDGZ)){
 				BedReaderTabix brt=new BedReaderTabix(path_temp);
-				ele_temp=brt.write_bed2elements(doc, track.get_ID(), Chr,Coordinate[0],Coordinate[1],bpp);
+				ele_temp=brt.write_bed2elements(doc, track.get_ID(), Chr,Coordinate[0],Coordinate[1],bpp,Density.of(Coordinate[0],Coordinate[1],bpp),Packing.of(mode,Coordinate[0],Coordinate[1],bpp));
 			}
 			else if(type_temp.equals(Consts.FORMAT_ANNO)){
 				BasicAnnosReader bar=new BasicAnnosReader(path_temp);
-				ele_temp=bar.write_ba2elements(doc, track.get_ID(), Chr,Coordinate[0],Coordinate[1],bpp);
+				ele_temp=bar.write_ba2elements(doc, track.get_ID(), Chr,Coordinate[0],Coordinate[1],bpp,Density.of(Coordinate[0],Coordinate[1],bpp),Packing.of(mode,Coordinate[0],Coordinate[1],bpp));
 			}
 			else if(type_temp.equals(Consts.FORMAT_BED)){
 				BedReader br=new BedReader(path_temp);
@@ -730,7 +1183,7 @@ public class Instance {
 			}
 			else if(type_temp.equals(Consts.FORMAT_BIGBED)){
 				BigBedReader bbr=new BigBedReader(path_temp);
-				ele_temp=bbr.write_bed2elements(doc, track.get_ID(), Chr, Coordinate[0], Coordinate[1], bpp);
+				ele_temp=bbr.write_bed2elements(doc, track.get_ID(), Chr, Coordinate[0], Coordinate[1], bpp, Density.of(Coordinate[0],Coordinate[1],bpp), Packing.of(mode,Coordinate[0],Coordinate[1],bpp));
 			}
 			else if(type_temp.equals(Consts.FORMAT_BEDGRAPH)){
 				BedGraphReader bgr;
@@ -779,7 +1232,7 @@ public class Instance {
 			}
 			else if(type_temp.equals(Consts.FORMAT_GFF)){
 				GFFReader gr = new GFFReader(path_temp);
-				ele_temp=gr.write_gff2elements(doc, track.get_ID(), Chr,Coordinate[0],Coordinate[1],"gene_id");
+				ele_temp=gr.write_gff2elements(doc, track.get_ID(), Chr,Coordinate[0],Coordinate[1],"gene_id",Density.of(Coordinate[0],Coordinate[1],bpp),Packing.of(mode,Coordinate[0],Coordinate[1],bpp));
 			}
 			else if(type_temp.equals(Consts.FORMAT_GTF)){
 				GTFReader gr = new GTFReader(path_temp);
@@ -835,6 +1288,8 @@ public class Instance {
 				ele_temp=cbr.write_cytobands(doc, Chr, is);
 			}
 			
+			if(ele_temp!=null)
+				Metrics.count(Metrics.RECORDS_DECODED, ele_temp.getChildNodes().getLength());
 			if(ele_temp!=null
 					&&!ele_temp.getTagName().equals(Consts.XML_TAG_PARAMETERS)
 					&&!type_temp.equals(Consts.FORMAT_CYTO)
@@ -858,10 +1313,21 @@ public class Instance {
 	}
 
 	void add_att_ifParam(Annotations track, Element ele_temp){
+		ele_temp.setAttribute(Consts.XML_TAG_IFP, get_ifParam(track));
+	}
+	String get_ifParam(Annotations track){
 		if(track.has_visable_Parameter())
-			ele_temp.setAttribute(Consts.XML_TAG_IFP, Consts.TEXT_TRUE);
+			return Consts.TEXT_TRUE;
 		else 
-			ele_temp.setAttribute(Consts.XML_TAG_IFP, Consts.TEXT_FALSE);
+			return Consts.TEXT_FALSE;
+	}
+	/*
+	 * Write the personal variants merged with dbSNP once, as the Variants element
+	 * of ind, and keep them for the annotation tracks appended after.
+	 */
+	void append_Pvariants(Document doc, Individual ind, List<VariantMapToDBSNP> merged){
+		doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(ind.write2xml(doc, merged));
+		Var_list=VariantMapToDBSNP.variants(merged);
 	}
 	int check_chromosome(String chr){
 		if(rr.seq_name.containsKey(chr))
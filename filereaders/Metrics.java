@@ -0,0 +1,203 @@
+package filereaders;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import filereaders.tools.LatencyHistogram;
+
+/*
+ * Process-wide latency histograms and counters.
+ * Latencies are kept per action of Interfaces, per track type (Consts.FORMAT_*)
+ * and per stage of a request. Stages recorded by readers (index load, decompression)
+ * are also summed per thread, so append_track can charge the rest of its time to
+ * parsing and DOM building.
+ * Reported by the "metrics" action and over JMX.
+ */
+public class Metrics implements MetricsMBean {
+	public static final String STAGE_INDEX="index_load";
+	public static final String STAGE_DECOMPRESS="decompression";
+	public static final String STAGE_PARSE="parse_dom";
+	public static final String STAGE_SERIALIZE="serialization";
+	public static final String BYTES_READ="bytes_read";
+	public static final String RECORDS_DECODED="records_decoded";
+	public static final String RESPONSE_BYTES="response_bytes";
+	public static final String NOT_MODIFIED="not_modified";
+	public static final String COMPRESSED_BYTES="compressed_bytes";
+	public static final String PRECOMPUTED_TILES="precomputed_tiles";
+	public static final String PRECOMPUTED_CYTOBANDS="precomputed_cytobands";
+	public static final String REMOTE_TRACKS="remote_tracks";
+	public static final String REMOTE_FALLBACKS="remote_fallbacks";
+	public static final String CANCELLED_VIEWS="cancelled_views";
+	public static final String PREFETCHED_WINDOWS="prefetched_windows";
+	public static final String PREFETCH_CANCELLED="prefetch_cancelled";
+	public static final String REJECTED_REQUESTS="rejected_requests";
+	public static final String DELTA_VIEWS="delta_views";
+	public static final String DENSITY_TRACKS="density_tracks";
+	public static final String HIDDEN_ITEMS="hidden_items";
+	public static final String BLOCK_CACHE_HITS="block_cache_hits";
+	public static final String BLOCK_CACHE_MISSES="block_cache_misses";
+	public static final String INFLATE_NANOS_SAVED="inflate_nanos_saved";
+	public static final String INFLATED_AHEAD="inflated_ahead";
+	/*
+	 * Action names come from requests, unknown ones beyond this are counted as "other".
+	 */
+	static final int MAX_KEYS=128;
+
+	private static final ConcurrentHashMap<String,LatencyHistogram> actions=new ConcurrentHashMap<String,LatencyHistogram>();
+	private static final ConcurrentHashMap<String,LatencyHistogram> tracks=new ConcurrentHashMap<String,LatencyHistogram>();
+	private static final ConcurrentHashMap<String,LatencyHistogram> stages=new ConcurrentHashMap<String,LatencyHistogram>();
+	private static final ConcurrentHashMap<String,AtomicLong> counters=new ConcurrentHashMap<String,AtomicLong>();
+	private static final ThreadLocal<long[]> thread_stages=new ThreadLocal<long[]>(){
+		protected long[] initialValue(){
+			return new long[1];
+		}
+	};
+	static final Metrics INSTANCE=new Metrics();
+	static{
+		try{
+			MBeanServer mbs=ManagementFactory.getPlatformMBeanServer();
+			ObjectName name=new ObjectName("gbhit:type=Metrics");
+			if(mbs.isRegistered(name))
+				mbs.unregisterMBean(name);
+			mbs.registerMBean(INSTANCE, name);
+		} catch(Exception e){
+			e.printStackTrace();
+		}
+	}
+
+	private static LatencyHistogram histogram(ConcurrentHashMap<String,LatencyHistogram> map,String key){
+		LatencyHistogram h=map.get(key);
+		if(h==null){
+			if(map.size()>=MAX_KEYS)
+				key="other";
+			h=new LatencyHistogram();
+			LatencyHistogram old=map.putIfAbsent(key, h);
+			if(old!=null)
+				h=old;
+		}
+		return h;
+	}
+	public static void action(String action,long nanos){
+		histogram(actions,action).record(nanos/1000);
+	}
+	public static void track(String type,long nanos){
+		histogram(tracks,type).record(nanos/1000);
+	}
+	public static void stage(String stage,long nanos){
+		histogram(stages,stage).record(nanos/1000);
+		thread_stages.get()[0]+=nanos;
+	}
+	/*
+	 * Nanoseconds this thread has spent in recorded stages so far.
+	 */
+	static long thread_stage_nanos(){
+		return thread_stages.get()[0];
+	}
+	public static void count(String counter,long delta){
+		AtomicLong c=counters.get(counter);
+		if(c==null){
+			c=new AtomicLong();
+			AtomicLong old=counters.putIfAbsent(counter, c);
+			if(old!=null)
+				c=old;
+		}
+		c.addAndGet(delta);
+	}
+
+	public static String to_text(){
+		StringBuffer sb=new StringBuffer();
+		append_text(sb,"action",actions);
+		append_text(sb,"track",tracks);
+		append_text(sb,"stage",stages);
+		for(Map.Entry<String,AtomicLong> e:new TreeMap<String,AtomicLong>(counters).entrySet())
+			sb.append("counter\t").append(e.getKey()).append("\t").append(e.getValue().get()).append("\n");
+		return sb.toString();
+	}
+	private static void append_text(StringBuffer sb,String kind,Map<String,LatencyHistogram> map){
+		for(Map.Entry<String,LatencyHistogram> e:new TreeMap<String,LatencyHistogram>(map).entrySet()){
+			LatencyHistogram h=e.getValue();
+			sb.append(kind).append("\t").append(e.getKey())
+				.append("\tcount=").append(h.getCount())
+				.append("\tmean_us=").append(h.getMean())
+				.append("\tp50_us=").append(h.getValueAtPercentile(50))
+				.append("\tp90_us=").append(h.getValueAtPercentile(90))
+				.append("\tp99_us=").append(h.getValueAtPercentile(99))
+				.append("\tmax_us=").append(h.getMax())
+				.append("\n");
+		}
+	}
+
+	public static String to_json(){
+		StringBuffer sb=new StringBuffer("{");
+		append_json(sb,"actions",actions);
+		sb.append(",");
+		append_json(sb,"tracks",tracks);
+		sb.append(",");
+		append_json(sb,"stages",stages);
+		sb.append(",\"counters\":{");
+		boolean first=true;
+		for(Map.Entry<String,AtomicLong> e:new TreeMap<String,AtomicLong>(counters).entrySet()){
+			if(!first)
+				sb.append(",");
+			first=false;
+			sb.append(json_string(e.getKey())).append(":").append(e.getValue().get());
+		}
+		sb.append("}}");
+		return sb.toString();
+	}
+	private static void append_json(StringBuffer sb,String kind,Map<String,LatencyHistogram> map){
+		sb.append("\"").append(kind).append("\":{");
+		boolean first=true;
+		for(Map.Entry<String,LatencyHistogram> e:new TreeMap<String,LatencyHistogram>(map).entrySet()){
+			LatencyHistogram h=e.getValue();
+			if(!first)
+				sb.append(",");
+			first=false;
+			sb.append(json_string(e.getKey())).append(":{")
+				.append("\"count\":").append(h.getCount())
+				.append(",\"mean_us\":").append(h.getMean())
+				.append(",\"p50_us\":").append(h.getValueAtPercentile(50))
+				.append(",\"p90_us\":").append(h.getValueAtPercentile(90))
+				.append(",\"p99_us\":").append(h.getValueAtPercentile(99))
+				.append(",\"max_us\":").append(h.getMax())
+				.append("}");
+		}
+		sb.append("}");
+	}
+	private static String json_string(String str){
+		StringBuffer sb=new StringBuffer("\"");
+		for(int i=0;i<str.length();i++){
+			char c=str.charAt(i);
+			if(c=='"'||c=='\\')
+				sb.append('\\').append(c);
+			else if(c<0x20)
+				sb.append(String.format("\\u%04x", (int)c));
+			else
+				sb.append(c);
+		}
+		return sb.append("\"").toString();
+	}
+
+	public String getReport(){
+		return to_text();
+	}
+	public String getJson(){
+		return to_json();
+	}
+	public long getCounter(String name){
+		AtomicLong c=counters.get(name);
+		return c==null?0:c.get();
+	}
+	public void reset(){
+		actions.clear();
+		tracks.clear();
+		stages.clear();
+		counters.clear();
+	}
+}
@@ -0,0 +1,11 @@
+package filereaders;
+
+/*
+ * JMX view of Metrics, registered as gbhit:type=Metrics.
+ */
+public interface MetricsMBean {
+	String getReport();
+	String getJson();
+	long getCounter(String name);
+	void reset();
+}
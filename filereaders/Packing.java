@@ -0,0 +1,132 @@
+package filereaders;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import filereaders.bam.BAMValueList;
+
+/*
+ * Rows of the items of a feature or read track in pack or full mode, assigned on the
+ * server. Items come in the order of their starts; each takes the row that came free
+ * first, if it did a pixel before the item, or else a new row while the mode has some
+ * left (ROWS). An item finding none is not sent: the Overflow of the track counts such
+ * items in every STEP pixels instead. Dense mode draws its items in one row, over one
+ * another, and is left as it is unless -Dgbhit.rows.dense caps it too.
+ *
+ * The rows in use are kept in a heap of longs, the position each comes free at in the
+ * high bits and its number in the low ROW_BITS.
+ */
+public final class Packing {
+	static final int DENSE_ROWS=Integer.getInteger("gbhit.rows.dense", 0);
+	static final int PACK_ROWS=Integer.getInteger("gbhit.rows.pack", 50);
+	static final int FULL_ROWS=Integer.getInteger("gbhit.rows.full", 200);
+	static final int STEP=2;
+	private static final int ROW_BITS=16;
+	private static final long ROW_MASK=(1L<<ROW_BITS)-1;
+
+	private final long start,end;
+	private final double bpp;
+	private final int max_rows;
+	private final long[] heap;
+	private int rows=0;
+	private final int[] hidden;
+	private int hidden_items=0;
+
+	private Packing(long start,long end,double bpp,int max_rows){
+		this.start=start;
+		this.end=end;
+		this.bpp=bpp;
+		this.max_rows=max_rows;
+		heap=new long[max_rows];
+		hidden=new int[Math.max(1, (int) Math.ceil((end-start+1)/(STEP*bpp)))];
+	}
+	/*
+	 * The packing of the window start to end (1-based) at bpp in mode, or null if mode
+	 * has no cap.
+	 */
+	static Packing of(String mode,long start,long end,double bpp){
+		int max_rows=mode.equals(Consts.MODE_PACK)?PACK_ROWS:mode.equals(Consts.MODE_FULL)?FULL_ROWS
+				:mode.equals(Consts.MODE_DENSE)?DENSE_ROWS:0;
+		if(max_rows<=0||bpp<=0)
+			return null;
+		return new Packing(start,end,bpp,(int) Math.min(max_rows, ROW_MASK));
+	}
+	/*
+	 * The row (from 0) of the item from to to (1-based), or -1 if it is hidden.
+	 */
+	public int row(long from,long to){
+		long free=(long) Math.ceil(to+bpp)+1;
+		if(rows>0&&(heap[0]>>>ROW_BITS)<=from){
+			int row=(int) (heap[0]&ROW_MASK);
+			heap[0]=free<<ROW_BITS|row;
+			sift_down(0);
+			return row;
+		}
+		if(rows<max_rows){
+			int row=rows;
+			heap[rows++]=free<<ROW_BITS|row;
+			sift_up(rows-1);
+			return row;
+		}
+		hide(from,to);
+		return -1;
+	}
+	/*
+	 * Set the row of item, or drop it. Whether it is sent.
+	 */
+	public boolean place(Element item,long from,long to){
+		int row=row(from,to);
+		if(row<0)
+			return false;
+		item.setAttribute(Consts.XML_TAG_ROW, Integer.toString(row));
+		return true;
+	}
+	private void hide(long from,long to){
+		if(to<start||from>end)
+			return;
+		int first=(int) ((Math.max(from,start)-start)/(STEP*bpp));
+		int last=Math.min(hidden.length-1, (int) ((Math.min(to,end)-start)/(STEP*bpp)));
+		for(int i=first;i<=last;i++)
+			hidden[i]++;
+		hidden_items++;
+	}
+	private void sift_up(int i){
+		long x=heap[i];
+		while(i>0){
+			int parent=(i-1)>>>1;
+			if(heap[parent]<=x)
+				break;
+			heap[i]=heap[parent];
+			i=parent;
+		}
+		heap[i]=x;
+	}
+	private void sift_down(int i){
+		long x=heap[i];
+		int half=rows>>>1;
+		while(i<half){
+			int child=2*i+1;
+			if(child+1<rows&&heap[child+1]<heap[child])
+				child++;
+			if(x<=heap[child])
+				break;
+			heap[i]=heap[child];
+			i=child;
+		}
+		heap[i]=x;
+	}
+	/*
+	 * Append the Overflow of items, if any item was hidden.
+	 */
+	public void write(Document doc,Element items){
+		if(hidden_items==0)
+			return;
+		Element overflow=doc.createElement(Consts.XML_TAG_OVERFLOW);
+		XmlWriter.append_text_element(doc, overflow, Consts.XML_TAG_FROM, Long.toString(start));
+		XmlWriter.append_text_element(doc, overflow, Consts.XML_TAG_TO, Long.toString(end));
+		XmlWriter.append_text_element(doc, overflow, Consts.XML_TAG_STEP, Integer.toString(STEP));
+		XmlWriter.append_text_element(doc, overflow, Consts.XML_TAG_VALUE_LIST, BAMValueList.intArray2IntString(hidden));
+		items.appendChild(overflow);
+		Metrics.count(Metrics.HIDDEN_ITEMS, hidden_items);
+	}
+}
@@ -0,0 +1,249 @@
+package filereaders;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import filereaders.gff.GDFReader;
+import filereaders.gff.GRFReader;
+import filereaders.gff.GVFReader;
+import filereaders.gff.Region;
+import filereaders.individual.Individual;
+import filereaders.individual.VariantMapToDBSNP;
+import filereaders.individual.vcf.Variant;
+
+/*
+ * Per-session cache of the personal genome reads of Instance: the personal variants
+ * merged with dbSNP, and the regions of the regulation and clinical tracks.
+ * They are read once per tile of TILE bases of a chromosome, and the items of a window
+ * are stitched from the tiles it covers, so panning, or moving back to a region seen
+ * before, only reads the tiles not read yet.
+ *
+ * A tile keeps the items overlapping it, in the order they were read. The items of a
+ * window are those of its first tile overlapping it, then those starting in each of
+ * the next tiles, so an item over a tile boundary comes once and the order is kept.
+ *
+ * Tiles are keyed by track, by what was read (file, SAMPLE...) and by position. A
+ * change of the parameters of a track must invalidate it; the least recently used
+ * tiles are dropped beyond MAX_TILES.
+ *
+ * A tile is read outside the lock of the cache, once: a thread needing a tile another
+ * one is reading (a request and Precompute, say) waits for that read only, the others
+ * go on with the tiles they have.
+ */
+
+class PersonalTiles {
+	static final int TILE=100000;
+	static final int MAX_TILES=256;
+
+	/*
+	 * Reads the items of one tile and gives their span. Items handed out are copies,
+	 * the tiles are never changed by their users.
+	 */
+	static abstract class Loader<T>{
+		/*
+		 * The items overlapping [from, to] of chr, or null if they can not be read.
+		 */
+		abstract List<T> load(String chr,int from,int to);
+		abstract int from(T item);
+		abstract int to(T item);
+		abstract T copy(T item);
+	}
+
+	private final LinkedHashMap<String,List<?>> tiles=new LinkedHashMap<String,List<?>>(64,0.75f,true){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,List<?>> eldest){
+			return size()>MAX_TILES;
+		}
+	};
+	/*
+	 * Reads of tiles in progress, by key; generation counts the invalidations, a tile
+	 * read across one is not kept.
+	 */
+	private final Map<String,FutureTask<List<?>>> loading=new HashMap<String,FutureTask<List<?>>>();
+	private int generation=0;
+	private long hits=0;
+	private long misses=0;
+
+	/*
+	 * Copies of the items of track overlapping [start, end] of chr, or null if a tile
+	 * can not be read.
+	 */
+	<T> List<T> get(String track,String source,String chr,long start,long end,Loader<T> loader){
+		int first=(int) ((start-1)/TILE);
+		int last=(int) ((end-1)/TILE);
+		List<T> items=new ArrayList<T>();
+		for(int t=first;t<=last;t++){
+			List<T> tile=tile(track, source, chr, t, loader);
+			if(tile==null)
+				return null;
+			int tile_start=t*TILE+1;
+			for(T item : tile){
+				if(loader.to(item)<start||loader.from(item)>end)
+					continue;
+				// Items starting before this tile are in the previous one
+				if(t>first&&loader.from(item)<tile_start)
+					continue;
+				items.add(loader.copy(item));
+			}
+		}
+		return items;
+	}
+	@SuppressWarnings("unchecked")
+	private <T> List<T> tile(String track,String source,final String chr,final int t,final Loader<T> loader){
+		String key=track+"\t"+source+"\t"+chr+"\t"+t;
+		for(;;){
+			FutureTask<List<?>> task;
+			int g;
+			boolean mine=false;
+			synchronized(this){
+				List<T> tile=(List<T>) tiles.get(key);
+				if(tile!=null){
+					hits++;
+					return tile;
+				}
+				g=generation;
+				task=loading.get(key);
+				if(task==null){
+					misses++;
+					task=new FutureTask<List<?>>(new Callable<List<?>>(){
+						public List<?> call(){
+							return loader.load(chr, t*TILE+1, (t+1)*TILE);
+						}
+					});
+					loading.put(key, task);
+					mine=true;
+				}
+			}
+			if(mine){
+				task.run();
+				synchronized(this){
+					if(loading.get(key)==task)
+						loading.remove(key);
+					List<?> tile=loaded(task);
+					if(tile!=null&&generation==g)
+						tiles.put(key, tile);
+				}
+			}
+			try{
+				return (List<T>) task.get();
+			} catch(ExecutionException e){
+				// The view of the reading thread was cancelled, not this one: read it here
+				if(!mine&&e.getCause() instanceof Cancellation.Cancelled)
+					continue;
+				if(e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw new IllegalStateException(e.getCause());
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+	}
+	/*
+	 * The tile read by task, which has run, or null if it failed: get throws the failure.
+	 */
+	private static List<?> loaded(FutureTask<List<?>> task){
+		try{
+			return task.get();
+		} catch(Exception e){
+			return null;
+		}
+	}
+	/*
+	 * The variants of the personal VCF or GVF track overlapping [start, end], merged
+	 * with dbsnp as Individual.mergeWithDBSNP merges them for the view: a view of more
+	 * than VARIANT_NUM_LIMIT variants gets them unmerged. Variants of the DENSE mode
+	 * depend on the zoom and are not kept.
+	 */
+	List<VariantMapToDBSNP> variants(final Annotations track,final Annotations dbsnp,final String mode,final double bpp,String chr,long start,long end){
+		Loader<VariantMapToDBSNP> loader=new Loader<VariantMapToDBSNP>(){
+			List<VariantMapToDBSNP> load(String chr,int from,int to){
+				List<Variant> vs;
+				if(track.get_Type().equals(Consts.FORMAT_GVF))
+					vs=new GVFReader(track.get_Path(chr)).read_gvf2variants(chr, from, to);
+				else{
+					VcfReader vr=new VcfReader(track,chr);
+					vr.changeBppLimit(Consts.LIMIT_BPP);
+					vs=vr.read_vcf2variants("_"+track.get_ID(), mode, bpp, chr, from, to).getVariants();
+				}
+				if(vs==null)
+					return null;
+				return new Individual(null, null, null, vs, false).mergeAllWithDBSNP(dbsnp.get_Path(chr), chr, from, to);
+			}
+			int from(VariantMapToDBSNP item){
+				return item.getVariant().getFrom();
+			}
+			int to(VariantMapToDBSNP item){
+				return item.getVariant().getTo();
+			}
+			VariantMapToDBSNP copy(VariantMapToDBSNP item){
+				return VariantMapToDBSNP.copy(item);
+			}
+		};
+		List<VariantMapToDBSNP> merged;
+		if(mode.equals(Consts.MODE_DENSE))
+			merged=loader.load(chr, (int) start, (int) end);
+		else
+			merged=get(track.get_ID(), track.get_Path(chr)+"\t"+VcfReader.read_Sample(track)+"\t"+mode, chr, start, end, loader);
+		if(merged!=null&&merged.size()>Individual.VARIANT_NUM_LIMIT)
+			for(int i=0;i<merged.size();i++)
+				merged.set(i, VariantMapToDBSNP.unmerged(merged.get(i)));
+		return merged;
+	}
+	/*
+	 * The regions of the GRF or GDF track overlapping [start, end], in file order.
+	 */
+	List<Region> regions(final Annotations track,String chr,long start,long end){
+		return get(track.get_ID(), track.get_Path(chr), chr, start, end, new Loader<Region>(){
+			List<Region> load(String chr,int from,int to){
+				if(track.get_Type().equals(Consts.FORMAT_GRF))
+					return new GRFReader(track.get_Path(chr)).read_grf2regions(chr, from, to);
+				return new GDFReader(track.get_Path(chr)).read_gdf2regions(chr, from, to);
+			}
+			int from(Region item){
+				return item.getFrom();
+			}
+			int to(Region item){
+				return item.getTo();
+			}
+			Region copy(Region item){
+				return Region.copy(item);
+			}
+		});
+	}
+	/*
+	 * Drop the tiles of track, after its parameters or its file changed.
+	 */
+	synchronized void invalidate(String track){
+		String prefix=track+"\t";
+		for(Iterator<String> it=tiles.keySet().iterator();it.hasNext();)
+			if(it.next().startsWith(prefix))
+				it.remove();
+		for(Iterator<String> it=loading.keySet().iterator();it.hasNext();)
+			if(it.next().startsWith(prefix))
+				it.remove();
+		generation++;
+	}
+	synchronized void clear(){
+		tiles.clear();
+		loading.clear();
+		generation++;
+	}
+	synchronized int size(){
+		return tiles.size();
+	}
+	synchronized long hits(){
+		return hits;
+	}
+	synchronized long misses(){
+		return misses;
+	}
+}
@@ -0,0 +1,216 @@
+package filereaders;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Background work on the personal genome of a session, started when one is selected
+ * (Instance.init_Pvar, add_Pvar), so the first views do not wait on it.
+ *
+ * It reads into the PersonalTiles of the session the tiles of the personal tracks
+ * (variants merged with dbSNP, regulation and clinical regions) around the current view,
+ * going outwards, then fills the scores of the cytobands not scored yet, which holds the
+ * consequences of the variants on the genes of the whole genome in IndividualStat.
+ * Tiles are limited to half of PersonalTiles.MAX_TILES, not to push out those the
+ * user reads.
+ *
+ * Jobs of all sessions run one at a time on a single thread of low priority, and wait
+ * between two tiles or cytobands while Interfaces serves a request (pause, resume).
+ * A request uses whatever the job has completed; one needing a tile the job is reading
+ * waits for that read, PersonalTiles reading it once, and the other tiles of the
+ * session are served meanwhile.
+ *
+ * At most MAX_QUEUED jobs wait, the oldest being dropped for a new one: the views of
+ * its session then read the tiles themselves. A job is cancelled, and taken out of the
+ * queue, when its personal genome is changed or removed, or its Instance is closed
+ * (Sessions dropping it).
+ */
+public class Precompute implements Runnable {
+	static final int MAX_QUEUED=64;
+	private static final ThreadPoolExecutor executor=new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<Runnable>(MAX_QUEUED),new ThreadFactory(){
+		public Thread newThread(Runnable r){
+			Thread t=new Thread(r,"gbhit-precompute");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		}
+	},new ThreadPoolExecutor.DiscardOldestPolicy());
+	private static final Object lock=new Object();
+	private static int interactive=0;
+
+	private volatile boolean cancelled=false;
+	private final PersonalTiles tiles;
+	private final Annotations pvar;
+	private final Annotations dbsnp;
+	private final List<Annotations> regions=new ArrayList<Annotations>();
+	private final IndividualStat is;
+	private final String ref;
+	private final String chr;
+	private final long start;
+	private final long length;
+	private final double bpp;
+
+	private Precompute(Instance ins){
+		tiles=ins.Ptiles;
+		pvar=ins.Pvar;
+		dbsnp=CfgReader.getBasicSnp(ins.Assembly);
+		if(ins.Pfanno!=null)
+			regions.add(ins.Pfanno);
+		regions.addAll(ins.Pclns.values());
+		is=ins.is;
+		ref=ins.Ref.get_Path();
+		// Start at the view, or at the beginning of the first chromosome
+		String c=ins.Chr;
+		long s=ins.Coordinate!=null?ins.Coordinate[0]:1;
+		if(c==null&&is!=null&&is.Cytobands.length>0)
+			c=is.Cytobands[0][0];
+		int chrid=c!=null?ins.check_chromosome(c):-1;
+		chr=chrid>=0?c:null;
+		start=s;
+		length=chrid>=0?ins.rr.fasta_index[chrid][0]:0;
+		bpp=ins.bpp;
+	}
+	/*
+	 * Start the work on the personal genome selected in ins.
+	 */
+	static Precompute start(Instance ins){
+		if(ins.Pvar==null)
+			return null;
+		Precompute job=new Precompute(ins);
+		executor.execute(job);
+		return job;
+	}
+	void cancel(){
+		cancelled=true;
+		executor.remove(this);
+	}
+	/*
+	 * An interactive request starts, the jobs wait until it ends.
+	 */
+	public static void pause(){
+		synchronized(lock){
+			interactive++;
+		}
+	}
+	public static void resume(){
+		synchronized(lock){
+			interactive--;
+			lock.notifyAll();
+		}
+	}
+	/*
+	 * Wait for the requests being served, false if interrupted.
+	 */
+	static boolean await_Idle(){
+		synchronized(lock){
+			while(interactive>0){
+				try{
+					lock.wait(1000);
+				} catch(InterruptedException e){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	/*
+	 * Wait for the requests being served, false if the job is to stop.
+	 */
+	private boolean proceed(){
+		synchronized(lock){
+			while(interactive>0&&!cancelled){
+				try{
+					lock.wait(1000);
+				} catch(InterruptedException e){
+					return false;
+				}
+			}
+		}
+		return !cancelled;
+	}
+	public void run(){
+		if(cancelled)
+			return;
+		if(chr!=null)
+			read_Tiles();
+		if(is!=null)
+			fill_Cytobands();
+	}
+	/*
+	 * Tiles of the chromosome of the view, from the tile of its start outwards.
+	 */
+	private void read_Tiles(){
+		boolean variants=!pvar.get_Mode().equals(Consts.MODE_DENSE)
+				&&(pvar.get_Type().equals(Consts.FORMAT_VCF)||pvar.get_Type().equals(Consts.FORMAT_GVF));
+		int kinds=regions.size()+(variants?1:0);
+		if(kinds==0)
+			return;
+		int budget=PersonalTiles.MAX_TILES/2/kinds;
+		int last=(int) ((length-1)/PersonalTiles.TILE);
+		int center=(int) ((start-1)/PersonalTiles.TILE);
+		for(int n=0,d=0;n<budget&&d<=last;d++){
+			for(int side=0;side<2&&n<budget;side++){
+				int t=side==0?center+d:center-d;
+				if(t<0||t>last||(d==0&&side==1))
+					continue;
+				long from=(long) t*PersonalTiles.TILE+1;
+				long to=(long) (t+1)*PersonalTiles.TILE;
+				try{
+					if(variants){
+						if(!proceed())
+							return;
+						tiles.variants(pvar, dbsnp, pvar.get_Mode(), bpp, chr, from, to);
+					}
+					for(Annotations region : regions){
+						if(!proceed())
+							return;
+						tiles.regions(region, chr, from, to);
+					}
+				} catch(Exception e){
+					e.printStackTrace();
+				}
+				Metrics.count(Metrics.PRECOMPUTED_TILES, 1);
+				n++;
+			}
+		}
+	}
+	/*
+	 * Scores of the cytobands not loaded or filled yet, those of the chromosome of the
+	 * view first. The reference is read with a FastaReader of the job, the one of the
+	 * session serves its requests.
+	 */
+	private void fill_Cytobands(){
+		if(!pvar.get_Type().equals(Consts.FORMAT_VCF)&&!pvar.get_Type().equals(Consts.FORMAT_GVF))
+			return;
+		FastaReader fr=null;
+		try{
+			for(int pass=0;pass<2;pass++){
+				for(int i=0;i<is.Cytobands.length;i++){
+					if((pass==0)!=is.Cytobands[i][0].equals(chr)||is.has_CytoScore(i))
+						continue;
+					if(!proceed())
+						return;
+					if(fr==null)
+						fr=new FastaReader(ref);
+					try{
+						is.fill_Cyto(is.Cytobands[i][0], is.Cytobands[i][3], fr, pvar);
+					} catch(Exception e){
+						e.printStackTrace();
+					}
+					Metrics.count(Metrics.PRECOMPUTED_CYTOBANDS, 1);
+				}
+			}
+		} catch(IOException e){
+			e.printStackTrace();
+		} finally{
+			if(fr!=null)
+				fr.close();
+		}
+	}
+}
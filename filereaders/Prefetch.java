@@ -0,0 +1,121 @@
+package filereaders;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+/*
+ * Speculative reads of the views a user is likely to ask for after an update: the
+ * windows one width left and right, and the view zoomed in and out 2x. Their visible
+ * tracks are read into a scratch document, as update would (through the nodes of a
+ * TrackCluster if there is one), and the personal tracks into the PersonalTiles of the
+ * session, so the next update finds the files, blocks and tiles it needs warm.
+ * Enabled by -Dgbhit.prefetch=true.
+ *
+ * The budget is global: one thread of low priority, which reads only while Interfaces
+ * serves no request (as Precompute), and MAX_PENDING sessions waiting, the oldest being
+ * dropped. A job belongs to the generation of the view it follows, so the next update or
+ * refresh of the session cancels it (Cancellation).
+ */
+class Prefetch implements Runnable {
+	static final boolean ENABLED=Boolean.getBoolean("gbhit.prefetch");
+	static final int MAX_PENDING=8;
+
+	private static final ThreadPoolExecutor executor=new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(MAX_PENDING),new ThreadFactory(){
+				public Thread newThread(Runnable r){
+					Thread t=new Thread(r,"gbhit-prefetch");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			},new ThreadPoolExecutor.DiscardOldestPolicy());
+
+	private final Instance ins;
+	private final int generation;
+	private final String chr;
+	private final List<long[]> windows=new ArrayList<long[]>(4);
+	private final List<Integer> widths=new ArrayList<Integer>(4);
+	private final List<Annotations> tracks=new ArrayList<Annotations>();
+	private final Annotations pvar;
+	private final Annotations dbsnp;
+	private final List<Annotations> regions=new ArrayList<Annotations>();
+
+	/*
+	 * Called by update with the view it wrote, under the lock of the views.
+	 */
+	private Prefetch(Instance ins,int generation){
+		this.ins=ins;
+		this.generation=generation;
+		chr=ins.Chr;
+		long start=ins.Coordinate[0],end=ins.Coordinate[1],w=end-start+1;
+		window(start-w, start-1);
+		window(end+1, end+w);
+		window(start+w/4, end-w/4);
+		window(start-w/2, end+w/2);
+		// Copies: reading a track may initialize its parameters
+		Enumeration<Annotations> annos_enum=ins.Annos.elements();
+		for(int i=0;i<ins.Annos.size();i++)
+			visible(annos_enum.nextElement());
+		Enumeration<Annotations> externals_enum=ins.Externals.elements();
+		for(int i=0;i<ins.Externals.size();i++)
+			visible(externals_enum.nextElement());
+		pvar=ins.Pvar;
+		dbsnp=CfgReader.getBasicSnp(ins.Assembly);
+		if(ins.Pvar!=null&&ins.Pfanno!=null)
+			regions.add(ins.Pfanno);
+		if(ins.Pvar!=null&&ins.Panno!=null)
+			regions.addAll(ins.Pclns.values());
+	}
+	private void window(long start,long end){
+		int chrid=ins.check_chromosome(chr);
+		long[] w=ins.check_coordinate(chrid, start, end);
+		if(w[1]<=w[0]||(w[0]==ins.Coordinate[0]&&w[1]==ins.Coordinate[1]))
+			return;
+		windows.add(w);
+		// The width of the view in pixels, as update takes it
+		widths.add((int) Math.round(ins.window_width*((double)(w[1]-w[0])/(double)(end-start))));
+	}
+	private void visible(Annotations track){
+		if(!track.get_Mode().equals(Consts.MODE_HIDE)&&track.get_Path(chr)!=null)
+			tracks.add(SerializationUtils.clone(track));
+	}
+	static void submit(Instance ins,int generation){
+		executor.execute(new Prefetch(ins,generation));
+	}
+	public void run(){
+		ins.views.enter(generation);
+		try{
+			for(int i=0;i<windows.size();i++){
+				if(!Precompute.await_Idle())
+					return;
+				Cancellation.check();
+				long[] w=windows.get(i);
+				Instance view=Instance.view(ins.Assembly, chr, w, widths.get(i));
+				view.append_tracks(tracks, XmlWriter.init(Consts.DATA_ROOT));
+				// As append_Ptrack reads them
+				if(pvar!=null&&w[1]-w[0]<=3000000){
+					if(pvar.get_Type().equals(Consts.FORMAT_VCF)||pvar.get_Type().equals(Consts.FORMAT_GVF))
+						ins.Ptiles.variants(pvar, dbsnp, pvar.get_Mode(), view.bpp, chr, w[0], w[1]);
+					for(Annotations region : regions){
+						Cancellation.check();
+						ins.Ptiles.regions(region, chr, w[0], w[1]);
+					}
+				}
+				Metrics.count(Metrics.PREFETCHED_WINDOWS, 1);
+			}
+		} catch(Cancellation.Cancelled e){
+			Metrics.count(Metrics.PREFETCH_CANCELLED, 1);
+		} catch(Exception e){
+			e.printStackTrace();
+		} finally{
+			ins.views.leave();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package filereaders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/*
+ * What a user set in an Instance, as a small serializable value: the assembly, the view,
+ * the modes and parameters of the tracks, the external tracks and the personal genome
+ * tracks. Instance.get_State takes it, Instance.restore builds an Instance from it; the
+ * rest (readers, annotations, gene table, tiles, IndividualStat) comes from the caches
+ * of the JVM or is read again. Kept in a SessionStore, it lets any server answer any
+ * request of a session.
+ */
+public class SessionState implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	String assembly;
+	String chr=null;
+	long[] coordinate=null;
+	int window_width;
+	double bpp;
+	/*
+	 * {id, mode, params, values} of the tracks of the assembly, params and values as
+	 * set_Params takes them.
+	 */
+	ArrayList<String[]> tracks=new ArrayList<String[]>();
+	/*
+	 * {id, link, type, mode, params, values} of the external tracks, link as
+	 * add_Externals takes it.
+	 */
+	ArrayList<String[]> externals=new ArrayList<String[]>();
+	String pvar=null;
+	String pvar_id=null;
+	/*
+	 * {id, mode} of the personal annotation, regulation and clinical tracks.
+	 */
+	String[] panno=null;
+	String[] pfanno=null;
+	ArrayList<String[]> pclns=new ArrayList<String[]>();
+
+	public byte[] to_Bytes(){
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream(1024);
+		try{
+			ObjectOutputStream out=new ObjectOutputStream(bytes);
+			out.writeObject(this);
+			out.close();
+		} catch(IOException e){
+			// Not thrown by a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+	/*
+	 * The state of bytes, or null if they are not one of this version.
+	 */
+	public static SessionState from_Bytes(byte[] bytes){
+		try{
+			ObjectInputStream in=new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try{
+				return (SessionState) in.readObject();
+			} finally{
+				in.close();
+			}
+		} catch(Exception e){
+			e.printStackTrace();
+			return null;
+		}
+	}
+}
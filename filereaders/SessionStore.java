@@ -0,0 +1,111 @@
+package filereaders;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Where the SessionState of each session is kept, as bytes, by session id.
+ * The store in memory serves one server; the one in files serves all the servers
+ * sharing its directory.
+ */
+public abstract class SessionStore {
+	/*
+	 * The state saved for id, or null.
+	 */
+	public abstract byte[] load(String id);
+	public abstract void save(String id,byte[] state);
+	public abstract void remove(String id);
+
+	/*
+	 * The store of spec: "file:" and a directory, or null or "memory" for the store in
+	 * memory.
+	 */
+	public static SessionStore create(String spec){
+		if(spec!=null&&spec.startsWith("file:"))
+			return new Files(new File(spec.substring("file:".length())));
+		return new Memory();
+	}
+
+	/*
+	 * States of the last MAX_SESSIONS sessions used.
+	 */
+	static class Memory extends SessionStore {
+		static final int MAX_SESSIONS=10000;
+		private final Map<String,byte[]> states=Collections.synchronizedMap(new LinkedHashMap<String,byte[]>(256,0.75f,true){
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,byte[]> eldest){
+				return size()>MAX_SESSIONS;
+			}
+		});
+		public byte[] load(String id){
+			return states.get(id);
+		}
+		public void save(String id,byte[] state){
+			states.put(id, state);
+		}
+		public void remove(String id){
+			states.remove(id);
+		}
+	}
+
+	/*
+	 * One file per session in dir, replaced whole on save, so a reader never sees half a
+	 * state. Files of expired sessions are left to the administrator.
+	 */
+	static class Files extends SessionStore {
+		private final File dir;
+		Files(File dir){
+			this.dir=dir;
+			dir.mkdirs();
+		}
+		private File file(String id){
+			return new File(dir,id.replaceAll("[^A-Za-z0-9._-]", "_")+".state");
+		}
+		public byte[] load(String id){
+			File f=file(id);
+			if(!f.isFile())
+				return null;
+			try{
+				RandomAccessFile raf=new RandomAccessFile(f,"r");
+				try{
+					byte[] state=new byte[(int) raf.length()];
+					raf.readFully(state);
+					return state;
+				} finally{
+					raf.close();
+				}
+			} catch(IOException e){
+				e.printStackTrace();
+				return null;
+			}
+		}
+		public void save(String id,byte[] state){
+			File f=file(id);
+			try{
+				File tmp=File.createTempFile(f.getName(), ".tmp", dir);
+				FileOutputStream out=new FileOutputStream(tmp);
+				try{
+					out.write(state);
+				} finally{
+					out.close();
+				}
+				// renameTo does not replace a file on Windows: then drop the old state first
+				if(!tmp.renameTo(f)&&!(f.delete()&&tmp.renameTo(f))){
+					tmp.delete();
+					throw new IOException("Can not move "+tmp+" to "+f);
+				}
+			} catch(IOException e){
+				e.printStackTrace();
+			}
+		}
+		public void remove(String id){
+			file(id).delete();
+		}
+	}
+}
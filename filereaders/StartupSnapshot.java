@@ -0,0 +1,357 @@
+package filereaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+ * Binary snapshot of the structures the servlet derives at startup:
+ * the compiled configure registry, the HGNC gene table, the .fai tables of references
+ * and the cytoband lines. It is written once at ingest time by main() and mapped
+ * read-only at startup instead of parsing the text files again.
+ *
+ * The snapshot is a sequence of sections, each tagged with the path, length and
+ * modification time of the file it was derived from. A section is only used while its
+ * source is unchanged; otherwise the reader falls back to parsing that one file.
+ * A missing, old-version or broken snapshot simply means everything is parsed as before.
+ *
+ * Usage: java filereaders.StartupSnapshot [output file]
+ */
+
+class StartupSnapshot {
+	static final int MAGIC=0x47424853;
+	static final int VERSION=1;
+	static final byte SECTION_CONFIG=1;
+	static final byte SECTION_GENES=2;
+	static final byte SECTION_FAI=3;
+	static final byte SECTION_CYTO=4;
+	static final String SNAPSHOT=location("gbhit.snapshot",Consts.SNAPSHOT);
+
+	private static boolean loaded=false;
+	private static CfgReader.Registry registry=null;
+	private static final HashMap<String,Genes.Table> genes=new HashMap<String,Genes.Table>();
+	private static final HashMap<String,FastaReader.Index> fais=new HashMap<String,FastaReader.Index>();
+	private static final HashMap<String,CytobandReader.Lines> cytos=new HashMap<String,CytobandReader.Lines>();
+
+	/*
+	 * Location given by a system property, as a file: URL like the Consts defaults.
+	 */
+	static String location(String property,String fallback){
+		String path=System.getProperty(property);
+		if(path==null)
+			return fallback;
+		if(path.indexOf(':')>1)
+			return path;
+		return new File(path).toURI().toString();
+	}
+	static File local_file(String path){
+		try{
+			if(path.startsWith("file:"))
+				return new File(new URI(path));
+		} catch(Exception e){
+			e.printStackTrace();
+		}
+		return new File(path);
+	}
+
+	/*
+	 * Each section is handed out once; later lookups go through the caches of the readers.
+	 */
+	static synchronized CfgReader.Registry registry(long config_modified){
+		load();
+		CfgReader.Registry reg=registry;
+		registry=null;
+		if(reg==null||reg.modified!=config_modified)
+			return null;
+		return reg;
+	}
+	static synchronized Genes.Table genes(String path){
+		load();
+		return genes.remove(path);
+	}
+	static synchronized FastaReader.Index fai(String fasta){
+		load();
+		return fais.remove(fasta);
+	}
+	static synchronized CytobandReader.Lines cytobands(String path){
+		load();
+		return cytos.remove(path);
+	}
+
+	private static void load(){
+		if(loaded)
+			return;
+		loaded=true;
+		File file=local_file(SNAPSHOT);
+		if(!file.isFile())
+			return;
+		try{
+			ByteBuffer bb=new ByteBufferChannel(file,0,file.length()).getByteBuffer();
+			if(bb==null||bb.getInt()!=MAGIC||bb.getInt()!=VERSION)
+				return;
+			int sections=bb.getInt();
+			for(int i=0;i<sections;i++){
+				byte type=bb.get();
+				String source=read_string(bb);
+				long length=bb.getLong();
+				long modified=bb.getLong();
+				int size=bb.getInt();
+				int end=bb.position()+size;
+				File source_file=local_file(source);
+				if(source_file.length()==length&&source_file.lastModified()==modified)
+					read_section(bb,type,source,length,modified);
+				bb.position(end);
+			}
+		} catch(Exception e){
+			e.printStackTrace();
+			registry=null;
+			genes.clear();
+			fais.clear();
+			cytos.clear();
+		}
+	}
+
+	private static void read_section(ByteBuffer bb,byte type,String source,long length,long modified){
+		if(type==SECTION_CONFIG)
+			registry=read_registry(bb,modified);
+		else if(type==SECTION_GENES)
+			genes.put(source,read_genes(bb));
+		else if(type==SECTION_FAI){
+			String fasta=source.substring(0,source.length()-".fai".length());
+			String[] names=read_strings(bb);
+			long[][] fasta_index=new long[names.length][4];
+			for(int i=0;i<names.length;i++)
+				for(int j=0;j<4;j++)
+					fasta_index[i][j]=bb.getLong();
+			fais.put(fasta,new FastaReader.Index(names,fasta_index,length,modified));
+		}
+		else if(type==SECTION_CYTO)
+			cytos.put(source,new CytobandReader.Lines(read_strings(bb),length,modified));
+	}
+
+	private static CfgReader.Registry read_registry(ByteBuffer bb,long modified){
+		String[] assemblies=read_strings(bb);
+		HashMap<String,CfgReader.AssemblyCfg> byid=new HashMap<String,CfgReader.AssemblyCfg>(assemblies.length*2);
+		for(int i=0;i<assemblies.length;i++){
+			CfgReader.AnnoCfg ref=read_anno(bb);
+			CfgReader.AnnoCfg genes=read_anno(bb);
+			CfgReader.AnnoCfg cyto=read_anno(bb);
+			CfgReader.AnnoCfg snp=read_anno(bb);
+			CfgReader.AnnoCfg[] annos=new CfgReader.AnnoCfg[bb.getInt()];
+			for(int j=0;j<annos.length;j++)
+				annos[j]=read_anno(bb);
+			byid.put(assemblies[i],new CfgReader.AssemblyCfg(assemblies[i],ref,genes,cyto,snp,annos));
+		}
+		return new CfgReader.Registry(assemblies,byid,modified);
+	}
+	private static CfgReader.AnnoCfg read_anno(ByteBuffer bb){
+		if(bb.get()==0)
+			return null;
+		String id=read_string(bb);
+		String group=read_string(bb);
+		String format=read_string(bb);
+		String mode=read_string(bb);
+		String path=read_string(bb);
+		int count=bb.getInt();
+		String[][] paths=null;
+		if(count>=0){
+			paths=new String[count][];
+			for(int i=0;i<count;i++)
+				paths[i]=new String[]{read_string(bb),read_string(bb)};
+		}
+		return new CfgReader.AnnoCfg(id,group,format,mode,path,paths);
+	}
+	private static Genes.Table read_genes(ByteBuffer bb){
+		Genes.Table t=new Genes.Table();
+		t.Symbols=read_strings(bb);
+		t.Symbols_sorted=read_strings(bb);
+		t.HGNCs=read_strings(bb);
+		t.Entrezs=read_strings(bb);
+		t.RefSeqs=read_strings(bb);
+		t.UCSCs=read_strings(bb);
+		t.Ensembls=read_strings(bb);
+		t.Names=read_strings(bb);
+		t.Chrs=read_ints(bb);
+		t.Starts=read_ints(bb);
+		t.Ends=read_ints(bb);
+		t.ChrList=read_strings(bb);
+		t.ChrStarts=read_ints(bb);
+		t.ChrEnds=read_ints(bb);
+		return t;
+	}
+
+	/*
+	 * Strings are stored as ISO-8859-1 bytes, the encoding every reader here decodes with;
+	 * length -1 stands for null.
+	 */
+	private static String read_string(ByteBuffer bb){
+		int len=bb.getInt();
+		if(len<0)
+			return null;
+		char[] chars=new char[len];
+		for(int i=0;i<len;i++)
+			chars[i]=(char)(bb.get()&0xff);
+		return new String(chars);
+	}
+	private static String[] read_strings(ByteBuffer bb){
+		String[] strs=new String[bb.getInt()];
+		for(int i=0;i<strs.length;i++)
+			strs[i]=read_string(bb);
+		return strs;
+	}
+	private static int[] read_ints(ByteBuffer bb){
+		int[] ints=new int[bb.getInt()];
+		bb.asIntBuffer().get(ints);
+		bb.position(bb.position()+ints.length*4);
+		return ints;
+	}
+
+	private static void write_string(DataOutputStream out,String str) throws IOException{
+		if(str==null){
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(str.length());
+		for(int i=0;i<str.length();i++)
+			out.write(str.charAt(i));
+	}
+	private static void write_strings(DataOutputStream out,String[] strs) throws IOException{
+		out.writeInt(strs.length);
+		for(int i=0;i<strs.length;i++)
+			write_string(out,strs[i]);
+	}
+	private static void write_ints(DataOutputStream out,int[] ints) throws IOException{
+		out.writeInt(ints.length);
+		for(int i=0;i<ints.length;i++)
+			out.writeInt(ints[i]);
+	}
+	private static void write_anno(DataOutputStream out,CfgReader.AnnoCfg anno) throws IOException{
+		if(anno==null){
+			out.writeByte(0);
+			return;
+		}
+		out.writeByte(1);
+		write_string(out,anno.id);
+		write_string(out,anno.group);
+		write_string(out,anno.format);
+		write_string(out,anno.mode);
+		write_string(out,anno.path);
+		if(anno.paths==null)
+			out.writeInt(-1);
+		else{
+			out.writeInt(anno.paths.length);
+			for(int i=0;i<anno.paths.length;i++){
+				write_string(out,anno.paths[i][0]);
+				write_string(out,anno.paths[i][1]);
+			}
+		}
+	}
+
+	private static final class Section{
+		final byte type;
+		final String source;
+		final long length;
+		final long modified;
+		final ByteArrayOutputStream payload=new ByteArrayOutputStream();
+		final DataOutputStream out=new DataOutputStream(payload);
+		Section(byte type,String source){
+			File file=local_file(source);
+			this.type=type;
+			this.source=source;
+			this.length=file.length();
+			this.modified=file.lastModified();
+		}
+	}
+
+	static void write(File snapshot) throws IOException{
+		ArrayList<Section> sections=new ArrayList<Section>();
+		CfgReader.Registry reg=CfgReader.registry();
+		Section config=new Section(SECTION_CONFIG,CfgReader.CONFIG);
+		write_strings(config.out,reg.assemblies);
+		for(int i=0;i<reg.assemblies.length;i++){
+			CfgReader.AssemblyCfg assembly=reg.assemblies_byid.get(reg.assemblies[i]);
+			write_anno(config.out,assembly.ref);
+			write_anno(config.out,assembly.genes);
+			write_anno(config.out,assembly.cyto);
+			write_anno(config.out,assembly.snp);
+			config.out.writeInt(assembly.annos.length);
+			for(int j=0;j<assembly.annos.length;j++)
+				write_anno(config.out,assembly.annos[j]);
+		}
+		sections.add(config);
+
+		for(int i=0;i<reg.assemblies.length;i++){
+			CfgReader.AssemblyCfg assembly=reg.assemblies_byid.get(reg.assemblies[i]);
+			if(assembly.ref!=null&&assembly.ref.path!=null&&new File(assembly.ref.path+".fai").isFile()){
+				FastaReader.Index index=FastaReader.derive_index(assembly.ref.path);
+				Section fai=new Section(SECTION_FAI,assembly.ref.path+".fai");
+				write_strings(fai.out,index.names());
+				for(int j=0;j<index.fasta_index.length;j++)
+					for(int k=0;k<4;k++)
+						fai.out.writeLong(index.fasta_index[j][k]);
+				sections.add(fai);
+			}
+			if(assembly.cyto!=null&&assembly.cyto.path!=null&&new File(assembly.cyto.path).isFile()){
+				Section cyto=new Section(SECTION_CYTO,assembly.cyto.path);
+				write_strings(cyto.out,CytobandReader.derive(assembly.cyto.path).cytobands);
+				sections.add(cyto);
+			}
+			if(assembly.genes!=null&&assembly.genes.path!=null&&new File(assembly.genes.path).isFile()){
+				Genes.Table t=Genes.Table.derive(assembly.genes.path);
+				Section gene=new Section(SECTION_GENES,assembly.genes.path);
+				write_strings(gene.out,t.Symbols);
+				write_strings(gene.out,t.Symbols_sorted);
+				write_strings(gene.out,t.HGNCs);
+				write_strings(gene.out,t.Entrezs);
+				write_strings(gene.out,t.RefSeqs);
+				write_strings(gene.out,t.UCSCs);
+				write_strings(gene.out,t.Ensembls);
+				write_strings(gene.out,t.Names);
+				write_ints(gene.out,t.Chrs);
+				write_ints(gene.out,t.Starts);
+				write_ints(gene.out,t.Ends);
+				write_strings(gene.out,t.ChrList);
+				write_ints(gene.out,t.ChrStarts);
+				write_ints(gene.out,t.ChrEnds);
+				sections.add(gene);
+			}
+		}
+
+		File temp=new File(snapshot.getPath()+".tmp");
+		DataOutputStream out=new DataOutputStream(new FileOutputStream(temp));
+		try{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sections.size());
+			for(int i=0;i<sections.size();i++){
+				Section s=sections.get(i);
+				s.out.flush();
+				out.writeByte(s.type);
+				write_string(out,s.source);
+				out.writeLong(s.length);
+				out.writeLong(s.modified);
+				out.writeInt(s.payload.size());
+				s.payload.writeTo(out);
+			}
+		} finally{
+			out.close();
+		}
+		if(!temp.renameTo(snapshot)){
+			snapshot.delete();
+			if(!temp.renameTo(snapshot))
+				throw new IOException("Cannot replace "+snapshot);
+		}
+	}
+
+	public static void main(String[] args) throws IOException{
+		File snapshot=args.length>0?new File(args[0]):local_file(SNAPSHOT);
+		write(snapshot);
+		System.out.println("Snapshot written to "+snapshot);
+	}
+}
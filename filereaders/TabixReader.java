@@ -37,6 +37,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.lang.StringBuffer;
 
+import filereaders.tools.BlockCache;
+
 public class TabixReader {
 	/**
 	 * �ļ�·��
@@ -116,10 +118,10 @@ public class TabixReader {
 		mFn = fn;
 		if (fn.startsWith("http:") || fn.startsWith("https:")
 				|| fn.startsWith("ftp:")) // Liran added
-			mFp = new BlockCompressedInputStream(new URL(fn)); // Liran added
+			mFp = BlockCache.open(new URL(fn)); // Liran added
 		else
 			// Liran added
-			mFp = new BlockCompressedInputStream(new File(fn));
+			mFp = BlockCache.open(new File(fn));
 		readIndex();
 	}
 
@@ -254,7 +256,9 @@ public class TabixReader {
 		else
 			// Liran added
 			is = new BlockCompressedInputStream(new File(mFn + ".tbi"));
+		long start = System.nanoTime();
 		readIndex(is);
+		Metrics.stage(Metrics.STAGE_INDEX, System.nanoTime() - start);
 	}
 
 	/**
@@ -382,7 +386,27 @@ public class TabixReader {
 			end = _end;
 		}
 
+		private long elapsed, bytes;
+
+		/**
+		 * Next overlapping line. Time spent seeking, inflating and scanning
+		 * is reported to Metrics once the iterator is exhausted.
+		 */
 		public String next() throws IOException {
+			if (iseof)
+				return null;
+			Cancellation.check();
+			long start = System.nanoTime();
+			String s = next_line();
+			elapsed += System.nanoTime() - start;
+			if (s == null) {
+				Metrics.stage(Metrics.STAGE_DECOMPRESS, elapsed);
+				Metrics.count(Metrics.BYTES_READ, bytes);
+			}
+			return s;
+		}
+
+		private String next_line() throws IOException {
 			if (iseof)
 				return null;
 			for (;;) {
@@ -394,6 +418,7 @@ public class TabixReader {
 						break; // no more chunks
 					if (i >= 0)
 						assert (curr_off == off[i].v); // otherwise bug
+					BlockCache.readAhead(mFp, off[i + 1].v);
 					if (i < 0 || off[i].v != off[i + 1].u) { // not adjacent
 																// chunks; then
 																// seek
@@ -405,6 +430,7 @@ public class TabixReader {
 				}
 				String s;
 				if ((s = readLine(mFp)) != null) {
+					bytes += s.length() + 1;
 					TIntv intv;
 					char[] str = s.toCharArray();
 					curr_off = mFp.getFilePointer();
@@ -0,0 +1,199 @@
+package filereaders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/*
+ * The data nodes (TrackNode) Instance.update sends its tracks to, when -Dgbhit.nodes
+ * lists them as host:port,host:port. A track goes to the node of its path on a ring of
+ * consistent hashing, VNODES points per node, so each node reads the same files and keeps
+ * their readers and blocks cached, and adding a node moves only the tracks it takes.
+ *
+ * Fragments are fetched in parallel. A track the node refuses or fails (a file it can
+ * not see or may not read, an error) is read here. A node that can not be reached, or
+ * does not answer within TIMEOUT milliseconds (-Dgbhit.node.timeout), is left for
+ * DOWN_MILLIS, all its tracks being read here meanwhile. So a view never lacks a track
+ * because of a node. Fallbacks are logged to the logger "filereaders.TrackCluster", which
+ * the servlet sends to its log.
+ */
+class TrackCluster {
+	static final int VNODES=64;
+	static final int TIMEOUT=Integer.getInteger("gbhit.node.timeout", 5000);
+	static final long DOWN_MILLIS=10000;
+	private static final Logger log=Logger.getLogger(TrackCluster.class.getName());
+
+	private static final TrackCluster cluster=create(System.getProperty("gbhit.nodes"));
+	private static final ExecutorService executor=Executors.newCachedThreadPool(new ThreadFactory(){
+		public Thread newThread(Runnable r){
+			Thread t=new Thread(r,"gbhit-scatter");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final TreeMap<Long,String> ring=new TreeMap<Long,String>();
+	private final Map<String,Long> down=new ConcurrentHashMap<String,Long>();
+
+	TrackCluster(String[] nodes){
+		for(String node : nodes)
+			for(int i=0;i<VNODES;i++)
+				ring.put(hash(node+"#"+i), node);
+	}
+	/*
+	 * The cluster of -Dgbhit.nodes, or null to read every track here.
+	 */
+	static TrackCluster get(){
+		return cluster;
+	}
+	static TrackCluster create(String nodes){
+		if(nodes==null||nodes.trim().length()==0)
+			return null;
+		return new TrackCluster(nodes.trim().split("\\s*,\\s*"));
+	}
+	private static long hash(String key){
+		try{
+			byte[] d=MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+			long h=0;
+			for(int i=0;i<8;i++)
+				h=(h<<8)|(d[i]&0xff);
+			return h;
+		} catch(NoSuchAlgorithmException e){
+			throw new IllegalStateException(e);
+		} catch(UnsupportedEncodingException e){
+			throw new IllegalStateException(e);
+		}
+	}
+	/*
+	 * The node serving path, the first point of the ring at or after its hash.
+	 */
+	String node(String path){
+		Map.Entry<Long,String> e=ring.ceilingEntry(hash(path));
+		return (e!=null?e:ring.firstEntry()).getValue();
+	}
+	boolean is_Down(String node){
+		Long since=down.get(node);
+		if(since==null)
+			return false;
+		if(System.currentTimeMillis()-since>DOWN_MILLIS){
+			down.remove(node);
+			return false;
+		}
+		return true;
+	}
+	/*
+	 * The fragment of track over the view, as written by Instance.write_track on its
+	 * node, or null if the node is down. The fragment is null if the node refused the
+	 * track.
+	 */
+	Future<byte[]> fetch(String assembly,Annotations track,String chr,long[] coordinate,int window_width,String[] state){
+		final String node=node(track.get_Path(chr));
+		if(is_Down(node))
+			return null;
+		final String query;
+		try{
+			query="assembly="+encode(assembly)+"&id="+encode(track.get_ID())+"&path="+encode(track.get_Path(chr))
+					+"&type="+encode(track.get_Type())+"&mode="+encode(track.get_Mode())+"&group="+encode(track.get_Group())
+					+"&params="+encode(state[2])+"&values="+encode(state[3])+"&chr="+encode(chr)
+					+"&start="+coordinate[0]+"&end="+coordinate[1]+"&width="+window_width;
+		} catch(UnsupportedEncodingException e){
+			throw new IllegalStateException(e);
+		}
+		return executor.submit(new Callable<byte[]>(){
+			public byte[] call() throws IOException{
+				HttpURLConnection con=(HttpURLConnection) new URL("http://"+node+TrackNode.PATH+"?"+query).openConnection();
+				con.setConnectTimeout(TIMEOUT);
+				con.setReadTimeout(TIMEOUT);
+				try{
+					int status=con.getResponseCode();
+					if(status==HttpURLConnection.HTTP_NOT_FOUND||status==HttpURLConnection.HTTP_FORBIDDEN)
+						return null;
+					if(status!=HttpURLConnection.HTTP_OK)
+						throw new IOException(node+" answered "+status);
+					InputStream in=con.getInputStream();
+					ByteArrayOutputStream out=new ByteArrayOutputStream(8192);
+					byte[] buffer=new byte[8192];
+					for(int n;(n=in.read(buffer))>0;)
+						out.write(buffer,0,n);
+					in.close();
+					return out.toByteArray();
+				} finally{
+					con.disconnect();
+				}
+			}
+		});
+	}
+	/*
+	 * Append the fragment to doc, false if the node refused or failed the track, or is
+	 * late, so the track is read here. Only a node late or not reached is marked down.
+	 */
+	boolean gather(Annotations track,String chr,Future<byte[]> fragment,Document doc,long deadline){
+		String node=node(track.get_Path(chr));
+		try{
+			byte[] xml=fragment.get(Math.max(1, deadline-System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			if(xml==null){
+				log.fine("Track "+track.get_ID()+" read here, refused by node "+node);
+				Metrics.count(Metrics.REMOTE_FALLBACKS, 1);
+				return false;
+			}
+			NodeList nl=DocumentBuilderFactory.newInstance().newDocumentBuilder()
+					.parse(new ByteArrayInputStream(xml)).getDocumentElement().getChildNodes();
+			Node root=doc.getDocumentElement();
+			for(int i=0;i<nl.getLength();i++)
+				root.appendChild(doc.importNode(nl.item(i), true));
+			Metrics.count(Metrics.REMOTE_TRACKS, 1);
+			return true;
+		} catch(Exception e){
+			fragment.cancel(true);
+			Throwable cause=e instanceof ExecutionException&&e.getCause()!=null?e.getCause():e;
+			if(unreachable(cause)){
+				down.put(node, System.currentTimeMillis());
+				log.warning("Node "+node+" down for "+DOWN_MILLIS+" ms, track "+track.get_ID()+" read here: "+cause);
+			}
+			else
+				log.log(Level.WARNING, "Track "+track.get_ID()+" read here, node "+node+" failed", cause);
+			Metrics.count(Metrics.REMOTE_FALLBACKS, 1);
+			return false;
+		}
+	}
+	/*
+	 * Whether the node was late or could not be reached, rather than failing the track.
+	 */
+	private static boolean unreachable(Throwable e){
+		return e instanceof TimeoutException||e instanceof SocketTimeoutException||e instanceof ConnectException
+				||e instanceof NoRouteToHostException||e instanceof UnknownHostException;
+	}
+	private static String encode(String s) throws UnsupportedEncodingException{
+		return URLEncoder.encode(s==null?"":s, "UTF-8");
+	}
+}
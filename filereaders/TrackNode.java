@@ -0,0 +1,184 @@
+package filereaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * A data node of TrackCluster: answers GET PATH with the fragment of one track over one
+ * view, the elements Instance.write_track appends for it, under the data root.
+ * The request carries the path, type and parameters of the track. Tracks are kept
+ * initialized (a VCF track with its header parameters) in an LRU of MAX_TRACKS, the
+ * readers keep their own caches.
+ *
+ * The requests are not authenticated, so the node only reads the track files of its
+ * config.xml (-Dgbhit.config, as the servlet's) and the files under -Dgbhit.node.roots,
+ * directories or URL prefixes separated by ",", AutoIndex.DIR by default for the external
+ * tracks the servlet indexed: 403 for any other path, 404 for one it can not see. Both
+ * make the coordinator read the track itself.
+ *
+ * Run as: java filereaders.TrackNode [host:]port [threads]
+ * Without a host it listens on the loopback address only, e.g. several on one machine
+ * with -Dgbhit.nodes=127.0.0.1:9101,127.0.0.1:9102 on the servlet; give the address of
+ * an interface to serve other machines.
+ */
+public class TrackNode implements HttpHandler {
+	static final String PATH="/track";
+	static final int MAX_TRACKS=1024;
+	static final String[] ROOTS=System.getProperty("gbhit.node.roots",AutoIndex.DIR.getPath()).trim().split("\\s*,\\s*");
+
+	private final Map<String,Annotations> tracks=Collections.synchronizedMap(new LinkedHashMap<String,Annotations>(64,0.75f,true){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Annotations> eldest){
+			return size()>MAX_TRACKS;
+		}
+	});
+
+	/*
+	 * Canonical paths and URLs of the track files of the config, and the registry they
+	 * were taken from.
+	 */
+	private Set<String> configured=Collections.emptySet();
+	private Object registry=null;
+
+	public static void main(String[] args) throws IOException{
+		if(args.length<1){
+			System.err.println("Usage: java filereaders.TrackNode [host:]port [threads]");
+			System.exit(1);
+		}
+		int colon=args[0].lastIndexOf(':');
+		// getByName(null) is the loopback address
+		InetSocketAddress address=colon<0?new InetSocketAddress(InetAddress.getByName(null),Integer.parseInt(args[0]))
+				:new InetSocketAddress(args[0].substring(0, colon),Integer.parseInt(args[0].substring(colon+1)));
+		int threads=args.length>1?Integer.parseInt(args[1]):2*Runtime.getRuntime().availableProcessors();
+		HttpServer server=HttpServer.create(address, 0);
+		server.createContext(PATH, new TrackNode());
+		server.setExecutor(Executors.newFixedThreadPool(threads));
+		server.start();
+		System.err.println("TrackNode on "+address);
+	}
+	public void handle(HttpExchange ex) throws IOException{
+		try{
+			Map<String,String> q=query(ex.getRequestURI().getRawQuery());
+			String path=q.get("path");
+			if(path==null||!allowed(path)){
+				send(ex, 403, new byte[0]);
+				return;
+			}
+			// 404 makes the coordinator read a file this node can not see
+			if(path.indexOf("://")<0&&!new File(path).exists()){
+				send(ex, 404, new byte[0]);
+				return;
+			}
+			long[] coordinate=new long[]{Long.parseLong(q.get("start")),Long.parseLong(q.get("end"))};
+			Instance view=Instance.view(q.get("assembly"), q.get("chr"), coordinate, Integer.parseInt(q.get("width")));
+			String xml=view.fragment(track(view,q));
+			send(ex, 200, xml.getBytes("UTF-8"));
+		} catch(Exception e){
+			e.printStackTrace();
+			send(ex, 500, new byte[0]);
+		} finally{
+			ex.close();
+		}
+	}
+	/*
+	 * Whether path is a track file of the config or under one of ROOTS.
+	 */
+	private boolean allowed(String path) throws IOException{
+		String name=canonical(path);
+		for(String root : ROOTS){
+			if(root.length()==0)
+				continue;
+			String prefix=canonical(root);
+			if(name.equals(prefix)||name.startsWith(prefix.endsWith("/")?prefix:prefix+"/"))
+				return true;
+		}
+		return configured().contains(name);
+	}
+	private static String canonical(String path) throws IOException{
+		if(path.indexOf("://")>=0){
+			try{
+				return new URI(path).normalize().toString();
+			} catch(URISyntaxException e){
+				throw new IOException(e);
+			}
+		}
+		return new File(path).getCanonicalPath();
+	}
+	private synchronized Set<String> configured(){
+		Object current=CfgReader.registry();
+		if(current==registry)
+			return configured;
+		Set<String> files=new HashSet<String>();
+		for(String assembly : CfgReader.getAssemblies()){
+			Annotations[] annos=CfgReader.getAnnotations(assembly);
+			for(int i=0;annos!=null&&i<annos.length;i++)
+				for(String path : annos[i].get_Paths()){
+					try{
+						if(path!=null)
+							files.add(canonical(path));
+					} catch(Exception e){
+						e.printStackTrace();
+					}
+				}
+		}
+		configured=files;
+		registry=current;
+		return files;
+	}
+	/*
+	 * A copy of the track of the request, initialized once.
+	 */
+	private Annotations track(Instance view,Map<String,String> q){
+		String group=q.get("group");
+		String key=q.get("id")+"\t"+q.get("path")+"\t"+q.get("type")+"\t"+group+"\t"+q.get("params")+"\t"+q.get("values");
+		Annotations template=tracks.get(key);
+		if(template==null){
+			template=new Annotations(q.get("id"),q.get("path"),q.get("type"),q.get("mode"),group.length()>0?group:null);
+			view.set_State(template, q.get("params"), q.get("values"));
+			tracks.put(key, template);
+		}
+		Annotations track=SerializationUtils.clone(template);
+		track.set_Mode(q.get("mode"));
+		return track;
+	}
+	private static Map<String,String> query(String raw) throws IOException{
+		Map<String,String> q=new HashMap<String,String>();
+		if(raw==null)
+			return q;
+		for(String pair : raw.split("&")){
+			int eq=pair.indexOf('=');
+			if(eq>0)
+				q.put(URLDecoder.decode(pair.substring(0, eq),"UTF-8"), URLDecoder.decode(pair.substring(eq+1),"UTF-8"));
+		}
+		return q;
+	}
+	private static void send(HttpExchange ex,int status,byte[] body) throws IOException{
+		ex.getResponseHeaders().set("Content-Type", "application/xml");
+		ex.sendResponseHeaders(status, body.length>0?body.length:-1);
+		if(body.length>0){
+			OutputStream out=ex.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+	}
+}
@@ -183,6 +183,40 @@ public class VcfReader {
 	
 	public Element write_vcf2variants(Document doc, String track, String mode,
 			double bpp/* bases per pixel */, String chr, long start, long end) {
+		Variants[] variants = create_Variants(doc, track, mode, bpp);
+		query(variants, chr, start, end);
+		Element e1 = variants[0].getVariantsElement();
+		variants = null;
+		return e1;
+	}
+
+	/**
+	 * Same query as write_vcf2variants, but the variants of the first
+	 * selected SAMPLE (or of DBSnp) are kept as objects instead of being
+	 * written to a <code>Document</code>.
+	 */
+	public Variants read_vcf2variants(String track, String mode,
+			double bpp/* bases per pixel */, String chr, long start, long end) {
+		Variants[] variants = create_Variants(null, track, mode, bpp);
+		query(variants, chr, start, end);
+		return variants[0];
+	}
+
+	/**
+	 * The SAMPLE whose variants read_vcf2variants keeps, null for DBSnp or a
+	 * personal VCF without any SAMPLE chosen.
+	 */
+	static String read_Sample(Annotations track) {
+		if (!track.has_Parameter(VCF_HEADER_SAMPLE))
+			return null;
+		VcfSample vcfSample = (VcfSample) track.get_Parameter(VCF_HEADER_SAMPLE);
+		if (vcfSample.getSamplesNum() == 0 || vcfSample.getSelectedIndexes() == null
+				|| vcfSample.getSelectedNames().length == 0)
+			return null;
+		return vcfSample.getSelectedNames()[0];
+	}
+
+	private Variants[] create_Variants(Document doc, String track, String mode, double bpp) {
 		float qualLimit = Float.parseFloat((String) (this.track
 				.get_Parameter(VCF_QUAL_LIMIT)));
 		String[] filterLimit = getFilterLimit();
@@ -212,6 +246,22 @@ public class VcfReader {
 				variants[i] = new Variants(track, selectedNames[i], doc, mode, bpp, bppLimit, qualLimit, filterLimit);
 			}
 		}
+		return variants;
+	}
+
+	private void query(Variants[] variants, String chr, long start, long end) {
+		float qualLimit = Float.parseFloat((String) (this.track
+				.get_Parameter(VCF_QUAL_LIMIT)));
+		String[] filterLimit = getFilterLimit();
+
+		int samplesNum = 0;
+		int[] selectedIndexes = null;
+		if (this.track.has_Parameter(VCF_HEADER_SAMPLE)) {
+			VcfSample vcfSample = (VcfSample) this.track
+					.get_Parameter(VCF_HEADER_SAMPLE);
+			samplesNum = vcfSample.getSamplesNum();
+			selectedIndexes = vcfSample.getSelectedIndexes();
+		}
 
 		Vcf vcf = null;
 		try {
@@ -259,10 +309,8 @@ public class VcfReader {
 				}
 			}
 		}
-		Element e1 = variants[0].getVariantsElement();
-		variants = null;
-		return e1;
 	}
+
 	private String[] getFilterLimit() {
 		Object o = this.track.get_Parameter(VCF_HEADER_FILTER);
 		if (o == null)
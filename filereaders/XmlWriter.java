@@ -42,6 +42,7 @@ public class XmlWriter {
 	}
 	static String xml2string(Document doc){
 		String xml="";
+		long start=System.nanoTime();
 		try{
 			TransformerFactory tf = TransformerFactory.newInstance();
 			Transformer transformer = tf.newTransformer();
@@ -53,6 +54,7 @@ public class XmlWriter {
 		catch(Exception e){
 			e.printStackTrace();
 		}
+		Metrics.stage(Metrics.STAGE_SERIALIZE, System.nanoTime()-start);
 		return xml;
 	}
 }
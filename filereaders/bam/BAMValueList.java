@@ -71,6 +71,28 @@ public class BAMValueList {
 		}
 	}
 
+	/**
+	 * Like update, for weight elements at once.
+	 * 
+	 * @param relativeStart
+	 *            Start position relative to alignment start
+	 * @param relativeEnd
+	 *            End position relative to alignment start
+	 * @param weight
+	 *            how many elements the region stands for
+	 */
+	public void update(int relativeStart, int relativeEnd, double weight) {
+		int startRegion = relativeStart <= 0 ? 0
+				: ((int) (relativeStart / span));
+		int endRegion = (int) (relativeEnd / span);
+		if (endRegion >= divideWindowSize)
+			endRegion = divideWindowSize - 1;
+		double divide = weight / (endRegion - startRegion + 1);
+		for (int i = startRegion; i <= endRegion; i++) {
+			regions[i] += divide;
+		}
+	}
+
 	public double[] getResults() {
 		return regions;
 	}
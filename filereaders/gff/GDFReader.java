@@ -3,10 +3,13 @@ package filereaders.gff;
 import static filereaders.Consts.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import filereaders.Cancellation;
 import filereaders.TabixReader;
 import filereaders.XmlWriter;
 import filereaders.tools.StringSplit;
@@ -87,6 +90,8 @@ public class GDFReader {
 						elements.appendChild(element);
 					}
 				}
+		} catch(Cancellation.Cancelled e){
+			throw e;
 		} catch(Exception e){
 			e.printStackTrace();
 		} finally{
@@ -100,10 +105,14 @@ public class GDFReader {
 		return elements;
 	}
 	public Element write_gdf2elements(Document doc, String track, String chr, int start, int end) throws IOException {
-		Element elements = doc.createElement(XML_TAG_ELEMENTS);
-		elements.setAttribute(XML_TAG_ID, track);
-		doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(elements); // Elements
-		
+		return Region.write2xml(doc, track, read_gdf2regions(chr, start, end));
+	}
+
+	/**
+	 * The regions write_gdf2elements writes, in file order.
+	 */
+	public List<Region> read_gdf2regions(String chr, int start, int end) {
+		List<Region> regions = new ArrayList<Region>();
 		TabixReader tabix = null;
 		try{
 			tabix = new TabixReader(this.path);
@@ -116,28 +125,28 @@ public class GDFReader {
 			StringSplit split = new StringSplit('\t');
 			StringSplit DNameSplit = new StringSplit(';');
 			StringSplit equalSignSplit = new StringSplit('=');
-			Element element = null;
+			Region region = null;
 			if (Query != null) {
 				while ((line = Query.next()) != null) {
 					split.split(line);
-					element = doc.createElement(XML_TAG_ELEMENT);
 					String DName = DNameSplit.split(split.getResultByIndex(8)).getResultByIndex(0);
-					element.setAttribute(XML_TAG_ID, equalSignSplit.split(DName).getResultByIndex(1));
-					element.setAttribute(XML_TAG_TYPE, split.getResultByIndex(2));
-					XmlWriter.append_text_element(doc, element, XML_TAG_FROM, split.getResultByIndex(3));
-					XmlWriter.append_text_element(doc, element, XML_TAG_TO, split.getResultByIndex(4));
-					XmlWriter.append_text_element(doc, element, XML_TAG_SOURCE, split.getResultByIndex(1));
+					region = new Region(equalSignSplit.split(DName).getResultByIndex(1),
+							Integer.parseInt(split.getResultByIndex(3)), Integer.parseInt(split.getResultByIndex(4)));
+					region.setType(split.getResultByIndex(2));
+					region.setSource(split.getResultByIndex(1));
 					String[] attributes=DNameSplit.split(split.getResultByIndex(8)).getResult();
 					for(int i=0;i<attributes.length;i++){
 						String[] attribute=equalSignSplit.split(attributes[i]).getResult();
 						if (attribute[0].equals(GDF_GENEID))
-							element.setAttribute(XML_TAG_SYMBOL, attribute[1]);
+							region.setSymbol(attribute[1]);
 						if (attribute[0].equals(GDF_SNPID))
-							element.setAttribute(XML_TAG_VARIANT, attribute[1]);
+							region.setVariant(attribute[1]);
 					}
-					elements.appendChild(element);
+					regions.add(region);
 				}
 			}
+		} catch(Cancellation.Cancelled e){
+			throw e;
 		} catch(Exception e){
 			e.printStackTrace();
 		} finally{
@@ -148,6 +157,6 @@ public class GDFReader {
 				}
 			}
 		}
-		return elements;
+		return regions;
 	}
 }
\ No newline at end of file
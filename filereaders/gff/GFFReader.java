@@ -7,6 +7,8 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import filereaders.Consts;
+import filereaders.Density;
+import filereaders.Packing;
 import filereaders.TabixReader;
 import filereaders.tools.StringSplit;
 
@@ -51,6 +53,20 @@ public class GFFReader {
 	 */
 	public Element write_gff2elements(Document doc, String track, String chr,
 			long regionstart, long regionend, String attributes) {
+		return write_gff2elements(doc, track, chr, regionstart, regionend, attributes, null, null);
+	}
+
+	/**
+	 * Like write_gff2elements, but the Values of density once the lines of the
+	 * window make it dense, and the groups in the rows of packing.
+	 * 
+	 * @param density
+	 *            null for every group
+	 * @param packing
+	 *            null to leave the rows to the client
+	 */
+	public Element write_gff2elements(Document doc, String track, String chr,
+			long regionstart, long regionend, String attributes, Density density, Packing packing) {
 		List<GFF> gffs = new ArrayList<GFF>();
 
 		Element elements = doc.createElement(Consts.XML_TAG_ELEMENTS);
@@ -68,25 +84,47 @@ public class GFFReader {
 			StringSplit ss = new StringSplit('\t');
 			if (Query != null) {
 				while ((line = Query.next()) != null) {
-					gffs.add(new GFF(ss.split(line).getResult()));
+					ss.split(line);
+					if (density != null && density.add(Long.parseLong(ss.getResultByIndex(3)), Long.parseLong(ss.getResultByIndex(4))))
+						continue;
+					gffs.add(new GFF(ss.getResult()));
 				}
 			}
 			tb.TabixReaderClose();
+			if (density != null && density.dense())
+				return density.write(doc, track, elements);
 
 			Groups gs = new Groups(gffs, attributes);
 			gs.grouping();
 
+			List<_Element> groups = new ArrayList<_Element>();
 			// extract all the groups has id
 			Map<String, ArrayList<GFF>> hasAttr = gs.getHasAttr();
 			for (String key : hasAttr.keySet()) {
-				new _Element(key, hasAttr.get(key), false).addToElements(doc,
-						elements);
+				groups.add(new _Element(key, hasAttr.get(key), false));
 			}
 			// extract all the groups has no id
 			for (GFF gff : gs.getNoAttr()) {
 				List<GFF> list = new ArrayList<GFF>();
 				list.add(gff);
-				new _Element("", list, false).addToElements(doc, elements);
+				groups.add(new _Element("", list, false));
+			}
+			if (packing == null) {
+				for (_Element group : groups)
+					group.addToElements(doc, elements);
+			} else {
+				// rows are assigned in the order of the starts
+				Collections.sort(groups, new Comparator<_Element>() {
+					public int compare(_Element a, _Element b) {
+						return a.getFrom() < b.getFrom() ? -1 : (a.getFrom() == b.getFrom() ? 0 : 1);
+					}
+				});
+				for (_Element group : groups) {
+					int row = packing.row(group.getFrom(), group.getTo());
+					if (row >= 0)
+						group.addToElements(doc, elements).setAttribute(Consts.XML_TAG_ROW, Integer.toString(row));
+				}
+				packing.write(doc, elements);
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
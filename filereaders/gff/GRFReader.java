@@ -3,10 +3,13 @@ package filereaders.gff;
 import static filereaders.Consts.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import filereaders.Cancellation;
 import filereaders.TabixReader;
 import filereaders.XmlWriter;
 import filereaders.tools.StringSplit;
@@ -80,6 +83,8 @@ public class GRFReader {
 						elements.appendChild(element);
 					}
 				}
+		} catch(Cancellation.Cancelled e){
+			throw e;
 		} catch(Exception e){
 			e.printStackTrace();
 		} finally{
@@ -94,11 +99,14 @@ public class GRFReader {
 	}
 
 	public Element write_grf2elements(Document doc, String track, String chr, int start, int end) throws IOException {
-		Element elements = doc.createElement(XML_TAG_ELEMENTS);
-		elements.setAttribute(XML_TAG_ID, track);
-		doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(elements); // Elements
-		
-		
+		return Region.write2xml(doc, track, read_grf2regions(chr, start, end));
+	}
+
+	/**
+	 * The regions write_grf2elements writes, in file order.
+	 */
+	public List<Region> read_grf2regions(String chr, int start, int end) {
+		List<Region> regions = new ArrayList<Region>();
 		TabixReader tabix = null;
 		try{
 			tabix = new TabixReader(this.path);
@@ -111,20 +119,20 @@ public class GRFReader {
 			StringSplit split = new StringSplit('\t');
 			StringSplit FactorNameSplit = new StringSplit(';');
 			StringSplit equalSignSplit = new StringSplit('=');
-			Element element = null;
+			Region region = null;
 			if (Query != null) {
 				while ((line = Query.next()) != null) {
 					split.split(line);
-					element = doc.createElement(XML_TAG_ELEMENT);
 					String FactorName = FactorNameSplit.split(split.getResultByIndex(8)).getResultByIndex(0);
-					element.setAttribute(XML_TAG_ID, equalSignSplit.split(FactorName).getResultByIndex(1));
-					XmlWriter.append_text_element(doc, element,	XML_TAG_FROM, split.getResultByIndex(3));
-					XmlWriter.append_text_element(doc, element, XML_TAG_TO,	split.getResultByIndex(4));
-					XmlWriter.append_text_element(doc, element,	XML_TAG_SOURCE, split.getResultByIndex(1));
-					XmlWriter.append_text_element(doc, element, XML_TAG_DIRECTION,split.getResultByIndex(6));
-					elements.appendChild(element);
+					region = new Region(equalSignSplit.split(FactorName).getResultByIndex(1),
+							Integer.parseInt(split.getResultByIndex(3)), Integer.parseInt(split.getResultByIndex(4)));
+					region.setSource(split.getResultByIndex(1));
+					region.setDirection(split.getResultByIndex(6));
+					regions.add(region);
 				}
 			}
+		} catch(Cancellation.Cancelled e){
+			throw e;
 		} catch(Exception e){
 			e.printStackTrace();
 		} finally{
@@ -135,6 +143,6 @@ public class GRFReader {
 				}
 			}
 		}
-		return elements;
+		return regions;
 	}
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import org.w3c.dom.Element;
 import filereaders.Consts;
 import filereaders.TabixReader;
 import filereaders.XmlWriter;
+import filereaders.individual.vcf.Variant;
 import filereaders.tools.StringSplit;
 
 
@@ -99,49 +100,25 @@ public class GVFReader {
 
 	public Element write_gvf2variants(Document doc, String track, String chr,
 			long regionstart, long regionend) {
-		List<GVF> gvfs = new ArrayList<GVF>();
-
 		Element variants = doc.createElement(Consts.XML_TAG_VARIANTS);
 		variants.setAttribute(Consts.XML_TAG_ID, track);
 		doc.getElementsByTagName(Consts.DATA_ROOT).item(0).appendChild(variants); // Variants
 
+		List<GVF> gvfs = query(chr, regionstart, regionend);
+		if (gvfs == null)
+			return null;
 		boolean equals = true;
-		TabixReader tb=null;
-		try {
-			tb=new TabixReader(filePath);
-			String querystr = (tb.hasChromPrefix() ? chr : chr.substring(3))
-					+ ":" + regionstart + "-" + regionend;
-			String line;
-			String cur = null;
-			GVF gvf = null;
-			TabixReader.Iterator Query = tb.query(querystr);
-			StringSplit ss = new StringSplit('\t');
-			if (Query != null) {
-				while ((line = Query.next()) != null) {
-					gvf = new GVF(ss.split(line).getResult());
-					gvfs.add(gvf);
-					if (equals) {
-						if (gvf.phased == null) {
-							equals = false;
-						} else {
-							if (cur != null) {
-								equals = cur.equals(gvf.phased);
-							}
-							cur = gvf.phased;
-						}
-					}
-				}
+		String cur = null;
+		for (GVF gvf : gvfs) {
+			if (gvf.phased == null) {
+				equals = false;
+				break;
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		} finally{
-			if(tb != null){
-				try {
-					tb.TabixReaderClose();
-				} catch (IOException e) {
-				}
+			if (cur != null && !cur.equals(gvf.phased)) {
+				equals = false;
+				break;
 			}
+			cur = gvf.phased;
 		}
 
 		String[][] vs;
@@ -169,4 +146,54 @@ public class GVFReader {
 
 		return variants;
 	}
+
+	/**
+	 * The variants write_gvf2variants writes, as objects. HOMO stays
+	 * empty: the element attribute is not the one Variant reads back, so the
+	 * personal genome analysis never saw it.
+	 * 
+	 * @return null if the file can not be read
+	 */
+	public List<Variant> read_gvf2variants(String chr, long regionstart, long regionend) {
+		List<GVF> gvfs = query(chr, regionstart, regionend);
+		if (gvfs == null)
+			return null;
+		List<Variant> variants = new ArrayList<Variant>();
+		for (GVF gvf : gvfs) {
+			for (String[] strs : gvf.getVariants()) {
+				Variant v = new Variant(gvf.id, strs[0], gvf.start, gvf.end);
+				v.setLetter(strs[1]);
+				variants.add(v);
+			}
+		}
+		return variants;
+	}
+
+	private List<GVF> query(String chr, long regionstart, long regionend) {
+		List<GVF> gvfs = new ArrayList<GVF>();
+		TabixReader tb=null;
+		try {
+			tb=new TabixReader(filePath);
+			String querystr = (tb.hasChromPrefix() ? chr : chr.substring(3))
+					+ ":" + regionstart + "-" + regionend;
+			String line;
+			TabixReader.Iterator Query = tb.query(querystr);
+			StringSplit ss = new StringSplit('\t');
+			if (Query != null) {
+				while ((line = Query.next()) != null)
+					gvfs.add(new GVF(ss.split(line).getResult()));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally{
+			if(tb != null){
+				try {
+					tb.TabixReaderClose();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return gvfs;
+	}
 }
\ No newline at end of file
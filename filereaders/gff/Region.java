@@ -0,0 +1,148 @@
+package filereaders.gff;
+
+import static filereaders.Consts.*;
+
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import filereaders.XmlWriter;
+
+/**
+ * One record of a GRF or GDF file, as write_grf2elements and
+ * write_gdf2elements write it to XML.
+ */
+public class Region implements Comparable<Region> {
+	private String id;// Attribute
+	private String type;// Attribute
+	private String symbol;// Attribute
+	private String variant;// Attribute
+	private int from;// Tag
+	private int to;// Tag
+	private String source;// Tag
+	private String direction;// Tag
+	private String color;// Tag
+
+	public Region(String id, int from, int to) {
+		this.id = id;
+		this.from = from;
+		this.to = to;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public void setSymbol(String symbol) {
+		this.symbol = symbol;
+	}
+
+	public String getVariant() {
+		return variant;
+	}
+
+	public void setVariant(String variant) {
+		this.variant = variant;
+	}
+
+	public int getFrom() {
+		return from;
+	}
+
+	public int getTo() {
+		return to;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public void setSource(String source) {
+		this.source = source;
+	}
+
+	public String getDirection() {
+		return direction;
+	}
+
+	public void setDirection(String direction) {
+		this.direction = direction;
+	}
+
+	public String getColor() {
+		return color;
+	}
+
+	public void setColor(String color) {
+		this.color = color;
+	}
+
+	/**
+	 * Write to xml in an Elements element.
+	 *
+	 * @param doc
+	 * @return
+	 */
+	public Element write2xml(Document doc) {
+		Element element = doc.createElement(XML_TAG_ELEMENT);
+		element.setAttribute(XML_TAG_ID, id);
+		if (type != null && !type.isEmpty())
+			element.setAttribute(XML_TAG_TYPE, type);
+		if (symbol != null && !symbol.isEmpty())
+			element.setAttribute(XML_TAG_SYMBOL, symbol);
+		if (variant != null && !variant.isEmpty())
+			element.setAttribute(XML_TAG_VARIANT, variant);
+		XmlWriter.append_text_element(doc, element, XML_TAG_FROM, String.valueOf(from));
+		XmlWriter.append_text_element(doc, element, XML_TAG_TO, String.valueOf(to));
+		if (source != null)
+			XmlWriter.append_text_element(doc, element, XML_TAG_SOURCE, source);
+		if (direction != null)
+			XmlWriter.append_text_element(doc, element, XML_TAG_DIRECTION, direction);
+		if (color != null)
+			XmlWriter.append_text_element(doc, element, XML_TAG_COLOR, color);
+		return element;
+	}
+
+	/**
+	 * Write <code>regions</code> as an Elements element of <code>track</code>
+	 * and append it to the data root.
+	 */
+	public static Element write2xml(Document doc, String track, List<Region> regions) {
+		Element elements = doc.createElement(XML_TAG_ELEMENTS);
+		elements.setAttribute(XML_TAG_ID, track);
+		doc.getElementsByTagName(DATA_ROOT).item(0).appendChild(elements); // Elements
+		if (regions != null)
+			for (Region r : regions)
+				elements.appendChild(r.write2xml(doc));
+		return elements;
+	}
+
+	public static Region copy(Region obj) {
+		Region r = new Region(obj.id, obj.from, obj.to);
+		r.type = obj.type;
+		r.symbol = obj.symbol;
+		r.variant = obj.variant;
+		r.source = obj.source;
+		r.direction = obj.direction;
+		r.color = obj.color;
+		return r;
+	}
+
+	@Override
+	public int compareTo(Region o) {
+		return (this.from != o.from) ? (this.from - o.from) : (this.to - o.to);
+	}
+}
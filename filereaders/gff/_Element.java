@@ -55,6 +55,14 @@ public class _Element {
 		}
 	}
 
+	long getFrom() {
+		return from;
+	}
+
+	long getTo() {
+		return to;
+	}
+
 	/**
 	 * Write a group of GFF or GTF to XML
 	 * 
@@ -62,8 +70,9 @@ public class _Element {
 	 *            Document instance
 	 * @param elements
 	 *            Element instance
+	 * @return the Element written
 	 */
-	void addToElements(Document doc, Element elements) {
+	Element addToElements(Document doc, Element elements) {
 		analyse();
 
 		Element element = doc.createElement(Consts.XML_TAG_ELEMENT);
@@ -84,6 +93,7 @@ public class _Element {
 		}
 
 		elements.appendChild(element);
+		return element;
 	}
 
 	private void analyse() {
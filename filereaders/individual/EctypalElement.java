@@ -9,7 +9,6 @@ import java.util.Set;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import filereaders.FastaReader;
 import filereaders.XmlWriter;
@@ -111,6 +110,10 @@ public class EctypalElement {
 	 * Whether the upstream SubElement has an effect on the downstream SubElement.
 	 */
 	private boolean hasEffect;
+	/**
+	 * The parsed Element this ectypal Object was created from.
+	 */
+	private TranscriptModel model;
 	/////////////////////////////////////////////////////End of field
 
 	/////////////////////////////////////////////////////////////Constructor
@@ -123,6 +126,18 @@ public class EctypalElement {
 	 * @param hasEffect Whether the upstream SubElement has an effect on the downstream SubElement.
 	 */
 	EctypalElement(Element ele, FastaReader fr, String chr, boolean hasEffect) {
+		this(new TranscriptModel(ele), fr, chr, hasEffect);
+	}
+
+	/**
+	 * Create an ectypal Object of a parsed Element.
+	 * 
+	 * @param model
+	 * @param fr
+	 * @param chr Which chromosome this SubElement at.
+	 * @param hasEffect Whether the upstream SubElement has an effect on the downstream SubElement.
+	 */
+	EctypalElement(TranscriptModel model, FastaReader fr, String chr, boolean hasEffect) {
 		subEles = new LinkedArrayList<EctypalSubElement>();
 		status = new HashSet<String>();
 		this.chr = chr;
@@ -131,74 +146,32 @@ public class EctypalElement {
 			this.fr=fr;
 			this.chrLen = (int) fr.getChromosomeLength(chr);
 		}
-		this.id = ele.getAttribute(XML_TAG_ID);
-		if ("".equals(this.id)) this.id = null;
-		this.type = ele.getAttribute(XML_TAG_TYPE);
-		if ("".equals(this.type)) this.type = null;
-		this.symbol = ele.getAttribute(XML_TAG_SYMBOL);
-		if ("".equals(this.symbol))	this.symbol = null;
-		this.variant = ele.getAttribute(XML_TAG_VARIANT);
-		if ("".equals(this.variant)) this.variant = null;
-		if(ele.getElementsByTagName(XML_TAG_DIRECTION).getLength()>0){
-			this.ifdirection = true;
-			this.direction = ele.getElementsByTagName(XML_TAG_DIRECTION).item(0).getTextContent().equals("+");
-		}
-		else
-			this.ifdirection = false;
-		if(ele.getElementsByTagName(XML_TAG_SOURCE).getLength()>0)
-			this.source=ele.getElementsByTagName(XML_TAG_SOURCE).item(0).getTextContent();
-		NodeList nodes = ele.getChildNodes();// All Children
-		// The first child must be "From"
-		this.from = Integer.parseInt(nodes.item(0).getTextContent());
-		// The second child must be "To"
-		this.to = Integer.parseInt(nodes.item(1).getTextContent());
-		retriveTags(nodes);
+		this.model = model;
+		this.id = model.id;
+		this.type = model.type;
+		this.symbol = model.symbol;
+		this.variant = model.variant;
+		this.ifdirection = model.ifdirection;
+		this.direction = model.direction;
+		this.source = model.source;
+		this.from = model.from;
+		this.to = model.to;
+		this.description = model.description;
+		this.color = model.color;
+		for (int i = 0, len = model.subTypes.length; i < len; i++)
+			subEles.addLast(model.subElement(i));
+		this.initBoxLen = model.initBoxLen;
+		this.initiatorSmall = model.initiatorSmall;
+		this.initiatorLarge = model.initiatorLarge;
+		this.terminatorSmall = model.terminatorSmall;
+		this.terminatorLarge = model.terminatorLarge;
 	}
 
-	private void retriveTags(NodeList nodes) {
-		Element e = null;
-		String t = null;
-		EctypalSubElement ese = null;
-		boolean firstSubElement = true;
-		boolean firstBox = true;
-		for (int index = 2, len = nodes.getLength(); index < len; index++) {
-			e = (Element) nodes.item(index);
-			t = e.getTagName();
-			if (t.equals(XML_TAG_SUBELEMENT)) {
-				// SubElement
-				ese = new EctypalSubElement(e);
-				subEles.addLast(ese);
-				if(firstSubElement){
-					firstSubElement = false;
-				}
-				if (SUBELEMENT_TYPE_BOX.equals(ese.getType())) {
-					initBoxLen += ese.getLength();
-					if(direction){
-						terminatorSmall = ese.getTo() - 2;
-						terminatorLarge = ese.getTo();
-					} else{
-						initiatorSmall = ese.getTo() - 2;
-						initiatorLarge = ese.getTo();
-					}
-					if(firstBox){
-						if(direction){
-							initiatorSmall = ese.getFrom();
-							initiatorLarge = ese.getFrom() + 2;
-						} else{
-							terminatorSmall = ese.getFrom();
-							terminatorLarge = ese.getFrom() + 2;
-						}
-						firstBox = false;
-					}
-				}
-			} else if (t.equals(XML_TAG_DESCRIPTION)) {
-				// Description
-				this.description = e.getTextContent();
-			} else if (t.equals(XML_TAG_COLOR)) {
-				// Color
-				this.color = e.getTextContent();
-			}
-		}
+	/**
+	 * Reference base at <code>pos</code>.
+	 */
+	private char base(int pos) throws IOException {
+		return model.base(fr, chr, pos);
 	}
 
 	public String getId(){
@@ -208,6 +181,23 @@ public class EctypalElement {
 	public int size(){
 		return this.subEles.size();
 	}
+
+	public String getSymbol(){
+		return this.symbol;
+	}
+
+	/**
+	 * @return Whether some SubElement has been affected by a variation.
+	 */
+	boolean isAffected(){
+		Entry<EctypalSubElement> next = subEles.getFirst();
+		while (next != null) {
+			if (next.getElement().isAffected())
+				return true;
+			next = subEles.getNext(next);
+		}
+		return false;
+	}
 	///////////////////////////////////////////////////////////End of constructor
 
 	//////////////////////////////////////////////////////////Predeal
@@ -349,9 +339,9 @@ public class EctypalElement {
 			}//End of SNV
 	
 			if(type == 2){
-				if (from == ese.getFrom() && basesOfINS.charAt(0) != fr.extract_char(chr, to))
+				if (from == ese.getFrom() && basesOfINS.charAt(0) != base(to))
 					recordTempAssDss(v, tempAssDss, cur, true);
-				else if(to == ese.getTo() && basesOfINS.charAt(basesOfINS.length() - 1) != fr.extract_char(chr, from))
+				else if(to == ese.getTo() && basesOfINS.charAt(basesOfINS.length() - 1) != base(from))
 					recordTempAssDss(v, tempAssDss, cur, false);
 				return;
 			}//End of INS
@@ -1052,7 +1042,7 @@ public class EctypalElement {
 					dvEntry = dealedVariations.getPrevious(dvEntry);
 					effected = false;
 				}else{
-					resultChars[needToDealNumPre - 1] = fr.extract_char(chr, curPos);
+					resultChars[needToDealNumPre - 1] = base(curPos);
 					result.pss[needToDealNumPre - 1] = new Position2SubElement(curPos, copy);
 					needToDealNumPre--;
 					curPos--;
@@ -1066,7 +1056,7 @@ public class EctypalElement {
 					if(cur == null) return null;
 					curPos = cur.getElement().getFrom();
 				}
-				resultChars[extractNum - needToDealNumAfter] = fr.extract_char(chr, curPos);
+				resultChars[extractNum - needToDealNumAfter] = base(curPos);
 				result.pss[extractNum - needToDealNumAfter] = new Position2SubElement(curPos, cur);
 				needToDealNumAfter--;
 				curPos++;
@@ -1111,7 +1101,7 @@ public class EctypalElement {
 				dvEntry = dealedVariations.getPrevious(dvEntry);
 				effected = false;
 			}else{
-				resultChars[extractNum - needToDealNumAfter] = fr.extract_char(chr, curPos);
+				resultChars[extractNum - needToDealNumAfter] = base(curPos);
 				result.pss[extractNum - needToDealNumAfter] = new Position2SubElement(curPos, copy);
 				needToDealNumAfter--;
 				curPos++;
@@ -1124,7 +1114,7 @@ public class EctypalElement {
 				if(cur == null) return null;
 				curPos = cur.getElement().getTo();
 			}
-			resultChars[needToDealNumPre - 1] = fr.extract_char(chr, curPos);
+			resultChars[needToDealNumPre - 1] = base(curPos);
 			result.pss[needToDealNumPre - 1] = new Position2SubElement(curPos, cur);
 			needToDealNumPre--;
 			curPos--;
@@ -1338,4 +1328,4 @@ public class EctypalElement {
 	private void addBoxBaseNumFromFirstBoxBases(EctypalSubElement cur, int test){
 		boxBaseNumFromFirstBoxBase += cur.getLength();
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -4,11 +4,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import filereaders.Cancellation;
 import filereaders.FastaReader;
 import filereaders.individual.VariantAnalysis.ControlArea;
 import filereaders.individual.vcf.Variant;
@@ -47,8 +49,26 @@ public class EctypalElements {
 	 * 			  Whether the upstream SubElement has an effect on the downstream SubElement.
 	 */
 	public EctypalElements(Document doc, FastaReader fr, Element elements, Element ctrlArea, String chr, boolean hasEffect) {
+		this(doc, fr, elements, Element2ControlAreas(ctrlArea), chr, hasEffect);
+	}
+
+	/**
+	 * @param ctrlAreas
+	 *            Control areas, may be null
+	 */
+	EctypalElements(Document doc, FastaReader fr, Element elements, List<ControlArea> ctrlAreas, String chr, boolean hasEffect) {
+		this(doc, fr, null, elements, ctrlAreas, chr, hasEffect);
+	}
+
+	/**
+	 * @param source
+	 *            the annotation file <code>elements</code> was read from, as
+	 *            TranscriptModel.source gives it; if null the models of the
+	 *            Elements are not shared
+	 */
+	EctypalElements(Document doc, FastaReader fr, String source, Element elements, List<ControlArea> ctrlAreas, String chr, boolean hasEffect) {
 		this.doc = doc;
-		this.ctrlAreas = Element2ControlAreas(ctrlArea);
+		this.ctrlAreas = ctrlAreas;
 		this.id = elements.getAttribute(XML_TAG_ID) ;
 		this.ifParam = elements.getAttribute(XML_TAG_IFP);
 		NodeList nodes = elements.getChildNodes();
@@ -56,7 +76,7 @@ public class EctypalElements {
 		this.eles = new EctypalElement[nodeNum];
 		this.needToDealEles = new HashSet<EctypalElement>();
 		for (int i = 0; i < nodeNum; i++) {
-			eles[i] = new EctypalElement((Element) nodes.item(i), fr,chr, hasEffect);
+			eles[i] = new EctypalElement(TranscriptModel.get(fr, source, id, chr, (Element) nodes.item(i)), fr, chr, hasEffect);
 			needToDealEles.add(eles[i]);
 		}
 	}
@@ -81,6 +101,7 @@ public class EctypalElements {
 		}
 
 		for (EctypalElement ee : needToDealEles) {
+			Cancellation.check();
 			ee.deal(variants);
 		}
 
@@ -94,7 +115,7 @@ public class EctypalElements {
 	 * @return Null if <code>ele==null</code> or <code>ele</code> has no any
 	 *         child nodes. Or a list of ControlArea contains All child nodes.
 	 */
-	private List<ControlArea> Element2ControlAreas(Element ele) {
+	static List<ControlArea> Element2ControlAreas(Element ele) {
 		if (ele == null)
 			return null;
 
@@ -169,6 +190,19 @@ public class EctypalElements {
 		return ca2vs;
 	}
 
+	/**
+	 * Add the symbols of all the Elements which have been affected by some
+	 * variants to <code>symbols</code>.
+	 * 
+	 * @param symbols
+	 */
+	void addAffectedSymbols(Set<String> symbols) {
+		for (EctypalElement ee : eles) {
+			if (ee.getSymbol() != null && ee.isAffected())
+				symbols.add(ee.getSymbol());
+		}
+	}
+
 	public Element write2XML() {
 		Element elements = doc.createElement(XML_TAG_ELEMENTS);
 		if (id != null)
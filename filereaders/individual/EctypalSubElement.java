@@ -112,6 +112,16 @@ public class EctypalSubElement {
 		retrieveTag(nodes, 3);
 	}
 
+	EctypalSubElement(String id, String type, int from, int to, String direction, String description) {
+		this();
+		this.id = id;
+		this.type = type;
+		this.from = from;
+		this.to = to;
+		this.direction = direction;
+		this.description = description;
+	}
+
 	private void retrieveTag(NodeList nodes, int index) {
 		if (nodes.getLength() > index) {
 			Element e = (Element) nodes.item(index);
@@ -123,6 +133,18 @@ public class EctypalSubElement {
 		}
 	}
 
+	String getId() {
+		return this.id;
+	}
+
+	String getDirection() {
+		return this.direction;
+	}
+
+	String getDescription() {
+		return this.description;
+	}
+
 	/**
 	 * Get the attribute of Type of this SubElement.
 	 * 
@@ -185,6 +207,22 @@ public class EctypalSubElement {
 		return addMultiFromVariant(v.getId(), v.getType(), new int[]{v.getFrom()}, new int[]{v.getTo()}, v.getLetter());
 	}
 
+	/**
+	 * @return Whether some variation of this SubElement has a letter which is
+	 *         not like "x:x".
+	 */
+	boolean isAffected() {
+		String[] letters;
+		for (int i = 0; i < variantsNum; i++) {
+			if (variants[i].getLetter() == null)
+				continue;
+			letters = variants[i].getLetter().split(":");
+			if (letters.length < 2 || !letters[0].equals(letters[1]))
+				return true;
+		}
+		return false;
+	}
+
 	private void ensureCapacity() {
 		if (variantsNum == variants.length) {
 			MultiFromVariant[] vs = new MultiFromVariant[variants.length * 2];
@@ -2,8 +2,6 @@ package filereaders.individual;
 
 import static filereaders.Consts.*;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -13,15 +11,17 @@ import org.w3c.dom.NodeList;
 
 import filereaders.Rgb;
 import filereaders.XmlWriter;
+import filereaders.gff.Region;
 import filereaders.gff.GRFReader;
 import filereaders.individual.vcf.Variant;
+import filereaders.tools.IntervalJoin;
 
 
 public class GRFElementRegionComparison {
 	/**
 	 * Just record each from and start of the variants
 	 */
-	private List<Variant> variantRange;
+	private IntervalJoin variantRange;
 	private Document doc;
 	
 	/**
@@ -33,6 +33,42 @@ public class GRFElementRegionComparison {
 		this.doc=doc;
 	}
 	
+	/**
+	 * 
+	 * @param variants	VCF variants
+	 */
+	public GRFElementRegionComparison(Document doc, List<Variant> variants){
+		int[] from = new int[variants.size()];
+		int[] to = new int[variants.size()];
+		for(int i=0, num=variants.size(); i<num; i++){
+			from[i] = variants.get(i).getFrom();
+			to[i] = variants.get(i).getTo();
+		}
+		variantRange = new IntervalJoin(from, to);
+		this.doc=doc;
+	}
+	
+	/**
+	 * Same as compareRegion(Element), with the GRF elements from GRFReader.read_grf2regions.
+	 * 
+	 * @param grf	GRF elements
+	 */
+	public void compareRegion(List<Region> grf){
+		if(variantRange.size() == 0)
+			return;
+		int colornum=0;
+		HashMap<String,String> colormap=new HashMap<String,String>();
+		for(Region r : grf) {
+			if(!colormap.containsKey(r.getSource()))
+				colormap.put(r.getSource(), Rgb.getColor(colornum++));
+			if(!variantRange.overlaps(r.getFrom(), r.getTo()))
+				continue;
+			r.setVariant("true");
+			if(r.getColor() == null)
+				r.setColor(new Rgb(colormap.get(r.getSource())).ToString());
+		}
+	}
+	
 	
 	/**
 	 * If some of the grf overlap with one of the variant, we should add an attribute
@@ -41,42 +77,23 @@ public class GRFElementRegionComparison {
 	 * @param grf	GRF elements
 	 */
 	public void compareRegion(Element grf){
-		int variantSize = variantRange.size();
-		if(variantSize == 0)
+		if(variantRange.size() == 0)
 			return;
 		NodeList grfs = grf.getChildNodes();
-		int grfSize = grfs.getLength();
-		if(grfSize == 0)
-			return;
-		
-		int index = 0;//current index of variant
-		Variant cur = variantRange.get(index);
 		Element ele = null;
-		Element fromEle = null;
-		Element toEle = null;
-		int from = 0;
-		int to = 0;
+		NodeList sourceEle = null;
+		String source = null;
 		int colornum=0;
 		HashMap<String,String> colormap=new HashMap<String,String>();
-		for(int i=0; i<grfSize; i++) {
+		for(int i=0, grfSize=grfs.getLength(); i<grfSize; i++) {
 			ele = (Element)grfs.item(i);
-			fromEle = (Element)(ele.getElementsByTagName(XML_TAG_FROM).item(0));
-			toEle = (Element)(ele.getElementsByTagName(XML_TAG_TO).item(0));
-			String source=((Element)(ele.getElementsByTagName(XML_TAG_SOURCE).item(0))).getTextContent();
+			sourceEle = ele.getElementsByTagName(XML_TAG_SOURCE);
+			source = sourceEle.getLength() > 0 ? sourceEle.item(0).getTextContent() : null;
 			if(!colormap.containsKey(source))
 				colormap.put(source, Rgb.getColor(colornum++));
-			from = Integer.parseInt(fromEle.getTextContent());
-			to = Integer.parseInt(toEle.getTextContent());
-			if(to < cur.getFrom())
+			if(!variantRange.overlaps(Integer.parseInt(ele.getElementsByTagName(XML_TAG_FROM).item(0).getTextContent()),
+					Integer.parseInt(ele.getElementsByTagName(XML_TAG_TO).item(0).getTextContent())))
 				continue;
-			if(from > cur.getTo()) {
-				i--;
-				index++;
-				if(index >= variantSize)
-					break;
-				cur = variantRange.get(index);
-				continue;
-			}
 			ele.setAttribute(XML_TAG_VARIANT, "true");
 			if(ele.getElementsByTagName(XML_TAG_COLOR).getLength()==0)
 				XmlWriter.append_text_element(doc, ele, XML_TAG_COLOR, new Rgb((String)colormap.get(source)).ToString());
@@ -88,10 +105,15 @@ public class GRFElementRegionComparison {
 	 * @param variants
 	 */
 	private void getRangesFromVariant(Element variants){
-		variantRange = new ArrayList<Variant>();
 		NodeList nodes = variants.getChildNodes();
-		for(int i=0, num=nodes.getLength(); i<num; i++)
-			variantRange.add(Variant.convertElement2Variant((Element)nodes.item(i)));
-		Collections.sort(variantRange);
+		int num = nodes.getLength();
+		int[] from = new int[num];
+		int[] to = new int[num];
+		for(int i=0; i<num; i++){
+			NodeList children = nodes.item(i).getChildNodes();
+			from[i] = Integer.parseInt(children.item(0).getTextContent());
+			to[i] = Integer.parseInt(children.item(1).getTextContent());
+		}
+		variantRange = new IntervalJoin(from, to);
 	}
 }
@@ -1,12 +1,16 @@
 package filereaders.individual;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import filereaders.gff.Region;
+import filereaders.individual.vcf.Variant;
+
 import static filereaders.Consts.*;
 
 /**
@@ -31,6 +35,20 @@ public class GdfElementSelector {
 		getIdsFromElement(elements);
 	}
 	
+	/**
+	 * 
+	 * @param doc XML <code>Document</code> instance
+	 * @param symbols	Symbols of the elements affected by some variants, see VariantAnalysis.getAffectedSymbols()
+	 * @param variants	VCF variants
+	 */
+	public GdfElementSelector(Document doc, Set<String> symbols, List<Variant> variants){
+		this.doc = doc;
+		this.elementSymbols = symbols;
+		variantIDs = new HashSet<String>();
+		for(Variant v : variants)
+			variantIDs.add(v.getId());
+	}
+	
 	/**
 	 * Select element from <code>gdf</code> if the element satisfy one of the conditions below:</br>
 	 * 1:The element contains attribute:Variant and the value is one of the id of <code>variants</code>;</br>
@@ -76,6 +94,31 @@ public class GdfElementSelector {
 		return eles;
 	}
 	
+	/**
+	 * Same as select(Element), with the GDF elements from GDFReader.read_gdf2regions.
+	 * @param id	track id of the result
+	 * @param gdf	GDF elements
+	 * @return elements after select.
+	 */
+	public Element select(String id, List<Region> gdf){
+		Element eles = doc.createElement(XML_TAG_ELEMENTS);
+		eles.setAttribute(XML_TAG_ID, id);
+		String variant = null;
+		String symbol = null;
+		for(Region r : gdf){
+			variant = r.getVariant();
+			if(variant != null && !variant.equals("")){
+				if(variantIDs.contains(variant))
+					eles.appendChild(r.write2xml(doc));
+				continue;
+			}
+			symbol = r.getSymbol();
+			if(symbol != null && !symbol.equals("") && elementSymbols.contains(symbol))
+				eles.appendChild(r.write2xml(doc));
+		}
+		return eles;
+	}
+	
 	/**
 	 * Extract all id from Variant.
 	 * @param variants
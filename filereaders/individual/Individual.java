@@ -23,9 +23,13 @@ import static filereaders.Consts.*;
  * 
  */
 public class Individual {
+	/**
+	 * Above this number of variants, mergeWithDBSNP does not read DBSNP.
+	 */
+	public static final int VARIANT_NUM_LIMIT = 1000;
 	private HashMap<Integer, Variant[]> int2Variants = new HashMap<Integer, Variant[]>();
 	private HashMap<Variant, VariantMapToDBSNP> result = null;
-	private int variantNumLimit = 1000;
+	private int variantNumLimit = VARIANT_NUM_LIMIT;
 	private boolean isDetail;
 	private String id;
 	private String superid;
@@ -38,20 +42,41 @@ public class Individual {
 	 * @param isDetail whether the <code>variants</code> read by get_detail           
 	 */
 	public Individual(Element variants, boolean isDetail) {
-		this.id = variants.getAttribute(XML_TAG_ID);
-		if(variants.hasAttribute(XML_TAG_SUPERID))
-			this.superid = variants.getAttribute(XML_TAG_SUPERID);
-		this.ifParam = variants.getAttribute(XML_TAG_IFP);
+		this(variants.getAttribute(XML_TAG_ID),
+				variants.hasAttribute(XML_TAG_SUPERID) ? variants.getAttribute(XML_TAG_SUPERID) : null,
+				variants.getAttribute(XML_TAG_IFP), extractVariantsFromNode(variants), isDetail, false);
+	}
+
+	/**
+	 * 
+	 * @param id
+	 *            Attribute id of the Variants written by mergeWithDBSNP.
+	 * @param superid
+	 *            Attribute superid, may be null.
+	 * @param ifParam
+	 *            Attribute ifParam, may be null.
+	 * @param variants
+	 *            The variants may come from VCF file or GVF file. They are
+	 *            copied, so the reader's objects are not changed by the merge.
+	 * @param isDetail whether the <code>variants</code> read by get_detail           
+	 */
+	public Individual(String id, String superid, String ifParam, List<Variant> variants, boolean isDetail) {
+		this(id, superid, ifParam, variants, isDetail, true);
+	}
+
+	private Individual(String id, String superid, String ifParam, List<Variant> variants, boolean isDetail, boolean copy) {
+		this.id = id;
+		this.superid = superid;
+		this.ifParam = ifParam;
 		this.isDetail = isDetail;
-		NodeList nodeList = variants.getChildNodes();
-		int nodeNum = nodeList.getLength();
+		int nodeNum = variants.size();
 
 		result = new HashMap<Variant, VariantMapToDBSNP>(nodeNum > 0 ? nodeNum : 16);
 		Variant v = null;
 		Variant[] vs = null;
 		int from = 0;
-		for (int i = 0, num = nodeList.getLength(); i < num; i++) {
-			v = Variant.convertElement2Variant((Element) nodeList.item(i));
+		for (int i = 0; i < nodeNum; i++) {
+			v = copy ? Variant.copy(variants.get(i)) : variants.get(i);
 			result.put(v, new VariantMapToDBSNP(v, null, null));
 			from = v.getFrom();
 			vs = int2Variants.get(from);
@@ -92,8 +117,8 @@ public class Individual {
 	 *         of variants greater than <code>variantNumLimit</code>, or
 	 *         Exception throwed when reading from file.
 	 */
-	List<VariantMapToDBSNP> merge(String dbsnpURI, String chr, long start, long end) {
-		if(isDetail || (result.size() > 0 && result.size() <= variantNumLimit)){
+	List<VariantMapToDBSNP> merge(String dbsnpURI, String chr, long start, long end, boolean all) {
+		if(isDetail || (result.size() > 0 && (all || result.size() <= variantNumLimit))){
 			TabixReaderForVCF tabix = null;
 			try {
 				tabix = new TabixReaderForVCF(dbsnpURI);
@@ -154,7 +179,33 @@ public class Individual {
 	 *         Exception throwed when reading from file.
 	 */
 	public Element mergeWithDBSNP(String dbsnpURI, String chr, long start, long end, Document doc) {
-		List<VariantMapToDBSNP> mergeResult = merge(dbsnpURI, chr, start, end);
+		return write2xml(doc, merge(dbsnpURI, chr, start, end, false));
+	}
+
+	/**
+	 * Same as mergeWithDBSNP, but the result is not written to XML. 
+	 * @return the merged variants, sorted.
+	 */
+	public List<VariantMapToDBSNP> mergeWithDBSNP(String dbsnpURI, String chr, long start, long end) {
+		return merge(dbsnpURI, chr, start, end, false);
+	}
+
+	/**
+	 * Same as mergeWithDBSNP, whatever the number of variants, for a part of a
+	 * view; the caller applies <code>VARIANT_NUM_LIMIT</code> to the view.
+	 * @see VariantMapToDBSNP#unmerged(VariantMapToDBSNP)
+	 */
+	public List<VariantMapToDBSNP> mergeAllWithDBSNP(String dbsnpURI, String chr, long start, long end) {
+		return merge(dbsnpURI, chr, start, end, true);
+	}
+
+	/**
+	 * Write the result of mergeWithDBSNP as a Variants element.
+	 * @param doc
+	 * @param mergeResult
+	 * @return
+	 */
+	public Element write2xml(Document doc, List<VariantMapToDBSNP> mergeResult) {
 		Element variants = doc.createElement(XML_TAG_VARIANTS);
 		if(this.id != null && !this.id.isEmpty())
 			variants.setAttribute(XML_TAG_ID, this.id);
@@ -168,6 +219,14 @@ public class Individual {
 		return variants;
 	}
 
+	private static List<Variant> extractVariantsFromNode(Element variants){
+		NodeList nodeList = variants.getChildNodes();
+		List<Variant> list = new ArrayList<Variant>(nodeList.getLength());
+		for (int i = 0, num = nodeList.getLength(); i < num; i++)
+			list.add(Variant.convertElement2Variant((Element) nodeList.item(i)));
+		return list;
+	}
+
 	private Variant variantInMap(Variant variant) {
 		Variant[] vs = int2Variants.get(variant.getFrom());
 		if (vs == null)
@@ -0,0 +1,273 @@
+package filereaders.individual;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import filereaders.FastaReader;
+
+import static filereaders.Consts.*;
+
+/**
+ * Immutable, parsed form of an annotation Element (a transcript): its
+ * attributes, SubElements, initiator/terminator and, once a variant needs
+ * them, the reference bases of its Boxes. EctypalElement copies the model
+ * instead of parsing the XML Element, and reads reference bases of the Boxes
+ * from the model instead of one FastaReader seek per base.
+ *
+ * Models are shared by all sessions, keyed by reference, annotation file
+ * and its modification time, track, chromosome, id, position and number of
+ * SubElements (the SubElements depend on the zoom the track was read at).
+ */
+final class TranscriptModel {
+	static final int CACHE_SIZE = 20000;
+	private static final Map<String, TranscriptModel> cache = Collections.synchronizedMap(
+			new LinkedHashMap<String, TranscriptModel>(1024, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, TranscriptModel> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			});
+
+	final String id;// Attribute
+	final String type;// Attribute
+	final String symbol;// Attribute
+	final String variant;// Attribute
+	final int from;// Tag
+	final int to;// Tag
+	final boolean direction;// Tag
+	final boolean ifdirection;// Tag
+	final String description;// Tag
+	final String color;// Tag
+	final String source;// Tag for gdf/grf
+	/**
+	 * SubElements, in the order of the Element.
+	 */
+	final String[] subIds;
+	final String[] subTypes;
+	final int[] subFroms;
+	final int[] subTos;
+	final String[] subDirections;
+	final String[] subDescriptions;
+	/**
+	 * See the fields of the same name of EctypalElement.
+	 */
+	final int initBoxLen;
+	final int initiatorSmall;
+	final int initiatorLarge;
+	final int terminatorSmall;
+	final int terminatorLarge;
+	/**
+	 * Positions of the Boxes, and their reference bases once read.
+	 */
+	private int[] boxFroms;
+	private int[] boxTos;
+	private volatile char[][] boxBases;
+
+	/**
+	 * The model of <code>ele</code>, from the cache if another session has
+	 * seen the same Element.
+	 *
+	 * @param fr
+	 *            the reference; if null the model is not cached
+	 * @param source
+	 *            the annotation file <code>ele</code> was read from, as
+	 *            source() gives it; if null the model is not cached
+	 * @param track
+	 *            id of the Elements <code>ele</code> belongs to
+	 */
+	static TranscriptModel get(FastaReader fr, String source, String track, String chr, Element ele) {
+		if (fr == null || fr.get_Path() == null || source == null)
+			return new TranscriptModel(ele);
+		NodeList nodes = ele.getChildNodes();
+		String key = fr.get_Path() + '\t' + source + '\t' + track + '\t' + chr + '\t' + ele.getAttribute(XML_TAG_ID) + '\t'
+				+ nodes.item(0).getTextContent() + '\t' + nodes.item(1).getTextContent() + '\t' + nodes.getLength();
+		TranscriptModel model = cache.get(key);
+		if (model == null) {
+			model = new TranscriptModel(ele);
+			cache.put(key, model);
+		}
+		return model;
+	}
+
+	/**
+	 * The annotation file at <code>path</code> as the cache keys it: its path
+	 * and modification time, so the models of a replaced file are read
+	 * again. Null if path is.
+	 */
+	static String source(String path) {
+		if (path == null)
+			return null;
+		return path + '@' + new File(path).lastModified();
+	}
+
+	TranscriptModel(Element ele) {
+		this.id = attribute(ele, XML_TAG_ID);
+		this.type = attribute(ele, XML_TAG_TYPE);
+		this.symbol = attribute(ele, XML_TAG_SYMBOL);
+		this.variant = attribute(ele, XML_TAG_VARIANT);
+		if (ele.getElementsByTagName(XML_TAG_DIRECTION).getLength() > 0) {
+			this.ifdirection = true;
+			this.direction = ele.getElementsByTagName(XML_TAG_DIRECTION).item(0).getTextContent().equals("+");
+		} else {
+			this.ifdirection = false;
+			this.direction = false;
+		}
+		if (ele.getElementsByTagName(XML_TAG_SOURCE).getLength() > 0)
+			this.source = ele.getElementsByTagName(XML_TAG_SOURCE).item(0).getTextContent();
+		else
+			this.source = null;
+		NodeList nodes = ele.getChildNodes();// All Children
+		// The first child must be "From"
+		this.from = Integer.parseInt(nodes.item(0).getTextContent());
+		// The second child must be "To"
+		this.to = Integer.parseInt(nodes.item(1).getTextContent());
+
+		List<EctypalSubElement> subs = new ArrayList<EctypalSubElement>();
+		String description = null;
+		String color = null;
+		Element e = null;
+		String t = null;
+		for (int index = 2, len = nodes.getLength(); index < len; index++) {
+			e = (Element) nodes.item(index);
+			t = e.getTagName();
+			if (t.equals(XML_TAG_SUBELEMENT)) {
+				subs.add(new EctypalSubElement(e));
+			} else if (t.equals(XML_TAG_DESCRIPTION)) {
+				description = e.getTextContent();
+			} else if (t.equals(XML_TAG_COLOR)) {
+				color = e.getTextContent();
+			}
+		}
+		this.description = description;
+		this.color = color;
+
+		int num = subs.size();
+		subIds = new String[num];
+		subTypes = new String[num];
+		subFroms = new int[num];
+		subTos = new int[num];
+		subDirections = new String[num];
+		subDescriptions = new String[num];
+		int boxes = 0;
+		for (int i = 0; i < num; i++) {
+			EctypalSubElement ese = subs.get(i);
+			subIds[i] = ese.getId();
+			subTypes[i] = ese.getType();
+			subFroms[i] = ese.getFrom();
+			subTos[i] = ese.getTo();
+			subDirections[i] = ese.getDirection();
+			subDescriptions[i] = ese.getDescription();
+			if (SUBELEMENT_TYPE_BOX.equals(ese.getType()))
+				boxes++;
+		}
+
+		boxFroms = new int[boxes];
+		boxTos = new int[boxes];
+		int initBoxLen = 0;
+		int initiatorSmall = -1, initiatorLarge = -1, terminatorSmall = -1, terminatorLarge = -1;
+		boolean firstBox = true;
+		int b = 0;
+		boolean sorted = true;
+		for (int i = 0; i < num; i++) {
+			if (!SUBELEMENT_TYPE_BOX.equals(subTypes[i]))
+				continue;
+			if (b > 0 && subFroms[i] <= boxTos[b - 1])
+				sorted = false;
+			boxFroms[b] = subFroms[i];
+			boxTos[b++] = subTos[i];
+			initBoxLen += subTos[i] - subFroms[i] + 1;
+			if (direction) {
+				terminatorSmall = subTos[i] - 2;
+				terminatorLarge = subTos[i];
+			} else {
+				initiatorSmall = subTos[i] - 2;
+				initiatorLarge = subTos[i];
+			}
+			if (firstBox) {
+				if (direction) {
+					initiatorSmall = subFroms[i];
+					initiatorLarge = subFroms[i] + 2;
+				} else {
+					terminatorSmall = subFroms[i];
+					terminatorLarge = subFroms[i] + 2;
+				}
+				firstBox = false;
+			}
+		}
+		this.initBoxLen = initBoxLen;
+		this.initiatorSmall = initiatorSmall;
+		this.initiatorLarge = initiatorLarge;
+		this.terminatorSmall = terminatorSmall;
+		this.terminatorLarge = terminatorLarge;
+		if (!sorted) {
+			// Can not be searched, every base is read from the reference
+			boxFroms = new int[0];
+			boxTos = new int[0];
+		}
+	}
+
+	private static String attribute(Element ele, String name) {
+		String value = ele.getAttribute(name);
+		return "".equals(value) ? null : value;
+	}
+
+	/**
+	 * A new, modifiable SubElement of index <code>i</code>.
+	 */
+	EctypalSubElement subElement(int i) {
+		return new EctypalSubElement(subIds[i], subTypes[i], subFroms[i], subTos[i], subDirections[i],
+				subDescriptions[i]);
+	}
+
+	/**
+	 * Reference base at <code>pos</code>, as FastaReader.extract_char gives
+	 * it. Bases of the Boxes are read once per model, others are read from
+	 * <code>fr</code>.
+	 */
+	char base(FastaReader fr, String chr, int pos) throws IOException {
+		int lo = 0, hi = boxFroms.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (boxTos[mid] < pos)
+				lo = mid + 1;
+			else if (boxFroms[mid] > pos)
+				hi = mid - 1;
+			else {
+				char[] bases = boxBases(fr, chr)[mid];
+				if (bases != null)
+					return bases[pos - boxFroms[mid]];
+				break;
+			}
+		}
+		return fr.extract_char(chr, pos);
+	}
+
+	private char[][] boxBases(FastaReader fr, String chr) throws IOException {
+		char[][] bases = boxBases;
+		if (bases != null)
+			return bases;
+		synchronized (this) {
+			if (boxBases == null) {
+				bases = new char[boxFroms.length][];
+				for (int i = 0; i < boxFroms.length; i++) {
+					String seq = fr.extract_seq(chr, boxFroms[i], boxTos[i]);
+					// Not a plain run of letters, leave it to extract_char
+					if (seq != null && seq.length() == boxTos[i] - boxFroms[i] + 1)
+						bases[i] = seq.toCharArray();
+				}
+				boxBases = bases;
+			}
+			return boxBases;
+		}
+	}
+}
@@ -2,13 +2,16 @@ package filereaders.individual;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import filereaders.FastaReader;
+import filereaders.gff.Region;
 import filereaders.individual.vcf.Variant;
 
 
@@ -24,9 +27,11 @@ public class VariantAnalysis {
 	private Document doc;
 	private FastaReader fr;
 	private Element elements;
-	private Element ctrlAreas;
+	private List<ControlArea> ctrlAreas;
 	private List<Variant> variants;
 	private String chr;
+	private String source = null;
+	private Set<String> affectedSymbols = new HashSet<String>();
 
 	/**
 	 * Remember that each deal should construct a new
@@ -49,11 +54,44 @@ public class VariantAnalysis {
 		this.doc = doc;
 		this.fr = fr;
 		this.elements = elements;
-		this.ctrlAreas = ctrlArea;
+		this.ctrlAreas = EctypalElements.Element2ControlAreas(ctrlArea);
 		this.variants = extractVariantsFromNode(variants);
 		this.chr = chr;
 	}
 
+	/**
+	 * Same as above, with the control areas and variants as objects.
+	 * 
+	 * @param ctrlAreas
+	 *            Control areas from GRFReader.read_grf2regions, may be null
+	 * @param variants
+	 *            All variantions designated to be dealed, after merge with
+	 *            DBSNP. They are copied before dealing.
+	 */
+	public VariantAnalysis(Document doc, FastaReader fr, Element elements, List<Region> ctrlAreas, List<Variant> variants, String chr) {
+		this.doc = doc;
+		this.fr = fr;
+		this.elements = elements;
+		this.ctrlAreas = regions2ControlAreas(ctrlAreas);
+		this.variants = new ArrayList<Variant>(variants.size());
+		for (Variant v : variants)
+			this.variants.add(Variant.copy(v));
+		this.chr = chr;
+	}
+
+	/**
+	 * Same as above, sharing the transcript models of <code>elements</code>
+	 * with the other sessions.
+	 * 
+	 * @param annotation
+	 *            path of the annotation file <code>elements</code> was read
+	 *            from
+	 */
+	public VariantAnalysis(Document doc, FastaReader fr, String annotation, Element elements, List<Region> ctrlAreas, List<Variant> variants, String chr) {
+		this(doc, fr, elements, ctrlAreas, variants, chr);
+		this.source = TranscriptModel.source(annotation);
+	}
+
 	/**
 	 * Start to deal.<br />
 	 * The result may contain just one Object or two Object.
@@ -65,7 +103,7 @@ public class VariantAnalysis {
 	@SuppressWarnings("unchecked")
 	public Element[] deal() throws IOException {
 		if (variants.size() == 0){
-			return new Element[]{ new EctypalElements(doc, fr, elements, ctrlAreas, chr, false).write2XML() };
+			return new Element[]{ new EctypalElements(doc, fr, source, elements, ctrlAreas, chr, false).write2XML() };
 		}
 		
 		Object[] divide = VariantMapToDBSNP.divide(variants);
@@ -74,17 +112,20 @@ public class VariantAnalysis {
 
 		if(divide.length == 1){
 			List<Variant> firstList = (List<Variant>)divide[0];
-			EctypalElements ee = new EctypalElements(doc, fr, elements, ctrlAreas, chr, false);
+			EctypalElements ee = new EctypalElements(doc, fr, source, elements, ctrlAreas, chr, false);
 			first = firstList.size() > 0 ? ee.deal(firstList) : ee.write2XML();
+			ee.addAffectedSymbols(affectedSymbols);
 
 			return new Element[]{ first };
 		}else{
 			List<Variant> firstList = (List<Variant>)divide[0];
-			EctypalElements ee1 = new EctypalElements(doc, fr, elements, ctrlAreas, chr, true);
+			EctypalElements ee1 = new EctypalElements(doc, fr, source, elements, ctrlAreas, chr, true);
 			first = firstList.size() > 0 ? ee1.deal(firstList) : ee1.write2XML();
+			ee1.addAffectedSymbols(affectedSymbols);
 			List<Variant> secondList = (List<Variant>)divide[1];
-			EctypalElements ee2 = new EctypalElements(doc, fr, elements, ctrlAreas, chr, true);
+			EctypalElements ee2 = new EctypalElements(doc, fr, source, elements, ctrlAreas, chr, true);
 			second = secondList.size() > 0 ? ee2.deal(secondList) : ee2.write2XML();
+			ee2.addAffectedSymbols(affectedSymbols);
 
 			return new Element[]{ first, second };
 		}
@@ -92,8 +133,19 @@ public class VariantAnalysis {
 	}
 	public Element easydeal() throws IOException {
 		List<Variant> firstList=variants;
-		EctypalElements ee = new EctypalElements(doc, fr, elements, ctrlAreas, chr, false);
-		return firstList.size() > 0 ? ee.deal(firstList) : ee.write2XML();
+		EctypalElements ee = new EctypalElements(doc, fr, source, elements, ctrlAreas, chr, false);
+		Element result = firstList.size() > 0 ? ee.deal(firstList) : ee.write2XML();
+		ee.addAffectedSymbols(affectedSymbols);
+		return result;
+	}
+
+	/**
+	 * Symbols of the Elements affected by some variants in the last deal, what
+	 * GdfElementSelector selects by.
+	 * @return
+	 */
+	public Set<String> getAffectedSymbols() {
+		return affectedSymbols;
 	}
 	/**
 	 * Copy all variants from Element:variants
@@ -108,6 +160,21 @@ public class VariantAnalysis {
 		return list;
 	}
 
+	private static List<ControlArea> regions2ControlAreas(List<Region> regions){
+		if (regions == null || regions.size() == 0)
+			return null;
+		List<ControlArea> cas = new ArrayList<ControlArea>(regions.size());
+		ControlArea ca = null;
+		for (Region r : regions) {
+			ca = new ControlArea();
+			ca.id = r.getId();
+			ca.from = r.getFrom();
+			ca.to = r.getTo();
+			cas.add(ca);
+		}
+		return cas;
+	}
+
 	static class ControlArea {
 		String id;
 		int from;
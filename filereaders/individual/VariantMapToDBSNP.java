@@ -86,11 +86,28 @@ public class VariantMapToDBSNP implements Comparable<VariantMapToDBSNP> {
 		return divide ? new Object[]{ result1, result2 } : new Object[]{ variants };
 	}
 
+	public Variant getVariant() {
+		return variant;
+	}
+
 	@Override
 	public int compareTo(VariantMapToDBSNP o) {
 		return this.variant.compareTo(o.variant);
 	}
 	
+	/**
+	 * Copy the variants of a merge result, as the downstream analysis reads them
+	 * back from the Variants element.
+	 * @param merged
+	 * @return
+	 */
+	public static List<Variant> variants(List<VariantMapToDBSNP> merged){
+		List<Variant> variants = new ArrayList<Variant>(merged.size());
+		for(VariantMapToDBSNP m : merged)
+			variants.add(Variant.copy(m.variant));
+		return variants;
+	}
+	
 	public static VariantMapToDBSNP copy(VariantMapToDBSNP obj){
 		Variant variant = null;
 		DBSnpInfo dbsnp = null;
@@ -102,4 +119,13 @@ public class VariantMapToDBSNP implements Comparable<VariantMapToDBSNP> {
 		
 		return new VariantMapToDBSNP(variant, dbsnp, dbsnpId);
 	}
+	
+	/**
+	 * Copy of <code>obj</code> as if it had not been merged with DBSNP.
+	 * @param obj
+	 * @return
+	 */
+	public static VariantMapToDBSNP unmerged(VariantMapToDBSNP obj){
+		return new VariantMapToDBSNP(Variant.copy(obj.variant), null, null);
+	}
 }
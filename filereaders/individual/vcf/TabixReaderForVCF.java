@@ -35,6 +35,10 @@ import java.nio.*;
 import java.util.HashMap;
 import java.util.Arrays;
 
+import filereaders.Cancellation;
+import filereaders.Metrics;
+import filereaders.tools.BlockCache;
+
 public class TabixReaderForVCF {
 	private String mFn;
 	private BlockCompressedInputStream mFp;
@@ -97,10 +101,10 @@ public class TabixReaderForVCF {
 		mFn = fn;
 		if (fn.startsWith("http:") || fn.startsWith("https:")
 				|| fn.startsWith("ftp:")) // Liran added
-			mFp = new BlockCompressedInputStream(new URL(fn)); // Liran added
+			mFp = BlockCache.open(new URL(fn)); // Liran added
 		else
 			// Liran added
-			mFp = new BlockCompressedInputStream(new File(fn));
+			mFp = BlockCache.open(new File(fn));
 		readIndex();
 	}
 
@@ -262,7 +266,9 @@ public class TabixReaderForVCF {
 		else
 			// Liran added
 			is = new BlockCompressedInputStream(new File(mFn + ".tbi"));
+		long start = System.nanoTime();
 		readIndex(is);
+		Metrics.stage(Metrics.STAGE_INDEX, System.nanoTime() - start);
 	}
 
 	/**
@@ -391,7 +397,27 @@ public class TabixReaderForVCF {
 			offLenMinus1 = off.length - 1;
 		}
 
+		private long elapsed, bytes;
+
+		/**
+		 * Next overlapping line. Time spent seeking, inflating and scanning
+		 * is reported to Metrics once the iterator is exhausted.
+		 */
 		public String next() throws IOException {
+			if (iseof)
+				return null;
+			Cancellation.check();
+			long start = System.nanoTime();
+			String s = next_line();
+			elapsed += System.nanoTime() - start;
+			if (s == null) {
+				Metrics.stage(Metrics.STAGE_DECOMPRESS, elapsed);
+				Metrics.count(Metrics.BYTES_READ, bytes);
+			}
+			return s;
+		}
+
+		private String next_line() throws IOException {
 			if (iseof)
 				return null;
 			for (;;) {
@@ -403,6 +429,7 @@ public class TabixReaderForVCF {
 						break; // no more chunks
 					if (i >= 0)
 						assert (curr_off == off[i].v); // otherwise bug
+					BlockCache.readAhead(mFp, off[i + 1].v);
 					if (i < 0 || off[i].v != off[i + 1].u) { // not adjacent
 																// chunks; then
 																// seek
@@ -413,6 +440,7 @@ public class TabixReaderForVCF {
 				}
 				String s;
 				if ((s = readLine(mFp)) != null) {
+					bytes += s.length() + 1;
 					TIntv intv;
 					curr_off = mFp.getFilePointer();
 					if (s.length() == 0 || s.charAt(0) == mMeta)
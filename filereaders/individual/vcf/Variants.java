@@ -1,5 +1,8 @@
 package filereaders.individual.vcf;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -16,6 +19,12 @@ public class Variants {
 	 * For DBSnp, it is track; For Personal Genemic, it is Track_Sample.
 	 */
 	private Element ele;
+	/**
+	 * Variants kept as objects when there is no <code>Document</code>.
+	 */
+	private List<Variant> list;
+	private String id;
+	private String superId;
 
 	private Document doc;
 	/**
@@ -61,6 +70,13 @@ public class Variants {
 		this.isModeDENSE = mode.equals(MODE_DENSE);
 		this.isModeDETAIL = mode.equals(MODE_DETAIL);
 		this.outputLetter = !isModeDENSE || bpp < bppLimit;
+		this.id = subId != null ? subId : id;
+		this.superId = subId != null ? id : null;
+		if (doc == null) {
+			// Collect the Variant objects for the personal genome analysis
+			list = new ArrayList<Variant>();
+			return;
+		}
 		ele = doc.createElement(XML_TAG_VARIANTS);
 		ele.setAttribute(XML_TAG_ID, id);
 		if (subId != null){
@@ -86,7 +102,12 @@ public class Variants {
 			if (isModeDETAIL) {
 				v.setDescription(vcf.getDetail());
 			}
-			v.write2xml(doc, ele, outputLetter);
+			if (list != null) {
+				if (!outputLetter)
+					v.setLetter(null);
+				list.add(v);
+			} else
+				v.write2xml(doc, ele, outputLetter);
 			lastpos = v.getTo();
 		}
 	}
@@ -94,4 +115,22 @@ public class Variants {
 	public Element getVariantsElement() {
 		return ele;
 	}
+
+	/**
+	 * Variants collected without a <code>Document</code>, in file order.
+	 */
+	public List<Variant> getVariants() {
+		return list;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * The track of a sample, null for DBSnp.
+	 */
+	public String getSuperId() {
+		return superId;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package filereaders.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.sf.samtools.seekablestream.SeekableBufferedStream;
+import net.sf.samtools.seekablestream.SeekableFileStream;
+import net.sf.samtools.seekablestream.SeekableHTTPStream;
+import net.sf.samtools.seekablestream.SeekableStream;
+import net.sf.samtools.util.BlockCompressedInputStream;
+
+import filereaders.Metrics;
+
+/**
+ * Inflated BGZF blocks shared by all the readers of the process (TabixReader,
+ * TabixReaderForVCF, BAMFileReader), keyed by file and compressed offset, so
+ * a hot block read by many sessions is inflated once.
+ * 
+ * Blocks are kept off the heap, in one direct buffer of slots of
+ * <code>SLOT</code> bytes, the largest inflated block; the least recently
+ * used slot is taken for a new block. The size is set in megabytes by
+ * -Dgbhit.block.cache, 0 leaving the readers their own inflating streams.
+ * Hits, misses and the inflate time the hits saved are counted in Metrics.
+ */
+public final class BlockCache {
+	public static final int SLOT = 64 * 1024;
+	static final int SLOTS = (int) Math.min(Integer.MAX_VALUE / SLOT,
+			Long.getLong("gbhit.block.cache", 64) * 1024 * 1024 / SLOT);
+
+	private static final ByteBuffer slab = SLOTS > 0 ? ByteBuffer.allocateDirect(SLOTS * SLOT) : null;
+	private static final Map<Key, Integer> slots = new LinkedHashMap<Key, Integer>(Math.max(16, SLOTS * 2), 0.75f, true);
+	private static final int[] lengths = new int[Math.max(0, SLOTS)];
+	private static final int[] compressed = new int[Math.max(0, SLOTS)];
+	private static final long[] nanos = new long[Math.max(0, SLOTS)];
+	private static int used = 0;
+
+	private BlockCache() {
+	}
+
+	private static final class Key {
+		final String source;
+		final long address;
+
+		Key(String source, long address) {
+			this.source = source;
+			this.address = address;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return address == k.address && source.equals(k.source);
+		}
+
+		@Override
+		public int hashCode() {
+			return source.hashCode() * 31 + (int) (address ^ (address >>> 32));
+		}
+	}
+
+	/**
+	 * A stream of the bgzipped file, reading through the cache if it is on.
+	 */
+	public static BlockCompressedInputStream open(File file) throws IOException {
+		if (SLOTS <= 0)
+			return new BlockCompressedInputStream(file);
+		return new CachedBlockInputStream(new SeekableFileStream(file));
+	}
+
+	public static BlockCompressedInputStream open(URL url) throws IOException {
+		if (SLOTS <= 0)
+			return new BlockCompressedInputStream(url);
+		return new CachedBlockInputStream(new SeekableBufferedStream(new SeekableHTTPStream(url)));
+	}
+
+	public static BlockCompressedInputStream open(SeekableStream stream) throws IOException {
+		if (SLOTS <= 0)
+			return new BlockCompressedInputStream(stream);
+		return new CachedBlockInputStream(stream);
+	}
+
+	/**
+	 * Have <code>in</code> inflate the blocks up to the file pointer
+	 * <code>end</code> ahead, if it reads through the cache.
+	 */
+	public static void readAhead(BlockCompressedInputStream in, long end) {
+		if (in instanceof CachedBlockInputStream)
+			((CachedBlockInputStream) in).readAhead(end);
+	}
+
+	/**
+	 * Copy the block of <code>source</code> at <code>address</code> into
+	 * <code>block</code>, its inflated and compressed lengths into
+	 * <code>sizes</code>. Whether it was cached.
+	 */
+	static boolean get(String source, long address, byte[] block, int[] sizes) {
+		long saved;
+		synchronized (slots) {
+			Integer slot = slots.get(new Key(source, address));
+			if (slot == null) {
+				Metrics.count(Metrics.BLOCK_CACHE_MISSES, 1);
+				return false;
+			}
+			ByteBuffer b = slab.duplicate();
+			b.position(slot * SLOT);
+			b.get(block, 0, lengths[slot]);
+			sizes[0] = lengths[slot];
+			sizes[1] = compressed[slot];
+			saved = nanos[slot];
+		}
+		Metrics.count(Metrics.BLOCK_CACHE_HITS, 1);
+		Metrics.count(Metrics.INFLATE_NANOS_SAVED, saved);
+		return true;
+	}
+
+	/**
+	 * Keep the block of <code>source</code> at <code>address</code>, inflated
+	 * in <code>inflate</code> nanoseconds.
+	 */
+	static void put(String source, long address, byte[] block, int length, int compressed_length, long inflate) {
+		Key key = new Key(source, address);
+		synchronized (slots) {
+			if (slots.containsKey(key))
+				return;
+			int slot;
+			if (used < SLOTS)
+				slot = used++;
+			else {
+				Iterator<Integer> eldest = slots.values().iterator();
+				slot = eldest.next();
+				eldest.remove();
+			}
+			ByteBuffer b = slab.duplicate();
+			b.position(slot * SLOT);
+			b.put(block, 0, length);
+			lengths[slot] = length;
+			compressed[slot] = compressed_length;
+			nanos[slot] = inflate;
+			slots.put(key, slot);
+		}
+	}
+}
@@ -0,0 +1,435 @@
+package filereaders.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import net.sf.samtools.seekablestream.SeekableStream;
+import net.sf.samtools.util.BlockCompressedInputStream;
+import net.sf.samtools.util.BlockCompressedStreamConstants;
+
+import filereaders.Metrics;
+
+/**
+ * A BlockCompressedInputStream over a seekable file that takes its blocks
+ * from BlockCache, and inflates and adds those it misses. File pointers,
+ * seeks and lines behave as in BlockCompressedInputStream, so the readers
+ * take one for the other; CRCs are not checked, as they are not by default.
+ * Over the span of a chunk given by readAhead, the next blocks are inflated
+ * on a pool of threads while the reader is on the current one, and handed
+ * over in file order. Made by BlockCache.open.
+ */
+public class CachedBlockInputStream extends BlockCompressedInputStream {
+	private static final int HEADER = BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
+	private static final int FOOTER = BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+	/**
+	 * Threads inflating blocks read ahead, shared by all the streams; set by
+	 * -Dgbhit.inflate.threads, 0 reading none ahead.
+	 */
+	static final int THREADS = Integer.getInteger("gbhit.inflate.threads", Runtime.getRuntime().availableProcessors());
+	static final int DEPTH = 2 * THREADS;
+	private static final ExecutorService inflaters = Executors.newFixedThreadPool(Math.max(1, THREADS),
+			new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "gbhit-inflate-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	private static final ThreadLocal<Inflater> threadInflater = new ThreadLocal<Inflater>() {
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	private final SeekableStream file;
+	/**
+	 * Names the file in the cache: its path, or URL, with its length and for
+	 * a local file its modification time, so a file replaced is read again.
+	 */
+	private final String source;
+	private final byte[] buffer = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
+	private final byte[] block = new byte[BlockCache.SLOT];
+	private final int[] sizes = new int[2];
+	private final Inflater inflater = new Inflater(true);
+	private boolean loaded = false;
+	private int length = 0;
+	private int offset = 0;
+	private long address = 0;
+	private int lastLength = 0;
+	/**
+	 * Where the next read of file starts.
+	 */
+	private long position;
+	private ByteArrayOutputStream line;
+	/**
+	 * Blocks read ahead, in file order, being inflated or taken from the
+	 * cache; aheadAddress is the next block to read ahead, up to block
+	 * aheadLast, none if -1.
+	 */
+	private final ArrayDeque<Ahead> ahead = new ArrayDeque<Ahead>();
+	private final byte[] cached = new byte[BlockCache.SLOT];
+	private final int[] cachedSizes = new int[2];
+	private long aheadAddress = -1;
+	private long aheadLast = -1;
+
+	CachedBlockInputStream(SeekableStream file) throws IOException {
+		super(new ByteArrayInputStream(new byte[0]));
+		this.file = file;
+		File local = new File(file.getSource());
+		this.source = (local.isFile() ? local.getAbsolutePath() + "@" + local.lastModified() : file.getSource())
+				+ "#" + file.length();
+		this.position = file.position();
+	}
+
+	@Override
+	public void setCheckCrcs(boolean check) {
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (!loaded || offset == length)
+			readBlock();
+		return length - offset;
+	}
+
+	@Override
+	public void close() throws IOException {
+		clearAhead();
+		inflater.end();
+		file.close();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (offset < length)
+			return block[offset++] & 0xFF;
+		return available() > 0 ? block[offset++] & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = 0, requested = len;
+		while (len > 0) {
+			int available = available();
+			if (available == 0)
+				break;
+			int n = Math.min(available, len);
+			System.arraycopy(block, offset, b, off, n);
+			offset += n;
+			off += n;
+			len -= n;
+			read += n;
+		}
+		return read == 0 && requested > 0 ? -1 : read;
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		int available = available();
+		if (available == 0)
+			return null;
+		if (line == null)
+			line = new ByteArrayOutputStream(8192);
+		line.reset();
+		boolean done = false, cr = false;
+		while (!done) {
+			int pos = offset, count = 0;
+			while (available-- > 0) {
+				byte c = block[pos++];
+				if (c == '\n') {
+					done = true;
+					break;
+				} else if (cr) {
+					--pos;
+					done = true;
+					break;
+				} else if (c == '\r') {
+					cr = true;
+					continue;
+				}
+				++count;
+			}
+			if (offset < pos) {
+				line.write(block, offset, count);
+				offset = pos;
+			}
+			available = available();
+			if (available == 0)
+				done = true;
+		}
+		return line.toString();
+	}
+
+	@Override
+	public void seek(long pos) throws IOException {
+		long blockAddress = pos >>> 16;
+		int blockOffset = (int) (pos & 0xFFFF);
+		int available;
+		if (loaded && address == blockAddress)
+			available = length;
+		else {
+			address = blockAddress;
+			lastLength = 0;
+			readBlock();
+			available = available();
+		}
+		if (blockOffset > available || (blockOffset == available && !eof()))
+			throw new IOException("Invalid file pointer: " + pos);
+		offset = blockOffset;
+	}
+
+	/**
+	 * Whether the current block is the last one but the empty one ending the
+	 * file, or the last one.
+	 */
+	private boolean eof() {
+		long rest = file.length() - (address + lastLength);
+		return rest <= 0 || rest == BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length;
+	}
+
+	@Override
+	public long getFilePointer() {
+		if (offset == length)
+			return (address + lastLength) << 16;
+		return address << 16 | offset;
+	}
+
+	/**
+	 * Make the block after the current one current.
+	 */
+	private void readBlock() throws IOException {
+		long next = address + lastLength;
+		loaded = true;
+		offset = 0;
+		address = next;
+		Ahead head = ahead.peek();
+		if (head != null && head.address != next) {
+			// A seek out of the blocks read ahead
+			clearAhead();
+			head = null;
+		}
+		if (head != null) {
+			ahead.poll();
+			byte[] inflated = head.get();
+			System.arraycopy(inflated, 0, block, 0, inflated.length);
+			length = inflated.length;
+			lastLength = head.compressed;
+			if (head.inflated != null)
+				Metrics.count(Metrics.INFLATED_AHEAD, 1);
+		} else if (BlockCache.get(source, next, block, sizes)) {
+			length = sizes[0];
+			lastLength = sizes[1];
+		} else {
+			int blockLength = readCompressed(next);
+			if (blockLength == 0) {
+				length = 0;
+				lastLength = 0;
+				return;
+			}
+			long start = System.nanoTime();
+			length = inflate(inflater, buffer, blockLength, block, next + " of " + file.getSource());
+			lastLength = blockLength;
+			BlockCache.put(source, next, block, length, blockLength, System.nanoTime() - start);
+		}
+		fillAhead(next + lastLength);
+	}
+
+	/**
+	 * Read ahead up to the block of the file pointer <code>end</code>: the
+	 * blocks after the current one are read from then on, and inflated on
+	 * the pool, <code>DEPTH</code> of them at a time, while the caller
+	 * reads the current one. For the end of the chunk a reader is about to
+	 * scan, from the index; the blocks of an earlier end still pending are
+	 * dropped when the reader seeks elsewhere.
+	 */
+	public void readAhead(long end) {
+		if (DEPTH > 0)
+			aheadLast = end >>> 16;
+	}
+
+	/**
+	 * Queue the blocks from <code>from</code> on: those in the cache as they
+	 * are, its compressed length giving the next address, the others read
+	 * from the file and inflated on the pool.
+	 */
+	private void fillAhead(long from) throws IOException {
+		if (aheadLast < 0)
+			return;
+		if (ahead.isEmpty())
+			aheadAddress = from;
+		while (ahead.size() < DEPTH && aheadAddress <= aheadLast) {
+			if (BlockCache.get(source, aheadAddress, cached, cachedSizes)) {
+				byte[] inflated = new byte[cachedSizes[0]];
+				System.arraycopy(cached, 0, inflated, 0, cachedSizes[0]);
+				ahead.add(new Ahead(aheadAddress, cachedSizes[1], inflated));
+				aheadAddress += cachedSizes[1];
+				continue;
+			}
+			int blockLength = readCompressed(aheadAddress);
+			if (blockLength == 0) {
+				aheadLast = -1;
+				break;
+			}
+			byte[] compressed = new byte[blockLength];
+			System.arraycopy(buffer, 0, compressed, 0, blockLength);
+			ahead.add(new Ahead(aheadAddress, blockLength,
+					inflaters.submit(new Inflate(source, aheadAddress, compressed, file.getSource()))));
+			aheadAddress += blockLength;
+		}
+	}
+
+	private void clearAhead() {
+		for (Ahead a : ahead)
+			if (a.inflated != null)
+				a.inflated.cancel(false);
+		ahead.clear();
+	}
+
+	/**
+	 * Read the compressed block at <code>at</code> into buffer, its length,
+	 * 0 at the end of the file.
+	 */
+	private int readCompressed(long at) throws IOException {
+		if (position != at) {
+			file.seek(at);
+			position = at;
+		}
+		int count = readBytes(0, HEADER);
+		if (count == 0)
+			return 0;
+		if (count != HEADER || buffer[0] != BlockCompressedStreamConstants.GZIP_ID1
+				|| (buffer[1] & 0xFF) != BlockCompressedStreamConstants.GZIP_ID2
+				|| buffer[12] != BlockCompressedStreamConstants.BGZF_ID1
+				|| buffer[13] != BlockCompressedStreamConstants.BGZF_ID2)
+			throw new IOException("Invalid BGZF block at " + at + " of " + file.getSource());
+		int blockLength = unpackInt16(buffer, BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
+		if (blockLength < HEADER + FOOTER || blockLength > buffer.length)
+			throw new IOException("Unexpected compressed block length: " + blockLength);
+		if (readBytes(HEADER, blockLength - HEADER) != blockLength - HEADER)
+			throw new IOException("Premature end of file " + file.getSource());
+		return blockLength;
+	}
+
+	/**
+	 * Inflate the block of <code>blockLength</code> bytes in
+	 * <code>compressed</code> into <code>out</code>, its inflated length.
+	 */
+	private static int inflate(Inflater inflater, byte[] compressed, int blockLength, byte[] out, String where)
+			throws IOException {
+		int size = unpackInt16(compressed, blockLength - 4) | unpackInt16(compressed, blockLength - 2) << 16;
+		if (size < 0 || size > out.length)
+			throw new IOException("Unexpected inflated block length: " + size);
+		inflater.reset();
+		inflater.setInput(compressed, HEADER, blockLength - HEADER - FOOTER);
+		try {
+			if (inflater.inflate(out, 0, size) != size)
+				throw new IOException("Did not inflate expected amount");
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt BGZF block at " + where + ": " + e.getMessage());
+		}
+		return size;
+	}
+
+	/**
+	 * A block read ahead: its inflation on the pool, or null for a block
+	 * found in the cache, <code>cached</code>.
+	 */
+	private static final class Ahead {
+		final long address;
+		final int compressed;
+		final Future<byte[]> inflated;
+		final byte[] cached;
+
+		Ahead(long address, int compressed, Future<byte[]> inflated) {
+			this.address = address;
+			this.compressed = compressed;
+			this.inflated = inflated;
+			this.cached = null;
+		}
+
+		Ahead(long address, int compressed, byte[] cached) {
+			this.address = address;
+			this.compressed = compressed;
+			this.inflated = null;
+			this.cached = cached;
+		}
+
+		byte[] get() throws IOException {
+			if (inflated == null)
+				return cached;
+			try {
+				return inflated.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new IOException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	/**
+	 * Inflation of a block read ahead, missing from the cache.
+	 */
+	private static final class Inflate implements Callable<byte[]> {
+		private final String source;
+		private final long address;
+		private final byte[] compressed;
+		private final String name;
+
+		Inflate(String source, long address, byte[] compressed, String name) {
+			this.source = source;
+			this.address = address;
+			this.compressed = compressed;
+			this.name = name;
+		}
+
+		public byte[] call() throws IOException {
+			byte[] out = new byte[BlockCache.SLOT];
+			long start = System.nanoTime();
+			int length = inflate(threadInflater.get(), compressed, compressed.length, out, address + " of " + name);
+			BlockCache.put(source, address, out, length, compressed.length, System.nanoTime() - start);
+			byte[] inflated = new byte[length];
+			System.arraycopy(out, 0, inflated, 0, length);
+			return inflated;
+		}
+	}
+
+	private int readBytes(int off, int len) throws IOException {
+		int read = 0;
+		while (read < len) {
+			int n = file.read(buffer, off + read, len - read);
+			if (n < 0)
+				break;
+			read += n;
+		}
+		position += read;
+		return read;
+	}
+
+	private static int unpackInt16(byte[] b, int off) {
+		return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+	}
+}
@@ -0,0 +1,212 @@
+package filereaders.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sort tab-delimited lines by sequence name and start, as tabix wants them,
+ * in bounded memory: lines are sorted in runs of at most maxBytes, written
+ * to temporary files, and the runs are merged.
+ *
+ * Lines that have no number in the start column (comments, BED track and
+ * browser lines, a VCF header) are headers: they come first, in their
+ * order. Lines of the same sequence and start keep their order.
+ */
+public class ExternalSort {
+	private final int seqCol;
+	private final int startCol;
+	private final long maxBytes;
+	private final File tmpdir;
+	private int headers = 0;
+
+	/**
+	 * @param seqCol
+	 *            0-based column of the sequence name
+	 * @param startCol
+	 *            0-based column of the start
+	 * @param maxBytes
+	 *            approximate memory for the lines of a run
+	 * @param tmpdir
+	 *            where runs are written
+	 */
+	public ExternalSort(int seqCol, int startCol, long maxBytes, File tmpdir) {
+		this.seqCol = seqCol;
+		this.startCol = startCol;
+		this.maxBytes = maxBytes;
+		this.tmpdir = tmpdir;
+	}
+
+	/**
+	 * Number of header lines written by the last sort.
+	 */
+	public int headers() {
+		return headers;
+	}
+
+	private static final class Line {
+		final String text;
+		final String seq;
+		final long start;
+		final int order;
+
+		Line(String text, String seq, long start, int order) {
+			this.text = text;
+			this.seq = seq;
+			this.start = start;
+			this.order = order;
+		}
+	}
+
+	private static final Comparator<Line> ORDER = new Comparator<Line>() {
+		public int compare(Line a, Line b) {
+			int c = a.seq.compareTo(b.seq);
+			if (c != 0)
+				return c;
+			if (a.start != b.start)
+				return a.start < b.start ? -1 : 1;
+			return a.order < b.order ? -1 : (a.order == b.order ? 0 : 1);
+		}
+	};
+
+	/**
+	 * The data line as a Line, or null for a header.
+	 */
+	private Line parse(String text, int order) {
+		if (text.length() == 0 || text.charAt(0) == '#')
+			return null;
+		int col = 0, from = 0;
+		String seq = null;
+		while (from <= text.length()) {
+			int to = text.indexOf('\t', from);
+			if (to < 0)
+				to = text.length();
+			if (col == seqCol)
+				seq = text.substring(from, to);
+			else if (col == startCol) {
+				try {
+					return seq == null ? null : new Line(text, seq, Long.parseLong(text.substring(from, to)), order);
+				} catch (NumberFormatException e) {
+					return null;
+				}
+			}
+			col++;
+			from = to + 1;
+		}
+		return null;
+	}
+
+	/**
+	 * Sort the lines of <code>in</code> into <code>out</code>.
+	 */
+	public void sort(BufferedReader in, File out) throws IOException {
+		List<File> runs = new ArrayList<File>();
+		List<String> header = new ArrayList<String>();
+		List<Line> lines = new ArrayList<Line>();
+		try {
+			long bytes = 0;
+			int order = 0;
+			String text;
+			while ((text = in.readLine()) != null) {
+				Line line = parse(text, order++);
+				if (line == null) {
+					header.add(text);
+					continue;
+				}
+				lines.add(line);
+				// Chars, the object and the list slot
+				bytes += 2 * text.length() + 96;
+				if (bytes >= maxBytes) {
+					runs.add(write_run(lines));
+					lines.clear();
+					bytes = 0;
+				}
+			}
+			headers = header.size();
+			Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), "ISO-8859-1"), 1 << 16);
+			try {
+				for (String h : header) {
+					w.write(h);
+					w.write('\n');
+				}
+				if (runs.isEmpty()) {
+					Collections.sort(lines, ORDER);
+					for (Line line : lines) {
+						w.write(line.text);
+						w.write('\n');
+					}
+				} else {
+					if (!lines.isEmpty())
+						runs.add(write_run(lines));
+					lines.clear();
+					merge(runs, w);
+				}
+			} finally {
+				w.close();
+			}
+		} finally {
+			for (File run : runs)
+				run.delete();
+		}
+	}
+
+	private File write_run(List<Line> lines) throws IOException {
+		Collections.sort(lines, ORDER);
+		File run = File.createTempFile("gbhit-sort", ".run", tmpdir);
+		run.deleteOnExit();
+		Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(run), "ISO-8859-1"), 1 << 16);
+		try {
+			for (Line line : lines) {
+				w.write(line.text);
+				w.write('\n');
+			}
+		} finally {
+			w.close();
+		}
+		return run;
+	}
+
+	/**
+	 * Merge the sorted runs, the order of a line within equal ones being its run.
+	 */
+	private void merge(List<File> runs, Writer w) throws IOException {
+		final BufferedReader[] readers = new BufferedReader[runs.size()];
+		PriorityQueue<Line> heads = new PriorityQueue<Line>(runs.size(), ORDER);
+		try {
+			for (int i = 0; i < readers.length; i++) {
+				readers[i] = new BufferedReader(new InputStreamReader(new FileInputStream(runs.get(i)), "ISO-8859-1"), 1 << 16);
+				Line head = next(readers[i], i);
+				if (head != null)
+					heads.add(head);
+			}
+			Line head;
+			while ((head = heads.poll()) != null) {
+				w.write(head.text);
+				w.write('\n');
+				Line next = next(readers[head.order], head.order);
+				if (next != null)
+					heads.add(next);
+			}
+		} finally {
+			for (BufferedReader r : readers)
+				if (r != null)
+					r.close();
+		}
+	}
+
+	private Line next(BufferedReader r, int run) throws IOException {
+		String text = r.readLine();
+		return text == null ? null : parse(text, run);
+	}
+}
@@ -0,0 +1,148 @@
+package filereaders.tools;
+
+import java.util.Arrays;
+
+/**
+ * Overlap queries against a fixed set of closed intervals [from, to], e.g.
+ * the variants of a view, kept as primitive arrays sorted by start.
+ *
+ * A query first binary-searches the intervals starting at or before its end,
+ * the prefix maximum of the ends then tells whether any of them reaches its
+ * start. Testing or counting the overlaps of m query intervals against n
+ * intervals is O((n + m) log n), whatever the nesting of the intervals, where
+ * walking both lists in step misses overlaps with long intervals that contain
+ * later ones. Listing them (overlapping) is not bounded that way: see there.
+ */
+public class IntervalJoin {
+	private final int[] from;
+	private final int[] to;
+	/**
+	 * Position of each sorted interval in the arrays given to the constructor.
+	 */
+	private final int[] index;
+	/**
+	 * maxTo[i] is the largest end of the intervals 0..i.
+	 */
+	private final int[] maxTo;
+	/**
+	 * All the ends, sorted, for counting.
+	 */
+	private final int[] sortedTo;
+	private final int maxLength;
+
+	/**
+	 * @param from
+	 *            starts, in any order
+	 * @param to
+	 *            ends, inclusive
+	 */
+	public IntervalJoin(int[] from, int[] to) {
+		int n = from.length;
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = ((long) from[i] << 32) | (i & 0xffffffffL);
+		Arrays.sort(keys);
+		this.from = new int[n];
+		this.to = new int[n];
+		this.index = new int[n];
+		this.maxTo = new int[n];
+		this.sortedTo = new int[n];
+		int max = Integer.MIN_VALUE;
+		int len = 0;
+		for (int i = 0; i < n; i++) {
+			int k = (int) keys[i];
+			this.index[i] = k;
+			this.from[i] = from[k];
+			this.to[i] = to[k];
+			if (to[k] > max)
+				max = to[k];
+			this.maxTo[i] = max;
+			this.sortedTo[i] = to[k];
+			if (to[k] - from[k] > len)
+				len = to[k] - from[k];
+		}
+		Arrays.sort(this.sortedTo);
+		this.maxLength = len;
+	}
+
+	public int size() {
+		return from.length;
+	}
+
+	/**
+	 * Whether some interval overlaps [qfrom, qto].
+	 */
+	public boolean overlaps(int qfrom, int qto) {
+		int last = upper(from, qto) - 1;
+		return last >= 0 && maxTo[last] >= qfrom;
+	}
+
+	/**
+	 * For each query interval, whether some interval overlaps it.
+	 */
+	public boolean[] overlaps(int[] qfrom, int[] qto) {
+		boolean[] result = new boolean[qfrom.length];
+		for (int i = 0; i < qfrom.length; i++)
+			result[i] = overlaps(qfrom[i], qto[i]);
+		return result;
+	}
+
+	/**
+	 * Number of intervals overlapping [qfrom, qto]: those starting at or
+	 * before qto, less those ending before qfrom.
+	 */
+	public int count(int qfrom, int qto) {
+		return upper(from, qto) - lower(sortedTo, qfrom);
+	}
+
+	/**
+	 * Positions, in the arrays given to the constructor, of the intervals
+	 * overlapping [qfrom, qto], ordered by start.
+	 *
+	 * It scans the intervals starting from qfrom less the longest interval's
+	 * length up to qto, so it is O(log n + s) for the s intervals starting in
+	 * that span. That is close to the overlaps found when the intervals are
+	 * short, but one long interval widens every scan, up to O(n) a query.
+	 */
+	public int[] overlapping(int qfrom, int qto) {
+		int end = upper(from, qto);
+		// No interval starting before qfrom - maxLength reaches qfrom
+		int begin = lower(from, (int) Math.max((long) qfrom - maxLength, Integer.MIN_VALUE));
+		int[] result = new int[Math.max(end - begin, 0)];
+		int n = 0;
+		for (int i = begin; i < end; i++)
+			if (to[i] >= qfrom)
+				result[n++] = index[i];
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * First position whose value is &gt;= key.
+	 */
+	private static int lower(int[] a, int key) {
+		int lo = 0, hi = a.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * First position whose value is &gt; key.
+	 */
+	private static int upper(int[] a, int key) {
+		int lo = 0, hi = a.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] <= key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,111 @@
+package filereaders.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the manner of HdrHistogram. Values below
+ * 128 get a bucket each, every larger power of two is split into 64 linear
+ * sub-buckets, so a reported percentile is within 1.6% of the recorded value.
+ * Recording is lock free and may be called from any servlet thread.
+ *
+ * Values are whatever unit the caller records, Metrics uses microseconds.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 7;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT >> 1;
+	private static final int MAX_SHIFT = 34;
+	private static final long MAX_VALUE = (1L << (MAX_SHIFT + SUB_BITS)) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(SUB_COUNT
+			+ MAX_SHIFT * HALF_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	static int index(long value) {
+		if (value < SUB_COUNT)
+			return (int) value;
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int shift = msb - SUB_BITS + 1;
+		int sub = (int) (value >>> shift);
+		return SUB_COUNT + (shift - 1) * HALF_COUNT + (sub - HALF_COUNT);
+	}
+
+	/**
+	 * Highest value that falls into bucket <code>index</code>.
+	 */
+	static long highest(int index) {
+		if (index < SUB_COUNT)
+			return index;
+		int k = index - SUB_COUNT;
+		int shift = k / HALF_COUNT + 1;
+		long sub = k % HALF_COUNT + HALF_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		else if (value > MAX_VALUE)
+			value = MAX_VALUE;
+		counts.incrementAndGet(index(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long m;
+		while (value > (m = max.get()) && !max.compareAndSet(m, value))
+			;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotal() {
+		return total.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / n;
+	}
+
+	/**
+	 * @param percentile
+	 *            0 to 100
+	 * @return the value at the percentile, 0 when nothing is recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = 0;
+		long[] snapshot = new long[counts.length()];
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile / 100 * n);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank)
+				return Math.min(highest(i), max.get());
+		}
+		return max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+}
@@ -0,0 +1,887 @@
+package filereaders.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMFileWriter;
+import net.sf.samtools.SAMFileWriterFactory;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceRecord;
+
+import filereaders.Consts;
+
+/**
+ * Write a deterministic synthetic data set of one assembly, with every format
+ * Instance.append_track reads and a config.xml listing them, so benchmarks and
+ * load tests run without real genome data.
+ *
+ * <pre>
+ * usage:
+ * java filereaders.tools.SyntheticGenome [-seed N] [-assembly ID] [-chromosomes N]
+ * 	[-length BASES] [-depth N] [-read-length N] [-density VARIANTS_PER_KB]
+ * 	[-samples N] [-no-big] OUTPUT_DIR
+ * </pre>
+ *
+ * The same seed and knobs always give the same files. Every file of every
+ * chromosome draws from its own random stream, and the genotypes of every
+ * sample from their own too, so changing the sample count only adds or
+ * removes genotype columns of samples.vcf.gz (and changes its AC and DP):
+ * the reference, genes, sites, personal variants and reads stay as they
+ * were. Changing the density moves the variants and so the reads.
+ *
+ * Files written into the output directory:
+ * <ul>
+ * <li>ref.fa, ref.fa.fai, chrom.sizes, cytoband.txt, hgnc.txt</li>
+ * <li>refGene.anno.gz, genes.gff.gz, genes.gtf.gz, regulation.grf.gz,
+ * omim.gdf.gz, gwas.gdf.gz, features.bed.gz (bgzipped, with .tbi)</li>
+ * <li>features.bed (plain)</li>
+ * <li>dbsnp.vcf.gz (sites only) and samples.vcf.gz (multi-sample), with .tbi;
+ * personal.gvf.gz with the variants of the first sample</li>
+ * <li>reads.bam and reads.bai, coordinate sorted, with MD tags</li>
+ * <li>coverage.wig and coverage.bedGraph, the read depth of the BAM</li>
+ * <li>coverage.bw and features.bb when bedGraphToBigWig and bedToBigBed of
+ * the UCSC tools are on the PATH, otherwise they are left out</li>
+ * <li>config.xml</li>
+ * </ul>
+ */
+public class SyntheticGenome {
+	public static final long DEFAULT_SEED = 20131017L;
+	public static final String BIGWIG_TOOL = "bedGraphToBigWig";
+	public static final String BIGBED_TOOL = "bedToBigBed";
+
+	private static final String BASES = "ACGT";
+	private static final int LINE_WIDTH = 60;
+	private static final int BANDS = 20;
+	private static final int WIG_STEP = 100;
+	/**
+	 * Variant sites drawn per requested variant: two thirds of the sites are
+	 * in the samples and four fifths in dbSNP.
+	 */
+	private static final double SITES_PER_VARIANT = 1.5;
+
+	private static final int STREAM_SEQUENCE = 1;
+	private static final int STREAM_GENES = 2;
+	private static final int STREAM_FEATURES = 3;
+	private static final int STREAM_VARIANTS = 4;
+	private static final int STREAM_READS = 5;
+	private static final int STREAM_REGULATION = 6;
+	private static final int STREAM_GENOTYPES = 7;
+
+	private final File dir;
+	private final long seed;
+	private String assembly = "hg19";
+	private int chromosomes = 1;
+	private int length = 4000000;
+	private int depth = 4;
+	private int read_length = 100;
+	private double density = 1;
+	private int samples = 4;
+	private boolean big_files = true;
+
+	public final File fasta;
+	public final File sizes;
+	public final File cyto;
+	public final File hgnc;
+	public final File bed;
+	public final File bedgz;
+	public final File anno;
+	public final File gff;
+	public final File gtf;
+	public final File grf;
+	public final File omim;
+	public final File gwas;
+	public final File dbsnp;
+	public final File vcf;
+	public final File gvf;
+	public final File bam;
+	public final File wig;
+	public final File bedgraph;
+	public final File bigwig;
+	public final File bigbed;
+	public final File config;
+
+	private int genes_written;
+	private int sites_written;
+
+	public SyntheticGenome(File dir, long seed) {
+		this.dir = dir;
+		this.seed = seed;
+		fasta = new File(dir, "ref.fa");
+		sizes = new File(dir, "chrom.sizes");
+		cyto = new File(dir, "cytoband.txt");
+		hgnc = new File(dir, "hgnc.txt");
+		bed = new File(dir, "features.bed");
+		bedgz = new File(dir, "features.bed.gz");
+		anno = new File(dir, "refGene.anno.gz");
+		gff = new File(dir, "genes.gff.gz");
+		gtf = new File(dir, "genes.gtf.gz");
+		grf = new File(dir, "regulation.grf.gz");
+		omim = new File(dir, "omim.gdf.gz");
+		gwas = new File(dir, "gwas.gdf.gz");
+		dbsnp = new File(dir, "dbsnp.vcf.gz");
+		vcf = new File(dir, "samples.vcf.gz");
+		gvf = new File(dir, "personal.gvf.gz");
+		bam = new File(dir, "reads.bam");
+		wig = new File(dir, "coverage.wig");
+		bedgraph = new File(dir, "coverage.bedGraph");
+		bigwig = new File(dir, "coverage.bw");
+		bigbed = new File(dir, "features.bb");
+		config = new File(dir, "config.xml");
+	}
+
+	public SyntheticGenome assembly(String assembly) {
+		this.assembly = assembly;
+		return this;
+	}
+
+	/**
+	 * Number of chromosomes, named chr1..chrN and laid out in lexical order
+	 * as the UCSC tools and samtools expect.
+	 */
+	public SyntheticGenome chromosomes(int chromosomes) {
+		this.chromosomes = chromosomes;
+		return this;
+	}
+
+	/**
+	 * Bases per chromosome, at least 100kb.
+	 */
+	public SyntheticGenome length(int length) {
+		if (length < 100000)
+			throw new IllegalArgumentException("Chromosome length must be at least 100000");
+		this.length = length;
+		return this;
+	}
+
+	/**
+	 * Mean read depth of the BAM.
+	 */
+	public SyntheticGenome depth(int depth) {
+		this.depth = depth;
+		return this;
+	}
+
+	public SyntheticGenome read_length(int read_length) {
+		this.read_length = read_length;
+		return this;
+	}
+
+	/**
+	 * Variants of the sample VCF per kilobase.
+	 */
+	public SyntheticGenome density(double density) {
+		this.density = density;
+		return this;
+	}
+
+	/**
+	 * Number of samples of the VCF, at least 1.
+	 */
+	public SyntheticGenome samples(int samples) {
+		if (samples < 1)
+			throw new IllegalArgumentException("At least one sample is needed");
+		this.samples = samples;
+		return this;
+	}
+
+	/**
+	 * Whether to try the UCSC tools for bigWig and bigBed.
+	 */
+	public SyntheticGenome big_files(boolean big_files) {
+		this.big_files = big_files;
+		return this;
+	}
+
+	public int get_Length() {
+		return length;
+	}
+
+	public int get_ReadLength() {
+		return read_length;
+	}
+
+	/**
+	 * Names of the chromosomes in file order.
+	 */
+	public String[] chromosome_names() {
+		String[] names = new String[chromosomes];
+		for (int i = 0; i < chromosomes; i++)
+			names[i] = "chr" + (i + 1);
+		Arrays.sort(names);
+		return names;
+	}
+
+	/**
+	 * Gene symbol of the n-th transcript, counted over all chromosomes in
+	 * file order.
+	 */
+	public static String symbol(int n) {
+		return "GENE" + (char) ('A' + n % 26) + (n / 26);
+	}
+
+	/**
+	 * Random stream of one kind of data on one chromosome.
+	 */
+	private Random random(int stream, int chromosome) {
+		return new Random(seed * 1000003L + stream * 7919L + chromosome);
+	}
+
+	/**
+	 * Random stream of the genotypes of one sample on one chromosome.
+	 */
+	private Random random(int stream, int chromosome, int sample) {
+		return new Random((seed * 1000003L + stream * 7919L + chromosome) * 65537L + sample);
+	}
+
+	public void write() throws IOException {
+		dir.mkdirs();
+		genes_written = 0;
+		sites_written = 0;
+		String[] names = chromosome_names();
+
+		PrintWriter fa = writer(fasta);
+		PrintWriter fai = writer(new File(fasta.getPath() + ".fai"));
+		PrintWriter size_out = writer(sizes);
+		PrintWriter cyto_out = writer(cyto);
+		PrintWriter hgnc_out = writer(hgnc);
+		PrintWriter bed_out = writer(bed);
+		PrintWriter wig_out = writer(wig);
+		PrintWriter bedgraph_out = writer(bedgraph);
+		PrintWriter anno_out = writer(text(anno));
+		PrintWriter gff_out = writer(text(gff));
+		PrintWriter gtf_out = writer(text(gtf));
+		PrintWriter grf_out = writer(text(grf));
+		PrintWriter omim_out = writer(text(omim));
+		PrintWriter gwas_out = writer(text(gwas));
+		PrintWriter dbsnp_out = writer(text(dbsnp));
+		PrintWriter vcf_out = writer(text(vcf));
+		PrintWriter gvf_out = writer(text(gvf));
+
+		gff_out.print("##gff-version 3\n");
+		gtf_out.print("#synthetic gene models\n");
+		gvf_out.print("##gvf-version 1.06\n");
+		vcf_header(dbsnp_out, names, 0);
+		vcf_header(vcf_out, names, samples);
+
+		SAMFileHeader header = new SAMFileHeader();
+		for (int i = 0; i < names.length; i++)
+			header.addSequence(new SAMSequenceRecord(names[i], length));
+		header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+		SAMFileWriter bam_out = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, bam);
+
+		long offset = 0;
+		for (int i = 0; i < names.length; i++) {
+			String chr = names[i];
+			int c = Integer.parseInt(chr.substring(3));
+			byte[] seq = write_fasta(fa, fai, chr, c, offset);
+			offset += chr.length() + 2 + length + (length + LINE_WIDTH - 1) / LINE_WIDTH;
+			size_out.print(chr + "\t" + length + "\n");
+			write_cyto(cyto_out, chr);
+			List<Transcript> transcripts = transcripts(chr, c);
+			write_genes(anno_out, hgnc_out, gff_out, gtf_out, omim_out, transcripts, i == names.length - 1);
+			write_regulation(grf_out, chr, c, transcripts);
+			write_bed(bed_out, chr, c);
+			int[][] snvs = write_variants(dbsnp_out, vcf_out, gvf_out, gwas_out, chr, c, seq, transcripts);
+			int[] coverage = write_reads(bam_out, header, i, c, seq, snvs);
+			write_coverage(wig_out, bedgraph_out, chr, coverage);
+		}
+		bam_out.close();
+		close(fa, fai, size_out, cyto_out, hgnc_out, bed_out, wig_out, bedgraph_out, anno_out, gff_out, gtf_out,
+				grf_out, omim_out, gwas_out, dbsnp_out, vcf_out, gvf_out);
+
+		compress(TabixIndexWriter.bed(), bed, bedgz);
+		compress(TabixIndexWriter.bed(), text(anno), anno);
+		compress(TabixIndexWriter.gff(), text(gff), gff);
+		compress(TabixIndexWriter.gff(), text(gtf), gtf);
+		compress(TabixIndexWriter.gff(), text(grf), grf);
+		compress(TabixIndexWriter.gff(), text(omim), omim);
+		compress(TabixIndexWriter.gff(), text(gwas), gwas);
+		compress(TabixIndexWriter.gff(), text(gvf), gvf);
+		compress(TabixIndexWriter.vcf(), text(dbsnp), dbsnp);
+		compress(TabixIndexWriter.vcf(), text(vcf), vcf);
+		String[] texts = { anno.getName(), gff.getName(), gtf.getName(), grf.getName(), omim.getName(),
+				gwas.getName(), gvf.getName(), dbsnp.getName(), vcf.getName() };
+		for (int i = 0; i < texts.length; i++)
+			text(new File(dir, texts[i])).delete();
+
+		bigwig.delete();
+		bigbed.delete();
+		if (big_files) {
+			run(BIGWIG_TOOL, bedgraph, sizes, bigwig);
+			run(BIGBED_TOOL, bed, sizes, bigbed);
+		}
+		write_config();
+	}
+
+	private File text(File bgz) {
+		return new File(dir, bgz.getName() + ".txt");
+	}
+
+	private static PrintWriter writer(File file) throws IOException {
+		return new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1"));
+	}
+
+	private static void close(PrintWriter... writers) throws IOException {
+		for (int i = 0; i < writers.length; i++) {
+			writers[i].close();
+			if (writers[i].checkError())
+				throw new IOException("Could not write synthetic data");
+		}
+	}
+
+	private static void compress(TabixIndexWriter tiw, File text, File bgz) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(text), "ISO-8859-1"));
+		try {
+			tiw.compress(in, bgz);
+		} finally {
+			in.close();
+		}
+	}
+
+	private byte[] write_fasta(PrintWriter fa, PrintWriter fai, String chr, int c, long offset) {
+		Random rnd = random(STREAM_SEQUENCE, c);
+		byte[] seq = new byte[length];
+		for (int i = 0; i < length; i++)
+			seq[i] = (byte) BASES.charAt(rnd.nextInt(4));
+		fa.print(">" + chr + "\n");
+		for (int i = 0; i < length; i += LINE_WIDTH) {
+			fa.print(ascii(seq, i, Math.min(LINE_WIDTH, length - i)));
+			fa.print('\n');
+		}
+		fai.print(chr + "\t" + length + "\t" + (offset + chr.length() + 2) + "\t" + LINE_WIDTH + "\t"
+				+ (LINE_WIDTH + 1) + "\n");
+		return seq;
+	}
+
+	private void write_cyto(PrintWriter out, String chr) {
+		String[] stains = { "gneg", "gpos25", "gpos50", "gpos75", "gpos100" };
+		int band = length / BANDS;
+		for (int i = 0; i < BANDS; i++) {
+			int end = i == BANDS - 1 ? length : (i + 1) * band;
+			String stain = i == BANDS / 2 - 1 || i == BANDS / 2 ? "acen" : stains[i % stains.length];
+			out.print(chr + "\t" + (i * band) + "\t" + end + "\t" + (i < BANDS / 2 ? "p" : "q") + (i % (BANDS / 2) + 1)
+					+ "\t" + stain + "\n");
+		}
+	}
+
+	static class Transcript {
+		String chr;
+		String name;
+		String symbol;
+		int number;
+		/*
+		 * 0-based half-open, as in refGene.
+		 */
+		int start;
+		int end;
+		int cds_start;
+		int cds_end;
+		boolean forward;
+		int[] sizes;
+		int[] starts;
+	}
+
+	/**
+	 * Transcripts every ~20kb, 3 to 12 exons, CDS inside the outer exons.
+	 */
+	private List<Transcript> transcripts(String chr, int c) {
+		Random rnd = random(STREAM_GENES, c);
+		List<Transcript> transcripts = new ArrayList<Transcript>();
+		int pos = 5000;
+		while (pos < length - 50000) {
+			Transcript t = new Transcript();
+			int exons = 3 + rnd.nextInt(10);
+			t.sizes = new int[exons];
+			t.starts = new int[exons];
+			int offset = 0;
+			for (int i = 0; i < exons; i++) {
+				t.starts[i] = offset;
+				t.sizes[i] = 80 + rnd.nextInt(200);
+				offset += t.sizes[i] + 300 + rnd.nextInt(3000);
+			}
+			t.chr = chr;
+			t.number = genes_written++;
+			t.name = "NM_" + (100000 + t.number);
+			t.symbol = symbol(t.number);
+			t.start = pos;
+			t.end = pos + t.starts[exons - 1] + t.sizes[exons - 1];
+			t.cds_start = t.start + t.sizes[0] / 2;
+			t.cds_end = t.end - t.sizes[exons - 1] / 2;
+			t.forward = rnd.nextBoolean();
+			transcripts.add(t);
+			pos = t.end + 5000 + rnd.nextInt(30000);
+		}
+		return transcripts;
+	}
+
+	private void write_genes(PrintWriter anno_out, PrintWriter hgnc_out, PrintWriter gff_out, PrintWriter gtf_out,
+			PrintWriter omim_out, List<Transcript> transcripts, boolean last) {
+		for (int n = 0; n < transcripts.size(); n++) {
+			Transcript t = transcripts.get(n);
+			char strand = t.forward ? '+' : '-';
+			anno_out.print(t.chr + "\t" + t.start + "\t" + t.end + "\t" + t.name + "\t0\t" + strand + "\t" + t.cds_start
+					+ "\t" + t.cds_end + "\t" + t.symbol + "\t" + t.sizes.length + "\t" + join(t.sizes) + "\t"
+					+ join(t.starts) + "\n");
+
+			hgnc_out.print(t.chr + "\t" + t.start + "\t" + t.end + "\t" + t.symbol + "\t" + t.name + "\tuc00" + t.number
+					+ ".1\tENSG" + (100000 + t.number) + "\t" + (1000 + t.number) + "\tHGNC:" + (5000 + t.number)
+					+ "\tsynthetic gene " + t.number);
+			// Genes reads the table by lines, without a trailing newline
+			if (!last || n < transcripts.size() - 1)
+				hgnc_out.print("\n");
+
+			String prefix = t.chr + "\tsynthetic\t";
+			gff_out.print(prefix + "gene\t" + (t.start + 1) + "\t" + t.end + "\t.\t" + strand + "\t.\tgene_id=" + t.symbol
+					+ ";Name=" + t.symbol + "\n");
+			gff_out.print(prefix + "mRNA\t" + (t.start + 1) + "\t" + t.end + "\t.\t" + strand + "\t.\tgene_id="
+					+ t.symbol + ";ID=" + t.name + ";Parent=" + t.symbol + "\n");
+			String gtf_attr = "gene_id \"" + t.symbol + "\"; transcript_id \"" + t.name + "\"; gene_name \"" + t.symbol
+					+ "\";";
+			for (int i = 0; i < t.sizes.length; i++) {
+				int from = t.start + t.starts[i];
+				int to = from + t.sizes[i];
+				gff_out.print(prefix + "exon\t" + (from + 1) + "\t" + to + "\t.\t" + strand + "\t.\tgene_id=" + t.symbol
+						+ ";Parent=" + t.name + "\n");
+				gtf_out.print(prefix + "exon\t" + (from + 1) + "\t" + to + "\t.\t" + strand + "\t.\t" + gtf_attr + "\n");
+				int cds_from = Math.max(from, t.cds_start);
+				int cds_to = Math.min(to, t.cds_end);
+				if (cds_from < cds_to) {
+					gff_out.print(prefix + "CDS\t" + (cds_from + 1) + "\t" + cds_to + "\t.\t" + strand + "\t0\tgene_id="
+							+ t.symbol + ";Parent=" + t.name + "\n");
+					gtf_out.print(prefix + "CDS\t" + (cds_from + 1) + "\t" + cds_to + "\t.\t" + strand + "\t0\t"
+							+ gtf_attr + "\n");
+				}
+			}
+
+			if (t.number % 5 == 0)
+				omim_out.print(t.chr + "\tOMIM\tdisease\t" + (t.start + 1) + "\t" + t.end + "\t.\t" + strand
+						+ "\t.\tDName=Disease_" + t.number + ";GeneSymbol=" + t.symbol + "\n");
+		}
+	}
+
+	private static String join(int[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++)
+			sb.append(values[i]).append(',');
+		return sb.toString();
+	}
+
+	/**
+	 * A promoter at every transcription start and enhancers in between.
+	 */
+	private void write_regulation(PrintWriter out, String chr, int c, List<Transcript> transcripts) {
+		Random rnd = random(STREAM_REGULATION, c);
+		List<int[]> regions = new ArrayList<int[]>();
+		for (int i = 0; i < transcripts.size(); i++) {
+			Transcript t = transcripts.get(i);
+			int tss = t.forward ? t.start : t.end;
+			int from = Math.max(1, t.forward ? tss - 1500 : tss - 500);
+			regions.add(new int[] { from, from + 2000, 0 });
+		}
+		for (int pos = 1 + rnd.nextInt(20000); pos < length - 5000; pos += 5000 + rnd.nextInt(30000))
+			regions.add(new int[] { pos, pos + 200 + rnd.nextInt(3000), 1 + rnd.nextInt(2) });
+		Collections.sort(regions, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+			}
+		});
+		String[] types = { "Promoter", "Enhancer", "CTCF_binding_site" };
+		for (int i = 0; i < regions.size(); i++) {
+			int[] r = regions.get(i);
+			out.print(chr + "\tRegulatoryBuild\t" + types[r[2]] + "\t" + r[0] + "\t" + r[1] + "\t.\t.\t.\tName=ENSR" + chr
+					+ "_" + i + ";Note=" + types[r[2]] + "\n");
+		}
+	}
+
+	private void write_bed(PrintWriter out, String chr, int c) {
+		Random rnd = random(STREAM_FEATURES, c);
+		int pos = 0;
+		int n = 0;
+		while (true) {
+			pos += 50 + rnd.nextInt(300);
+			int end = pos + 20 + rnd.nextInt(2000);
+			if (end >= length)
+				break;
+			out.print(chr + "\t" + pos + "\t" + end + "\tfeature" + n++ + "\t" + rnd.nextInt(1000) + "\t"
+					+ (rnd.nextBoolean() ? '+' : '-') + "\n");
+		}
+	}
+
+	private void vcf_header(PrintWriter out, String[] names, int samples) {
+		out.print("##fileformat=VCFv4.1\n");
+		out.print("##source=filereaders.tools.SyntheticGenome seed=" + seed + "\n");
+		out.print("##reference=" + fasta.getName() + "\n");
+		for (int i = 0; i < names.length; i++)
+			out.print("##contig=<ID=" + names[i] + ",length=" + length + ",assembly=" + assembly + ">\n");
+		if (samples == 0) {
+			out.print("##INFO=<ID=RS,Number=1,Type=Integer,Description=\"dbSNP ID\">\n");
+			out.print("##INFO=<ID=VC,Number=1,Type=String,Description=\"Variation class\">\n");
+			out.print("##INFO=<ID=GENEINFO,Number=1,Type=String,Description=\"Gene symbol:gene id\">\n");
+			out.print("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n");
+			return;
+		}
+		out.print("##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count in genotypes\">\n");
+		out.print("##INFO=<ID=AN,Number=1,Type=Integer,Description=\"Total number of alleles\">\n");
+		out.print("##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Combined depth\">\n");
+		out.print("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n");
+		out.print("##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read depth\">\n");
+		out.print("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT");
+		for (int s = 0; s < samples; s++)
+			out.print("\tSAMPLE" + (s + 1));
+		out.print("\n");
+	}
+
+	/**
+	 * Variant sites: SNVs, short insertions and deletions against the
+	 * reference. dbSNP gets most sites, the sample VCF the requested density,
+	 * the GVF the non-reference genotypes of the first sample and GWAS every
+	 * 20th dbSNP site.
+	 *
+	 * @return {positions, alternative bases} of the SNVs in the samples, for
+	 *         the reads
+	 */
+	private int[][] write_variants(PrintWriter dbsnp_out, PrintWriter vcf_out, PrintWriter gvf_out,
+			PrintWriter gwas_out, String chr, int c, byte[] seq, List<Transcript> transcripts) {
+		Random rnd = random(STREAM_VARIANTS, c);
+		Random[] genotypes = new Random[samples];
+		for (int s = 0; s < samples; s++)
+			genotypes[s] = random(STREAM_GENOTYPES, c, s);
+		int count = (int) Math.min(length / 4, Math.round(length / 1000.0 * density * SITES_PER_VARIANT));
+		int[] positions = new int[count];
+		for (int i = 0; i < count; i++)
+			positions[i] = 1000 + rnd.nextInt(length - 2000);
+		Arrays.sort(positions);
+		List<int[]> snvs = new ArrayList<int[]>();
+		int gene = 0;
+		int last = 0;
+		for (int i = 0; i < count; i++) {
+			int pos = positions[i];
+			// keep sites apart so that deletions never overlap the next site
+			if (pos <= last + 10)
+				continue;
+			last = pos;
+			int site = sites_written++;
+			String rs = "rs" + (100000 + site);
+			boolean in_dbsnp = rnd.nextInt(5) != 0;
+			boolean in_samples = rnd.nextInt(3) != 0;
+			String ref, alt, vc, gvf_type;
+			int kind = rnd.nextInt(10);
+			char base = (char) seq[pos - 1];
+			if (kind < 8) {
+				ref = String.valueOf(base);
+				alt = String.valueOf(BASES.charAt((BASES.indexOf(base) + 1 + rnd.nextInt(3)) % 4));
+				vc = "SNV";
+				gvf_type = "SNV";
+			} else if (kind == 8) {
+				ref = String.valueOf(base);
+				alt = ref + random_bases(rnd, 1 + rnd.nextInt(5));
+				vc = "INS";
+				gvf_type = "insertion";
+			} else {
+				ref = ascii(seq, pos - 1, 2 + rnd.nextInt(5));
+				alt = String.valueOf(base);
+				vc = "DEL";
+				gvf_type = "deletion";
+			}
+
+			while (gene < transcripts.size() && transcripts.get(gene).end < pos)
+				gene++;
+			String geneinfo = "";
+			if (gene < transcripts.size() && transcripts.get(gene).start < pos)
+				geneinfo = ";GENEINFO=" + transcripts.get(gene).symbol + ":" + (1000 + transcripts.get(gene).number);
+
+			if (in_dbsnp) {
+				dbsnp_out.print(chr + "\t" + pos + "\t" + rs + "\t" + ref + "\t" + alt + "\t.\t.\tRS=" + (100000 + site)
+						+ ";VC=" + vc + geneinfo + "\n");
+				if (site % 20 == 0)
+					gwas_out.print(chr + "\tGwasCatalog\ttrait\t" + pos + "\t" + pos + "\t.\t+\t.\tDName=Trait_" + site
+							+ ";SNPid=" + rs + "\n");
+			}
+			if (!in_samples)
+				continue;
+
+			double frequency = 0.05 + rnd.nextDouble() * 0.9;
+			StringBuilder gts = new StringBuilder();
+			int ac = 0;
+			int first = 0;
+			for (int s = 0; s < samples; s++) {
+				int a = genotypes[s].nextDouble() < frequency ? 1 : 0;
+				int b = genotypes[s].nextDouble() < frequency ? 1 : 0;
+				ac += a + b;
+				if (s == 0)
+					first = a + b;
+				gts.append('\t').append(a).append('|').append(b).append(':').append(depth / 2 + genotypes[s].nextInt(depth + 1));
+			}
+			vcf_out.print(chr + "\t" + pos + "\t" + (in_dbsnp ? rs : ".") + "\t" + ref + "\t" + alt + "\t"
+					+ (20 + rnd.nextInt(80)) + "\tPASS\tAC=" + ac + ";AN=" + samples * 2 + ";DP=" + depth * samples
+					+ "\tGT:DP" + gts + "\n");
+			if (first == 0)
+				continue;
+			String zygosity = first == 2 ? "homozygous" : "heterozygous";
+			String id = in_dbsnp ? rs : "gv" + site;
+			if (kind < 8) {
+				gvf_out.print(chr + "\tsynthetic\t" + gvf_type + "\t" + pos + "\t" + pos + "\t.\t+\t.\tID=" + id
+						+ ";Variant_seq=" + alt + ";Reference_seq=" + ref + ";Genotype=" + zygosity + "\n");
+				snvs.add(new int[] { pos, alt.charAt(0), first });
+			} else if (kind == 8)
+				gvf_out.print(chr + "\tsynthetic\t" + gvf_type + "\t" + pos + "\t" + pos + "\t.\t+\t.\tID=" + id
+						+ ";Variant_seq=" + alt.substring(1) + ";Reference_seq=-;Genotype=" + zygosity + "\n");
+			else
+				gvf_out.print(chr + "\tsynthetic\t" + gvf_type + "\t" + (pos + 1) + "\t" + (pos + ref.length() - 1)
+						+ "\t.\t+\t.\tID=" + id + ";Variant_seq=-;Reference_seq=" + ref.substring(1) + ";Genotype="
+						+ zygosity + "\n");
+		}
+		int[][] result = new int[3][snvs.size()];
+		for (int i = 0; i < snvs.size(); i++)
+			for (int j = 0; j < 3; j++)
+				result[j][i] = snvs.get(i)[j];
+		return result;
+	}
+
+	private static String ascii(byte[] bytes, int offset, int count) {
+		char[] chars = new char[count];
+		for (int i = 0; i < count; i++)
+			chars[i] = (char) bytes[offset + i];
+		return new String(chars);
+	}
+
+	private static String random_bases(Random rnd, int n) {
+		char[] bases = new char[n];
+		for (int i = 0; i < n; i++)
+			bases[i] = BASES.charAt(rnd.nextInt(4));
+		return new String(bases);
+	}
+
+	/**
+	 * Reads of the first sample, ungapped, with its SNVs at the allele
+	 * fraction of the genotype and 0.5% sequencing errors.
+	 *
+	 * @return read depth per WIG_STEP bases
+	 */
+	private int[] write_reads(SAMFileWriter out, SAMFileHeader header, int index, int c, byte[] seq, int[][] snvs) {
+		Random rnd = random(STREAM_READS, c);
+		int reads = (int) ((long) length * depth / read_length);
+		int[] starts = new int[reads];
+		for (int i = 0; i < reads; i++)
+			starts[i] = 1 + rnd.nextInt(length - read_length);
+		Arrays.sort(starts);
+		long[] bases_per_bin = new long[(length + WIG_STEP - 1) / WIG_STEP];
+		byte[] quals = new byte[read_length];
+		int snv = 0;
+		for (int i = 0; i < reads; i++) {
+			int start = starts[i];
+			byte[] bases = new byte[read_length];
+			System.arraycopy(seq, start - 1, bases, 0, read_length);
+			while (snv < snvs[0].length && snvs[0][snv] < start)
+				snv++;
+			for (int k = snv; k < snvs[0].length && snvs[0][k] < start + read_length; k++)
+				if (snvs[2][k] == 2 || rnd.nextBoolean())
+					bases[snvs[0][k] - start] = (byte) snvs[1][k];
+			for (int j = 0; j < read_length; j++) {
+				if (rnd.nextInt(200) == 0)
+					bases[j] = (byte) BASES.charAt((BASES.indexOf(bases[j]) + 1 + rnd.nextInt(3)) % 4);
+				quals[j] = (byte) (20 + rnd.nextInt(21));
+			}
+			SAMRecord rec = new SAMRecord(header);
+			rec.setReadName("r" + c + "_" + i);
+			rec.setReferenceIndex(index);
+			rec.setAlignmentStart(start);
+			rec.setCigarString(read_length + "M");
+			rec.setMappingQuality(60);
+			rec.setReadNegativeStrandFlag(rnd.nextBoolean());
+			rec.setReadBases(bases);
+			rec.setBaseQualities(quals.clone());
+			rec.setAttribute("MD", md(seq, start, bases));
+			out.addAlignment(rec);
+
+			for (int pos = start - 1, end = start - 1 + read_length; pos < end;) {
+				int bin = pos / WIG_STEP;
+				int to = Math.min(end, (bin + 1) * WIG_STEP);
+				bases_per_bin[bin] += to - pos;
+				pos = to;
+			}
+		}
+		int[] coverage = new int[bases_per_bin.length];
+		for (int i = 0; i < coverage.length; i++)
+			coverage[i] = (int) (bases_per_bin[i] / WIG_STEP);
+		return coverage;
+	}
+
+	/**
+	 * MD tag of an ungapped alignment.
+	 */
+	private static String md(byte[] seq, int start, byte[] bases) {
+		StringBuilder sb = new StringBuilder();
+		int matches = 0;
+		for (int j = 0; j < bases.length; j++) {
+			byte ref = seq[start - 1 + j];
+			if (bases[j] == ref)
+				matches++;
+			else {
+				sb.append(matches).append((char) ref);
+				matches = 0;
+			}
+		}
+		return sb.append(matches).toString();
+	}
+
+	private void write_coverage(PrintWriter wig_out, PrintWriter bedgraph_out, String chr, int[] coverage) {
+		wig_out.print("fixedStep chrom=" + chr + " start=1 step=" + WIG_STEP + " span=" + WIG_STEP + "\n");
+		for (int i = 0; i < coverage.length; i++)
+			wig_out.print(coverage[i] + "\n");
+		int from = 0;
+		for (int i = 1; i <= coverage.length; i++)
+			if (i == coverage.length || coverage[i] != coverage[from]) {
+				bedgraph_out.print(chr + "\t" + from * WIG_STEP + "\t" + Math.min(length, i * WIG_STEP) + "\t"
+						+ coverage[from] + "\n");
+				from = i;
+			}
+	}
+
+	/**
+	 * Run one of the UCSC converters, <code>tool in chrom.sizes out</code>,
+	 * if it is on the PATH.
+	 */
+	private static void run(String tool, File in, File sizes, File out) throws IOException {
+		String exe = which(tool);
+		if (exe == null) {
+			System.err.println(tool + " is not on the PATH, " + out.getName() + " is not written");
+			return;
+		}
+		ProcessBuilder pb = new ProcessBuilder(exe, in.getPath(), sizes.getPath(), out.getPath());
+		pb.redirectErrorStream(true);
+		Process p = pb.start();
+		BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()));
+		String line;
+		while ((line = br.readLine()) != null)
+			System.err.println(tool + ": " + line);
+		br.close();
+		try {
+			if (p.waitFor() != 0) {
+				out.delete();
+				System.err.println(tool + " failed, " + out.getName() + " is not written");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			out.delete();
+		}
+	}
+
+	private static String which(String tool) {
+		String path = System.getenv("PATH");
+		if (path == null)
+			return null;
+		String[] dirs = path.split(File.pathSeparator);
+		for (int i = 0; i < dirs.length; i++) {
+			File f = new File(dirs[i], tool);
+			if (f.isFile() && f.canExecute())
+				return f.getPath();
+		}
+		return null;
+	}
+
+	private void write_config() throws IOException {
+		PrintWriter out = writer(config);
+		out.print("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<Configure>\n");
+		out.print("<" + Consts.XML_TAG_ASSEMBLY + " " + Consts.XML_TAG_ID + "=\"" + assembly + "\">\n");
+		anno_cfg(out, "ref", Consts.GROUP_CLASS_BASIC, Consts.FORMAT_REF, Consts.MODE_DENSE, fasta);
+		anno_cfg(out, "hgnc", Consts.GROUP_CLASS_BASIC, Consts.FORMAT_HGNC, Consts.MODE_DENSE, hgnc);
+		anno_cfg(out, "cytoband", Consts.GROUP_CLASS_BASIC, Consts.FORMAT_CYTO, Consts.MODE_DENSE, cyto);
+		anno_cfg(out, "dbSNP", Consts.GROUP_CLASS_BASIC, Consts.FORMAT_SNP, Consts.MODE_DENSE, dbsnp);
+		anno_cfg(out, "refGene", Consts.GROUP_CLASS_GENE, Consts.FORMAT_ANNO, Consts.MODE_DENSE, anno);
+		anno_cfg(out, "ensGene", Consts.GROUP_CLASS_GENE, Consts.FORMAT_GFF, Consts.MODE_HIDE, gff);
+		anno_cfg(out, "gencode", Consts.GROUP_CLASS_GENE, Consts.FORMAT_GTF, Consts.MODE_HIDE, gtf);
+		anno_cfg(out, "ensemblRegulation", Consts.GROUP_CLASS_GENE, Consts.FORMAT_GRF, Consts.MODE_HIDE, grf);
+		anno_cfg(out, "OMIM", Consts.GROUP_CLASS_GENE, Consts.FORMAT_GDF, Consts.MODE_HIDE, omim);
+		anno_cfg(out, "GwasCatalog", Consts.GROUP_CLASS_GENE, Consts.FORMAT_GDF, Consts.MODE_HIDE, gwas);
+		anno_cfg(out, "features", Consts.GROUP_CLASS_USR, Consts.FORMAT_BEDGZ, Consts.MODE_DENSE, bedgz);
+		anno_cfg(out, "features_bed", Consts.GROUP_CLASS_USR, Consts.FORMAT_BED, Consts.MODE_HIDE, bed);
+		if (bigbed.exists())
+			anno_cfg(out, "features_bb", Consts.GROUP_CLASS_USR, Consts.FORMAT_BIGBED, Consts.MODE_HIDE, bigbed);
+		anno_cfg(out, "samples", Consts.GROUP_CLASS_PG, Consts.FORMAT_VCF, Consts.MODE_HIDE, vcf);
+		anno_cfg(out, "personal", Consts.GROUP_CLASS_PG, Consts.FORMAT_GVF, Consts.MODE_HIDE, gvf);
+		anno_cfg(out, "reads", Consts.GROUP_CLASS_DATA, Consts.FORMAT_BAM, Consts.MODE_DENSE, bam);
+		anno_cfg(out, "coverage_wig", Consts.GROUP_CLASS_DATA, Consts.FORMAT_WIG, Consts.MODE_HIDE, wig);
+		anno_cfg(out, "coverage_bg", Consts.GROUP_CLASS_DATA, Consts.FORMAT_BEDGRAPH, Consts.MODE_HIDE, bedgraph);
+		if (bigwig.exists())
+			anno_cfg(out, "coverage_bw", Consts.GROUP_CLASS_DATA, Consts.FORMAT_BIGWIG, Consts.MODE_HIDE, bigwig);
+		out.print("</" + Consts.XML_TAG_ASSEMBLY + ">\n</Configure>\n");
+		close(out);
+	}
+
+	private static void anno_cfg(PrintWriter out, String id, String group, String format, String mode, File path) {
+		out.print("<" + Consts.XML_TAG_ANNOTATION + " " + Consts.XML_TAG_ID + "=\"" + id + "\" " + Consts.XML_TAG_GROUP
+				+ "=\"" + group + "\">" + "<" + Consts.XML_TAG_FORMAT + ">" + format + "</" + Consts.XML_TAG_FORMAT + ">"
+				+ "<" + Consts.XML_TAG_DEFAULT + ">" + mode + "</" + Consts.XML_TAG_DEFAULT + ">" + "<"
+				+ Consts.XML_TAG_PATH + ">" + path.getAbsolutePath() + "</" + Consts.XML_TAG_PATH + ">" + "</"
+				+ Consts.XML_TAG_ANNOTATION + ">\n");
+	}
+
+	public static void main(String[] args) {
+		long seed = DEFAULT_SEED;
+		String out = null;
+		SyntheticGenome sg = null;
+		List<String[]> knobs = new ArrayList<String[]>();
+		boolean big = true;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-seed"))
+					seed = Long.parseLong(args[++i]);
+				else if (args[i].equals("-no-big"))
+					big = false;
+				else if (args[i].startsWith("-"))
+					knobs.add(new String[] { args[i], args[++i] });
+				else
+					out = args[i];
+			}
+			if (out == null)
+				throw new IllegalArgumentException("No output directory");
+			sg = new SyntheticGenome(new File(out), seed).big_files(big);
+			for (int i = 0; i < knobs.size(); i++) {
+				String knob = knobs.get(i)[0], value = knobs.get(i)[1];
+				if (knob.equals("-assembly"))
+					sg.assembly(value);
+				else if (knob.equals("-chromosomes"))
+					sg.chromosomes(Integer.parseInt(value));
+				else if (knob.equals("-length"))
+					sg.length(Integer.parseInt(value));
+				else if (knob.equals("-depth"))
+					sg.depth(Integer.parseInt(value));
+				else if (knob.equals("-read-length"))
+					sg.read_length(Integer.parseInt(value));
+				else if (knob.equals("-density"))
+					sg.density(Double.parseDouble(value));
+				else if (knob.equals("-samples"))
+					sg.samples(Integer.parseInt(value));
+				else
+					throw new IllegalArgumentException("Unknown option " + knob);
+			}
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("usage: java filereaders.tools.SyntheticGenome [-seed N] [-assembly ID] [-chromosomes N]"
+					+ " [-length BASES] [-depth N] [-read-length N] [-density VARIANTS_PER_KB] [-samples N] [-no-big]"
+					+ " OUTPUT_DIR");
+			System.exit(1);
+		}
+		try {
+			sg.write();
+			System.out.println(sg.config.getAbsolutePath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
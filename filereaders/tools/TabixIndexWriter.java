@@ -0,0 +1,282 @@
+package filereaders.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sf.samtools.util.BlockCompressedOutputStream;
+
+/**
+ * Compress sorted tab-delimited text with BGZF and write the matching
+ * tabix (.tbi) index, so that TabixReader can query files produced inside
+ * the server without the external bgzip/tabix tools. Column and preset
+ * semantics follow tabix: columns are 1-based, PRESET_UCSC marks 0-based
+ * half-open starts (BED), PRESET_VCF takes the end from REF and INFO END=.
+ *
+ * Lines must be grouped by sequence and sorted by start, as tabix requires.
+ */
+public class TabixIndexWriter {
+	public static final int PRESET_GENERIC = 0;
+	public static final int PRESET_SAM = 1;
+	public static final int PRESET_VCF = 2;
+	public static final int PRESET_UCSC = 0x10000;
+
+	private static final int LIDX_SHIFT = 14;
+	private static final byte[] MAGIC = { 'T', 'B', 'I', 1 };
+
+	private final int preset;
+	private final int sc, bc, ec;
+	private final char meta;
+	private final int skip;
+
+	private final ArrayList<String> names = new ArrayList<String>();
+	private final ArrayList<TreeMap<Integer, ArrayList<long[]>>> bins = new ArrayList<TreeMap<Integer, ArrayList<long[]>>>();
+	private final ArrayList<long[]> linears = new ArrayList<long[]>();
+	private final Map<String, Integer> tids = new HashMap<String, Integer>();
+	private int last_tid = -1;
+	private int last_beg = -1;
+
+	public TabixIndexWriter(int preset, int sc, int bc, int ec, char meta, int skip) {
+		this.preset = preset;
+		this.sc = sc;
+		this.bc = bc;
+		this.ec = ec;
+		this.meta = meta;
+		this.skip = skip;
+	}
+
+	public static TabixIndexWriter bed() {
+		return new TabixIndexWriter(PRESET_GENERIC | PRESET_UCSC, 1, 2, 3, '#', 0);
+	}
+
+	public static TabixIndexWriter gff() {
+		return new TabixIndexWriter(PRESET_GENERIC, 1, 4, 5, '#', 0);
+	}
+
+	public static TabixIndexWriter vcf() {
+		return new TabixIndexWriter(PRESET_VCF, 1, 2, 0, '#', 0);
+	}
+
+	/**
+	 * The same columns, skipping the first <code>skip</code> lines.
+	 */
+	public TabixIndexWriter skip(int skip) {
+		return new TabixIndexWriter(preset, sc, bc, ec, meta, skip);
+	}
+
+	/**
+	 * Bin of the UCSC binning scheme for the 0-based half-open interval.
+	 */
+	public static int reg2bin(int beg, int end) {
+		--end;
+		if (beg >> 14 == end >> 14)
+			return 4681 + (beg >> 14);
+		if (beg >> 17 == end >> 17)
+			return 585 + (beg >> 17);
+		if (beg >> 20 == end >> 20)
+			return 73 + (beg >> 20);
+		if (beg >> 23 == end >> 23)
+			return 9 + (beg >> 23);
+		if (beg >> 26 == end >> 26)
+			return 1 + (beg >> 26);
+		return 0;
+	}
+
+	/**
+	 * Register one record.
+	 *
+	 * @param chr
+	 *            sequence name
+	 * @param beg
+	 *            0-based start
+	 * @param end
+	 *            0-based exclusive end
+	 * @param vstart
+	 *            virtual offset of the first byte of the line
+	 * @param vend
+	 *            virtual offset just after the line
+	 * @throws IOException
+	 *             if the records are not sorted
+	 */
+	public void add(String chr, int beg, int end, long vstart, long vend) throws IOException {
+		if (end <= beg)
+			end = beg + 1;
+		Integer tid = tids.get(chr);
+		if (tid == null) {
+			tid = names.size();
+			tids.put(chr, tid);
+			names.add(chr);
+			bins.add(new TreeMap<Integer, ArrayList<long[]>>());
+			linears.add(new long[0]);
+		} else if (tid != last_tid)
+			throw new IOException("Sequence " + chr + " is not contiguous");
+		else if (beg < last_beg)
+			throw new IOException("Records of " + chr + " are not sorted at " + (beg + 1));
+		last_tid = tid;
+		last_beg = beg;
+
+		int bin = reg2bin(beg, end);
+		ArrayList<long[]> chunks = bins.get(tid).get(bin);
+		if (chunks == null) {
+			chunks = new ArrayList<long[]>();
+			bins.get(tid).put(bin, chunks);
+		}
+		long[] last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if (last != null && last[1] >> 16 == vstart >> 16)
+			last[1] = vend;
+		else
+			chunks.add(new long[] { vstart, vend });
+
+		long[] linear = linears.get(tid);
+		int to = (end - 1) >> LIDX_SHIFT;
+		if (to >= linear.length) {
+			long[] grown = new long[Math.max(to + 1, linear.length * 2)];
+			System.arraycopy(linear, 0, grown, 0, linear.length);
+			for (int i = linear.length; i < grown.length; i++)
+				grown[i] = -1;
+			linear = grown;
+			linears.set(tid, linear);
+		}
+		for (int i = beg >> LIDX_SHIFT; i <= to; i++)
+			if (linear[i] == -1)
+				linear[i] = vstart;
+	}
+
+	/**
+	 * Interval of a data line as TabixReader computes it, {chr, beg, end}
+	 * with beg 0-based and end exclusive.
+	 */
+	Object[] interval(String line) {
+		String chr = null;
+		int beg = 0, end = 0;
+		int col = 0, from = 0, to;
+		do {
+			to = line.indexOf('\t', from);
+			String field = to < 0 ? line.substring(from) : line.substring(from, to);
+			++col;
+			if (col == sc)
+				chr = field;
+			else if (col == bc) {
+				beg = end = Integer.parseInt(field);
+				if ((preset & PRESET_UCSC) != 0)
+					++end;
+				else
+					--beg;
+				if (beg < 0)
+					beg = 0;
+				if (end < 1)
+					end = 1;
+			} else if ((preset & 0xffff) == PRESET_GENERIC && col == ec)
+				end = Integer.parseInt(field);
+			else if ((preset & 0xffff) == PRESET_VCF) {
+				if (col == 4 && field.length() > 0)
+					end = beg + field.length();
+				else if (col == 8) {
+					int e_off = -1, i = field.indexOf("END=");
+					if (i == 0)
+						e_off = 4;
+					else if (i > 0) {
+						i = field.indexOf(";END=");
+						if (i >= 0)
+							e_off = i + 5;
+					}
+					if (e_off > 0) {
+						int semi = field.indexOf(';', e_off);
+						end = Integer.parseInt(semi > e_off ? field.substring(e_off, semi) : field.substring(e_off));
+					}
+				}
+			}
+			from = to + 1;
+		} while (to >= 0);
+		return new Object[] { chr, beg, end };
+	}
+
+	/**
+	 * BGZF-compress sorted lines into <code>bgz</code> and write
+	 * <code>bgz</code>.tbi next to it.
+	 */
+	public void compress(BufferedReader in, File bgz) throws IOException {
+		BlockCompressedOutputStream out = new BlockCompressedOutputStream(bgz);
+		try {
+			String line;
+			int n = 0;
+			while ((line = in.readLine()) != null) {
+				long vstart = out.getFilePointer();
+				byte[] bytes = line.getBytes("ISO-8859-1");
+				out.write(bytes);
+				out.write('\n');
+				if (n++ < skip || line.length() == 0 || line.charAt(0) == meta)
+					continue;
+				Object[] intv = interval(line);
+				add((String) intv[0], (Integer) intv[1], (Integer) intv[2], vstart, out.getFilePointer());
+			}
+		} finally {
+			out.close();
+		}
+		write(new File(bgz.getPath() + ".tbi"));
+	}
+
+	public void write(File tbi) throws IOException {
+		BlockCompressedOutputStream out = new BlockCompressedOutputStream(tbi);
+		try {
+			out.write(MAGIC);
+			writeInt(out, names.size());
+			writeInt(out, preset);
+			writeInt(out, sc);
+			writeInt(out, bc);
+			writeInt(out, ec);
+			writeInt(out, meta);
+			writeInt(out, skip);
+			int l_nm = 0;
+			for (int i = 0; i < names.size(); i++)
+				l_nm += names.get(i).getBytes("ISO-8859-1").length + 1;
+			writeInt(out, l_nm);
+			for (int i = 0; i < names.size(); i++) {
+				out.write(names.get(i).getBytes("ISO-8859-1"));
+				out.write(0);
+			}
+			for (int i = 0; i < names.size(); i++) {
+				TreeMap<Integer, ArrayList<long[]>> b = bins.get(i);
+				writeInt(out, b.size());
+				for (Map.Entry<Integer, ArrayList<long[]>> e : b.entrySet()) {
+					writeInt(out, e.getKey());
+					writeInt(out, e.getValue().size());
+					for (long[] chunk : e.getValue()) {
+						writeLong(out, chunk[0]);
+						writeLong(out, chunk[1]);
+					}
+				}
+				long[] linear = linears.get(i);
+				int n = linear.length;
+				while (n > 0 && linear[n - 1] == -1)
+					n--;
+				writeInt(out, n);
+				long prev = 0;
+				for (int k = 0; k < n; k++) {
+					if (linear[k] != -1)
+						prev = linear[k];
+					writeLong(out, prev);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeInt(OutputStream out, int v) throws IOException {
+		out.write(v);
+		out.write(v >>> 8);
+		out.write(v >>> 16);
+		out.write(v >>> 24);
+	}
+
+	private static void writeLong(OutputStream out, long v) throws IOException {
+		writeInt(out, (int) v);
+		writeInt(out, (int) (v >>> 32));
+	}
+}
@@ -0,0 +1,200 @@
+package gbservlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/*
+ * The response of an asynchronous request, as its lane writes it. The container may
+ * complete the request before the lane is done, on Interfaces.ASYNC_TIMEOUT or an error,
+ * and then recycle the response: once finished, whatever the lane writes or sets is
+ * dropped, the body with an IOException. Writes hold the lock finish takes, so none is
+ * under way when the request completes.
+ */
+final class AsyncResponse extends HttpServletResponseWrapper{
+	private final Object lock=new Object();
+	private boolean finished=false;
+	private ServletOutputStream out=null;
+	private PrintWriter writer=null;
+
+	AsyncResponse(HttpServletResponse res){
+		super(res);
+	}
+	/*
+	 * No more writes, true if they were allowed until now.
+	 */
+	boolean finish(){
+		synchronized(lock){
+			if(finished)
+				return false;
+			finished=true;
+			return true;
+		}
+	}
+	/*
+	 * finish on a timeout: answer status unless the lane started the response.
+	 */
+	boolean finish(int status){
+		synchronized(lock){
+			if(finished)
+				return false;
+			finished=true;
+			HttpServletResponse res=(HttpServletResponse) getResponse();
+			if(!res.isCommitted()){
+				res.setStatus(status);
+				res.setHeader("Retry-After", "1");
+			}
+			return true;
+		}
+	}
+	boolean finished(){
+		synchronized(lock){
+			return finished;
+		}
+	}
+	private void check() throws IOException{
+		if(finished)
+			throw new IOException("The request is completed");
+	}
+
+	public ServletOutputStream getOutputStream() throws IOException{
+		synchronized(lock){
+			check();
+			if(out==null){
+				final ServletOutputStream os=super.getOutputStream();
+				out=new ServletOutputStream(){
+					public void write(int b) throws IOException{
+						synchronized(lock){
+							check();
+							os.write(b);
+						}
+					}
+					public void write(byte[] b, int off, int len) throws IOException{
+						synchronized(lock){
+							check();
+							os.write(b, off, len);
+						}
+					}
+					public void flush() throws IOException{
+						synchronized(lock){
+							if(!finished)
+								os.flush();
+						}
+					}
+					public void close() throws IOException{
+						synchronized(lock){
+							if(!finished)
+								os.close();
+						}
+					}
+				};
+			}
+			return out;
+		}
+	}
+	public PrintWriter getWriter() throws IOException{
+		synchronized(lock){
+			check();
+			if(writer==null){
+				final PrintWriter w=super.getWriter();
+				writer=new PrintWriter(new Writer(){
+					public void write(char[] c, int off, int len) throws IOException{
+						synchronized(lock){
+							check();
+							w.write(c, off, len);
+						}
+					}
+					public void flush(){
+						synchronized(lock){
+							if(!finished)
+								w.flush();
+						}
+					}
+					public void close(){
+						synchronized(lock){
+							if(!finished)
+								w.close();
+						}
+					}
+				});
+			}
+			return writer;
+		}
+	}
+	public boolean isCommitted(){
+		synchronized(lock){
+			return finished||super.isCommitted();
+		}
+	}
+	public void setStatus(int sc){
+		synchronized(lock){
+			if(!finished)
+				super.setStatus(sc);
+		}
+	}
+	public void sendError(int sc) throws IOException{
+		synchronized(lock){
+			check();
+			super.sendError(sc);
+		}
+	}
+	public void sendError(int sc, String msg) throws IOException{
+		synchronized(lock){
+			check();
+			super.sendError(sc, msg);
+		}
+	}
+	public void setHeader(String name, String value){
+		synchronized(lock){
+			if(!finished)
+				super.setHeader(name, value);
+		}
+	}
+	public void addHeader(String name, String value){
+		synchronized(lock){
+			if(!finished)
+				super.addHeader(name, value);
+		}
+	}
+	public void setIntHeader(String name, int value){
+		synchronized(lock){
+			if(!finished)
+				super.setIntHeader(name, value);
+		}
+	}
+	public void setDateHeader(String name, long date){
+		synchronized(lock){
+			if(!finished)
+				super.setDateHeader(name, date);
+		}
+	}
+	public void addCookie(Cookie cookie){
+		synchronized(lock){
+			if(!finished)
+				super.addCookie(cookie);
+		}
+	}
+	public void setContentType(String type){
+		synchronized(lock){
+			if(!finished)
+				super.setContentType(type);
+		}
+	}
+	public void setContentLength(int len){
+		synchronized(lock){
+			if(!finished)
+				super.setContentLength(len);
+		}
+	}
+	public void reset(){
+		synchronized(lock){
+			if(!finished)
+				super.reset();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package gbservlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Content-Encoding of the responses of Interfaces, negotiated from the Accept-Encoding
+ * of the request. gzip is preferred, deflate (zlib) is the fallback; the JDK has no zstd.
+ * Responses under MIN_SIZE bytes are not worth compressing.
+ */
+final class Compression {
+	static final String GZIP="gzip";
+	static final String DEFLATE="deflate";
+	static final int MIN_SIZE=1024;
+	static final int BUFFER=8192;
+
+	/*
+	 * The encoding to answer with, or null for none. Codings of q=0 are refused,
+	 * otherwise the highest q wins, gzip on a tie.
+	 */
+	static String negotiate(String accept_encoding){
+		if(accept_encoding==null)
+			return null;
+		float gzip=-1,deflate=-1,any=-1;
+		for(String coding : accept_encoding.split(",")){
+			String[] parts=coding.split(";");
+			String name=parts[0].trim().toLowerCase();
+			float q=1;
+			for(int i=1;i<parts.length;i++){
+				String p=parts[i].trim();
+				if(p.startsWith("q=")){
+					try{
+						q=Float.parseFloat(p.substring(2));
+					} catch(NumberFormatException e){
+						q=0;
+					}
+				}
+			}
+			if(name.equals(GZIP)||name.equals("x-gzip"))
+				gzip=q;
+			else if(name.equals(DEFLATE))
+				deflate=q;
+			else if(name.equals("*"))
+				any=q;
+		}
+		if(gzip<0)
+			gzip=any;
+		if(deflate<0)
+			deflate=any;
+		if(gzip>0&&gzip>=deflate)
+			return GZIP;
+		if(deflate>0)
+			return DEFLATE;
+		return null;
+	}
+	/*
+	 * A stream compressing into out; closing it finishes the encoding and closes out.
+	 */
+	static OutputStream wrap(OutputStream out,String encoding) throws IOException{
+		if(encoding.equals(GZIP))
+			return new GZIPOutputStream(out,BUFFER);
+		return new DeflaterOutputStream(out);
+	}
+	/*
+	 * body compressed whole, for the bodies ResponseCache keeps; the others are
+	 * compressed as they are written (wrap).
+	 */
+	static byte[] compress(byte[] body,String encoding){
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream(body.length/4+64);
+		try{
+			OutputStream out=wrap(bytes,encoding);
+			out.write(body);
+			out.close();
+		} catch(IOException e){
+			// Not thrown by a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -2,9 +2,17 @@ package gbservlet;
 
 import java.io.*;
 import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
 import org.apache.commons.fileupload.disk.*;
 import org.apache.commons.fileupload.util.*;
 import org.apache.commons.fileupload.servlet.*;
@@ -18,56 +26,196 @@ import filereaders.*;
 
 
 public class Interfaces extends HttpServlet{
-	
+	/*
+	 * Actions answering the same to every session while the servlet runs (the gene table
+	 * is loaded once): their encoded responses are kept in ResponseCache, and browsers and
+	 * proxies may keep them for IMMUTABLE_MAX_AGE seconds.
+	 */
+	private static final Set<String> IMMUTABLE=new HashSet<String>(Arrays.asList("getGene","findGene"));
+	static final int IMMUTABLE_MAX_AGE=86400;
+	/*
+	 * Actions whose responses depend on the session but often repeat, e.g. the catalogs
+	 * or a view of fixed files: sent with an ETag, so a client revalidating its copy gets
+	 * 304 without the body.
+	 */
+	private static final Set<String> REVALIDATED=new HashSet<String>(Arrays.asList(
+			"getAssemblies","getChromosomes","getAnnotations","getCytobands","update","refresh"));
+	/*
+	 * The Instance of each session, restored from its state kept in the store of
+	 * -Dgbhit.session.store, so any server sharing the store can answer a session.
+	 */
+	private static final Sessions sessions=new Sessions(SessionStore.create(System.getProperty("gbhit.session.store")));
+	static final long ASYNC_TIMEOUT=5*60*1000;
+	/*
+	 * Sends the messages of the readers (java.util.logging, logger "filereaders") to the
+	 * log of the servlet.
+	 */
+	private final Handler log_handler=new Handler(){
+		public void publish(LogRecord r){
+			if(!isLoggable(r))
+				return;
+			String message=r.getLevel()+": "+new SimpleFormatter().formatMessage(r);
+			if(r.getThrown()!=null)
+				log(message, r.getThrown());
+			else
+				log(message);
+		}
+		public void flush(){
+		}
+		public void close(){
+		}
+	};
+
+	public void init() throws ServletException{
+		super.init();
+		Logger.getLogger("filereaders").addHandler(log_handler);
+	}
+	public void destroy(){
+		Logger.getLogger("filereaders").removeHandler(log_handler);
+		super.destroy();
+	}
 	protected void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException{
+		serve(req,res,false);
+	}
+	protected void doPost(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException{
+		serve(req,res,true);
+	}
+	/*
+	 * Serve the request in its lane (Lanes), the container thread returning at once; or on
+	 * the container thread if the deployment does not declare the servlet
+	 * <async-supported>true</async-supported>.
+	 */
+	private void serve(HttpServletRequest req, HttpServletResponse res, final boolean post) throws ServletException, IOException{
+		if(!req.isAsyncSupported()){
+			serve_now(req,res,post);
+			return;
+		}
+		final AsyncContext ac=req.startAsync();
+		final AsyncResponse response=new AsyncResponse(res);
+		ac.setTimeout(ASYNC_TIMEOUT);
+		ac.addListener(new AsyncListener(){
+			public void onTimeout(AsyncEvent event){
+				// Still queued or served: answer now, the lane's writes are dropped from here
+				if(response.finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE))
+					complete(ac);
+			}
+			public void onError(AsyncEvent event){
+				response.finish();
+			}
+			public void onComplete(AsyncEvent event){
+				response.finish();
+			}
+			public void onStartAsync(AsyncEvent event){
+			}
+		});
+		try{
+			Lanes.lane(req.getParameter("action")).execute(new Runnable(){
+				public void run(){
+					if(response.finished())
+						return; // timed out in the queue
+					try{
+						serve_now((HttpServletRequest) ac.getRequest(),response,post);
+					} catch(Exception e){
+						if(response.finished())
+							return;
+						e.printStackTrace();
+						if(!response.isCommitted())
+							response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					} finally{
+						if(response.finish())
+							complete(ac);
+					}
+				}
+			});
+		} catch(RejectedExecutionException e){
+			// The lane is full: ask the client to come back rather than queue without end
+			Metrics.count(Metrics.REJECTED_REQUESTS, 1);
+			if(response.finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE))
+				complete(ac);
+		}
+	}
+	private static void complete(AsyncContext ac){
+		try{
+			ac.complete();
+		} catch(IllegalStateException e){
+			// Completed by the container on timeout
+		}
+	}
+	private void serve_now(HttpServletRequest req, HttpServletResponse res, boolean post) throws ServletException, IOException{
+		if(post)
+			serve_post(req,res);
+		else
+			serve_get(req,res);
+	}
+	private void serve_get(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException{
+		String action=req.getParameter("action");
+		if ("metrics".equals(action)){
+			write_metrics(req,res);
+			return;
+		}
 		res.setContentType("application/xml");
 		HttpSession session=req.getSession();
-		if(session.getAttribute("Instance")==null)
-			session.setAttribute("Instance", new Instance());
-		if(res!=null){
+		String sid=Sessions.id(req, res);
+		if(res!=null&&!IMMUTABLE.contains(action)){
 			res.setHeader("Cache-Control", "no-cache,must-revalidate");
 			res.setHeader("Pragma", "no-cache");
 			res.setHeader("Expires", "-1");
 		}
-		Instance ins=(Instance) session.getAttribute("Instance");
-		String action=req.getParameter("action");
+		Instance ins=sessions.get(sid);
+		long start=System.nanoTime();
+		// Background precomputation waits while requests are served
+		Precompute.pause();
+		try{
+			dispatch(req,res,session,sid,ins,action);
+		} catch(Cancellation.Cancelled e){
+			// A newer view of the session was asked for, the client drops this one
+			Metrics.count(Metrics.CANCELLED_VIEWS, 1);
+			if(!res.isCommitted())
+				res.setStatus(HttpServletResponse.SC_NO_CONTENT);
+		} finally{
+			Precompute.resume();
+			sessions.save(sid, ins);
+			Metrics.action(String.valueOf(action), System.nanoTime()-start);
+		}
+	}
+	private void dispatch(HttpServletRequest req, HttpServletResponse res, HttpSession session, String sid, Instance ins, String action) throws ServletException, IOException{
 		if (action.equals("getAssemblies")){
 			String a=ins.get_Assemblies();
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		if (action.equals("getSession")){
-			res.getWriter().print(session.getId());
+			print(res,sid);
 		}
 		else if (action.equals("getAnnotations")){
 			String a=ins.get_Annotations();
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("getChromosomes")){
 			String a=ins.get_Chromosomes();
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("getCytobands")){
 			String a=ins.get_Cyto(req.getParameter("chr"));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("getCytoband")){
 			String a=ins.get_SingleCytoScore(req.getParameter("chr"),req.getParameter("id"));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("setAssembly")){
 			ins=new Instance(req.getParameter("assembly"));
-			session.setAttribute("Instance", ins);
+			sessions.put(sid, ins);
 		}
 		else if (action.equals("modiTracks")||action.equals("addTracks")){
 			String a=ins.add_Tracks(req.getParameter("tracks").split(","), req.getParameter("modes").split(","));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("removeTracks")){
 			ins.remove_Tracks(req.getParameter("tracks").split(","));
 		}
 		else if (action.equals("modiPvar")||action.equals("addPvar")){
 			String a=ins.add_Pvar(req.getParameter("tracks"),req.getParameter("modes"),req.getParameter("id"));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("initPvar")){
 			ins.init_Pvar(req.getParameter("tracks"),req.getParameter("id"));
@@ -77,22 +225,22 @@ public class Interfaces extends HttpServlet{
 		}
 		else if (action.equals("modiPanno")||action.equals("addPanno")){
 			String a=ins.add_Panno(req.getParameter("tracks"),req.getParameter("modes"));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("removePanno")){
 			ins.remove_Panno();
 		}
 		else if (action.equals("modiPfanno")||action.equals("addPfanno")){
 			String a=ins.add_Pfanno(req.getParameter("tracks"),req.getParameter("modes"));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("removePfanno")){
 			String a=ins.remove_Pfanno();
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("modiPclns")||action.equals("addPclns")){
 			String a=ins.add_Pclns(req.getParameter("tracks").split(","), req.getParameter("modes").split(","));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("removePclns")){
 			ins.remove_Pclns(req.getParameter("tracks").split(","));
@@ -100,32 +248,38 @@ public class Interfaces extends HttpServlet{
 		else if (action.equals("setParams")){
 			ins.set_Params(req.getParameter("tracks").split(","), req.getParameter("params").split(","), req.getParameter("values").split(","));
 			String a=ins.add_Tracks(req.getParameter("tracks").split(","), req.getParameter("modes").split(","));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("getDetail")){
 			String a=ins.get_Detail(req.getParameter("tracks"), req.getParameter("id"), Integer.parseInt(req.getParameter("start")), Integer.parseInt(req.getParameter("end")));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("findGene")){
-			String a=ins.find_Gene(req.getParameter("prefix"));
-			res.getWriter().print(a);
+			String key=action+"\t"+req.getParameter("prefix");
+			ResponseCache.Entry e=ResponseCache.get(key);
+			if(e==null)
+				e=ResponseCache.put(key, encode(res,ins.find_Gene(req.getParameter("prefix"))));
+			send(req,res,e);
 		}
 		else if (action.equals("getGene")){
-			String a=ins.get_Geneinfo(req.getParameter("gene"));
-			res.getWriter().print(a);
+			String key=action+"\t"+req.getParameter("gene");
+			ResponseCache.Entry e=ResponseCache.get(key);
+			if(e==null)
+				e=ResponseCache.put(key, encode(res,ins.get_Geneinfo(req.getParameter("gene"))));
+			send(req,res,e);
 		}
 		else if (action.equals("overlapGene")){
 			String a=ins.get_OverlapGenes(req.getParameter("chr"), Integer.parseInt(req.getParameter("start")), Integer.parseInt(req.getParameter("end")));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("getParams")){
 			String a=ins.get_Parameters(req.getParameter("tracks").split(","));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("addExternals")){
 			ins.add_Externals(req.getParameter("tracks").split(","),req.getParameter("links").split(","), req.getParameter("types").split(","),req.getParameter("modes").split(","));
 			String a=ins.add_Tracks(req.getParameter("tracks").split(","), req.getParameter("modes").split(","));
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("removeExternals")){
 			ins.remove_Externals(req.getParameter("tracks").split(","));
@@ -135,8 +289,14 @@ public class Interfaces extends HttpServlet{
 			long start=Long.parseLong(req.getParameter("start"));
 			long end=Long.parseLong(req.getParameter("end"));
 			int window_width=Integer.parseInt(req.getParameter("width"));
-			String a=ins.update(chr, start, end, window_width);
-			res.getWriter().print(a);
+			String a;
+			// view= (empty at first) asks for deltas, with the last view as prev_start, prev_end
+			if(req.getParameter("view")!=null)
+				a=ins.update(chr, start, end, window_width, req.getParameter("view"),
+						parse_long(req.getParameter("prev_start")), parse_long(req.getParameter("prev_end")));
+			else
+				a=ins.update(chr, start, end, window_width);
+			print(req,res,a);
 		}
 		else if (action.equals("refresh")){
 			String chr=req.getParameter("chr");
@@ -144,7 +304,7 @@ public class Interfaces extends HttpServlet{
 			long end=Long.parseLong(req.getParameter("end"));
 			int window_width=Integer.parseInt(req.getParameter("width"));
 			String a=ins.refresh(chr, start, end, window_width);
-			res.getWriter().print(a);
+			print(req,res,a);
 		}
 		else if (action.equals("getStat")){
 			String filename=ins.save_Stat(session.getId());
@@ -184,19 +344,141 @@ public class Interfaces extends HttpServlet{
 					}
 				}
 			}
+		}
+	}
+	private void print(HttpServletResponse res, String a) throws IOException{
+		if(a!=null)
+			Metrics.count(Metrics.RESPONSE_BYTES, a.length());
+		res.getWriter().print(a);
+	}
+	/*
+	 * print, with an ETag for the REVALIDATED actions, compressed if the client accepts it.
+	 * The response is compressed as it is encoded, and its ETag digested the same way,
+	 * without a copy of the whole response.
+	 */
+	private void print(HttpServletRequest req, HttpServletResponse res, String a) throws IOException{
+		if(a==null){
+			print(res,a);
+			return;
+		}
+		if(!REVALIDATED.contains(req.getParameter("action"))){
+			String encoding=a.length()>=Compression.MIN_SIZE?Compression.negotiate(req.getHeader("Accept-Encoding")):null;
+			if(encoding==null){
+				print(res,a);
+				return;
+			}
+			Metrics.count(Metrics.RESPONSE_BYTES, a.length());
+			res.setHeader("Vary", "Accept-Encoding");
+			write(res,a,encoding);
+			return;
+		}
+		long[] length=new long[1];
+		String etag=ResponseCache.etag(a, res.getCharacterEncoding(), length);
+		String encoding=length[0]>=Compression.MIN_SIZE?Compression.negotiate(req.getHeader("Accept-Encoding")):null;
+		if(encoding!=null)
+			etag=ResponseCache.encoded_etag(etag, encoding);
+		res.setHeader("Vary", "Accept-Encoding");
+		res.setHeader("ETag", etag);
+		if(ResponseCache.matches(req.getHeader("If-None-Match"), etag)){
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			Metrics.count(Metrics.NOT_MODIFIED, 1);
+			return;
+		}
+		Metrics.count(Metrics.RESPONSE_BYTES, length[0]);
+		if(encoding==null)
+			res.setContentLength((int) length[0]);
+		write(res,a,encoding);
+	}
+	/*
+	 * Write a to the output stream of res, compressed in encoding unless it is null.
+	 */
+	private static void write(HttpServletResponse res, String a, String encoding) throws IOException{
+		OutputStream os=res.getOutputStream();
+		if(encoding!=null){
+			res.setHeader("Content-Encoding", encoding);
+			os=Compression.wrap(counting(os),encoding);
+		}
+		Writer out=new OutputStreamWriter(os,res.getCharacterEncoding());
+		out.write(a);
+		out.close();
+	}
+	/*
+	 * Send an encoded response with its ETag, or 304 if the client has it already.
+	 * Cached entries keep their compressed bodies.
+	 */
+	private void send(HttpServletRequest req, HttpServletResponse res, ResponseCache.Entry e) throws IOException{
+		if(IMMUTABLE.contains(req.getParameter("action")))
+			res.setHeader("Cache-Control", "public,max-age="+IMMUTABLE_MAX_AGE);
+		String encoding=e.body.length>=Compression.MIN_SIZE?Compression.negotiate(req.getHeader("Accept-Encoding")):null;
+		String etag=encoding==null?e.etag:e.encoded_etag(encoding);
+		res.setHeader("Vary", "Accept-Encoding");
+		res.setHeader("ETag", etag);
+		if(ResponseCache.matches(req.getHeader("If-None-Match"), etag)){
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			Metrics.count(Metrics.NOT_MODIFIED, 1);
+			return;
+		}
+		Metrics.count(Metrics.RESPONSE_BYTES, e.body.length);
+		byte[] body=e.body;
+		if(encoding!=null){
+			body=e.encoded(encoding);
+			res.setHeader("Content-Encoding", encoding);
+			Metrics.count(Metrics.COMPRESSED_BYTES, body.length);
+		}
+		res.setContentLength(body.length);
+		res.getOutputStream().write(body);
+	}
+	/*
+	 * out, counting the bytes written to it as COMPRESSED_BYTES.
+	 */
+	private static OutputStream counting(OutputStream out){
+		return new FilterOutputStream(out){
+			public void write(byte[] b, int off, int len) throws IOException{
+				out.write(b, off, len);
+				Metrics.count(Metrics.COMPRESSED_BYTES, len);
+			}
+			public void write(int b) throws IOException{
+				out.write(b);
+				Metrics.count(Metrics.COMPRESSED_BYTES, 1);
+			}
+		};
+	}
+	private static long parse_long(String s){
+		try{
+			return s!=null?Long.parseLong(s):-1;
+		} catch(NumberFormatException e){
+			return -1;
+		}
+	}
+	private static byte[] encode(HttpServletResponse res, String a) throws UnsupportedEncodingException{
+		return a.getBytes(res.getCharacterEncoding());
+	}
+	/*
+	 * action=metrics[&format=json], latency histograms and counters of this JVM.
+	 */
+	private void write_metrics(HttpServletRequest req, HttpServletResponse res) throws IOException{
+		res.setHeader("Cache-Control", "no-cache,must-revalidate");
+		res.setHeader("Pragma", "no-cache");
+		res.setHeader("Expires", "-1");
+		if("json".equals(req.getParameter("format"))){
+			res.setContentType("application/json");
+			res.getWriter().print(Metrics.to_json());
+		}
+		else{
+			res.setContentType("text/plain");
+			res.getWriter().print(Metrics.to_text());
 		}
 	}
-	protected void doPost(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException{
+	private void serve_post(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException{
 		//res.setContentType("application/xml");
 		HttpSession session=req.getSession();
-		if(session.getAttribute("Instance")==null)
-			session.setAttribute("Instance", new Instance());
+		String sid=Sessions.id(req, res);
 		if(res!=null){
 			res.setHeader("Cache-Control", "no-cache,must-revalidate");
 			res.setHeader("Pragma", "no-cache");
 			res.setHeader("Expires", "-1");
 		}
-		Instance ins=(Instance) session.getAttribute("Instance");
+		Instance ins=sessions.get(sid);
 		String action=req.getParameter("action");
 		if (action.equals("upStat")){
 			File tmpdir=new File(System.getProperty("java.io.tmpdir"));
@@ -234,6 +516,7 @@ public class Interfaces extends HttpServlet{
 			if(ftemp!=null){
 				ins.load_Stat(filepath);
 			}
+			sessions.save(sid, ins);
 		}
 	}
 /*	private <T extends Enum<T>> EnumSet<T> decode_annos(Class<T> annoSet, long elements){
@@ -0,0 +1,50 @@
+package gbservlet;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * The thread pools Interfaces serves asynchronous requests on, so the container threads
+ * only accept them. Actions answering from memory (catalogs, gene lookups, reading the
+ * parameters, hiding tracks) run in the LIGHT lane; the others, setParams included as it
+ * adds tracks, read files or remote ranges and run in the heavy lane, which can not delay the light one however busy it is.
+ *
+ * Both are bounded: -Dgbhit.light.threads (default 4) and -Dgbhit.heavy.threads
+ * (default 4 per processor, reads mostly wait on I/O), with QUEUE requests waiting in
+ * each. A request finding its lane full is refused (RejectedExecutionException).
+ */
+final class Lanes {
+	static final int QUEUE=256;
+	private static final Set<String> LIGHT=new HashSet<String>(Arrays.asList(
+			"getAssemblies","getSession","getAnnotations","getChromosomes","getCytobands",
+			"getGene","findGene","getParams","metrics",
+			"removeTracks","removeExternals","removePvar","removePanno","removePfanno","removePclns"));
+
+	private static final ExecutorService light=pool("gbhit-light", Integer.getInteger("gbhit.light.threads", 4));
+	private static final ExecutorService heavy=pool("gbhit-heavy",
+			Integer.getInteger("gbhit.heavy.threads", 4*Runtime.getRuntime().availableProcessors()));
+
+	private static ExecutorService pool(final String name,int threads){
+		ThreadPoolExecutor pool=new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE),new ThreadFactory(){
+					private final AtomicInteger n=new AtomicInteger();
+					public Thread newThread(Runnable r){
+						Thread t=new Thread(r,name+"-"+n.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+	static ExecutorService lane(String action){
+		return LIGHT.contains(action)?light:heavy;
+	}
+}
@@ -0,0 +1,134 @@
+package gbservlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Encoded responses of Interfaces with their ETag, a digest of the bytes, so two
+ * responses get the same tag exactly when they are the same.
+ * Responses of actions that do not change while the servlet runs are kept here,
+ * by action and parameters, up to MAX_ENTRIES of at most MAX_BODY bytes, along with
+ * their compressed forms once a client asked for them.
+ */
+final class ResponseCache {
+	static final int MAX_ENTRIES=1024;
+	static final int MAX_BODY=256*1024;
+
+	static final class Entry{
+		final byte[] body;
+		final String etag;
+		private volatile byte[] gzip;
+		private volatile byte[] deflate;
+		Entry(byte[] body){
+			this.body=body;
+			this.etag=etag(body);
+		}
+		/*
+		 * The body in a Content-Encoding of Compression, compressed once.
+		 */
+		byte[] encoded(String encoding){
+			if(encoding.equals(Compression.GZIP)){
+				if(gzip==null)
+					gzip=Compression.compress(body, encoding);
+				return gzip;
+			}
+			if(deflate==null)
+				deflate=Compression.compress(body, encoding);
+			return deflate;
+		}
+		/*
+		 * The tag of the body in encoding, which is another representation.
+		 */
+		String encoded_etag(String encoding){
+			return ResponseCache.encoded_etag(etag, encoding);
+		}
+	}
+
+	private static final Map<String,Entry> cache=Collections.synchronizedMap(new LinkedHashMap<String,Entry>(64,0.75f,true){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest){
+			return size()>MAX_ENTRIES;
+		}
+	});
+
+	static Entry get(String key){
+		return cache.get(key);
+	}
+	/*
+	 * The entry of body, kept under key unless it is too large.
+	 */
+	static Entry put(String key,byte[] body){
+		Entry e=new Entry(body);
+		if(body.length<=MAX_BODY)
+			cache.put(key, e);
+		return e;
+	}
+	static String etag(byte[] body){
+		return tag(sha1().digest(body));
+	}
+	/*
+	 * The tag of body encoded in charset, the same as etag of its bytes, digested as it
+	 * is encoded without a copy of them; the number of bytes goes to length[0].
+	 */
+	static String etag(String body,String charset,final long[] length) throws IOException{
+		final MessageDigest sha1=sha1();
+		Writer out=new OutputStreamWriter(new OutputStream(){
+			public void write(byte[] b, int off, int len){
+				sha1.update(b, off, len);
+				length[0]+=len;
+			}
+			public void write(int b){
+				sha1.update((byte) b);
+				length[0]++;
+			}
+		},charset);
+		out.write(body);
+		out.close();
+		return tag(sha1.digest());
+	}
+	/*
+	 * The tag of a body in a Content-Encoding, which is another representation.
+	 */
+	static String encoded_etag(String etag,String encoding){
+		return etag.substring(0, etag.length()-1)+"-"+encoding+"\"";
+	}
+	private static MessageDigest sha1(){
+		try{
+			return MessageDigest.getInstance("SHA-1");
+		} catch(NoSuchAlgorithmException e){
+			throw new IllegalStateException(e);
+		}
+	}
+	private static String tag(byte[] digest){
+		StringBuilder sb=new StringBuilder(digest.length*2+2);
+		sb.append('"');
+		for(byte b : digest){
+			sb.append(Character.forDigit((b>>4)&0xf, 16));
+			sb.append(Character.forDigit(b&0xf, 16));
+		}
+		return sb.append('"').toString();
+	}
+	/*
+	 * Whether the If-None-Match header of a request names etag.
+	 */
+	static boolean matches(String if_none_match,String etag){
+		if(if_none_match==null)
+			return false;
+		for(String tag : if_none_match.split(",")){
+			tag=tag.trim();
+			if(tag.startsWith("W/"))
+				tag=tag.substring(2);
+			if(tag.equals("*")||tag.equals(etag))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,123 @@
+package gbservlet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import filereaders.Instance;
+import filereaders.SessionState;
+import filereaders.SessionStore;
+
+/*
+ * The Instance of each session. The SessionState of a session is kept in a SessionStore
+ * (-Dgbhit.session.store, see SessionStore.create), the Instances built from it are
+ * only a cache of this server: a request finding the state changed by another server, or
+ * no Instance here, restores one from the state.
+ *
+ * A session is named by its COOKIE, set to the id of the first HttpSession, so it does
+ * not depend on the server that created it.
+ *
+ * Getting, creating and saving the Instance of a session hold the lock of its id (one of
+ * LOCKS, by hash), so concurrent first requests of a session share one Instance.
+ */
+final class Sessions {
+	static final String COOKIE="gbhit_session";
+	static final int MAX_INSTANCES=512;
+	static final int LOCKS=64;
+
+	private static final class Local{
+		final Instance ins;
+		byte[] state;
+		Local(Instance ins,byte[] state){
+			this.ins=ins;
+			this.state=state;
+		}
+	}
+
+	private final SessionStore store;
+	private final Map<String,Local> local=Collections.synchronizedMap(new LinkedHashMap<String,Local>(64,0.75f,true){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Local> eldest){
+			if(size()<=MAX_INSTANCES)
+				return false;
+			eldest.getValue().ins.close();
+			return true;
+		}
+	});
+
+	private final Object[] locks=new Object[LOCKS];
+
+	Sessions(SessionStore store){
+		this.store=store;
+		for(int i=0;i<LOCKS;i++)
+			locks[i]=new Object();
+	}
+	private Object lock(String id){
+		return locks[(id.hashCode()&0x7fffffff)%LOCKS];
+	}
+	/*
+	 * The session of req, setting its cookie on res if it has none.
+	 */
+	static String id(HttpServletRequest req,HttpServletResponse res){
+		Cookie[] cookies=req.getCookies();
+		for(int i=0;cookies!=null&&i<cookies.length;i++)
+			if(COOKIE.equals(cookies[i].getName())&&cookies[i].getValue().length()>0)
+				return cookies[i].getValue();
+		String id=req.getSession().getId();
+		Cookie cookie=new Cookie(COOKIE,id);
+		cookie.setPath("/");
+		res.addCookie(cookie);
+		return id;
+	}
+	Instance get(String id){
+		synchronized(lock(id)){
+			byte[] state=store.load(id);
+			Local l=local.get(id);
+			if(l!=null&&Arrays.equals(l.state, state))
+				return l.ins;
+			SessionState s=state!=null?SessionState.from_Bytes(state):null;
+			Instance ins=s!=null?Instance.restore(s):new Instance();
+			close(local.put(id, new Local(ins,state)));
+			return ins;
+		}
+	}
+	/*
+	 * Make ins the Instance of the session, e.g. of another assembly.
+	 */
+	void put(String id,Instance ins){
+		synchronized(lock(id)){
+			Local old=local.put(id, new Local(ins,null));
+			if(old!=null&&old.ins!=ins)
+				close(old);
+			save(id, ins);
+		}
+	}
+	/*
+	 * Stop the background work of an Instance no longer used here.
+	 */
+	private static void close(Local l){
+		if(l!=null)
+			l.ins.close();
+	}
+	/*
+	 * Store the state of ins after a request, if it changed.
+	 */
+	void save(String id,Instance ins){
+		synchronized(lock(id)){
+			Local l=local.get(id);
+			if(l==null||l.ins!=ins)
+				return;
+			byte[] state=ins.get_State().to_Bytes();
+			if(Arrays.equals(l.state, state))
+				return;
+			store.save(id, state);
+			l.state=state;
+		}
+	}
+}
@@ -28,6 +28,8 @@ import net.sf.samtools.util.*;
 import net.sf.samtools.SAMFileReader.ValidationStringency;
 import net.sf.samtools.seekablestream.SeekableStream;
 
+import filereaders.tools.BlockCache;
+
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -114,7 +116,7 @@ class BAMFileReader extends SAMFileReader.ReaderImplementation {
                   final ValidationStringency validationStringency,
                   final SAMRecordFactory factory)
         throws IOException {
-        this(new BlockCompressedInputStream(file), indexFile!=null ? indexFile : findIndexFile(file), eagerDecode, file.getAbsolutePath(), validationStringency, factory);
+        this(BlockCache.open(file), indexFile!=null ? indexFile : findIndexFile(file), eagerDecode, file.getAbsolutePath(), validationStringency, factory);
         if (mIndexFile != null && mIndexFile.lastModified() < file.lastModified()) {
             System.err.println("WARNING: BAM index file " + mIndexFile.getAbsolutePath() +
                     " is older than BAM " + file.getAbsolutePath());
@@ -129,7 +131,7 @@ class BAMFileReader extends SAMFileReader.ReaderImplementation {
                   final ValidationStringency validationStringency,
                   final SAMRecordFactory factory)
         throws IOException {
-        this(new BlockCompressedInputStream(strm), indexFile, eagerDecode, strm.getSource(), validationStringency, factory);
+        this(BlockCache.open(strm), indexFile, eagerDecode, strm.getSource(), validationStringency, factory);
     }
 
     BAMFileReader(final SeekableStream strm,
@@ -138,7 +140,7 @@ class BAMFileReader extends SAMFileReader.ReaderImplementation {
                   final ValidationStringency validationStringency,
                   final SAMRecordFactory factory)
         throws IOException {
-        this(new BlockCompressedInputStream(strm), indexStream, eagerDecode, strm.getSource(), validationStringency, factory);
+        this(BlockCache.open(strm), indexStream, eagerDecode, strm.getSource(), validationStringency, factory);
     }
 
     private BAMFileReader(final BlockCompressedInputStream compressedInputStream,
@@ -664,6 +666,7 @@ class BAMFileReader extends SAMFileReader.ReaderImplementation {
                 }
                 final long startOffset = mFilePointers[mFilePointerIndex++];
                 final long endOffset = mFilePointers[mFilePointerIndex++];
+                BlockCache.readAhead(mCompressedInputStream, endOffset);
                 mCompressedInputStream.seek(startOffset);
                 mFilePointerLimit = endOffset;
             }